@@ -17,21 +17,27 @@
  */
 package it.polito.elite.dog.addons.powermodel;
 
+import it.polito.elite.dog.addons.powermodel.device.LoadProfile;
 import it.polito.elite.dog.addons.powermodel.device.PowerDevice;
 import it.polito.elite.dog.addons.powermodel.device.PowerState;
 import it.polito.elite.dog.core.library.semantic.OWLWrapper;
 import it.polito.elite.dog.core.library.util.LogHelper;
 
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
 
 import org.osgi.service.log.LogService;
+import org.semanticweb.owlapi.model.OWLAnnotation;
 import org.semanticweb.owlapi.model.OWLClass;
 import org.semanticweb.owlapi.model.OWLLiteral;
 import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyFormat;
 import org.semanticweb.owlapi.reasoner.InferenceType;
 import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import org.semanticweb.owlapi.vocab.PrefixOWLOntologyFormat;
 
 /**
  * Init the ontology power model.
@@ -55,6 +61,9 @@ public class PowerModelInitializer implements Runnable
 	
 	private final String defaultPrefix = "poweront:";
 	
+	// the name of the load profile annotation
+	private final String loadProfileAnnotation = "loadProfile";
+	
 	/**
 	 * Default constructor
 	 * 
@@ -66,7 +75,6 @@ public class PowerModelInitializer implements Runnable
 		// init
 		this.modelToInitialize = modelToInitialize;
 		this.logger = modelToInitialize.getLogger();
-		this.deviceConsumptions = modelToInitialize.getDeviceConsumptions();
 		this.owlwrapper = modelToInitialize.getOWLWrapper();
 	}
 	
@@ -75,6 +83,7 @@ public class PowerModelInitializer implements Runnable
 	{
 		// init
 		OWLReasoner reasoner = this.owlwrapper.getReasoner();
+		this.deviceConsumptions = modelToInitialize.getDeviceConsumptions();
 		
 		// info
 		logger.log(LogService.LOG_INFO, "Extracting values from PowerOnt...");
@@ -82,47 +91,17 @@ public class PowerModelInitializer implements Runnable
 		// ... reason!
 		reasoner.precomputeInferences(InferenceType.values());
 		
-		// extract all the power consumptions
+		// extract all the power consumptions, tracking the individuals each
+		// of them depends on for the incremental updates
+		PowerModelUpdater updater = modelToInitialize.getOntologyUpdater();
 		Set<String> allConsumptions = this.owlwrapper.getAllIndividual(this.defaultPrefix, "ElectricPowerConsumption");
 		for (String name : allConsumptions)
 		{
-			// get when in
-			OWLNamedIndividual whenIn = this.owlwrapper.getSingleObjectProperty(owlwrapper.getOWLIndividual(name),
-					this.defaultPrefix, "whenIn");
-			Set<OWLClass> types = reasoner.getTypes(whenIn, true).getFlattened();
-			
-			// create a PowerState for the current state
-			PowerState current = new PowerState(this.owlwrapper.getShortFormWithoutPrefix(types.iterator().next()));
-			
-			// get consumption of
-			OWLNamedIndividual consumptionOf = this.owlwrapper.getSingleObjectProperty(
-					this.owlwrapper.getOWLIndividual(name), "poweront:", "consumptionOf");
-			// get device name
-			String deviceName = this.owlwrapper.getShortFormWithoutPrefix(consumptionOf);
-			
-			// get typical consumption
-			this.getConsumption(current, name, "typicalConsumptionValue");
-			// get nominal consumption
-			this.getConsumption(current, name, "nominalConsumptionValue");
-			// get actual consumption
-			this.getConsumption(current, name, "actualConsumptionValue");
-			
-			// check if the devices map contains the current device
-			if (!deviceConsumptions.containsKey(deviceName))
-			{
-				// device and states not yet inserted
-				Set<PowerState> stateConsumptions = new HashSet<PowerState>();
-				stateConsumptions.add(current);
-				deviceConsumptions.put(deviceName, new PowerDevice(deviceName, stateConsumptions));
-			}
-			else
-			{
-				// device already present; I need to insert a new state with its
-				// consumptions
-				PowerDevice retrieved = deviceConsumptions.get(deviceName);
-				retrieved.addSinglePowerState(current);
-				deviceConsumptions.put(deviceName, retrieved);
-			}
+			OWLNamedIndividual consumption = this.owlwrapper.getOWLIndividual(name);
+			Set<String> dependencies = new HashSet<String>();
+			String deviceName = this.extractConsumption(consumption, name, deviceConsumptions, dependencies);
+			if (deviceName != null && updater != null)
+				updater.track(consumption, deviceName, dependencies);
 		}
 		
 		// debug
@@ -143,12 +122,138 @@ public class PowerModelInitializer implements Runnable
 			}
 		}
 		
+		// get the namespace prefixes, to resolve prefixed device names
+		OWLOntology ontology = this.owlwrapper.getOntModel();
+		OWLOntologyFormat format = ontology.getOWLOntologyManager().getOntologyFormat(ontology);
+		if (format instanceof PrefixOWLOntologyFormat)
+			modelToInitialize.setNamespacePrefixes(((PrefixOWLOntologyFormat) format).getPrefixName2PrefixMap());
+		
+		// build the array-based consumption table
+		modelToInitialize.updateConsumptionTable();
+		
 		// info
 		logger.log(LogService.LOG_INFO, "... done!");
 		
 		// init complete: it is time to register the service!
 		modelToInitialize.registerServices();
 		
+		// from now on, ontology changes are propagated incrementally
+		if (updater != null)
+			updater.start();
+	}
+	
+	/**
+	 * Extract a single ElectricPowerConsumption individual, adding its state
+	 * to the given device map
+	 * 
+	 * @param consumption
+	 *            the PowerConsumption individual
+	 * @param name
+	 *            the PowerConsumption individual name
+	 * @param devices
+	 *            the device map to update, indexed by device name
+	 * @param dependencies
+	 *            filled with the IRIs of all the individuals the extracted
+	 *            values come from
+	 * @return the name of the device the consumption refers to, or null if
+	 *         the individual is not a complete power consumption
+	 */
+	String extractConsumption(OWLNamedIndividual consumption, String name, Map<String, PowerDevice> devices,
+			Set<String> dependencies)
+	{
+		dependencies.add(consumption.getIRI().toString());
+		
+		// get when in
+		OWLNamedIndividual whenIn = this.owlwrapper.getSingleObjectProperty(consumption, this.defaultPrefix, "whenIn");
+		if (whenIn == null)
+			return null;
+		dependencies.add(whenIn.getIRI().toString());
+		Set<OWLClass> types = this.owlwrapper.getReasoner().getTypes(whenIn, true).getFlattened();
+		if (types.isEmpty())
+			return null;
+		
+		// create a PowerState for the current state
+		PowerState current = new PowerState(this.owlwrapper.getShortFormWithoutPrefix(types.iterator().next()));
+		
+		// get consumption of
+		OWLNamedIndividual consumptionOf = this.owlwrapper.getSingleObjectProperty(consumption, "poweront:",
+				"consumptionOf");
+		if (consumptionOf == null)
+			return null;
+		dependencies.add(consumptionOf.getIRI().toString());
+		// get device name
+		String deviceName = this.owlwrapper.getShortFormWithoutPrefix(consumptionOf);
+		
+		// get typical consumption
+		this.getConsumption(current, consumption, name, "typicalConsumptionValue", dependencies);
+		// get nominal consumption
+		this.getConsumption(current, consumption, name, "nominalConsumptionValue", dependencies);
+		// get actual consumption
+		this.getConsumption(current, consumption, name, "actualConsumptionValue", dependencies);
+		// get the load profile, if any
+		this.getLoadProfile(current, consumption, name);
+		
+		// check if the devices map contains the current device
+		if (!devices.containsKey(deviceName))
+		{
+			// device and states not yet inserted
+			Set<PowerState> stateConsumptions = new HashSet<PowerState>();
+			stateConsumptions.add(current);
+			PowerDevice device = new PowerDevice(deviceName, stateConsumptions);
+			device.setIRI(consumptionOf.getIRI().toString());
+			
+			// get the room in which the device is located, if any
+			OWLNamedIndividual isIn = this.owlwrapper.getSingleObjectProperty(consumptionOf, "dogont:", "isIn");
+			if (isIn != null)
+			{
+				dependencies.add(isIn.getIRI().toString());
+				device.setRoom(this.owlwrapper.getShortFormWithoutPrefix(isIn));
+			}
+			
+			devices.put(deviceName, device);
+		}
+		else
+		{
+			// device already present; I need to insert a new state with its
+			// consumptions
+			PowerDevice retrieved = devices.get(deviceName);
+			retrieved.addSinglePowerState(current);
+			devices.put(deviceName, retrieved);
+		}
+		
+		return deviceName;
+	}
+	
+	/**
+	 * Get the load profile of a state from the "loadProfile" annotation of
+	 * its PowerConsumption individual, if any (see
+	 * {@link LoadProfile#parse(String)} for its format)
+	 * 
+	 * @param powerState
+	 *            the {@link PowerState} to update
+	 * @param consumption
+	 *            the PowerConsumption individual
+	 * @param name
+	 *            the PowerConsumption individual name
+	 */
+	private void getLoadProfile(PowerState powerState, OWLNamedIndividual consumption, String name)
+	{
+		for (OWLAnnotation annotation : consumption.getAnnotations(this.owlwrapper.getOntModel()))
+		{
+			if (this.loadProfileAnnotation.equals(annotation.getProperty().getIRI().getFragment())
+					&& annotation.getValue() instanceof OWLLiteral)
+			{
+				String profile = ((OWLLiteral) annotation.getValue()).getLiteral();
+				try
+				{
+					powerState.setLoadProfile(LoadProfile.parse(profile));
+				}
+				catch (IllegalArgumentException e)
+				{
+					this.logger.log(LogService.LOG_WARNING, "Invalid load profile of " + name + ": " + profile, e);
+				}
+			}
+		}
 	}
 	
 	/**
@@ -156,19 +261,26 @@ public class PowerModelInitializer implements Runnable
 	 * 
 	 * @param powerState
 	 *            the {@link PowerState} to update
+	 * @param consumption
+	 *            the PowerConsumption individual
 	 * @param name
 	 *            the PowerConsumption individual name
 	 * @param suffix
 	 *            to ask for the consumption type (i.e., typical, nominal,
 	 *            actual)
+	 * @param dependencies
+	 *            filled with the IRIs of the individuals the value comes from
 	 */
-	private void getConsumption(PowerState powerState, String name, String suffix)
+	private void getConsumption(PowerState powerState, OWLNamedIndividual consumption, String name, String suffix,
+			Set<String> dependencies)
 	{
 		// get the consumption individual
-		OWLNamedIndividual consumptionType = this.owlwrapper.getSingleObjectProperty(
-				this.owlwrapper.getOWLIndividual(name), this.defaultPrefix, suffix);
+		OWLNamedIndividual consumptionType = this.owlwrapper.getSingleObjectProperty(consumption,
+				this.defaultPrefix, suffix);
 		if (consumptionType != null)
 		{
+			dependencies.add(consumptionType.getIRI().toString());
+			
 			// extract power value
 			Set<OWLLiteral> powerValue = this.owlwrapper.getSpecificDataPropertyValues(consumptionType,
 					this.defaultPrefix, "powerValue");
@@ -184,6 +296,7 @@ public class PowerModelInitializer implements Runnable
 						"measuredIn");
 				if (measuredIn != null)
 				{
+					dependencies.add(measuredIn.getIRI().toString());
 					Set<OWLLiteral> prefSymbol = this.owlwrapper.getSpecificDataPropertyValues(measuredIn, "muo:",
 							"prefSymbol");
 					
@@ -0,0 +1,167 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel;
+
+import it.polito.elite.dog.addons.powermodel.api.DeltaTransport;
+import it.polito.elite.dog.addons.powermodel.api.ModelReplication;
+import it.polito.elite.dog.addons.powermodel.device.PowerDevice;
+import it.polito.elite.dog.addons.powermodel.replication.ReplicationLog;
+import it.polito.elite.dog.addons.powermodel.replication.SnapshotDelta;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Replicate the power model between gateways: every rebuild of the
+ * consumption table is recorded in a {@link ReplicationLog}, from which
+ * snapshot deltas are exported; applied deltas replace the devices of the
+ * model at once, as the incremental ontology updates do, without any
+ * reasoning.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class PowerModelReplicator implements ModelReplication
+{
+	// the power model to replicate
+	private PowerOntModel model;
+	
+	// the version log of the local model
+	private ReplicationLog log;
+	
+	// the version of the replicated model reached by the latest applied delta
+	private long appliedVersion;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param model
+	 *            the power model to replicate
+	 */
+	public PowerModelReplicator(PowerOntModel model)
+	{
+		this.model = model;
+		this.log = new ReplicationLog();
+	}
+	
+	/**
+	 * Record all the devices of the model, after a full extraction
+	 * 
+	 * @param devices
+	 *            the devices of the model, indexed by name
+	 */
+	void record(Map<String, PowerDevice> devices)
+	{
+		this.log.record(devices);
+	}
+	
+	/**
+	 * Record some devices of the model, after they have been replaced
+	 * 
+	 * @param deviceNames
+	 *            the names of the replaced devices
+	 * @param devices
+	 *            the devices of the model, indexed by name
+	 */
+	void record(Set<String> deviceNames, Map<String, PowerDevice> devices)
+	{
+		this.log.record(deviceNames, devices);
+	}
+	
+	@Override
+	public long getVersion()
+	{
+		return this.log.getVersion();
+	}
+	
+	@Override
+	public synchronized long getAppliedVersion()
+	{
+		return this.appliedVersion;
+	}
+	
+	@Override
+	public long exportDelta(long sinceVersion, OutputStream out) throws IOException
+	{
+		return this.log.writeDelta(sinceVersion, out);
+	}
+	
+	@Override
+	public synchronized long applyDelta(InputStream in) throws IOException
+	{
+		SnapshotDelta delta = SnapshotDelta.read(in);
+		
+		// a full snapshot always applies, e.g., from a restarted primary or
+		// after a failover, even with a lower version
+		if (!delta.isFull()
+				&& (delta.getToVersion() <= this.appliedVersion || delta.getFromVersion() > this.appliedVersion))
+			throw new IllegalStateException("The delta from version " + delta.getFromVersion() + " to "
+					+ delta.getToVersion() + " does not apply to version " + this.appliedVersion);
+		
+		boolean first = (this.appliedVersion == 0);
+		if (delta.isFull())
+			this.model.replaceAllDevices(delta.getDevices());
+		else
+		{
+			Set<String> deviceNames = new HashSet<String>(delta.getDevices().keySet());
+			deviceNames.addAll(delta.getRemoved());
+			this.model.replaceDevices(deviceNames, delta.getDevices());
+		}
+		this.appliedVersion = delta.getToVersion();
+		
+		// a standby is ready as soon as it holds its first snapshot
+		if (first)
+			this.model.registerServices();
+		
+		return this.appliedVersion;
+	}
+	
+	@Override
+	public long publish(DeltaTransport transport, long sinceVersion) throws IOException
+	{
+		if (sinceVersion == this.log.getVersion())
+			return sinceVersion;
+		
+		long fromVersion = this.log.getBaseVersion(sinceVersion);
+		ByteArrayOutputStream delta = new ByteArrayOutputStream();
+		long toVersion = this.log.writeDelta(fromVersion, delta);
+		transport.send(fromVersion, toVersion, delta.toByteArray());
+		
+		return toVersion;
+	}
+	
+	@Override
+	public synchronized int synchronize(DeltaTransport transport) throws IOException
+	{
+		int count = 0;
+		byte[] delta;
+		while ((delta = transport.receive(this.appliedVersion)) != null)
+		{
+			this.applyDelta(new ByteArrayInputStream(delta));
+			count++;
+		}
+		
+		return count;
+	}
+}
@@ -0,0 +1,435 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel;
+
+import it.polito.elite.dog.addons.powermodel.concurrent.SerialExecutor;
+import it.polito.elite.dog.addons.powermodel.device.PowerDevice;
+import it.polito.elite.dog.core.library.semantic.OWLWrapper;
+import it.polito.elite.dog.core.library.util.LogHelper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.osgi.service.log.LogService;
+import org.semanticweb.owlapi.model.OWLAnnotationAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyChangeListener;
+
+/**
+ * Propagate the changes of the power ontology to the power model, without a
+ * full reload. For each ElectricPowerConsumption individual it keeps the
+ * individuals its values were extracted from, so that the axioms added or
+ * removed at runtime can be mapped to the affected devices: only those
+ * devices are extracted again, then published at once with a new consumption
+ * table.<br/>
+ * Changes are collected by the listener and coalesced on a single background
+ * task of the shared pool, so that the thread editing the ontology is never
+ * blocked by the reasoner. The reasoner is not thread-safe: every task using
+ * it, including the initial extraction, runs on the serial executor of the
+ * updater, which also owns the tracking maps.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class PowerModelUpdater implements OWLOntologyChangeListener, Runnable
+{
+	// the class of the power consumption individuals
+	private static final String CONSUMPTION_CLASS = "ElectricPowerConsumption";
+	
+	// the power model to update
+	private PowerOntModel modelToUpdate;
+	
+	// the power ontology to listen to
+	private OWLOntology ontology;
+	
+	// the OWL wrapper
+	private OWLWrapper owlwrapper;
+	
+	// logger
+	private LogHelper logger;
+	
+	// the maximum time to wait for the running task when closing, in ms
+	private static final long CLOSE_TIMEOUT = 30000;
+	
+	// the tracked power consumptions, indexed by IRI; this map and the two
+	// following ones are accessed by the tasks of the serial executor only
+	private Map<String, TrackedConsumption> consumptions;
+	
+	// the IRIs of the consumptions depending on each individual, indexed by
+	// the individual IRI
+	private Map<String, Set<String>> dependents;
+	
+	// the IRIs of the consumptions of each device, indexed by device name
+	private Map<String, Set<String>> deviceConsumptions;
+	
+	// the individuals touched by the changes not yet propagated, indexed by
+	// IRI (null for the subjects of annotations, known by IRI only)
+	private Map<String, OWLNamedIndividual> pending;
+	
+	// true once the initial extraction is complete
+	private boolean started;
+	
+	// true if a propagation is already scheduled
+	private boolean scheduled;
+	
+	// the serial executor propagating the changes, on the shared pool
+	private ExecutorService executor;
+	
+	/**
+	 * Constructor: start listening to the changes of the power ontology,
+	 * which are propagated only after {@link #start()}
+	 * 
+	 * @param modelToUpdate
+	 *            the power model to update
+	 * @param executor
+	 *            the shared {@link Executor} running the propagations
+	 */
+	public PowerModelUpdater(PowerOntModel modelToUpdate, Executor executor)
+	{
+		this.modelToUpdate = modelToUpdate;
+		this.ontology = modelToUpdate.getPowerModel();
+		this.owlwrapper = modelToUpdate.getOWLWrapper();
+		this.logger = modelToUpdate.getLogger();
+		this.consumptions = new HashMap<String, TrackedConsumption>();
+		this.dependents = new HashMap<String, Set<String>>();
+		this.deviceConsumptions = new HashMap<String, Set<String>>();
+		this.pending = new LinkedHashMap<String, OWLNamedIndividual>();
+		this.executor = new SerialExecutor(executor);
+		
+		this.ontology.getOWLOntologyManager().addOntologyChangeListener(this);
+	}
+	
+	/**
+	 * Run a task using the reasoner (e.g., the initial extraction) on the
+	 * serial executor of the updater, so that it never overlaps a propagation
+	 * 
+	 * @param task
+	 *            the task to run
+	 */
+	public void execute(Runnable task)
+	{
+		this.executor.execute(task);
+	}
+	
+	/**
+	 * Track an extracted power consumption, called by the initial extraction
+	 * (running on the serial executor) only
+	 * 
+	 * @param consumption
+	 *            the PowerConsumption individual
+	 * @param deviceName
+	 *            the name of the device the consumption refers to
+	 * @param dependencies
+	 *            the IRIs of the individuals the consumption values come from
+	 */
+	void track(OWLNamedIndividual consumption, String deviceName, Set<String> dependencies)
+	{
+		String iri = consumption.getIRI().toString();
+		this.untrack(iri);
+		
+		this.consumptions.put(iri, new TrackedConsumption(consumption, deviceName, dependencies));
+		for (String dependency : dependencies)
+			PowerModelUpdater.index(this.dependents, dependency, iri);
+		PowerModelUpdater.index(this.deviceConsumptions, deviceName, iri);
+	}
+	
+	/**
+	 * Start propagating the changes, including the ones received during the
+	 * initial extraction
+	 */
+	public synchronized void start()
+	{
+		this.started = true;
+		this.schedule();
+	}
+	
+	/**
+	 * Stop listening to the power ontology, discard the pending changes and
+	 * wait for the running task, if any, so that a new updater never uses the
+	 * reasoner along with this one
+	 */
+	public void close()
+	{
+		this.ontology.getOWLOntologyManager().removeOntologyChangeListener(this);
+		synchronized (this)
+		{
+			this.started = false;
+			this.pending.clear();
+		}
+		this.executor.shutdownNow();
+		
+		try
+		{
+			if (!this.executor.awaitTermination(PowerModelUpdater.CLOSE_TIMEOUT, TimeUnit.MILLISECONDS))
+				this.logger.log(LogService.LOG_WARNING, "The power ontology updater is still running");
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	@Override
+	public void ontologiesChanged(List<? extends OWLOntologyChange> changes)
+	{
+		synchronized (this)
+		{
+			for (OWLOntologyChange change : changes)
+			{
+				if (change.isAxiomChange() && change.getOntology() == this.ontology)
+				{
+					OWLAxiom axiom = change.getAxiom();
+					for (OWLNamedIndividual individual : axiom.getIndividualsInSignature())
+						this.pending.put(individual.getIRI().toString(), individual);
+					
+					// annotations (e.g., load profiles) refer to their subject
+					// by IRI only, resolved by the propagation
+					if (axiom instanceof OWLAnnotationAssertionAxiom)
+					{
+						String subject = ((OWLAnnotationAssertionAxiom) axiom).getSubject().toString();
+						if (!this.pending.containsKey(subject))
+							this.pending.put(subject, null);
+					}
+				}
+			}
+			
+			this.schedule();
+		}
+	}
+	
+	/**
+	 * Schedule a propagation of the pending changes, if needed
+	 */
+	private void schedule()
+	{
+		if (this.started && !this.scheduled && !this.pending.isEmpty())
+		{
+			this.scheduled = true;
+			this.executor.execute(this);
+		}
+	}
+	
+	@Override
+	public void run()
+	{
+		// get the pending changes
+		Map<String, OWLNamedIndividual> touched;
+		synchronized (this)
+		{
+			touched = new LinkedHashMap<String, OWLNamedIndividual>(this.pending);
+			this.pending.clear();
+			this.scheduled = false;
+		}
+		
+		try
+		{
+			long start = System.currentTimeMillis();
+			int updated = this.propagate(touched);
+			
+			this.logger.log(LogService.LOG_DEBUG, "Power ontology changes propagated to " + updated + " devices in "
+					+ (System.currentTimeMillis() - start) + " ms");
+		}
+		catch (RuntimeException e)
+		{
+			this.logger.log(LogService.LOG_ERROR, "Unable to propagate the power ontology changes", e);
+		}
+	}
+	
+	/**
+	 * Extract again the devices affected by the given individuals and publish
+	 * them in the power model
+	 * 
+	 * @param touched
+	 *            the individuals touched by the changes, indexed by IRI
+	 * @return the number of devices updated or removed
+	 */
+	private int propagate(Map<String, OWLNamedIndividual> touched)
+	{
+		// bring the reasoner up to date with the changes
+		this.owlwrapper.getReasoner().flush();
+		
+		// the consumptions depending on the touched individuals, plus the
+		// touched individuals that are consumptions themselves
+		Map<String, OWLNamedIndividual> affected = new LinkedHashMap<String, OWLNamedIndividual>();
+		for (Map.Entry<String, OWLNamedIndividual> entry : touched.entrySet())
+		{
+			Set<String> consumptionIRIs = this.dependents.get(entry.getKey());
+			if (consumptionIRIs != null)
+				for (String iri : consumptionIRIs)
+					affected.put(iri, this.consumptions.get(iri).individual);
+			if (!this.consumptions.containsKey(entry.getKey()) && entry.getValue() != null
+					&& this.isConsumption(entry.getValue()))
+				affected.put(entry.getKey(), entry.getValue());
+		}
+		
+		// a device is always extracted as a whole: extract all the
+		// consumptions of the affected devices, before and after the changes
+		PowerModelInitializer extractor = new PowerModelInitializer(this.modelToUpdate);
+		Map<String, PowerDevice> devices = new HashMap<String, PowerDevice>();
+		Set<String> deviceNames = new HashSet<String>();
+		Set<String> extracted = new HashSet<String>();
+		for (TrackedConsumption tracked : this.getTracked(affected.keySet()))
+			deviceNames.add(tracked.device);
+		for (String deviceName : deviceNames)
+			this.addConsumptions(deviceName, affected);
+		
+		while (extracted.size() < affected.size())
+		{
+			List<Map.Entry<String, OWLNamedIndividual>> toExtract = new ArrayList<Map.Entry<String, OWLNamedIndividual>>();
+			for (Map.Entry<String, OWLNamedIndividual> entry : affected.entrySet())
+				if (!extracted.contains(entry.getKey()))
+					toExtract.add(entry);
+			
+			for (Map.Entry<String, OWLNamedIndividual> entry : toExtract)
+			{
+				extracted.add(entry.getKey());
+				this.untrack(entry.getKey());
+				if (!this.isConsumption(entry.getValue()))
+					continue;
+				
+				Set<String> dependencies = new HashSet<String>();
+				String deviceName = extractor.extractConsumption(entry.getValue(),
+						this.owlwrapper.getShortFormWithoutPrefix(entry.getValue()), devices, dependencies);
+				if (deviceName != null)
+				{
+					this.track(entry.getValue(), deviceName, dependencies);
+					
+					// a consumption moved to another device brings in all the
+					// consumptions of that device
+					if (deviceNames.add(deviceName))
+						this.addConsumptions(deviceName, affected);
+				}
+			}
+		}
+		
+		// publish the affected devices at once
+		if (!deviceNames.isEmpty())
+			this.modelToUpdate.replaceDevices(deviceNames, devices);
+		
+		return deviceNames.size();
+	}
+	
+	/**
+	 * Add all the tracked consumptions of a device to the given ones
+	 */
+	private void addConsumptions(String deviceName, Map<String, OWLNamedIndividual> affected)
+	{
+		Set<String> consumptionIRIs = this.deviceConsumptions.get(deviceName);
+		if (consumptionIRIs != null)
+			for (String iri : consumptionIRIs)
+				if (!affected.containsKey(iri))
+					affected.put(iri, this.consumptions.get(iri).individual);
+	}
+	
+	/**
+	 * @return the tracked consumptions among the given ones
+	 */
+	private List<TrackedConsumption> getTracked(Set<String> consumptionIRIs)
+	{
+		List<TrackedConsumption> tracked = new ArrayList<TrackedConsumption>();
+		for (String iri : consumptionIRIs)
+		{
+			TrackedConsumption consumption = this.consumptions.get(iri);
+			if (consumption != null)
+				tracked.add(consumption);
+		}
+		
+		return tracked;
+	}
+	
+	/**
+	 * Check if an individual is (still) a power consumption
+	 */
+	private boolean isConsumption(OWLNamedIndividual individual)
+	{
+		for (OWLClass type : this.owlwrapper.getReasoner().getTypes(individual, false).getFlattened())
+		{
+			if (PowerModelUpdater.CONSUMPTION_CLASS.equals(this.owlwrapper.getShortFormWithoutPrefix(type)))
+				return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Stop tracking a consumption
+	 */
+	private void untrack(String iri)
+	{
+		TrackedConsumption previous = this.consumptions.remove(iri);
+		if (previous != null)
+		{
+			for (String dependency : previous.dependencies)
+				PowerModelUpdater.unindex(this.dependents, dependency, iri);
+			PowerModelUpdater.unindex(this.deviceConsumptions, previous.device, iri);
+		}
+	}
+	
+	/**
+	 * Add a value to the set indexed by the given key
+	 */
+	private static void index(Map<String, Set<String>> index, String key, String value)
+	{
+		Set<String> values = index.get(key);
+		if (values == null)
+		{
+			values = new HashSet<String>();
+			index.put(key, values);
+		}
+		values.add(value);
+	}
+	
+	/**
+	 * Remove a value from the set indexed by the given key
+	 */
+	private static void unindex(Map<String, Set<String>> index, String key, String value)
+	{
+		Set<String> values = index.get(key);
+		if (values != null && values.remove(value) && values.isEmpty())
+			index.remove(key);
+	}
+	
+	/**
+	 * A power consumption, with the individuals its values come from
+	 */
+	private static class TrackedConsumption
+	{
+		private final OWLNamedIndividual individual;
+		private final String device;
+		private final Set<String> dependencies;
+		
+		TrackedConsumption(OWLNamedIndividual individual, String device, Set<String> dependencies)
+		{
+			this.individual = individual;
+			this.device = device;
+			this.dependencies = dependencies;
+		}
+	}
+}
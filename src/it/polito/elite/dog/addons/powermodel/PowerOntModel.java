@@ -17,10 +17,54 @@
  */
 package it.polito.elite.dog.addons.powermodel;
 
+import it.polito.elite.dog.addons.powermodel.anomaly.CusumDetector;
+import it.polito.elite.dog.addons.powermodel.api.AnomalyDetector;
+import it.polito.elite.dog.addons.powermodel.api.ApplianceScheduler;
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionDisaggregator;
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionHistory;
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionLearner;
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionLog;
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionPublisher;
+import it.polito.elite.dog.addons.powermodel.api.CostMeter;
 import it.polito.elite.dog.addons.powermodel.api.DevicePowerConsumption;
+import it.polito.elite.dog.addons.powermodel.api.EnergyMeter;
+import it.polito.elite.dog.addons.powermodel.api.HouseholdModelLoader;
+import it.polito.elite.dog.addons.powermodel.api.HouseholdRegistry;
+import it.polito.elite.dog.addons.powermodel.api.LoadForecaster;
+import it.polito.elite.dog.addons.powermodel.api.LoadSheddingPlanner;
+import it.polito.elite.dog.addons.powermodel.api.ModelReplication;
+import it.polito.elite.dog.addons.powermodel.api.PowerBudget;
 import it.polito.elite.dog.addons.powermodel.api.PowerModel;
+import it.polito.elite.dog.addons.powermodel.api.ScenarioEvaluator;
+import it.polito.elite.dog.addons.powermodel.api.TariffCalendar;
+import it.polito.elite.dog.addons.powermodel.api.ThresholdWatcher;
+import it.polito.elite.dog.addons.powermodel.api.TraceSimulator;
+import it.polito.elite.dog.addons.powermodel.budget.LoadShedder;
+import it.polito.elite.dog.addons.powermodel.budget.PowerBudgetManager;
+import it.polito.elite.dog.addons.powermodel.codec.ConsumptionStreamWriter;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionEnvelope;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+import it.polito.elite.dog.addons.powermodel.device.DeviceKeyIndex;
+import it.polito.elite.dog.addons.powermodel.device.MeterReadings;
 import it.polito.elite.dog.addons.powermodel.device.PowerDevice;
 import it.polito.elite.dog.addons.powermodel.device.PowerState;
+import it.polito.elite.dog.addons.powermodel.disaggregation.StepDisaggregator;
+import it.polito.elite.dog.addons.powermodel.energy.EnergyAccumulator;
+import it.polito.elite.dog.addons.powermodel.forecast.MarkovForecaster;
+import it.polito.elite.dog.addons.powermodel.history.ConsumptionHistoryStore;
+import it.polito.elite.dog.addons.powermodel.history.HistorySampler;
+import it.polito.elite.dog.addons.powermodel.household.CsvHouseholdLoader;
+import it.polito.elite.dog.addons.powermodel.household.HouseholdModelCache;
+import it.polito.elite.dog.addons.powermodel.http.ConsumptionHttpServer;
+import it.polito.elite.dog.addons.powermodel.learning.ConsumptionEstimator;
+import it.polito.elite.dog.addons.powermodel.live.ConsumptionPublisherService;
+import it.polito.elite.dog.addons.powermodel.live.LivePower;
+import it.polito.elite.dog.addons.powermodel.live.ThresholdWatcherRegistry;
+import it.polito.elite.dog.addons.powermodel.scenario.ScenarioEngine;
+import it.polito.elite.dog.addons.powermodel.schedule.SlotScheduler;
+import it.polito.elite.dog.addons.powermodel.simulation.TraceSimulatorEngine;
+import it.polito.elite.dog.addons.powermodel.storage.ConsumptionLogStore;
+import it.polito.elite.dog.addons.powermodel.tariff.TariffCostMeter;
 import it.polito.elite.dog.core.housemodel.semantic.api.OntologyModel;
 import it.polito.elite.dog.core.library.model.DeviceCostants;
 import it.polito.elite.dog.core.library.semantic.OWLWrapper;
@@ -28,17 +72,33 @@ import it.polito.elite.dog.core.library.semantic.xml.Ontologies;
 import it.polito.elite.dog.core.library.util.LogHelper;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
 import java.util.Dictionary;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TimeZone;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.measure.DecimalMeasure;
 import javax.measure.quantity.Power;
+import javax.measure.unit.SI;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
@@ -59,6 +119,98 @@ import org.semanticweb.owlapi.model.OWLOntology;
  */
 public class PowerOntModel implements ManagedService, PowerModel
 {
+	// configuration property for the contracted power budget (in W)
+	public static final String POWER_BUDGET = "powerBudget";
+	
+	// configuration property for the device priority weights used for load
+	// shedding, as a comma-separated list of deviceURI=weight pairs
+	public static final String SHEDDING_PRIORITIES = "sheddingPriorities";
+	
+	// configuration property for the number of history slots kept at each
+	// resolution (seconds, minutes, hours), as a comma-separated list
+	public static final String HISTORY_CAPACITIES = "historyCapacities";
+	
+	// configuration property for the folder of the persistent consumption
+	// log (the log is disabled if missing); the segments deleted by the
+	// compaction are unmapped right away only if the sun.misc package is
+	// visible to the bundle (e.g., boot delegated), otherwise their disk
+	// space is freed when the garbage collector releases their mapping
+	public static final String CONSUMPTION_LOG_FOLDER = "consumptionLogFolder";
+	
+	// configuration property for the weight of a new meter reading in the
+	// learned consumption, between 0 and 1
+	public static final String LEARNING_SMOOTHING = "learningSmoothing";
+	
+	// configuration property for the number of meter readings needed before
+	// the learned consumption is used as the best consumption
+	public static final String LEARNING_MIN_SAMPLES = "learningMinSamples";
+	
+	// configuration property for the deviation from the modelled consumption
+	// tolerated before flagging an anomaly, as a fraction of the consumption
+	public static final String ANOMALY_TOLERANCE = "anomalyTolerance";
+	
+	// configuration property for the CUSUM threshold of the anomaly detector
+	public static final String ANOMALY_THRESHOLD = "anomalyThreshold";
+	
+	// configuration property for the energy rate applied outside of any
+	// tariff band, per kWh
+	public static final String TARIFF_DEFAULT_RATE = "tariffDefaultRate";
+	
+	// configuration property for the tariff bands, as a comma-separated list
+	// of days@HH:mm-HH:mm=rate entries, where days is a day (e.g., MON), a
+	// range of days (e.g., MON-FRI) or * for every day; a band ending before
+	// its start spans midnight (e.g., *@22:00-06:00), and its part after
+	// midnight applies to the day following each of its days
+	public static final String TARIFF_RATES = "tariffRates";
+	
+	// configuration property for the tariff holidays, billed as Sundays, as a
+	// comma-separated list of yyyy-MM-dd dates
+	public static final String TARIFF_HOLIDAYS = "tariffHolidays";
+	
+	// configuration property for the time zone of the tariff bands, as a
+	// time zone id (e.g., Europe/Rome); an unknown id rejects the tariff
+	public static final String TARIFF_TIME_ZONE = "tariffTimeZone";
+	
+	// configuration property for the folder of the household models hosted
+	// by the multi-household registry, one CSV file per household (see
+	// CsvHouseholdLoader); since this power model is bound to the single
+	// ontology of the gateway, hosted households are read-only HouseholdModel
+	// snapshots (device states, consumptions and rooms), not full power
+	// models, and are reloaded from their file after eviction
+	public static final String HOUSEHOLD_MODEL_FOLDER = "householdModelFolder";
+	
+	// configuration property for the memory budget of the loaded household
+	// models, in bytes
+	public static final String HOUSEHOLD_MEMORY_BUDGET = "householdMemoryBudget";
+	
+	// configuration property for the port of the local HTTP endpoint for
+	// bulk consumption queries, disabled if missing
+	public static final String HTTP_PORT = "httpPort";
+	
+	// configuration property for the address of the HTTP endpoint
+	public static final String HTTP_ADDRESS = "httpAddress";
+	
+	// configuration property for the number of HTTP requests served at once,
+	// on the shared pool of the bundle
+	public static final String HTTP_THREADS = "httpThreads";
+	
+	// configuration property for the sampling step of the load forecaster,
+	// in minutes, dividing one day
+	public static final String FORECAST_STEP = "forecastStep";
+	
+	// configuration property for the number of time-of-day buckets of the
+	// load forecaster, each with its own state transition statistics
+	public static final String FORECAST_BUCKETS = "forecastBuckets";
+	
+	// configuration property for the minimum step of the main meter readings
+	// explained by the consumption disaggregation, in W
+	public static final String DISAGGREGATION_THRESHOLD = "disaggregationThreshold";
+	
+	// configuration property for the mismatch between a step of the main
+	// meter readings and the state changes explaining it, as a fraction of
+	// the step
+	public static final String DISAGGREGATION_TOLERANCE = "disaggregationTolerance";
+	
 	// OSGi context
 	private BundleContext context;
 	
@@ -71,11 +223,145 @@ public class PowerOntModel implements ManagedService, PowerModel
 	// registration object for this bundle
 	private ServiceRegistration<?> powerModelRegistration;
 	
+	// registration object for the power budget service
+	private ServiceRegistration<?> powerBudgetRegistration;
+	
+	// registration object for the load shedding service
+	private ServiceRegistration<?> loadSheddingRegistration;
+	
+	// registration object for the energy metering service
+	private ServiceRegistration<?> energyMeterRegistration;
+	
+	// registration object for the consumption history service
+	private ServiceRegistration<?> consumptionHistoryRegistration;
+	
+	// registration object for the consumption log service
+	private ServiceRegistration<?> consumptionLogRegistration;
+	
+	// registration object for the consumption learning service
+	private ServiceRegistration<?> consumptionLearnerRegistration;
+	
+	// registration object for the anomaly detection service
+	private ServiceRegistration<?> anomalyDetectorRegistration;
+	
+	// registration object for the consumption publishing service
+	private ServiceRegistration<?> consumptionPublisherRegistration;
+	
+	// registration object for the threshold watching service
+	private ServiceRegistration<?> thresholdWatcherRegistration;
+	
+	// registration object for the what-if scenario service
+	private ServiceRegistration<?> scenarioEvaluatorRegistration;
+	
+	// registration object for the trace replay service
+	private ServiceRegistration<?> traceSimulatorRegistration;
+	
+	// registration object for the energy cost service
+	private ServiceRegistration<?> costMeterRegistration;
+	
+	// registration object for the multi-household service
+	private ServiceRegistration<?> householdRegistryRegistration;
+	
+	// registration object for the load forecasting service
+	private ServiceRegistration<?> loadForecasterRegistration;
+	
+	// registration object for the appliance scheduling service
+	private ServiceRegistration<?> applianceSchedulerRegistration;
+	
+	// registration object for the consumption disaggregation service
+	private ServiceRegistration<?> disaggregatorRegistration;
+	
+	// registration object for the replication service
+	private ServiceRegistration<?> replicationRegistration;
+	
 	// the ontology model representing the power information
 	private OWLOntology powerModel;
 	
-	// map for storing devices power consumption
-	private ConcurrentMap<String, PowerDevice> deviceConsumptions;
+	// map for storing devices power consumption, filled by the initial
+	// extraction and then replaced as a whole at each incremental update
+	private volatile ConcurrentMap<String, PowerDevice> deviceConsumptions;
+	
+	// array-based snapshot of the devices power consumption
+	private AtomicReference<ConsumptionTable> consumptionTable;
+	
+	// live meter readings of the actual power consumption
+	private AtomicReference<MeterReadings> meterReadings;
+	
+	// the lowest and highest consumption of each device
+	private ConsumptionEnvelope consumptionEnvelope;
+	
+	// the namespace of each prefix name declared by the power ontology
+	private volatile Map<String, String> namespacePrefixes;
+	
+	// the normalized index of the device keys
+	private volatile DeviceKeyIndex deviceKeys;
+	
+	// the power budget service
+	private PowerBudgetManager powerBudget;
+	
+	// the load shedding service
+	private LoadShedder loadShedder;
+	
+	// the energy metering service
+	private EnergyAccumulator energyAccumulator;
+	
+	// the consumption history service
+	private ConsumptionHistoryStore consumptionHistory;
+	
+	// the periodic sampling of the consumption history
+	private ScheduledFuture<?> historySampling;
+	
+	// the pool shared by the background, periodic and parallel tasks of the
+	// bundle
+	private ScheduledExecutorService workers;
+	
+	// the persistent consumption log, if enabled
+	private volatile ConsumptionLogStore consumptionLog;
+	
+	// the consumption learning service
+	private ConsumptionEstimator consumptionEstimator;
+	
+	// the anomaly detection service
+	private CusumDetector anomalyDetector;
+	
+	// the live power of devices, rooms and household
+	private LivePower livePower;
+	
+	// the consumption publishing service
+	private ConsumptionPublisherService consumptionPublisher;
+	
+	// the threshold watching service
+	private ThresholdWatcherRegistry thresholdWatcher;
+	
+	// the what-if scenario service
+	private ScenarioEngine scenarioEngine;
+	
+	// the trace replay service
+	private TraceSimulatorEngine traceSimulator;
+	
+	// the energy cost service
+	private TariffCostMeter costMeter;
+	
+	// the multi-household service
+	private HouseholdModelCache householdRegistry;
+	
+	// the load forecasting service, learning the notified state changes
+	private MarkovForecaster loadForecaster;
+	
+	// the deferrable appliance scheduling service
+	private SlotScheduler applianceScheduler;
+	
+	// the consumption disaggregation service, for the main meter readings
+	private StepDisaggregator disaggregator;
+	
+	// the local HTTP endpoint for bulk consumption queries
+	private ConsumptionHttpServer httpServer;
+	
+	// the replication service, recording every model version
+	private PowerModelReplicator replicator;
+	
+	// the incremental propagation of the power ontology changes
+	private volatile PowerModelUpdater ontologyUpdater;
 	
 	// ontology descriptor
 	private Ontologies ontDescSet;
@@ -99,6 +385,82 @@ public class PowerOntModel implements ManagedService, PowerModel
 		
 		// init the power consumption map
 		this.deviceConsumptions = new ConcurrentHashMap<String, PowerDevice>();
+		
+		// init the replication log, before any device is recorded
+		this.replicator = new PowerModelReplicator(this);
+		
+		// init the (empty) device key index
+		this.namespacePrefixes = new HashMap<String, String>();
+		this.deviceKeys = DeviceKeyIndex.build(this.deviceConsumptions, this.namespacePrefixes);
+		
+		// init the (empty) consumption table
+		this.consumptionTable = new AtomicReference<ConsumptionTable>(
+				ConsumptionTable.build(this.deviceConsumptions));
+		
+		// init the (empty) meter readings
+		this.meterReadings = new AtomicReference<MeterReadings>(new MeterReadings(this.consumptionTable.get()));
+		
+		// init the (empty) consumption envelope
+		this.consumptionEnvelope = new ConsumptionEnvelope(this.consumptionTable.get());
+		
+		// init the power budget
+		this.powerBudget = new PowerBudgetManager();
+		
+		// init the load shedding planner
+		this.loadShedder = new LoadShedder(this.powerBudget);
+		
+		// init the energy accumulator, feeding the device states to the power
+		// budget
+		this.energyAccumulator = new EnergyAccumulator();
+		this.energyAccumulator.setPowerBudget(this.powerBudget);
+		
+		// init the consumption history
+		this.consumptionHistory = new ConsumptionHistoryStore();
+		
+		// init the consumption learning
+		this.consumptionEstimator = new ConsumptionEstimator();
+		
+		// init the anomaly detection
+		this.anomalyDetector = new CusumDetector();
+		
+		// init the live aggregates, fed by the energy accumulator too
+		this.livePower = new LivePower();
+		this.energyAccumulator.setLivePower(this.livePower);
+		
+		// init the consumption publisher
+		this.consumptionPublisher = new ConsumptionPublisherService(this.livePower);
+		
+		// init the threshold watcher
+		this.thresholdWatcher = new ThresholdWatcherRegistry(this.livePower);
+		
+		// init the what-if scenario evaluator
+		this.scenarioEngine = new ScenarioEngine(this.livePower, this.consumptionEstimator);
+		this.scenarioEngine.setMeterReadings(this.meterReadings.get());
+		
+		// init the trace simulator
+		this.traceSimulator = new TraceSimulatorEngine(this.consumptionEstimator);
+		
+		// init the cost meter, pricing the intervals integrated by the energy
+		// accumulator
+		this.costMeter = new TariffCostMeter(this.energyAccumulator);
+		this.energyAccumulator.setIntervalListener(this.costMeter);
+		
+		// init the multi-household registry
+		this.householdRegistry = new HouseholdModelCache();
+		
+		// init the load forecaster, fed by the energy accumulator
+		this.loadForecaster = new MarkovForecaster();
+		this.energyAccumulator.setLoadForecaster(this.loadForecaster);
+		
+		// init the appliance scheduler, capped by the power budget on top of
+		// the forecast background load
+		this.applianceScheduler = new SlotScheduler(this.powerBudget, this.loadForecaster);
+		
+		// init the consumption disaggregation
+		this.disaggregator = new StepDisaggregator();
+		
+		// init the (stopped) HTTP endpoint
+		this.httpServer = new ConsumptionHttpServer(this, this.livePower, this.consumptionEnvelope);
 	}
 	
 	/**
@@ -116,6 +478,36 @@ public class PowerOntModel implements ManagedService, PowerModel
 		// init the logger
 		this.logger = new LogHelper(this.context);
 		
+		// init the shared pool: one thread per processor, plus one for each
+		// serial background task (ontology updates and log compaction); the
+		// periodic tasks, the timers and the deliveries are short
+		this.workers = new ScheduledThreadPoolExecutor(Runtime.getRuntime().availableProcessors() + 2,
+				new ThreadFactory() {
+					
+					@Override
+					public Thread newThread(Runnable task)
+					{
+						Thread thread = new Thread(task, "PowerModel worker");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		this.scenarioEngine.setExecutor(this.workers);
+		this.traceSimulator.setExecutor(this.workers);
+		this.costMeter.setExecutor(this.workers);
+		this.httpServer.setExecutor(this.workers);
+		this.consumptionPublisher.setExecutor(this.workers);
+		this.thresholdWatcher.setExecutor(this.workers);
+		
+		// start sampling the consumption history, once per second
+		this.historySampling = this.workers.scheduleAtFixedRate(new HistorySampler(this.energyAccumulator,
+				this.livePower, this.consumptionHistory), 1, 1, TimeUnit.SECONDS);
+		
+		// replicated snapshots can be applied before the power ontology is
+		// loaded, so the replication service is available at once
+		this.replicationRegistration = this.context.registerService(ModelReplication.class.getName(),
+				this.replicator, null);
+		
 		// log the bundle activation
 		this.logger.log(LogService.LOG_INFO, "Activated....");
 	}
@@ -125,6 +517,35 @@ public class PowerOntModel implements ManagedService, PowerModel
 	 */
 	public void deactivate()
 	{
+		// stop sampling the consumption history
+		this.historySampling.cancel(false);
+		
+		// close the consumption log
+		if (this.consumptionLog != null)
+			this.consumptionLog.close();
+		
+		// stop publishing the consumption changes and watching thresholds
+		this.consumptionPublisher.close();
+		this.thresholdWatcher.close();
+		
+		// unload the household models
+		this.householdRegistry.unloadAll();
+		
+		// stop the HTTP endpoint
+		this.httpServer.stop();
+		
+		// stop offering the replication service
+		if (this.replicationRegistration != null)
+			this.replicationRegistration.unregister();
+		
+		// stop listening to the ontology changes
+		if (this.ontologyUpdater != null)
+			this.ontologyUpdater.close();
+		
+		// stop the shared pool: scenarios, traces and costs still being
+		// computed go on in their calling threads
+		this.workers.shutdownNow();
+		
 		// null the context
 		this.context = null;
 		
@@ -170,6 +591,181 @@ public class PowerOntModel implements ManagedService, PowerModel
 			// log the update data received
 			this.logger.log(LogService.LOG_DEBUG, "received power ontology configuration...");
 			
+			// get the power budget, if any
+			String budget = (String) properties.get(PowerOntModel.POWER_BUDGET);
+			if (budget != null && !budget.isEmpty())
+			{
+				try
+				{
+					this.powerBudget.setBudget(Double.parseDouble(budget.trim()));
+				}
+				catch (NumberFormatException e)
+				{
+					this.logger.log(LogService.LOG_WARNING, "Invalid power budget: " + budget, e);
+				}
+			}
+			
+			// get the device priorities for load shedding, if any
+			String priorities = (String) properties.get(PowerOntModel.SHEDDING_PRIORITIES);
+			if (priorities != null && !priorities.isEmpty())
+				this.loadShedder.setPriorities(this.parsePriorities(priorities));
+			
+			// get the history capacities, if any
+			String capacities = (String) properties.get(PowerOntModel.HISTORY_CAPACITIES);
+			if (capacities != null && !capacities.isEmpty())
+				this.setHistoryCapacities(capacities);
+			
+			// get the consumption learning parameters, if any
+			String smoothing = (String) properties.get(PowerOntModel.LEARNING_SMOOTHING);
+			if (smoothing != null && !smoothing.isEmpty())
+			{
+				try
+				{
+					this.consumptionEstimator.setSmoothing(Double.parseDouble(smoothing.trim()));
+				}
+				catch (IllegalArgumentException e)
+				{
+					// either a malformed or an out of range number
+					this.logger.log(LogService.LOG_WARNING, "Invalid learning smoothing: " + smoothing, e);
+				}
+			}
+			String minSamples = (String) properties.get(PowerOntModel.LEARNING_MIN_SAMPLES);
+			if (minSamples != null && !minSamples.isEmpty())
+			{
+				try
+				{
+					this.consumptionEstimator.setMinSamples(Integer.parseInt(minSamples.trim()));
+				}
+				catch (IllegalArgumentException e)
+				{
+					// either a malformed or an out of range number
+					this.logger.log(LogService.LOG_WARNING, "Invalid learning minimum samples: " + minSamples, e);
+				}
+			}
+			
+			// get the anomaly detection parameters, if any
+			String tolerance = (String) properties.get(PowerOntModel.ANOMALY_TOLERANCE);
+			if (tolerance != null && !tolerance.isEmpty())
+			{
+				try
+				{
+					this.anomalyDetector.setTolerance(Double.parseDouble(tolerance.trim()));
+				}
+				catch (IllegalArgumentException e)
+				{
+					// either a malformed or an out of range number
+					this.logger.log(LogService.LOG_WARNING, "Invalid anomaly tolerance: " + tolerance, e);
+				}
+			}
+			String threshold = (String) properties.get(PowerOntModel.ANOMALY_THRESHOLD);
+			if (threshold != null && !threshold.isEmpty())
+			{
+				try
+				{
+					this.anomalyDetector.setThreshold(Double.parseDouble(threshold.trim()));
+				}
+				catch (IllegalArgumentException e)
+				{
+					// either a malformed or an out of range number
+					this.logger.log(LogService.LOG_WARNING, "Invalid anomaly threshold: " + threshold, e);
+				}
+			}
+			
+			// get the tariff, if any
+			String defaultRate = (String) properties.get(PowerOntModel.TARIFF_DEFAULT_RATE);
+			String rates = (String) properties.get(PowerOntModel.TARIFF_RATES);
+			if ((defaultRate != null && !defaultRate.isEmpty()) || (rates != null && !rates.isEmpty()))
+			{
+				TariffCalendar tariff = this.parseTariff(defaultRate, rates,
+						(String) properties.get(PowerOntModel.TARIFF_HOLIDAYS),
+						(String) properties.get(PowerOntModel.TARIFF_TIME_ZONE));
+				if (tariff != null)
+				{
+					this.costMeter.setTariff(tariff);
+					this.applianceScheduler.setTariff(tariff);
+				}
+			}
+			
+			// get the household models folder and memory budget, if any
+			String householdFolder = (String) properties.get(PowerOntModel.HOUSEHOLD_MODEL_FOLDER);
+			if (householdFolder != null && !householdFolder.isEmpty())
+				this.setHouseholdModelFolder(householdFolder);
+			String householdBudget = (String) properties.get(PowerOntModel.HOUSEHOLD_MEMORY_BUDGET);
+			if (householdBudget != null && !householdBudget.isEmpty())
+			{
+				try
+				{
+					this.householdRegistry.setMemoryBudget(Long.parseLong(householdBudget.trim()));
+				}
+				catch (NumberFormatException e)
+				{
+					this.logger.log(LogService.LOG_WARNING, "Invalid household memory budget: " + householdBudget, e);
+				}
+			}
+			
+			// get the load forecaster resolution, if any
+			String forecastStep = (String) properties.get(PowerOntModel.FORECAST_STEP);
+			String forecastBuckets = (String) properties.get(PowerOntModel.FORECAST_BUCKETS);
+			if ((forecastStep != null && !forecastStep.isEmpty())
+					|| (forecastBuckets != null && !forecastBuckets.isEmpty()))
+			{
+				try
+				{
+					long step = (forecastStep != null && !forecastStep.isEmpty()) ? Long.parseLong(forecastStep
+							.trim()) * 60000L : MarkovForecaster.DEFAULT_STEP;
+					int buckets = (forecastBuckets != null && !forecastBuckets.isEmpty()) ? Integer
+							.parseInt(forecastBuckets.trim()) : MarkovForecaster.DEFAULT_BUCKETS;
+					this.loadForecaster.setResolution(step, buckets);
+				}
+				catch (IllegalArgumentException e)
+				{
+					// either a malformed or an out of range number
+					this.logger.log(LogService.LOG_WARNING, "Invalid load forecaster resolution: " + forecastStep
+							+ " min, " + forecastBuckets + " buckets", e);
+				}
+			}
+			
+			// get the consumption disaggregation parameters, if any
+			String disaggregationThreshold = (String) properties.get(PowerOntModel.DISAGGREGATION_THRESHOLD);
+			if (disaggregationThreshold != null && !disaggregationThreshold.isEmpty())
+			{
+				try
+				{
+					this.disaggregator.setThreshold(Double.parseDouble(disaggregationThreshold.trim()));
+				}
+				catch (IllegalArgumentException e)
+				{
+					// either a malformed or an out of range number
+					this.logger.log(LogService.LOG_WARNING, "Invalid disaggregation threshold: "
+							+ disaggregationThreshold, e);
+				}
+			}
+			String disaggregationTolerance = (String) properties.get(PowerOntModel.DISAGGREGATION_TOLERANCE);
+			if (disaggregationTolerance != null && !disaggregationTolerance.isEmpty())
+			{
+				try
+				{
+					this.disaggregator.setTolerance(Double.parseDouble(disaggregationTolerance.trim()));
+				}
+				catch (IllegalArgumentException e)
+				{
+					// either a malformed or an out of range number
+					this.logger.log(LogService.LOG_WARNING, "Invalid disaggregation tolerance: "
+							+ disaggregationTolerance, e);
+				}
+			}
+			
+			// start the HTTP endpoint, if enabled
+			String httpPort = (String) properties.get(PowerOntModel.HTTP_PORT);
+			if (httpPort != null && !httpPort.isEmpty())
+				this.startHttpServer(httpPort, (String) properties.get(PowerOntModel.HTTP_ADDRESS),
+						(String) properties.get(PowerOntModel.HTTP_THREADS));
+			
+			// open the consumption log, if enabled
+			String logFolder = (String) properties.get(PowerOntModel.CONSUMPTION_LOG_FOLDER);
+			if (logFolder != null && !logFolder.isEmpty())
+				this.openConsumptionLog(logFolder);
+			
 			// get the ontology descriptor file name
 			String ontologyFileName = (String) properties.get(DeviceCostants.ONTOLOGY);
 			
@@ -211,77 +807,570 @@ public class PowerOntModel implements ManagedService, PowerModel
 	}
 	
 	/**
-	 * Delegates the {@link SemanticHouseModel} to load the power ontology used
-	 * by this power model.
+	 * Parse the device priority weights from the configuration
 	 * 
-	 * @param ontDescSet
-	 *            the {@link OntologyDescriptorSet} describing the power
-	 *            ontology to load
+	 * @param priorities
+	 *            a comma-separated list of deviceURI=weight pairs
+	 * @return the priority weights, indexed by device URI
 	 */
-	private void delegateModelLoading(Ontologies ontDescSet)
+	private Map<String, Double> parsePriorities(String priorities)
 	{
-		// ask the Ontology Model to merge the power model with the house model
-		this.houseModel.get().loadAndMerge(ontDescSet);
-		
-		// debug
-		this.logger.log(LogService.LOG_DEBUG, "Power model loaded successfully...");
+		Map<String, Double> weights = new HashMap<String, Double>();
 		
-		// get the loaded submodel
-		this.owlWrapper = this.houseModel.get().getSubModel(this.modelIRI);
-		// obtain the OntModel object and set it as the internal model
-		this.powerModel = this.owlWrapper.getOntModel();
+		for (String pair : priorities.split(","))
+		{
+			String[] entry = pair.split("=");
+			try
+			{
+				double weight = Double.parseDouble(entry[1].trim());
+				if (weight > 0)
+					weights.put(entry[0].trim(), weight);
+				else
+					this.logger.log(LogService.LOG_WARNING, "Invalid shedding priority: " + pair);
+			}
+			catch (RuntimeException e)
+			{
+				// either a missing or a malformed weight
+				this.logger.log(LogService.LOG_WARNING, "Invalid shedding priority: " + pair);
+			}
+		}
 		
-		// init the ontology model
-		ExecutorService executor = Executors.newSingleThreadExecutor();
-		executor.execute(new PowerModelInitializer(this));
-		executor.shutdown();
+		return weights;
 	}
 	
 	/**
-	 * Register the services exported by the bundle
+	 * Parse the time-of-use tariff from the configuration
+	 * 
+	 * @param defaultRate
+	 *            the rate applied outside of any band, per kWh (0 if missing)
+	 * @param rates
+	 *            a comma-separated list of days@HH:mm-HH:mm=rate bands, or
+	 *            null
+	 * @param holidays
+	 *            a comma-separated list of yyyy-MM-dd holidays, or null
+	 * @param timeZone
+	 *            the time zone of the bands, or null for the default one
+	 * @return the {@link TariffCalendar}, or null if the default rate or the
+	 *         time zone are invalid
 	 */
-	protected void registerServices()
+	private TariffCalendar parseTariff(String defaultRate, String rates, String holidays, String timeZone)
 	{
-		this.powerModelRegistration = this.context.registerService(PowerModel.class.getName(), this, null);
+		// the time zone: unknown ids silently fall back to GMT, which would
+		// shift every band
+		TimeZone zone = TimeZone.getDefault();
+		if (timeZone != null && !timeZone.trim().isEmpty())
+		{
+			zone = TimeZone.getTimeZone(timeZone.trim());
+			if (zone.getID().equals("GMT") && !timeZone.trim().equalsIgnoreCase("GMT"))
+			{
+				this.logger.log(LogService.LOG_WARNING, "Invalid tariff time zone: " + timeZone);
+				return null;
+			}
+		}
+		
+		TariffCalendar tariff;
+		try
+		{
+			double rate = (defaultRate != null && !defaultRate.isEmpty()) ? Double.parseDouble(defaultRate.trim()) : 0.0;
+			tariff = new TariffCalendar(rate, zone);
+		}
+		catch (IllegalArgumentException e)
+		{
+			// either a malformed or a negative rate
+			this.logger.log(LogService.LOG_WARNING, "Invalid tariff default rate: " + defaultRate, e);
+			return null;
+		}
+		
+		// the bands
+		List<String> days = Arrays.asList("SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT");
+		if (rates != null && !rates.isEmpty())
+		{
+			for (String band : rates.split(","))
+			{
+				try
+				{
+					String[] entry = band.split("=");
+					String[] period = entry[0].split("@");
+					String[] times = period[1].split("-");
+					int from = this.parseMinute(times[0]);
+					int to = this.parseMinute(times[1]);
+					double rate = Double.parseDouble(entry[1].trim());
+					
+					String dayRange = period[0].trim().toUpperCase();
+					if (dayRange.equals("*"))
+						tariff.setRate(TariffCalendar.EVERY_DAY, from, to, rate);
+					else
+					{
+						String[] range = dayRange.split("-");
+						int first = days.indexOf(range[0].trim());
+						int last = days.indexOf(range[range.length - 1].trim());
+						if (first < 0 || last < 0)
+							throw new IllegalArgumentException("Unknown day");
+						
+						// ranges may wrap around the week, e.g., FRI-MON
+						for (int day = first;; day = (day + 1) % days.size())
+						{
+							tariff.setRate(Calendar.SUNDAY + day, from, to, rate);
+							if (day == last)
+								break;
+						}
+					}
+				}
+				catch (RuntimeException e)
+				{
+					// either a missing or a malformed field
+					this.logger.log(LogService.LOG_WARNING, "Invalid tariff band: " + band);
+				}
+			}
+		}
+		
+		// the holidays
+		if (holidays != null && !holidays.isEmpty())
+		{
+			for (String holiday : holidays.split(","))
+			{
+				try
+				{
+					String[] date = holiday.trim().split("-");
+					tariff.addHoliday(Integer.parseInt(date[0]), Integer.parseInt(date[1]), Integer.parseInt(date[2]));
+				}
+				catch (RuntimeException e)
+				{
+					// either a missing or a malformed field
+					this.logger.log(LogService.LOG_WARNING, "Invalid tariff holiday: " + holiday);
+				}
+			}
+		}
 		
+		return tariff;
 	}
 	
 	/**
-	 * Unregister the services exported by the bundle
+	 * Parse a HH:mm time of the day
+	 * 
+	 * @param time
+	 *            the time, from 00:00 to 24:00
+	 * @return the minute of the day
 	 */
-	public void unRegisterServices()
+	private int parseMinute(String time)
 	{
-		if (this.powerModelRegistration != null)
-			this.powerModelRegistration.unregister();
+		String[] fields = time.trim().split(":");
 		
+		return Integer.parseInt(fields[0].trim()) * 60 + Integer.parseInt(fields[1].trim());
 	}
 	
 	/**
-	 * This method gets the actual device consumption in a declared state, if
-	 * any
-	 * 
-	 * @param deviceURI
-	 *            the URI of the device
-	 * @param stateName
-	 *            the name of the state that gives the consumption we are
-	 *            interested in
+	 * Change the capacities of the consumption history (the recorded history
+	 * is lost)
 	 * 
-	 * @return the {@link DevicePowerConsumption} storing the deviceURI and the
-	 *         actual consumption. Return null if the actual consumption, the
-	 *         state or the device does not exist.
+	 * @param capacities
+	 *            a comma-separated list with the number of slots for each
+	 *            resolution
 	 */
-	@Override
-	public DevicePowerConsumption getActualDeviceConsumption(String deviceURI, String stateName)
+	private void setHistoryCapacities(String capacities)
 	{
-		PowerDevice device = null;
-		
-		if (this.deviceConsumptions.containsKey(deviceURI))
+		String[] values = capacities.split(",");
+		int[] slots = new int[values.length];
+		try
 		{
-			device = this.deviceConsumptions.get(deviceURI);
+			for (int i = 0; i < values.length; i++)
+				slots[i] = Integer.parseInt(values[i].trim());
+			
+			this.consumptionHistory.setCapacities(slots);
+			
+			this.logger.log(LogService.LOG_DEBUG, "Consumption history footprint: "
+					+ this.consumptionHistory.getDeviceFootprint() + " bytes per device");
+		}
+		catch (IllegalArgumentException e)
+		{
+			// either a malformed number or a wrong number of capacities
+			this.logger.log(LogService.LOG_WARNING, "Invalid history capacities: " + capacities, e);
+		}
+	}
+	
+	/**
+	 * Open the persistent consumption log in the given folder, if not already
+	 * open
+	 * 
+	 * @param logFolder
+	 *            the log folder, absolute or relative to the configuration
+	 *            folder
+	 */
+	private void openConsumptionLog(String logFolder)
+	{
+		// check absolute vs relative
+		File folder = new File(logFolder);
+		if (!folder.isAbsolute())
+			folder = new File(System.getProperty("configFolder"), logFolder);
+		
+		if (this.consumptionLog == null || !this.consumptionLog.getFolder().equals(folder))
+		{
+			try
+			{
+				ConsumptionLogStore previous = this.consumptionLog;
+				this.consumptionLog = new ConsumptionLogStore(folder, this.workers);
+				this.costMeter.setConsumptionLog(this.consumptionLog);
+				this.registerConsumptionLog();
+				if (previous != null)
+					previous.close();
+				
+				this.logger.log(LogService.LOG_INFO, "Consumption log opened in " + folder);
+			}
+			catch (IOException e)
+			{
+				this.logger.log(LogService.LOG_ERROR, "Unable to open the consumption log in " + folder, e);
+			}
+		}
+	}
+	
+	/**
+	 * Register the current consumption log in place of the previous one, if
+	 * the services of the bundle are already registered
+	 */
+	private synchronized void registerConsumptionLog()
+	{
+		if (this.consumptionLogRegistration != null)
+		{
+			this.consumptionLogRegistration.unregister();
+			this.consumptionLogRegistration = null;
+		}
+		
+		if (this.context != null && this.powerModelRegistration != null && this.consumptionLog != null)
+			this.consumptionLogRegistration = this.context.registerService(ConsumptionLog.class.getName(),
+					this.consumptionLog, null);
+	}
+	
+	/**
+	 * Load the household models of the multi-household registry from the
+	 * given folder, unless already in use
+	 * 
+	 * @param householdFolder
+	 *            the folder of the household models, absolute or relative to
+	 *            the configuration folder
+	 */
+	private void setHouseholdModelFolder(String householdFolder)
+	{
+		// check absolute vs relative
+		File folder = new File(householdFolder);
+		if (!folder.isAbsolute())
+			folder = new File(System.getProperty("configFolder"), householdFolder);
+		
+		HouseholdModelLoader current = this.householdRegistry.getLoader();
+		if (!(current instanceof CsvHouseholdLoader) || !((CsvHouseholdLoader) current).getFolder().equals(folder))
+		{
+			this.householdRegistry.setLoader(new CsvHouseholdLoader(folder));
+			this.logger.log(LogService.LOG_INFO, "Household models loaded from " + folder);
+		}
+	}
+	
+	/**
+	 * Start (or restart) the local HTTP endpoint for bulk consumption queries
+	 * 
+	 * @param port
+	 *            the port to listen to
+	 * @param address
+	 *            the address to listen to, the loopback one if null
+	 * @param threads
+	 *            the number of worker threads, the default one if null
+	 */
+	private void startHttpServer(String port, String address, String threads)
+	{
+		try
+		{
+			int workers = ConsumptionHttpServer.DEFAULT_THREADS;
+			if (threads != null && !threads.isEmpty())
+				workers = Integer.parseInt(threads.trim());
+			InetSocketAddress socketAddress = new InetSocketAddress((address != null && !address.isEmpty()) ? address
+					.trim() : "127.0.0.1", Integer.parseInt(port.trim()));
+			
+			this.httpServer.start(socketAddress, workers);
+			this.logger.log(LogService.LOG_INFO, "HTTP endpoint listening on " + this.httpServer.getAddress()
+					+ ConsumptionHttpServer.CONTEXT);
+		}
+		catch (IllegalArgumentException e)
+		{
+			// either a malformed or an out of range number
+			this.logger.log(LogService.LOG_WARNING, "Invalid HTTP endpoint configuration: " + address + ":" + port
+					+ ", " + threads + " threads", e);
+		}
+		catch (IOException e)
+		{
+			this.logger.log(LogService.LOG_ERROR, "Unable to start the HTTP endpoint", e);
+		}
+	}
+	
+	/**
+	 * Delegates the {@link SemanticHouseModel} to load the power ontology used
+	 * by this power model.
+	 * 
+	 * @param ontDescSet
+	 *            the {@link OntologyDescriptorSet} describing the power
+	 *            ontology to load
+	 */
+	private void delegateModelLoading(Ontologies ontDescSet)
+	{
+		// ask the Ontology Model to merge the power model with the house model
+		this.houseModel.get().loadAndMerge(ontDescSet);
+		
+		// debug
+		this.logger.log(LogService.LOG_DEBUG, "Power model loaded successfully...");
+		
+		// get the loaded submodel
+		this.owlWrapper = this.houseModel.get().getSubModel(this.modelIRI);
+		// obtain the OntModel object and set it as the internal model
+		this.powerModel = this.owlWrapper.getOntModel();
+		
+		// listen to the changes of the new ontology model, once the updater of
+		// the previous one is over
+		if (this.ontologyUpdater != null)
+			this.ontologyUpdater.close();
+		this.ontologyUpdater = new PowerModelUpdater(this, this.workers);
+		
+		// init the ontology model, on the same serial executor of the updates
+		// since the reasoner is not thread-safe
+		this.ontologyUpdater.execute(new PowerModelInitializer(this));
+	}
+	
+	/**
+	 * Record the current device map as a new model version, if changed, then
+	 * rebuild the consumption table and bind it to all the internal components
+	 * using it
+	 */
+	protected synchronized void updateConsumptionTable()
+	{
+		this.replicator.record(this.deviceConsumptions);
+		this.bindConsumptionTable();
+	}
+	
+	/**
+	 * Build the consumption table from the current device map and bind it to
+	 * all the internal components using it
+	 */
+	private synchronized void bindConsumptionTable()
+	{
+		Map<String, PowerDevice> devices = this.deviceConsumptions;
+		DeviceKeyIndex keys = DeviceKeyIndex.build(devices, this.namespacePrefixes);
+		this.deviceKeys = keys;
+		
+		ConsumptionTable table = ConsumptionTable.build(devices, keys);
+		this.consumptionTable.set(table);
+		
+		// carry the meter readings
+		this.meterReadings.set(new MeterReadings(table, this.meterReadings.get()));
+		this.scenarioEngine.setMeterReadings(this.meterReadings.get());
+		
+		// update the power budget
+		this.powerBudget.setConsumptionTable(table);
+		
+		// update the energy accumulator
+		this.energyAccumulator.setConsumptionTable(table);
+		
+		// update the consumption history
+		this.consumptionHistory.setConsumptionTable(table);
+		
+		// update the consumption learning
+		this.consumptionEstimator.setConsumptionTable(table);
+		
+		// update the anomaly detection
+		this.anomalyDetector.setConsumptionTable(table);
+		
+		// update the live aggregates
+		this.livePower.setConsumptionTable(table);
+		
+		// update the device keys of the consumption subscriptions, of the
+		// threshold watches and of the shedding priorities
+		this.consumptionPublisher.setDeviceKeys(keys);
+		this.thresholdWatcher.setDeviceKeys(keys);
+		this.loadShedder.setDeviceKeys(keys);
+		
+		// update the trace simulator
+		this.traceSimulator.setConsumptionTable(table);
+		
+		// update the load forecaster
+		this.loadForecaster.setConsumptionTable(table);
+		
+		// update the appliance scheduler
+		this.applianceScheduler.setConsumptionTable(table);
+		
+		// update the consumption disaggregation, with the consumptions of all
+		// the device states
+		this.disaggregator.setConsumptionTable(table, devices);
+		
+		// update the consumption envelope, with the carried meter readings and
+		// the learned consumptions, bounded by the peaks of the load profiles
+		MeterReadings readings = this.meterReadings.get();
+		double[] statePowers = new double[table.getSlotCount()];
+		for (int device = 0; device < table.size(); device++)
+			for (int state = 0; state < table.getStateCount(device); state++)
+				statePowers[table.getSlot(device, state)] = this.getPeakConsumption(readings, device, state);
+		this.consumptionEnvelope.setConsumptionTable(table, statePowers);
+	}
+	
+	/**
+	 * Replace a set of devices extracted again from the power ontology, then
+	 * rebuild the consumption table, so that all the devices are published at
+	 * once: the updated device map is built aside and swapped in with a
+	 * single write, thus readers never see a partial update
+	 * 
+	 * @param deviceNames
+	 *            the names of the devices to replace
+	 * @param devices
+	 *            the new devices, indexed by name; the devices to replace
+	 *            missing from this map are removed
+	 */
+	protected synchronized void replaceDevices(Set<String> deviceNames, Map<String, PowerDevice> devices)
+	{
+		ConcurrentMap<String, PowerDevice> updated = new ConcurrentHashMap<String, PowerDevice>(
+				this.deviceConsumptions);
+		for (String deviceName : deviceNames)
+		{
+			PowerDevice device = devices.get(deviceName);
+			if (device != null)
+				updated.put(deviceName, device);
+			else
+				updated.remove(deviceName);
+		}
+		this.deviceConsumptions = updated;
+		
+		this.replicator.record(deviceNames, updated);
+		this.bindConsumptionTable();
+	}
+	
+	/**
+	 * Replace all the devices, e.g., with a replicated full snapshot: the
+	 * current devices missing from the given ones are removed
+	 * 
+	 * @param devices
+	 *            the new devices, indexed by name
+	 */
+	protected synchronized void replaceAllDevices(Map<String, PowerDevice> devices)
+	{
+		Set<String> deviceNames = new HashSet<String>(this.deviceConsumptions.keySet());
+		deviceNames.addAll(devices.keySet());
+		this.replaceDevices(deviceNames, devices);
+	}
+	
+	/**
+	 * Register the services exported by the bundle
+	 */
+	protected synchronized void registerServices()
+	{
+		// not yet activated, or already registered after a replicated snapshot
+		if (this.context == null || this.powerModelRegistration != null)
+			return;
+		
+		this.powerModelRegistration = this.context.registerService(PowerModel.class.getName(), this, null);
+		this.powerBudgetRegistration = this.context.registerService(PowerBudget.class.getName(), this.powerBudget,
+				null);
+		this.loadSheddingRegistration = this.context.registerService(LoadSheddingPlanner.class.getName(),
+				this.loadShedder, null);
+		this.energyMeterRegistration = this.context.registerService(EnergyMeter.class.getName(),
+				this.energyAccumulator, null);
+		this.consumptionHistoryRegistration = this.context.registerService(ConsumptionHistory.class.getName(),
+				this.consumptionHistory, null);
+		if (this.consumptionLog != null)
+			this.consumptionLogRegistration = this.context.registerService(ConsumptionLog.class.getName(),
+					this.consumptionLog, null);
+		this.consumptionLearnerRegistration = this.context.registerService(ConsumptionLearner.class.getName(),
+				this.consumptionEstimator, null);
+		this.anomalyDetectorRegistration = this.context.registerService(AnomalyDetector.class.getName(),
+				this.anomalyDetector, null);
+		this.consumptionPublisherRegistration = this.context.registerService(ConsumptionPublisher.class.getName(),
+				this.consumptionPublisher, null);
+		this.thresholdWatcherRegistration = this.context.registerService(ThresholdWatcher.class.getName(),
+				this.thresholdWatcher, null);
+		this.scenarioEvaluatorRegistration = this.context.registerService(ScenarioEvaluator.class.getName(),
+				this.scenarioEngine, null);
+		this.traceSimulatorRegistration = this.context.registerService(TraceSimulator.class.getName(),
+				this.traceSimulator, null);
+		this.costMeterRegistration = this.context.registerService(CostMeter.class.getName(), this.costMeter, null);
+		this.householdRegistryRegistration = this.context.registerService(HouseholdRegistry.class.getName(),
+				this.householdRegistry, null);
+		this.loadForecasterRegistration = this.context.registerService(LoadForecaster.class.getName(),
+				this.loadForecaster, null);
+		this.applianceSchedulerRegistration = this.context.registerService(ApplianceScheduler.class.getName(),
+				this.applianceScheduler, null);
+		this.disaggregatorRegistration = this.context.registerService(ConsumptionDisaggregator.class.getName(),
+				this.disaggregator, null);
+		
+	}
+	
+	/**
+	 * Unregister the services exported by the bundle
+	 */
+	public void unRegisterServices()
+	{
+		if (this.powerModelRegistration != null)
+			this.powerModelRegistration.unregister();
+		if (this.powerBudgetRegistration != null)
+			this.powerBudgetRegistration.unregister();
+		if (this.loadSheddingRegistration != null)
+			this.loadSheddingRegistration.unregister();
+		if (this.energyMeterRegistration != null)
+			this.energyMeterRegistration.unregister();
+		if (this.consumptionHistoryRegistration != null)
+			this.consumptionHistoryRegistration.unregister();
+		if (this.consumptionLogRegistration != null)
+			this.consumptionLogRegistration.unregister();
+		if (this.consumptionLearnerRegistration != null)
+			this.consumptionLearnerRegistration.unregister();
+		if (this.anomalyDetectorRegistration != null)
+			this.anomalyDetectorRegistration.unregister();
+		if (this.consumptionPublisherRegistration != null)
+			this.consumptionPublisherRegistration.unregister();
+		if (this.thresholdWatcherRegistration != null)
+			this.thresholdWatcherRegistration.unregister();
+		if (this.scenarioEvaluatorRegistration != null)
+			this.scenarioEvaluatorRegistration.unregister();
+		if (this.traceSimulatorRegistration != null)
+			this.traceSimulatorRegistration.unregister();
+		if (this.costMeterRegistration != null)
+			this.costMeterRegistration.unregister();
+		if (this.householdRegistryRegistration != null)
+			this.householdRegistryRegistration.unregister();
+		if (this.loadForecasterRegistration != null)
+			this.loadForecasterRegistration.unregister();
+		if (this.applianceSchedulerRegistration != null)
+			this.applianceSchedulerRegistration.unregister();
+		if (this.disaggregatorRegistration != null)
+			this.disaggregatorRegistration.unregister();
+		
+	}
+	
+	/**
+	 * This method gets the actual device consumption in a declared state, if
+	 * any
+	 * 
+	 * @param deviceURI
+	 *            the URI of the device
+	 * @param stateName
+	 *            the name of the state that gives the consumption we are
+	 *            interested in
+	 * 
+	 * @return the {@link DevicePowerConsumption} storing the deviceURI and the
+	 *         actual consumption. Return null if the actual consumption, the
+	 *         state or the device does not exist.
+	 */
+	@Override
+	public DevicePowerConsumption getActualDeviceConsumption(String deviceURI, String stateName)
+	{
+		PowerDevice device = null;
+		
+		// accept full IRIs and prefixed names, too
+		String key = this.resolveDeviceKey(deviceURI);
+		
+		// read the device once: the device map may be swapped meanwhile
+		device = this.deviceConsumptions.get(key);
+		if (device != null)
+		{
+			// a live meter reading overrides the declared consumption
+			DevicePowerConsumption metered = this.getMeteredConsumption(deviceURI, stateName);
+			if (metered != null)
+				return metered;
 			
 			for (PowerState state : device.getStateConsumptions())
 			{
-				if (state.getStateName().equals(stateName) && state.hasActualConsumption())
+				if (state.getStateName().equalsIgnoreCase(stateName) && state.hasActualConsumption())
 					return new DevicePowerConsumption(deviceURI, state.getActualConsumption());
 			}
 		}
@@ -312,13 +1401,15 @@ public class PowerOntModel implements ManagedService, PowerModel
 	{
 		PowerDevice device = null;
 		
-		if (this.deviceConsumptions.containsKey(deviceURI))
+		// accept full IRIs and prefixed names, too
+		String key = this.resolveDeviceKey(deviceURI);
+		
+		device = this.deviceConsumptions.get(key);
+		if (device != null)
 		{
-			device = this.deviceConsumptions.get(deviceURI);
-			
 			for (PowerState state : device.getStateConsumptions())
 			{
-				if (state.getStateName().equals(stateName) && state.hasNominalConsumption())
+				if (state.getStateName().equalsIgnoreCase(stateName) && state.hasNominalConsumption())
 					return new DevicePowerConsumption(deviceURI, state.getNominalConsumption());
 			}
 		}
@@ -349,13 +1440,15 @@ public class PowerOntModel implements ManagedService, PowerModel
 	{
 		PowerDevice device = null;
 		
-		if (this.deviceConsumptions.containsKey(deviceURI))
+		// accept full IRIs and prefixed names, too
+		String key = this.resolveDeviceKey(deviceURI);
+		
+		device = this.deviceConsumptions.get(key);
+		if (device != null)
 		{
-			device = this.deviceConsumptions.get(deviceURI);
-			
 			for (PowerState state : device.getStateConsumptions())
 			{
-				if (state.getStateName().equals(stateName) && state.hasTypicalConsumption())
+				if (state.getStateName().equalsIgnoreCase(stateName) && state.hasTypicalConsumption())
 					return new DevicePowerConsumption(deviceURI, state.getTypicalConsumption());
 			}
 		}
@@ -385,11 +1478,21 @@ public class PowerOntModel implements ManagedService, PowerModel
 	{
 		// init
 		PowerDevice device = null;
+		
+		// accept full IRIs and prefixed names, too
+		String key = this.resolveDeviceKey(deviceURI);
 		DevicePowerConsumption bestPowerConsumption = null;
 		
-		if (this.deviceConsumptions.containsKey(deviceURI))
+		device = this.deviceConsumptions.get(key);
+		if (device != null)
 		{
-			device = this.deviceConsumptions.get(deviceURI);
+			// the consumption learned from the meter readings is the most
+			// accurate one, followed by the latest meter reading
+			DevicePowerConsumption measured = this.getLearnedDeviceConsumption(deviceURI, stateName);
+			if (measured == null)
+				measured = this.getMeteredConsumption(deviceURI, stateName);
+			if (measured != null)
+				return measured;
 			
 			DecimalMeasure<Power> bestConsumption = null, nominal = null, actual = null;
 			
@@ -442,6 +1545,419 @@ public class PowerOntModel implements ManagedService, PowerModel
 		return bestPowerConsumption;
 	}
 	
+	/**
+	 * This method gets the power consumption of a device in a declared state,
+	 * as learned from its meter readings
+	 * 
+	 * @param deviceURI
+	 *            the URI of the device
+	 * @param stateName
+	 *            the name of the state that gives the consumption we are
+	 *            interested in
+	 * 
+	 * @return the {@link DevicePowerConsumption} storing the deviceURI and the
+	 *         learned consumption. Return null if not enough meter readings
+	 *         have been learned for the state.
+	 */
+	@Override
+	public DevicePowerConsumption getLearnedDeviceConsumption(String deviceURI, String stateName)
+	{
+		double learned = this.consumptionEstimator.getLearnedConsumption(deviceURI, stateName);
+		if (Double.isNaN(learned))
+			return null;
+		
+		return new DevicePowerConsumption(deviceURI, DecimalMeasure.valueOf(BigDecimal.valueOf(learned), SI.WATT));
+	}
+	
+	/**
+	 * This method gets the best consumption of a set of (device, state)
+	 * pairs, in one pass and without logging the unknown pairs
+	 * 
+	 * @param deviceURIs
+	 *            the URIs of the devices
+	 * @param stateNames
+	 *            the names of the states
+	 * @param consumptions
+	 *            the array to fill with the best consumptions, in W
+	 * @param count
+	 *            the number of pairs
+	 * 
+	 * @return the number of pairs with a known consumption
+	 */
+	@Override
+	public int getBestDeviceConsumptions(String[] deviceURIs, String[] stateNames, double[] consumptions, int count)
+	{
+		PowerOntModel.checkCount(count, deviceURIs.length, stateNames.length, consumptions.length);
+		
+		// all the pairs of a batch refer to the same table
+		MeterReadings readings = this.meterReadings.get();
+		
+		int found = 0;
+		for (int i = 0; i < count; i++)
+		{
+			consumptions[i] = this.getBestConsumption(readings, deviceURIs[i], stateNames[i]);
+			if (!Double.isNaN(consumptions[i]))
+				found++;
+		}
+		
+		return found;
+	}
+	
+	/**
+	 * This method sums the best consumptions of a set of (device, state)
+	 * pairs
+	 * 
+	 * @param deviceURIs
+	 *            the URIs of the devices
+	 * @param stateNames
+	 *            the names of the states
+	 * @param count
+	 *            the number of pairs
+	 * 
+	 * @return the total consumption, in W
+	 */
+	@Override
+	public double getTotalBestConsumption(String[] deviceURIs, String[] stateNames, int count)
+	{
+		PowerOntModel.checkCount(count, deviceURIs.length, stateNames.length);
+		
+		MeterReadings readings = this.meterReadings.get();
+		
+		double total = 0.0;
+		for (int i = 0; i < count; i++)
+		{
+			double consumption = this.getBestConsumption(readings, deviceURIs[i], stateNames[i]);
+			if (!Double.isNaN(consumption))
+				total += consumption;
+		}
+		
+		return total;
+	}
+	
+	/**
+	 * This method gets the highest best consumption of a set of (device,
+	 * state) pairs
+	 * 
+	 * @param deviceURIs
+	 *            the URIs of the devices
+	 * @param stateNames
+	 *            the names of the states
+	 * @param count
+	 *            the number of pairs
+	 * 
+	 * @return the highest consumption, in W, or {@link Double#NaN} if no pair
+	 *         is known
+	 */
+	@Override
+	public double getMaxBestConsumption(String[] deviceURIs, String[] stateNames, int count)
+	{
+		PowerOntModel.checkCount(count, deviceURIs.length, stateNames.length);
+		
+		MeterReadings readings = this.meterReadings.get();
+		
+		double max = Double.NaN;
+		for (int i = 0; i < count; i++)
+		{
+			double consumption = this.getBestConsumption(readings, deviceURIs[i], stateNames[i]);
+			if (!Double.isNaN(consumption) && !(consumption <= max))
+				max = consumption;
+		}
+		
+		return max;
+	}
+	
+	/**
+	 * This method gets the best consumption of a set of (device, state)
+	 * pairs, given as parallel collections
+	 * 
+	 * @param deviceURIs
+	 *            the URIs of the devices
+	 * @param stateNames
+	 *            the names of the states
+	 * 
+	 * @return the best consumption of each pair, in W
+	 */
+	@Override
+	public double[] getBestDeviceConsumptions(Collection<String> deviceURIs, Collection<String> stateNames)
+	{
+		PowerOntModel.checkSize(deviceURIs, stateNames);
+		
+		double[] consumptions = new double[deviceURIs.size()];
+		this.getBestDeviceConsumptions(deviceURIs.toArray(new String[consumptions.length]),
+				stateNames.toArray(new String[consumptions.length]), consumptions, consumptions.length);
+		
+		return consumptions;
+	}
+	
+	/**
+	 * This method sums the best consumptions of a set of (device, state)
+	 * pairs, given as parallel collections
+	 * 
+	 * @param deviceURIs
+	 *            the URIs of the devices
+	 * @param stateNames
+	 *            the names of the states
+	 * 
+	 * @return the total consumption, in W
+	 */
+	@Override
+	public double getTotalBestConsumption(Collection<String> deviceURIs, Collection<String> stateNames)
+	{
+		PowerOntModel.checkSize(deviceURIs, stateNames);
+		
+		int count = deviceURIs.size();
+		return this.getTotalBestConsumption(deviceURIs.toArray(new String[count]),
+				stateNames.toArray(new String[count]), count);
+	}
+	
+	/**
+	 * This method gets the highest best consumption of a set of (device,
+	 * state) pairs, given as parallel collections
+	 * 
+	 * @param deviceURIs
+	 *            the URIs of the devices
+	 * @param stateNames
+	 *            the names of the states
+	 * 
+	 * @return the highest consumption, in W, or {@link Double#NaN} if no pair
+	 *         is known
+	 */
+	@Override
+	public double getMaxBestConsumption(Collection<String> deviceURIs, Collection<String> stateNames)
+	{
+		PowerOntModel.checkSize(deviceURIs, stateNames);
+		
+		int count = deviceURIs.size();
+		return this.getMaxBestConsumption(deviceURIs.toArray(new String[count]),
+				stateNames.toArray(new String[count]), count);
+	}
+	
+	/**
+	 * Check that the number of elements of a batch fits all its arrays
+	 */
+	private static void checkCount(int count, int... lengths)
+	{
+		if (count < 0)
+			throw new IllegalArgumentException("The number of elements cannot be negative: " + count);
+		for (int length : lengths)
+		{
+			if (count > length)
+				throw new IllegalArgumentException("The number of elements (" + count
+						+ ") exceeds the length of the arrays (" + length + ")");
+		}
+	}
+	
+	/**
+	 * Check that the parallel collections of a batch have the same size
+	 */
+	private static void checkSize(Collection<String> deviceURIs, Collection<String> stateNames)
+	{
+		if (deviceURIs.size() != stateNames.size())
+			throw new IllegalArgumentException("The devices (" + deviceURIs.size() + ") and the states ("
+					+ stateNames.size() + ") must be paired");
+	}
+	
+	/**
+	 * Get the best consumption of a device state from the array-based
+	 * structures, with the same precedence of
+	 * {@link PowerOntModel#getBestDeviceConsumption}: learned consumption,
+	 * latest meter reading, declared consumption
+	 * 
+	 * @return the best consumption, in W, or {@link Double#NaN} if the device
+	 *         or the state is not known
+	 */
+	private double getBestConsumption(MeterReadings readings, String deviceURI, String stateName)
+	{
+		ConsumptionTable table = readings.getTable();
+		
+		int device = table.getDeviceId(deviceURI);
+		if (device == ConsumptionTable.UNKNOWN)
+			return Double.NaN;
+		
+		int state = table.getStateIndex(device, stateName);
+		if (state == ConsumptionTable.UNKNOWN)
+			return Double.NaN;
+		
+		return this.getBestConsumption(readings, device, state);
+	}
+	
+	/**
+	 * Get the best consumption of a device state, given its ids
+	 * 
+	 * @return the best consumption, in W
+	 */
+	private double getBestConsumption(MeterReadings readings, int device, int state)
+	{
+		ConsumptionTable table = readings.getTable();
+		
+		double consumption = this.consumptionEstimator.getLearnedConsumption(table, device, state);
+		if (Double.isNaN(consumption))
+			consumption = readings.getPower(device, state);
+		if (Double.isNaN(consumption))
+			consumption = table.getBestConsumption(device, state);
+		
+		return consumption;
+	}
+	
+	/**
+	 * Get the highest consumption of a device state, given its ids: the best
+	 * consumption, raised to the peak of the load profile of the state, if
+	 * any
+	 * 
+	 * @return the highest consumption, in W
+	 */
+	private double getPeakConsumption(MeterReadings readings, int device, int state)
+	{
+		return Math.max(this.getBestConsumption(readings, device, state),
+				readings.getTable().getPeakConsumption(device, state));
+	}
+	
+	/**
+	 * Store a live meter reading of the actual power consumption of a device
+	 * in a given state, learn it, check it for anomalies and append it to the
+	 * consumption log, if enabled
+	 * 
+	 * @param deviceURI
+	 *            the URI of the metered device
+	 * @param stateName
+	 *            the state of the device during the reading
+	 * @param power
+	 *            the metered power consumption, in W
+	 * @param timestamp
+	 *            the instant of the reading, in ms since the epoch
+	 * 
+	 * @return true if the reading has been stored
+	 */
+	@Override
+	public boolean updateActualConsumption(String deviceURI, String stateName, double power, long timestamp)
+	{
+		return this.updateActualConsumption(this.meterReadings.get(), deviceURI, stateName, power, timestamp);
+	}
+	
+	/**
+	 * This method stores a batch of live meter readings, given as parallel
+	 * arrays
+	 * 
+	 * @param deviceURIs
+	 *            the URIs of the metered devices
+	 * @param stateNames
+	 *            the states of the devices during the readings
+	 * @param powers
+	 *            the metered power consumptions, in W
+	 * @param timestamps
+	 *            the instants of the readings, in ms since the epoch
+	 * @param count
+	 *            the number of readings in the arrays
+	 * 
+	 * @return the number of readings that have been stored
+	 */
+	@Override
+	public int updateActualConsumptions(String[] deviceURIs, String[] stateNames, double[] powers, long[] timestamps,
+			int count)
+	{
+		// all the readings of a batch refer to the same table
+		MeterReadings readings = this.meterReadings.get();
+		
+		int stored = 0;
+		for (int i = 0; i < count; i++)
+		{
+			if (this.updateActualConsumption(readings, deviceURIs[i], stateNames[i], powers[i], timestamps[i]))
+				stored++;
+		}
+		
+		return stored;
+	}
+	
+	/**
+	 * Store a live meter reading in the given set of readings. The reading
+	 * slot of the device state is a per-slot spin lock, never contended by
+	 * other devices; the live aggregates are then updated under their own
+	 * monitor.
+	 */
+	private boolean updateActualConsumption(MeterReadings readings, String deviceURI, String stateName,
+			double power, long timestamp)
+	{
+		ConsumptionTable table = readings.getTable();
+		
+		// NaN and infinite readings would poison every aggregate
+		if (Double.isNaN(power) || Double.isInfinite(power))
+			return false;
+		
+		int device = table.getDeviceId(deviceURI);
+		if (device == ConsumptionTable.UNKNOWN || timestamp <= 0)
+			return false;
+		
+		int state = table.getStateIndex(device, stateName);
+		if (state == ConsumptionTable.UNKNOWN)
+			return false;
+		
+		if (!readings.update(device, state, power, timestamp))
+			return false;
+		
+		// learn the reading
+		if (!this.consumptionEstimator.learn(table, device, state, power))
+			this.consumptionEstimator.learn(deviceURI, stateName, power);
+		
+		// update the consumption envelope; readings of a table being replaced
+		// are already accounted by the envelope of the new table
+		this.consumptionEnvelope.update(table, device, state, this.getPeakConsumption(readings, device, state));
+		
+		// check the reading against the model
+		if (!this.anomalyDetector.check(table, device, state, power, timestamp))
+			this.anomalyDetector.check(deviceURI, stateName, power, timestamp);
+		
+		// update the live aggregates
+		if (!this.livePower.setMeteredPower(table, device, power, timestamp))
+			this.livePower.setMeteredPower(deviceURI, power, timestamp);
+		
+		// persist the reading, under the canonical URI of the device, so that
+		// readings by alias end up in the same series
+		ConsumptionLogStore log = this.consumptionLog;
+		if (log != null)
+			log.append(table.getDeviceURI(device), timestamp, power);
+		
+		return true;
+	}
+	
+	/**
+	 * Get the latest meter reading of a device in a given state, if any
+	 * 
+	 * @param deviceURI
+	 *            the URI of the device
+	 * @param stateName
+	 *            the name of the state
+	 * @return the {@link DevicePowerConsumption} storing the metered
+	 *         consumption and the instant of the reading, or null if no
+	 *         reading is available
+	 */
+	private DevicePowerConsumption getMeteredConsumption(String deviceURI, String stateName)
+	{
+		MeterReadings readings = this.meterReadings.get();
+		ConsumptionTable table = readings.getTable();
+		
+		int device = table.getDeviceId(deviceURI);
+		if (device == ConsumptionTable.UNKNOWN)
+			return null;
+		
+		int state = table.getStateIndex(device, stateName);
+		if (state == ConsumptionTable.UNKNOWN)
+			return null;
+		
+		// the power and the instant of the same reading
+		long[] timestamp = new long[1];
+		double power = readings.read(device, state, timestamp);
+		if (Double.isNaN(power))
+			return null;
+		
+		DevicePowerConsumption metered = new DevicePowerConsumption(deviceURI, DecimalMeasure.valueOf(
+				BigDecimal.valueOf(power), SI.WATT));
+		Calendar latestUpdate = Calendar.getInstance();
+		latestUpdate.setTimeInMillis(timestamp[0]);
+		metered.setLatestUpdate(latestUpdate);
+		
+		return metered;
+	}
+	
 	/**
 	 * This method gets the highest power consumption of all devices
 	 * 
@@ -451,37 +1967,114 @@ public class PowerOntModel implements ManagedService, PowerModel
 	@Override
 	public Set<DevicePowerConsumption> getHighestDeviceConsumptions()
 	{
-		// init
-		Set<DevicePowerConsumption> bestStateConsumption = new HashSet<DevicePowerConsumption>();
-		Set<DevicePowerConsumption> highestConsumptions = new HashSet<DevicePowerConsumption>();
+		return this.getDeviceConsumptionBounds(true);
+	}
+		
+	/**
+	 * This method gets the lowest power consumption of all devices
+	 * 
+	 * @return a set of {@link DevicePowerConsumption} storing the lowest
+	 *         consumption for each device.
+	 */
+	@Override
+	public Set<DevicePowerConsumption> getLowestDeviceConsumptions()
+	{
+		return this.getDeviceConsumptionBounds(false);
+	}
+	
+	/**
+	 * This method gets the lowest power consumption of a device across its
+	 * states, from the consumption envelope
+	 * 
+	 * @param deviceURI
+	 *            the URI of the device
+	 * @return the {@link DevicePowerConsumption} storing the lowest
+	 *         consumption, or null if the device is unknown or has no states
+	 */
+	@Override
+	public DevicePowerConsumption getMinimumDeviceConsumption(String deviceURI)
+	{
+		double minimum = this.consumptionEnvelope.getMinimum(deviceURI);
+		if (Double.isNaN(minimum))
+			return null;
 		
-		for (PowerDevice device : deviceConsumptions.values())
+		return new DevicePowerConsumption(deviceURI, DecimalMeasure.valueOf(BigDecimal.valueOf(minimum), SI.WATT));
+	}
+	
+	/**
+	 * This method gets the highest power consumption of a device across its
+	 * states, from the consumption envelope
+	 * 
+	 * @param deviceURI
+	 *            the URI of the device
+	 * @return the {@link DevicePowerConsumption} storing the highest
+	 *         consumption, or null if the device is unknown or has no states
+	 */
+	@Override
+	public DevicePowerConsumption getMaximumDeviceConsumption(String deviceURI)
+	{
+		double maximum = this.consumptionEnvelope.getMaximum(deviceURI);
+		if (Double.isNaN(maximum))
+			return null;
+		
+		return new DevicePowerConsumption(deviceURI, DecimalMeasure.valueOf(BigDecimal.valueOf(maximum), SI.WATT));
+	}
+	
+	/**
+	 * This method gets the baseload of the household, i.e., the sum of the
+	 * lowest consumption of each device
+	 * 
+	 * @return the baseload, in W
+	 */
+	@Override
+	public double getBaseload()
+	{
+		return this.consumptionEnvelope.getBaseload();
+	}
+	
+	/**
+	 * This method gets the theoretical peak load of the household, i.e., the
+	 * sum of the highest consumption of each device
+	 * 
+	 * @return the peak load, in W
+	 */
+	@Override
+	public double getPeakLoad()
+	{
+		return this.consumptionEnvelope.getPeak();
+	}
+	
+	/**
+	 * Get the lowest or highest consumption of all the devices, from the
+	 * consumption envelope
+	 * 
+	 * @param highest
+	 *            true for the highest consumptions, false for the lowest ones
+	 * @return a set of {@link DevicePowerConsumption}, one for each device
+	 */
+	private Set<DevicePowerConsumption> getDeviceConsumptionBounds(boolean highest)
+	{
+		// the table may change between sizing and copying the bounds
+		ConsumptionTable table = null;
+		double[] minimums = null;
+		double[] maximums = null;
+		while (table == null)
 		{
-			DecimalMeasure<Power> highestConsumption = DecimalMeasure.valueOf("0.0 W");
-			
-			for (PowerState state : device.getStateConsumptions())
-			{
-				// take the most accurate consumption for each device state
-				bestStateConsumption.add(getBestDeviceConsumption(device.getDeviceURI(), state.getStateName()));
-			}
-			// take the higher consumption state
-			for (DevicePowerConsumption bestConsumption : bestStateConsumption)
-			{
-				// if the highest consumption is lower than the best
-				// consumption for the current device...
-				if ((highestConsumption.getValue().compareTo(bestConsumption.getConsumption().getValue())) == -1)
-				{
-					highestConsumption = bestConsumption.getConsumption();
-				}
-			}
-			// save the highest consumption
-			highestConsumptions.add(new DevicePowerConsumption(device.getDeviceURI(), highestConsumption));
-			
-			// clear the best consumption set, before passing to another device
-			bestStateConsumption.clear();
+			int size = this.consumptionEnvelope.getConsumptionTable().size();
+			minimums = new double[size];
+			maximums = new double[size];
+			table = this.consumptionEnvelope.getBounds(minimums, maximums);
 		}
 		
-		return highestConsumptions;
+		Set<DevicePowerConsumption> consumptions = new HashSet<DevicePowerConsumption>();
+		for (int device = 0; device < table.size(); device++)
+		{
+			double bound = highest ? maximums[device] : minimums[device];
+			consumptions.add(new DevicePowerConsumption(table.getDeviceURI(device), DecimalMeasure.valueOf(
+					BigDecimal.valueOf(bound), SI.WATT)));
+		}
+		
+		return consumptions;
 	}
 	
 	/**
@@ -492,6 +2085,14 @@ public class PowerOntModel implements ManagedService, PowerModel
 		return this.owlWrapper;
 	}
 	
+	/**
+	 * @return the ontologyUpdater
+	 */
+	public PowerModelUpdater getOntologyUpdater()
+	{
+		return this.ontologyUpdater;
+	}
+	
 	/**
 	 * @return the powerModel
 	 */
@@ -508,6 +2109,63 @@ public class PowerOntModel implements ManagedService, PowerModel
 		return logger;
 	}
 
+	/**
+	 * Set the namespace prefixes declared by the power ontology, used to
+	 * resolve prefixed device names from the next table update on
+	 * 
+	 * @param namespacePrefixes
+	 *            the namespace of each prefix name (e.g., "home:")
+	 */
+	public void setNamespacePrefixes(Map<String, String> namespacePrefixes)
+	{
+		this.namespacePrefixes = new HashMap<String, String>(namespacePrefixes);
+	}
+	
+	/**
+	 * Resolve a device reference to the key of the device map
+	 * 
+	 * @param deviceURI
+	 *            the short form, full IRI or prefixed name of a device
+	 * @return the key of the device, or the given reference if not known
+	 */
+	private String resolveDeviceKey(String deviceURI)
+	{
+		String key = this.deviceKeys.resolve(deviceURI);
+		
+		return (key != null) ? key : deviceURI;
+	}
+	
+	@Override
+	public String getDeviceKey(String deviceURI)
+	{
+		return this.deviceKeys.resolve(deviceURI);
+	}
+	
+	@Override
+	public List<String> getDevicesInNamespace(String namespace)
+	{
+		return this.deviceKeys.getDevices(namespace);
+	}
+	
+	@Override
+	public long dumpConsumptions(OutputStream out) throws IOException
+	{
+		ConsumptionTable table = this.consumptionTable.get();
+		MeterReadings readings = this.meterReadings.get();
+		long timestamp = System.currentTimeMillis();
+		
+		ConsumptionStreamWriter writer = new ConsumptionStreamWriter(Channels.newChannel(out),
+				ConsumptionStreamWriter.DEFAULT_BUFFER_SIZE);
+		for (int device = 0; device < table.size(); device++)
+			for (int state = 0; state < table.getStateCount(device); state++)
+				writer.write(table.getDeviceURI(device), table.getStateName(device, state),
+						this.getBestConsumption(readings, device, state), timestamp);
+		writer.finish();
+		out.flush();
+		
+		return writer.getCount();
+	}
+	
 	/**
 	 * @return the deviceConsumptions
 	 */
@@ -516,4 +2174,28 @@ public class PowerOntModel implements ManagedService, PowerModel
 		return deviceConsumptions;
 	}
 	
+	/**
+	 * @return the consumptionTable
+	 */
+	public ConsumptionTable getConsumptionTable()
+	{
+		return this.consumptionTable.get();
+	}
+	
+	/**
+	 * @return the meterReadings
+	 */
+	public MeterReadings getMeterReadings()
+	{
+		return this.meterReadings.get();
+	}
+	
+	/**
+	 * @return the powerBudget
+	 */
+	public PowerBudget getPowerBudget()
+	{
+		return this.powerBudget;
+	}
+	
 }
@@ -0,0 +1,394 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.anomaly;
+
+import it.polito.elite.dog.addons.powermodel.api.AnomalyDetector;
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionAnomaly;
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionAnomalyListener;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Implementation of the {@link AnomalyDetector} service, based on a two-sided
+ * CUSUM (cumulative sum) test for each device. Each reading is normalized as
+ * z = (measured - expected) / scale, where the scale is the tolerated
+ * deviation (a fraction of the expected consumption, never less than
+ * {@link CusumDetector#MIN_DEVIATION}); readings within the tolerance (|z| <=
+ * 1) drain the sums, while larger deviations accumulate until the threshold
+ * is reached. The sums never exceed the threshold and the anomaly is cleared
+ * once both are back to 0, which gives a natural hysteresis.<br/>
+ * The test needs two sums per device and constant time per reading; devices
+ * are guarded by a fixed set of striped locks.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class CusumDetector implements AnomalyDetector
+{
+	// the default tolerated deviation, as a fraction of the expected power
+	public static final double DEFAULT_TOLERANCE = 0.2;
+	
+	// the default CUSUM threshold, in tolerance units
+	public static final double DEFAULT_THRESHOLD = 10.0;
+	
+	// the minimum tolerated deviation, in W, for low consumption states
+	public static final double MIN_DEVIATION = 5.0;
+	
+	// the number of lock stripes (a power of 2)
+	private static final int STRIPES = 64;
+	
+	// the tolerated deviation, as a fraction of the expected power
+	private volatile double tolerance;
+	
+	// the CUSUM threshold, in tolerance units
+	private volatile double threshold;
+	
+	// the registered listeners
+	private CopyOnWriteArrayList<ConsumptionAnomalyListener> listeners;
+	
+	// the striped device locks
+	private final Object[] locks;
+	
+	// the per-device detection state, bound to a consumption table
+	private volatile Detection detection;
+	
+	/**
+	 * Default constructor
+	 */
+	public CusumDetector()
+	{
+		this.tolerance = CusumDetector.DEFAULT_TOLERANCE;
+		this.threshold = CusumDetector.DEFAULT_THRESHOLD;
+		this.listeners = new CopyOnWriteArrayList<ConsumptionAnomalyListener>();
+		this.locks = new Object[CusumDetector.STRIPES];
+		for (int i = 0; i < this.locks.length; i++)
+			this.locks[i] = new Object();
+		this.detection = new Detection(ConsumptionTable.EMPTY);
+	}
+	
+	/**
+	 * Set the tolerated deviation from the expected consumption
+	 * 
+	 * @param tolerance
+	 *            the tolerated deviation, as a fraction of the expected power
+	 *            (greater than 0)
+	 */
+	public void setTolerance(double tolerance)
+	{
+		if (tolerance <= 0)
+			throw new IllegalArgumentException("The anomaly tolerance must be greater than 0");
+		
+		this.tolerance = tolerance;
+	}
+	
+	/**
+	 * Set the CUSUM threshold: the greater, the longer a deviation must
+	 * persist before being notified
+	 * 
+	 * @param threshold
+	 *            the threshold, in tolerance units (greater than 0)
+	 */
+	public void setThreshold(double threshold)
+	{
+		if (threshold <= 0)
+			throw new IllegalArgumentException("The anomaly threshold must be greater than 0");
+		
+		this.threshold = threshold;
+	}
+	
+	/**
+	 * Bind the detector to a new consumption table, e.g., after a model
+	 * (re)load, preserving the detection state of the device states still in
+	 * the table
+	 * 
+	 * @param table
+	 *            the new {@link ConsumptionTable}
+	 */
+	public synchronized void setConsumptionTable(ConsumptionTable table)
+	{
+		Detection previous = this.detection;
+		Detection current = new Detection(table);
+		
+		for (int device = 0; device < table.size(); device++)
+		{
+			int previousDevice = previous.table.getDeviceId(table.getDeviceURI(device));
+			if (previousDevice == ConsumptionTable.UNKNOWN)
+				continue;
+			
+			synchronized (this.locks[previousDevice & (CusumDetector.STRIPES - 1)])
+			{
+				int previousState = previous.states[previousDevice];
+				if (previousState == ConsumptionTable.UNKNOWN)
+					continue;
+				
+				current.states[device] = table.getStateIndex(device,
+						previous.table.getStateName(previousDevice, previousState));
+				if (current.states[device] != ConsumptionTable.UNKNOWN)
+				{
+					current.entered[device] = previous.entered[previousDevice];
+					current.high[device] = previous.high[previousDevice];
+					current.low[device] = previous.low[previousDevice];
+					current.anomalous[device] = previous.anomalous[previousDevice];
+				}
+			}
+		}
+		
+		this.detection = current;
+	}
+	
+	/**
+	 * Check a meter reading against the consumption modelled for the device
+	 * state
+	 * 
+	 * @param table
+	 *            the {@link ConsumptionTable} the ids refer to
+	 * @param device
+	 *            the device id
+	 * @param state
+	 *            the state index
+	 * @param power
+	 *            the metered power, in W
+	 * @param timestamp
+	 *            the instant of the reading, in ms since the epoch
+	 * @return true if the table is still the current one
+	 */
+	public boolean check(ConsumptionTable table, int device, int state, double power, long timestamp)
+	{
+		Detection current = this.detection;
+		if (current.table != table)
+			return false;
+		
+		this.check(current, device, state, power, timestamp);
+		
+		return true;
+	}
+	
+	/**
+	 * Check a meter reading against the consumption modelled for the device
+	 * state
+	 * 
+	 * @param deviceURI
+	 *            the URI of the device
+	 * @param stateName
+	 *            the state of the device
+	 * @param power
+	 *            the metered power, in W
+	 * @param timestamp
+	 *            the instant of the reading, in ms since the epoch
+	 * @return true if the device and the state are known
+	 */
+	public boolean check(String deviceURI, String stateName, double power, long timestamp)
+	{
+		Detection current = this.detection;
+		
+		int device = current.table.getDeviceId(deviceURI);
+		if (device == ConsumptionTable.UNKNOWN)
+			return false;
+		
+		int state = current.table.getStateIndex(device, stateName);
+		if (state == ConsumptionTable.UNKNOWN)
+			return false;
+		
+		this.check(current, device, state, power, timestamp);
+		
+		return true;
+	}
+	
+	/**
+	 * Update the CUSUM test of a device and notify the listeners on changes
+	 */
+	private void check(Detection current, int device, int state, double power, long timestamp)
+	{
+		if (Double.isNaN(power) || Double.isInfinite(power))
+			return;
+		
+		// the previous anomaly, cleared by a state change, and the power
+		// expected in that state
+		int clearedState = ConsumptionTable.UNKNOWN;
+		double clearedExpected = 0.0;
+		double expected;
+		boolean detected = false;
+		
+		synchronized (this.locks[device & (CusumDetector.STRIPES - 1)])
+		{
+			// a new state restarts the test
+			if (current.states[device] != state)
+			{
+				if (current.anomalous[device])
+				{
+					clearedState = current.states[device];
+					clearedExpected = current.table.getConsumption(device, clearedState,
+							Math.max(0, timestamp - current.entered[device]) / 1000.0);
+				}
+				current.states[device] = state;
+				current.entered[device] = timestamp;
+				current.high[device] = 0.0;
+				current.low[device] = 0.0;
+				current.anomalous[device] = false;
+			}
+			
+			// follow the load profile of the state, from the instant the
+			// state was first read
+			expected = current.table.getConsumption(device, state,
+					Math.max(0, timestamp - current.entered[device]) / 1000.0);
+			double scale = Math.max(expected * this.tolerance, CusumDetector.MIN_DEVIATION);
+			double z = (power - expected) / scale;
+			
+			// the tolerance is the allowed drift; capping the sums at the
+			// threshold bounds the time needed to clear an anomaly
+			double limit = this.threshold;
+			current.high[device] = Math.min(limit, Math.max(0.0, current.high[device] + z - 1.0));
+			current.low[device] = Math.min(limit, Math.max(0.0, current.low[device] - z - 1.0));
+			
+			if (!current.anomalous[device])
+			{
+				if (current.high[device] >= limit || current.low[device] >= limit)
+				{
+					current.anomalous[device] = true;
+					detected = true;
+				}
+			}
+			else if (current.high[device] == 0.0 && current.low[device] == 0.0)
+			{
+				current.anomalous[device] = false;
+				clearedState = state;
+				clearedExpected = expected;
+			}
+		}
+		
+		// notify outside the lock; a failing listener must not break the
+		// meter path, nor the other listeners
+		if (clearedState != ConsumptionTable.UNKNOWN)
+		{
+			ConsumptionAnomaly anomaly = new ConsumptionAnomaly(current.table.getDeviceURI(device),
+					current.table.getStateName(device, clearedState), clearedExpected, power, timestamp);
+			for (ConsumptionAnomalyListener listener : this.listeners)
+			{
+				try
+				{
+					listener.anomalyCleared(anomaly);
+				}
+				catch (RuntimeException e)
+				{
+					// ignore the listener failure
+				}
+			}
+		}
+		if (detected)
+		{
+			ConsumptionAnomaly anomaly = new ConsumptionAnomaly(current.table.getDeviceURI(device),
+					current.table.getStateName(device, state), expected, power, timestamp);
+			for (ConsumptionAnomalyListener listener : this.listeners)
+			{
+				try
+				{
+					listener.anomalyDetected(anomaly);
+				}
+				catch (RuntimeException e)
+				{
+					// ignore the listener failure
+				}
+			}
+		}
+	}
+	
+	@Override
+	public void addAnomalyListener(ConsumptionAnomalyListener listener)
+	{
+		this.listeners.addIfAbsent(listener);
+	}
+	
+	@Override
+	public void removeAnomalyListener(ConsumptionAnomalyListener listener)
+	{
+		this.listeners.remove(listener);
+	}
+	
+	@Override
+	public boolean isAnomalous(String deviceURI)
+	{
+		Detection current = this.detection;
+		
+		int device = current.table.getDeviceId(deviceURI);
+		if (device == ConsumptionTable.UNKNOWN)
+			return false;
+		
+		synchronized (this.locks[device & (CusumDetector.STRIPES - 1)])
+		{
+			return current.anomalous[device];
+		}
+	}
+	
+	@Override
+	public Set<String> getAnomalousDevices()
+	{
+		Set<String> devices = new HashSet<String>();
+		Detection current = this.detection;
+		
+		for (int device = 0; device < current.table.size(); device++)
+		{
+			synchronized (this.locks[device & (CusumDetector.STRIPES - 1)])
+			{
+				if (current.anomalous[device])
+					devices.add(current.table.getDeviceURI(device));
+			}
+		}
+		
+		return devices;
+	}
+	
+	/**
+	 * The detection state of all the devices of a consumption table
+	 */
+	private static class Detection
+	{
+		// the consumption table
+		private final ConsumptionTable table;
+		
+		// the state index of the latest reading of each device
+		private final int[] states;
+		
+		// the instant each device entered its state, in ms
+		private final long[] entered;
+		
+		// the upper CUSUM of each device
+		private final double[] high;
+		
+		// the lower CUSUM of each device
+		private final double[] low;
+		
+		// the anomaly flag of each device
+		private final boolean[] anomalous;
+		
+		Detection(ConsumptionTable table)
+		{
+			this.table = table;
+			this.states = new int[table.size()];
+			this.entered = new long[table.size()];
+			this.high = new double[table.size()];
+			this.low = new double[table.size()];
+			this.anomalous = new boolean[table.size()];
+			
+			for (int device = 0; device < this.states.length; device++)
+				this.states[device] = ConsumptionTable.UNKNOWN;
+		}
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+import java.util.Set;
+
+/**
+ * The interface defining the anomaly detection services offered by the
+ * PowerModel bundle of Dog. Each meter reading stored through
+ * {@link PowerModel#updateActualConsumption} is compared with the best
+ * consumption modelled for the state of the device: devices whose readings
+ * deviate persistently from the model are notified to the registered
+ * {@link ConsumptionAnomalyListener}s.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public interface AnomalyDetector
+{
+	/**
+	 * Register a listener for the consumption anomalies
+	 * 
+	 * @param listener
+	 *            - the {@link ConsumptionAnomalyListener} to add
+	 */
+	public void addAnomalyListener(ConsumptionAnomalyListener listener);
+	
+	/**
+	 * Unregister a listener for the consumption anomalies
+	 * 
+	 * @param listener
+	 *            - the {@link ConsumptionAnomalyListener} to remove
+	 */
+	public void removeAnomalyListener(ConsumptionAnomalyListener listener);
+	
+	/**
+	 * Check if a device is currently anomalous
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device
+	 * @return true if the readings of the device currently deviate from the
+	 *         model
+	 */
+	public boolean isAnomalous(String deviceURI);
+	
+	/**
+	 * Get all the devices currently anomalous
+	 * 
+	 * @return the URIs of the anomalous devices
+	 */
+	public Set<String> getAnomalousDevices();
+}
@@ -0,0 +1,78 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+import java.util.List;
+
+/**
+ * The interface defining the deferrable appliance scheduling services offered
+ * by the PowerModel bundle of Dog. Deferrable runs (see {@link DeferrableJob})
+ * are placed into the time slots of the next hours so that the household load,
+ * i.e., the expected background load plus the planned runs, stays within the
+ * power budget, at the lowest cost for the current tariff. The power of each
+ * run is the consumption of its state in the {@link PowerModel}.<br/>
+ * The scheduler only plans: starting the appliances at the planned instants is
+ * up to the caller. Runs already started are never moved.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public interface ApplianceScheduler
+{
+	/**
+	 * Add a job to the plan: the job is placed in the cheapest slots where it
+	 * fits; if none is left, the runs not yet started that compete for the
+	 * same window are placed again, together with the new job
+	 * 
+	 * @param job
+	 *            - the {@link DeferrableJob} to add
+	 * @return the {@link ScheduledRun} of the job, or null if the device or
+	 *         the state are unknown, or if the job does not fit in the plan
+	 *         (which is then left unchanged)
+	 */
+	public ScheduledRun schedule(DeferrableJob job);
+	
+	/**
+	 * Remove a job from the plan
+	 * 
+	 * @param jobId
+	 *            - the id of the job, as given by its {@link ScheduledRun}
+	 * @return true if the job was in the plan
+	 */
+	public boolean cancel(long jobId);
+	
+	/**
+	 * Get the current plan
+	 * 
+	 * @return the {@link ScheduledRun}s of the jobs not yet ended, by start,
+	 *         the evicted ones first
+	 */
+	public List<ScheduledRun> getPlan();
+	
+	/**
+	 * Place again all the runs not yet started, e.g., after a change of the
+	 * tariff or of the power budget. The jobs that no longer fit are evicted:
+	 * they stay in the plan without a start (see
+	 * {@link ScheduledRun#isPlaced()}) until they are cancelled, or placed
+	 * again by a later re-plan, or their deadline passes
+	 * 
+	 * @return the {@link ScheduledRun}s of the new plan, by start, the
+	 *         evicted ones first
+	 */
+	public List<ScheduledRun> replan();
+}
@@ -0,0 +1,119 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+/**
+ * A utility class for representing a persistent deviation of the metered
+ * consumption of a device from the consumption modelled for its current
+ * state, e.g., a fridge stuck in defrost or a TV drawing 40 W in standby.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class ConsumptionAnomaly
+{
+	// the URI of the device
+	private String deviceURI;
+	
+	// the state of the device
+	private String stateName;
+	
+	// the consumption modelled for the state, in W
+	private double expected;
+	
+	// the metered consumption that raised (or cleared) the anomaly, in W
+	private double measured;
+	
+	// the instant of the reading, in ms since the epoch
+	private long timestamp;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param deviceURI
+	 *            the URI of the device
+	 * @param stateName
+	 *            the state of the device
+	 * @param expected
+	 *            the consumption modelled for the state, in W
+	 * @param measured
+	 *            the metered consumption, in W
+	 * @param timestamp
+	 *            the instant of the reading, in ms since the epoch
+	 */
+	public ConsumptionAnomaly(String deviceURI, String stateName, double expected, double measured, long timestamp)
+	{
+		this.deviceURI = deviceURI;
+		this.stateName = stateName;
+		this.expected = expected;
+		this.measured = measured;
+		this.timestamp = timestamp;
+	}
+	
+	/**
+	 * @return the URI of the device
+	 */
+	public String getDeviceURI()
+	{
+		return this.deviceURI;
+	}
+	
+	/**
+	 * @return the state of the device
+	 */
+	public String getStateName()
+	{
+		return this.stateName;
+	}
+	
+	/**
+	 * @return the consumption modelled for the state, in W
+	 */
+	public double getExpected()
+	{
+		return this.expected;
+	}
+	
+	/**
+	 * @return the metered consumption, in W
+	 */
+	public double getMeasured()
+	{
+		return this.measured;
+	}
+	
+	/**
+	 * @return the instant of the reading, in ms since the epoch
+	 */
+	public long getTimestamp()
+	{
+		return this.timestamp;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return this.deviceURI + " [" + this.stateName + "]: " + this.measured + " W instead of " + this.expected
+				+ " W";
+	}
+}
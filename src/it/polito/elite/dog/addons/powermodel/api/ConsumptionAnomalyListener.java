@@ -0,0 +1,48 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+/**
+ * The interface to implement for being notified of the consumption anomalies
+ * detected by the {@link AnomalyDetector}. Notifications are delivered on the
+ * thread storing the meter reading, therefore listeners should return
+ * quickly. Exceptions thrown by a listener are ignored.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public interface ConsumptionAnomalyListener
+{
+	/**
+	 * Called when the metered consumption of a device starts deviating
+	 * persistently from the modelled one
+	 * 
+	 * @param anomaly
+	 *            - the {@link ConsumptionAnomaly} detected
+	 */
+	public void anomalyDetected(ConsumptionAnomaly anomaly);
+	
+	/**
+	 * Called when the metered consumption of an anomalous device is back in
+	 * line with the modelled one, or when the device changes state
+	 * 
+	 * @param anomaly
+	 *            - the {@link ConsumptionAnomaly} cleared
+	 */
+	public void anomalyCleared(ConsumptionAnomaly anomaly);
+}
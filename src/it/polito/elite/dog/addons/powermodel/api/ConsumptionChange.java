@@ -0,0 +1,136 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+/**
+ * A utility class for representing a change of the live power consumption of
+ * a device, of a room or of the whole household, as delivered by the
+ * {@link ConsumptionPublisher}.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class ConsumptionChange
+{
+	// the scope of the consumption
+	private ConsumptionScope scope;
+	
+	// the device URI or the room name, null for the household
+	private String key;
+	
+	// the new power consumption, in W
+	private double power;
+	
+	// the instant of the change, in ms since the epoch
+	private long timestamp;
+	
+	// the sequence number of the change, 0 if not known
+	private long sequence;
+	
+	/**
+	 * Constructor, for a change without a sequence number
+	 * 
+	 * @param scope
+	 *            the {@link ConsumptionScope} of the consumption
+	 * @param key
+	 *            the device URI or the room name, null for the household
+	 * @param power
+	 *            the new power consumption, in W
+	 * @param timestamp
+	 *            the instant of the change, in ms since the epoch
+	 */
+	public ConsumptionChange(ConsumptionScope scope, String key, double power, long timestamp)
+	{
+		this(scope, key, power, timestamp, 0);
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param scope
+	 *            the {@link ConsumptionScope} of the consumption
+	 * @param key
+	 *            the device URI or the room name, null for the household
+	 * @param power
+	 *            the new power consumption, in W
+	 * @param timestamp
+	 *            the instant of the change, in ms since the epoch
+	 * @param sequence
+	 *            the sequence number of the change: among the changes of the
+	 *            same consumption, the greatest is the latest one
+	 */
+	public ConsumptionChange(ConsumptionScope scope, String key, double power, long timestamp, long sequence)
+	{
+		this.scope = scope;
+		this.key = key;
+		this.power = power;
+		this.timestamp = timestamp;
+		this.sequence = sequence;
+	}
+	
+	/**
+	 * @return the scope of the consumption
+	 */
+	public ConsumptionScope getScope()
+	{
+		return this.scope;
+	}
+	
+	/**
+	 * @return the device URI or the room name, null for the household
+	 */
+	public String getKey()
+	{
+		return this.key;
+	}
+	
+	/**
+	 * @return the new power consumption, in W
+	 */
+	public double getPower()
+	{
+		return this.power;
+	}
+	
+	/**
+	 * @return the instant of the change, in ms since the epoch
+	 */
+	public long getTimestamp()
+	{
+		return this.timestamp;
+	}
+	
+	/**
+	 * @return the sequence number of the change, 0 if not known
+	 */
+	public long getSequence()
+	{
+		return this.sequence;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return this.scope + ((this.key != null) ? " " + this.key : "") + ": " + this.power + " W";
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The interface defining the consumption disaggregation services offered by
+ * the PowerModel bundle of Dog, for households metered by a single main
+ * meter. The readings of the main meter (e.g., one per second) are split in
+ * steady levels: each step between two levels is explained by the state
+ * changes of one or more devices whose consumption variations, as modelled by
+ * the typical, nominal and actual consumptions of their states, best sum up
+ * to the step.<br/>
+ * All the devices are assumed to be in their lowest consumption state when
+ * the disaggregation starts, or after a reset.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public interface ConsumptionDisaggregator
+{
+	/**
+	 * Process a reading of the main meter; readings must be given in
+	 * chronological order, and non-finite readings are ignored
+	 * 
+	 * @param power
+	 *            - the aggregate power consumption, in W
+	 * @param timestamp
+	 *            - the instant of the reading, in ms since the epoch
+	 * @return the state changes inferred from the reading, usually none
+	 */
+	public List<InferredTransition> observe(double power, long timestamp);
+	
+	/**
+	 * Get the state a device is estimated to be in
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device
+	 * @return the name of the state, or null if the device is unknown
+	 */
+	public String getEstimatedState(String deviceURI);
+	
+	/**
+	 * Get the devices estimated to be out of their lowest consumption state
+	 * 
+	 * @return the estimated states, indexed by device URI
+	 */
+	public Map<String, String> getEstimatedStates();
+	
+	/**
+	 * Get the consumption of a device, in its estimated state
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device
+	 * @return the best consumption of the estimated state, in W, or 0 if the
+	 *         device is unknown
+	 */
+	public double getEstimatedConsumption(String deviceURI);
+	
+	/**
+	 * Get the part of the current aggregate consumption not explained by the
+	 * estimated states, e.g., the consumption of the devices not modelled
+	 * 
+	 * @return the current aggregate level minus the consumption of the
+	 *         estimated states, in W
+	 */
+	public double getUnexplainedConsumption();
+	
+	/**
+	 * Restart the disaggregation, with all the devices in their lowest
+	 * consumption state
+	 */
+	public void reset();
+}
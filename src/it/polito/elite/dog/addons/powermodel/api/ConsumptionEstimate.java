@@ -0,0 +1,171 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+/**
+ * A utility class for representing the power consumption of a device state as
+ * learned from the meter readings: the exponentially weighted mean and
+ * variance, and a few approximate quantiles of the observed power.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class ConsumptionEstimate
+{
+	// the URI of the device
+	private String deviceURI;
+	
+	// the name of the state
+	private String stateName;
+	
+	// the number of samples learned
+	private long samples;
+	
+	// the exponentially weighted mean power, in W
+	private double mean;
+	
+	// the exponentially weighted variance of the power, in W^2
+	private double variance;
+	
+	// the 5th percentile of the power, in W
+	private double lowerPercentile;
+	
+	// the median power, in W
+	private double median;
+	
+	// the 95th percentile of the power, in W
+	private double upperPercentile;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param deviceURI
+	 *            the URI of the device
+	 * @param stateName
+	 *            the name of the state
+	 * @param samples
+	 *            the number of samples learned
+	 * @param mean
+	 *            the exponentially weighted mean power, in W
+	 * @param variance
+	 *            the exponentially weighted variance of the power, in W^2
+	 * @param lowerPercentile
+	 *            the 5th percentile of the power, in W
+	 * @param median
+	 *            the median power, in W
+	 * @param upperPercentile
+	 *            the 95th percentile of the power, in W
+	 */
+	public ConsumptionEstimate(String deviceURI, String stateName, long samples, double mean, double variance,
+			double lowerPercentile, double median, double upperPercentile)
+	{
+		this.deviceURI = deviceURI;
+		this.stateName = stateName;
+		this.samples = samples;
+		this.mean = mean;
+		this.variance = variance;
+		this.lowerPercentile = lowerPercentile;
+		this.median = median;
+		this.upperPercentile = upperPercentile;
+	}
+	
+	/**
+	 * @return the URI of the device
+	 */
+	public String getDeviceURI()
+	{
+		return this.deviceURI;
+	}
+	
+	/**
+	 * @return the name of the state
+	 */
+	public String getStateName()
+	{
+		return this.stateName;
+	}
+	
+	/**
+	 * @return the number of samples learned
+	 */
+	public long getSamples()
+	{
+		return this.samples;
+	}
+	
+	/**
+	 * @return the exponentially weighted mean power, in W
+	 */
+	public double getMean()
+	{
+		return this.mean;
+	}
+	
+	/**
+	 * @return the exponentially weighted variance of the power, in W^2
+	 */
+	public double getVariance()
+	{
+		return this.variance;
+	}
+	
+	/**
+	 * @return the exponentially weighted standard deviation of the power, in
+	 *         W
+	 */
+	public double getStandardDeviation()
+	{
+		return Math.sqrt(this.variance);
+	}
+	
+	/**
+	 * @return the 5th percentile of the power, in W
+	 */
+	public double getLowerPercentile()
+	{
+		return this.lowerPercentile;
+	}
+	
+	/**
+	 * @return the median power, in W
+	 */
+	public double getMedian()
+	{
+		return this.median;
+	}
+	
+	/**
+	 * @return the 95th percentile of the power, in W
+	 */
+	public double getUpperPercentile()
+	{
+		return this.upperPercentile;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return this.deviceURI + " [" + this.stateName + "]: " + this.mean + " W (sd " + this.getStandardDeviation()
+				+ ", " + this.samples + " samples)";
+	}
+}
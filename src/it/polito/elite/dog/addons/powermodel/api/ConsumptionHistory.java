@@ -0,0 +1,117 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+import java.util.List;
+
+/**
+ * The interface defining the consumption history services offered by the
+ * PowerModel bundle of Dog. The power drawn by each device and by the whole
+ * household is recorded at several {@link HistoryResolution}s, each one kept
+ * in a fixed-size ring buffer: older data is overwritten, so that the memory
+ * used for each device is bounded.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public interface ConsumptionHistory
+{
+	/**
+	 * Record a power sample for a device
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device
+	 * @param power
+	 *            - the power drawn by the device, in W
+	 * @param timestamp
+	 *            - the instant of the sample, in ms since the epoch
+	 * @return true if the device is known by the power model
+	 */
+	public boolean record(String deviceURI, double power, long timestamp);
+	
+	/**
+	 * Record a power sample for the whole household
+	 * 
+	 * @param power
+	 *            - the power drawn by the household, in W
+	 * @param timestamp
+	 *            - the instant of the sample, in ms since the epoch
+	 */
+	public void recordTotal(double power, long timestamp);
+	
+	/**
+	 * Get the history of a device in a time window
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device
+	 * @param resolution
+	 *            - the {@link HistoryResolution} to query
+	 * @param from
+	 *            - the start of the window (inclusive), in ms since the epoch
+	 * @param to
+	 *            - the end of the window (exclusive), in ms since the epoch
+	 * @return the {@link ConsumptionStatistics} of each slot with samples, in
+	 *         chronological order
+	 */
+	public List<ConsumptionStatistics> getDeviceHistory(String deviceURI, HistoryResolution resolution, long from,
+			long to);
+	
+	/**
+	 * Get the history of the whole household in a time window
+	 * 
+	 * @param resolution
+	 *            - the {@link HistoryResolution} to query
+	 * @param from
+	 *            - the start of the window (inclusive), in ms since the epoch
+	 * @param to
+	 *            - the end of the window (exclusive), in ms since the epoch
+	 * @return the {@link ConsumptionStatistics} of each slot with samples, in
+	 *         chronological order
+	 */
+	public List<ConsumptionStatistics> getTotalHistory(HistoryResolution resolution, long from, long to);
+	
+	/**
+	 * Get the overall statistics of a device in a time window
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device
+	 * @param resolution
+	 *            - the {@link HistoryResolution} to query
+	 * @param from
+	 *            - the start of the window (inclusive), in ms since the epoch
+	 * @param to
+	 *            - the end of the window (exclusive), in ms since the epoch
+	 * @return the {@link ConsumptionStatistics} of the whole window, or null if
+	 *         no samples are available
+	 */
+	public ConsumptionStatistics getDeviceSummary(String deviceURI, HistoryResolution resolution, long from, long to);
+	
+	/**
+	 * Get the overall statistics of the whole household in a time window
+	 * 
+	 * @param resolution
+	 *            - the {@link HistoryResolution} to query
+	 * @param from
+	 *            - the start of the window (inclusive), in ms since the epoch
+	 * @param to
+	 *            - the end of the window (exclusive), in ms since the epoch
+	 * @return the {@link ConsumptionStatistics} of the whole window, or null if
+	 *         no samples are available
+	 */
+	public ConsumptionStatistics getTotalSummary(HistoryResolution resolution, long from, long to);
+}
@@ -0,0 +1,84 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+/**
+ * The interface defining the consumption learning services offered by the
+ * PowerModel bundle of Dog. Each device state learns its own power
+ * consumption from the meter readings (exponentially weighted mean and
+ * variance, plus approximate quantiles), using a constant amount of memory
+ * and a constant time per reading.<br/>
+ * Once enough readings are learned, the learned mean is used by the
+ * {@link PowerModel} as the best consumption of the state, in place of the
+ * catalogue values of the ontology.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public interface ConsumptionLearner
+{
+	/**
+	 * Learn a power reading of a device in a given state. Readings stored
+	 * through {@link PowerModel#updateActualConsumption} are learned
+	 * automatically.
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device
+	 * @param stateName
+	 *            - the state of the device during the reading
+	 * @param power
+	 *            - the power reading, in W
+	 * @return true if the device and the state are known by the power model
+	 */
+	public boolean learn(String deviceURI, String stateName, double power);
+	
+	/**
+	 * Get the consumption learned for a device state
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device
+	 * @param stateName
+	 *            - the name of the state
+	 * @return the {@link ConsumptionEstimate}, or null if nothing has been
+	 *         learned for the state
+	 */
+	public ConsumptionEstimate getEstimate(String deviceURI, String stateName);
+	
+	/**
+	 * Get an approximate quantile of the power learned for a device state
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device
+	 * @param stateName
+	 *            - the name of the state
+	 * @param quantile
+	 *            - the quantile, between 0 and 1
+	 * @return the quantile, in W (with a relative error below 5%), or
+	 *         {@link Double#NaN} if nothing has been learned for the state
+	 */
+	public double getQuantile(String deviceURI, String stateName, double quantile);
+	
+	/**
+	 * Forget everything learned for a device, e.g., after the appliance has
+	 * been replaced
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device
+	 */
+	public void forget(String deviceURI);
+}
@@ -0,0 +1,78 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+/**
+ * The interface defining the persistent consumption log offered by the
+ * PowerModel bundle of Dog. Timestamped consumption samples are appended to
+ * memory-mapped segment files, which survive gateway restarts; older segments
+ * are periodically compacted into per-minute rollups.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public interface ConsumptionLog
+{
+	/**
+	 * Append a consumption sample to the log
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device
+	 * @param timestamp
+	 *            - the instant of the sample, in ms since the epoch
+	 * @param power
+	 *            - the power drawn by the device, in W
+	 * @return true if the sample has been appended
+	 */
+	public boolean append(String deviceURI, long timestamp, double power);
+	
+	/**
+	 * Scan the raw samples of a time window
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device, or null for all the devices
+	 * @param from
+	 *            - the start of the window (inclusive), in ms since the epoch
+	 * @param to
+	 *            - the end of the window (exclusive), in ms since the epoch
+	 * @param visitor
+	 *            - the {@link ConsumptionLogVisitor} receiving the samples, in
+	 *            append order
+	 */
+	public void scanSamples(String deviceURI, long from, long to, ConsumptionLogVisitor visitor);
+	
+	/**
+	 * Scan the per-minute rollups of a time window
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device, or null for all the devices
+	 * @param from
+	 *            - the start of the window (inclusive), in ms since the epoch
+	 * @param to
+	 *            - the end of the window (exclusive), in ms since the epoch
+	 * @param visitor
+	 *            - the {@link ConsumptionLogVisitor} receiving the rollups,
+	 *            in compaction order
+	 */
+	public void scanRollups(String deviceURI, long from, long to, ConsumptionLogVisitor visitor);
+	
+	/**
+	 * Force the log content to be written on disk
+	 */
+	public void flush();
+}
@@ -0,0 +1,61 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+/**
+ * Callback interface used to read the {@link ConsumptionLog}: records are
+ * passed as primitive values, directly read from the log files, so that
+ * scanning the log does not create any object per record.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public interface ConsumptionLogVisitor
+{
+	/**
+	 * Visit a raw consumption sample
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device (an interned instance)
+	 * @param timestamp
+	 *            - the instant of the sample, in ms since the epoch
+	 * @param power
+	 *            - the power drawn by the device, in W
+	 * @return false to stop the scan
+	 */
+	public boolean visitSample(String deviceURI, long timestamp, double power);
+	
+	/**
+	 * Visit a per-minute rollup of older consumption samples
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device (an interned instance)
+	 * @param start
+	 *            - the start of the minute, in ms since the epoch
+	 * @param min
+	 *            - the minimum power in the minute, in W
+	 * @param max
+	 *            - the maximum power in the minute, in W
+	 * @param mean
+	 *            - the mean power in the minute, in W
+	 * @param samples
+	 *            - the number of samples in the minute
+	 * @return false to stop the scan
+	 */
+	public boolean visitRollup(String deviceURI, long start, double min, double max, double mean, int samples);
+}
@@ -0,0 +1,52 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+/**
+ * The interface defining the consumption change publishing services offered
+ * by the PowerModel bundle of Dog. Subscribers are notified of the changes of
+ * the live power consumption of a device, of a room or of the whole household,
+ * as meter readings and device state changes are stored.<br/>
+ * Changes are delivered on a bounded pool of threads, never on the thread
+ * storing the reading: a slow subscriber only receives the latest change
+ * available when it is ready (coalesced delivery), without stalling the
+ * others or queueing changes.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public interface ConsumptionPublisher
+{
+	/**
+	 * Subscribe to the consumption changes of a device, of a room or of the
+	 * household. The current consumption, if known, is delivered as the first
+	 * change.
+	 * 
+	 * @param scope
+	 *            - the {@link ConsumptionScope} of the consumption to follow
+	 * @param key
+	 *            - the device URI (also as full IRI or prefixed name) or the
+	 *            room name; ignored for the household
+	 * @param minInterval
+	 *            - the minimum time between two deliveries, in ms (0 for
+	 *            delivering changes as soon as possible)
+	 * @param subscriber
+	 *            - the {@link ConsumptionSubscriber} to notify
+	 */
+	public void subscribe(ConsumptionScope scope, String key, long minInterval, ConsumptionSubscriber subscriber);
+}
@@ -0,0 +1,31 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+/**
+ * The scopes at which the live power consumption is aggregated by the
+ * PowerModel bundle of Dog: single devices (identified by their URI), rooms
+ * (identified by their name) and the whole household.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public enum ConsumptionScope
+{
+	DEVICE, ROOM, HOUSEHOLD;
+}
@@ -0,0 +1,121 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+/**
+ * A utility class for representing the power consumption statistics (minimum,
+ * maximum and mean power, in W) observed in a time interval, as stored by the
+ * consumption history of the PowerModel bundle.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class ConsumptionStatistics
+{
+	// the start of the interval, in ms since the epoch
+	private long start;
+	
+	// the duration of the interval, in ms
+	private long duration;
+	
+	// the minimum power, in W
+	private double min;
+	
+	// the maximum power, in W
+	private double max;
+	
+	// the mean power, in W
+	private double mean;
+	
+	// the number of samples
+	private int samples;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param start
+	 *            the start of the interval, in ms since the epoch
+	 * @param duration
+	 *            the duration of the interval, in ms
+	 * @param min
+	 *            the minimum power, in W
+	 * @param max
+	 *            the maximum power, in W
+	 * @param mean
+	 *            the mean power, in W
+	 * @param samples
+	 *            the number of samples in the interval
+	 */
+	public ConsumptionStatistics(long start, long duration, double min, double max, double mean, int samples)
+	{
+		this.start = start;
+		this.duration = duration;
+		this.min = min;
+		this.max = max;
+		this.mean = mean;
+		this.samples = samples;
+	}
+	
+	/**
+	 * @return the start of the interval, in ms since the epoch
+	 */
+	public long getStart()
+	{
+		return this.start;
+	}
+	
+	/**
+	 * @return the duration of the interval, in ms
+	 */
+	public long getDuration()
+	{
+		return this.duration;
+	}
+	
+	/**
+	 * @return the minimum power, in W
+	 */
+	public double getMin()
+	{
+		return this.min;
+	}
+	
+	/**
+	 * @return the maximum power, in W
+	 */
+	public double getMax()
+	{
+		return this.max;
+	}
+	
+	/**
+	 * @return the mean power, in W
+	 */
+	public double getMean()
+	{
+		return this.mean;
+	}
+	
+	/**
+	 * @return the number of samples in the interval
+	 */
+	public int getSamples()
+	{
+		return this.samples;
+	}
+}
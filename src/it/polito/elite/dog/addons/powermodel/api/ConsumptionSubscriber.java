@@ -0,0 +1,63 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+/**
+ * The interface to implement for receiving the consumption changes of the
+ * {@link ConsumptionPublisher}, in the style of the Reactive Streams
+ * subscribers. All the methods of a subscriber are called sequentially,
+ * never concurrently.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public interface ConsumptionSubscriber
+{
+	/**
+	 * Called once, before any other method, when the subscription is
+	 * accepted; no change is delivered until some demand is requested
+	 * 
+	 * @param subscription
+	 *            - the {@link ConsumptionSubscription} for signalling the
+	 *            demand
+	 */
+	public void onSubscribe(ConsumptionSubscription subscription);
+	
+	/**
+	 * Called for each delivered consumption change
+	 * 
+	 * @param change
+	 *            - the latest {@link ConsumptionChange}
+	 */
+	public void onNext(ConsumptionChange change);
+	
+	/**
+	 * Called when the subscription is terminated because of an error, e.g.,
+	 * an invalid demand
+	 * 
+	 * @param error
+	 *            - the cause of the termination
+	 */
+	public void onError(Throwable error);
+	
+	/**
+	 * Called when the subscription is terminated because the publisher is
+	 * shutting down
+	 */
+	public void onComplete();
+}
@@ -0,0 +1,47 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+/**
+ * The link between a {@link ConsumptionSubscriber} and the
+ * {@link ConsumptionPublisher}, through which the subscriber signals its
+ * demand of consumption changes, in the style of the Reactive Streams
+ * subscriptions.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public interface ConsumptionSubscription
+{
+	/**
+	 * Request the delivery of more consumption changes. Changes produced
+	 * while there is no outstanding demand are coalesced: only the latest one
+	 * is delivered, as soon as new demand is signalled.
+	 * 
+	 * @param n
+	 *            - the number of changes to add to the demand (greater than 0;
+	 *            Long.MAX_VALUE stands for an unbounded demand)
+	 */
+	public void request(long n);
+	
+	/**
+	 * Stop the delivery of consumption changes; some changes may still be
+	 * delivered while the cancellation takes effect
+	 */
+	public void cancel();
+}
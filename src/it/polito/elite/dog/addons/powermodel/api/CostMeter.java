@@ -0,0 +1,96 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+/**
+ * The interface defining the energy cost services offered by the PowerModel
+ * bundle of Dog. The power drawn by each device is integrated over time and
+ * priced with a time-of-use {@link TariffCalendar}, either incrementally, as
+ * running totals updated at every device state change (along the energy
+ * integrated by the {@link EnergyMeter}), or in batch over the persistent
+ * {@link ConsumptionLog}.<br/>
+ * Timestamps are expressed in ms since the epoch.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public interface CostMeter
+{
+	/**
+	 * Set the tariff used from now on; the running totals are preserved
+	 * 
+	 * @param tariff
+	 *            - the {@link TariffCalendar}
+	 */
+	public void setTariff(TariffCalendar tariff);
+	
+	/**
+	 * @return the tariff currently in use
+	 */
+	public TariffCalendar getTariff();
+	
+	/**
+	 * Get the rate of the tariff at a given instant
+	 * 
+	 * @param timestamp
+	 *            - the instant
+	 * @return the rate, per kWh
+	 */
+	public double getRate(long timestamp);
+	
+	/**
+	 * Get the running cost of the household, up to the given instant
+	 * 
+	 * @param timestamp
+	 *            - the instant of the reading
+	 * @return the cost since the latest reset
+	 */
+	public double getTotalCost(long timestamp);
+	
+	/**
+	 * Get the running costs of all the devices and rooms, up to the given
+	 * instant
+	 * 
+	 * @param timestamp
+	 *            - the instant of the reading
+	 * @return the {@link CostReport} since the latest reset
+	 */
+	public CostReport getRunningCosts(long timestamp);
+	
+	/**
+	 * Reset all the running costs
+	 * 
+	 * @param timestamp
+	 *            - the instant from which the costs are integrated again
+	 */
+	public void reset(long timestamp);
+	
+	/**
+	 * Compute the costs of a time window from the persistent consumption log.
+	 * Each logged power holds until the next record of the same device; at the
+	 * start of the window, each device draws the power of its latest record
+	 * in the preceding day, if any.
+	 * 
+	 * @param from
+	 *            - the start of the window (inclusive)
+	 * @param to
+	 *            - the end of the window (exclusive)
+	 * @return the {@link CostReport}, empty if the log is disabled
+	 */
+	public CostReport computeCosts(long from, long to);
+}
@@ -0,0 +1,136 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+import java.util.Map;
+
+/**
+ * A utility class for representing the energy cost of a time window, as
+ * computed by the {@link CostMeter} with a {@link TariffCalendar}: the cost of
+ * each device and of each room, and the totals of the household.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class CostReport
+{
+	// the start of the window, in ms since the epoch
+	private long from;
+	
+	// the end of the window, in ms since the epoch
+	private long to;
+	
+	// the cost of each device, indexed by device URI
+	private Map<String, Double> deviceCosts;
+	
+	// the cost of each room, indexed by room name
+	private Map<String, Double> roomCosts;
+	
+	// the cost of the household
+	private double totalCost;
+	
+	// the energy consumed by the household, in Wh
+	private double totalEnergy;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param from
+	 *            the start of the window, in ms since the epoch
+	 * @param to
+	 *            the end of the window, in ms since the epoch
+	 * @param deviceCosts
+	 *            the cost of each device, indexed by device URI
+	 * @param roomCosts
+	 *            the cost of each room, indexed by room name
+	 * @param totalCost
+	 *            the cost of the household
+	 * @param totalEnergy
+	 *            the energy consumed by the household, in Wh
+	 */
+	public CostReport(long from, long to, Map<String, Double> deviceCosts, Map<String, Double> roomCosts,
+			double totalCost, double totalEnergy)
+	{
+		this.from = from;
+		this.to = to;
+		this.deviceCosts = deviceCosts;
+		this.roomCosts = roomCosts;
+		this.totalCost = totalCost;
+		this.totalEnergy = totalEnergy;
+	}
+	
+	/**
+	 * @return the start of the window, in ms since the epoch
+	 */
+	public long getFrom()
+	{
+		return this.from;
+	}
+	
+	/**
+	 * @return the end of the window, in ms since the epoch
+	 */
+	public long getTo()
+	{
+		return this.to;
+	}
+	
+	/**
+	 * @return the cost of each device, indexed by device URI
+	 */
+	public Map<String, Double> getDeviceCosts()
+	{
+		return this.deviceCosts;
+	}
+	
+	/**
+	 * @return the cost of each room, indexed by room name
+	 */
+	public Map<String, Double> getRoomCosts()
+	{
+		return this.roomCosts;
+	}
+	
+	/**
+	 * @return the cost of the household
+	 */
+	public double getTotalCost()
+	{
+		return this.totalCost;
+	}
+	
+	/**
+	 * @return the energy consumed by the household, in Wh
+	 */
+	public double getTotalEnergy()
+	{
+		return this.totalEnergy;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return "[" + this.from + ", " + this.to + "): " + this.totalCost + " for " + this.totalEnergy + " Wh, rooms "
+				+ this.roomCosts;
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+/**
+ * A utility class for describing a deferrable run of an appliance (e.g., a
+ * dishwasher program, an EV charge or a boiler heating): the device, the
+ * state it runs in, how long the run lasts and the window it must fit in.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class DeferrableJob
+{
+	// the URI of the device
+	private String deviceURI;
+	
+	// the state of the device during the run
+	private String stateName;
+	
+	// the earliest start of the run, in ms since the epoch
+	private long earliestStart;
+	
+	// the latest end of the run, in ms since the epoch
+	private long deadline;
+	
+	// the duration of the run, in ms
+	private long duration;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param deviceURI
+	 *            the URI of the device
+	 * @param stateName
+	 *            the state of the device during the run
+	 * @param earliestStart
+	 *            the earliest start of the run, in ms since the epoch
+	 * @param deadline
+	 *            the latest end of the run, in ms since the epoch
+	 * @param duration
+	 *            the duration of the run, in ms
+	 */
+	public DeferrableJob(String deviceURI, String stateName, long earliestStart, long deadline, long duration)
+	{
+		this.deviceURI = deviceURI;
+		this.stateName = stateName;
+		this.earliestStart = earliestStart;
+		this.deadline = deadline;
+		this.duration = duration;
+	}
+	
+	/**
+	 * @return the URI of the device
+	 */
+	public String getDeviceURI()
+	{
+		return this.deviceURI;
+	}
+	
+	/**
+	 * @return the state of the device during the run
+	 */
+	public String getStateName()
+	{
+		return this.stateName;
+	}
+	
+	/**
+	 * @return the earliest start of the run, in ms since the epoch
+	 */
+	public long getEarliestStart()
+	{
+		return this.earliestStart;
+	}
+	
+	/**
+	 * @return the latest end of the run, in ms since the epoch
+	 */
+	public long getDeadline()
+	{
+		return this.deadline;
+	}
+	
+	/**
+	 * @return the duration of the run, in ms
+	 */
+	public long getDuration()
+	{
+		return this.duration;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return this.deviceURI + " [" + this.stateName + "]: " + this.duration + " ms in [" + this.earliestStart
+				+ ", " + this.deadline + "]";
+	}
+}
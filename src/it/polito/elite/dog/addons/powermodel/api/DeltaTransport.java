@@ -0,0 +1,58 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+import java.io.IOException;
+
+/**
+ * The channel through which the snapshot deltas of a {@link ModelReplication}
+ * travel from a primary gateway to its standby ones. A delta brings a model
+ * from a source version to a target version; a full snapshot is a delta from
+ * version 0, and makes all the previous deltas useless.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public interface DeltaTransport
+{
+	/**
+	 * Send a snapshot delta
+	 * 
+	 * @param fromVersion
+	 *            - the version the delta applies to, 0 for a full snapshot
+	 * @param toVersion
+	 *            - the version reached by applying the delta
+	 * @param delta
+	 *            - the encoded delta
+	 * @throws IOException
+	 *             if the delta cannot be sent
+	 */
+	public void send(long fromVersion, long toVersion, byte[] delta) throws IOException;
+	
+	/**
+	 * Receive the delta that brings a model at the given version the furthest
+	 * 
+	 * @param version
+	 *            - the current version of the receiving model, 0 if none
+	 * @return the encoded delta, or null if there is no newer delta that
+	 *         applies to the given version
+	 * @throws IOException
+	 *             if the delta cannot be received
+	 */
+	public byte[] receive(long version) throws IOException;
+}
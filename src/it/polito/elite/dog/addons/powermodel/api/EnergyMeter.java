@@ -0,0 +1,103 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+/**
+ * The interface defining the energy metering services offered by the
+ * PowerModel bundle of Dog. As device state changes are notified, the energy
+ * consumed by each device (and by the whole household) is integrated over the
+ * time spent in each state, using the best power consumption of the state.
+ * <br/>
+ * Timestamps are expressed in milliseconds since the epoch, as for the other
+ * services of the bundle, so that replayed or delayed state changes are
+ * learned and published at the instant they happened. Timestamps older than
+ * the latest one notified for a device are treated as simultaneous to it.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public interface EnergyMeter
+{
+	/**
+	 * Notify that a device has entered a given state
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device
+	 * @param stateName
+	 *            - the new state of the device
+	 * @param timestamp
+	 *            - the instant of the state change, in ms
+	 * @return true if the device and the state are known by the power model
+	 */
+	public boolean notifyStateChange(String deviceURI, String stateName, long timestamp);
+	
+	/**
+	 * Get the energy consumed by a device up to its latest state change
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device
+	 * @return the energy consumed, in Wh
+	 */
+	public double getDeviceEnergy(String deviceURI);
+	
+	/**
+	 * Get the energy consumed by a device up to the given instant, including
+	 * the time spent in the current state
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device
+	 * @param timestamp
+	 *            - the instant of the reading, in ms
+	 * @return the energy consumed, in Wh
+	 */
+	public double getDeviceEnergy(String deviceURI, long timestamp);
+	
+	/**
+	 * Get the energy consumed by the whole household up to the latest state
+	 * change
+	 * 
+	 * @return the energy consumed, in Wh
+	 */
+	public double getTotalEnergy();
+	
+	/**
+	 * Get the energy consumed by the whole household up to the given instant
+	 * 
+	 * @param timestamp
+	 *            - the instant of the reading, in ms
+	 * @return the energy consumed, in Wh
+	 */
+	public double getTotalEnergy(long timestamp);
+	
+	/**
+	 * Get the current power drawn by the whole household, according to the
+	 * notified device states
+	 * 
+	 * @return the current power, in W
+	 */
+	public double getTotalPower();
+	
+	/**
+	 * Reset all the energy counters, keeping the current device states
+	 * 
+	 * @param timestamp
+	 *            - the instant from which the energy is integrated again, in
+	 *            ms
+	 */
+	public void reset(long timestamp);
+}
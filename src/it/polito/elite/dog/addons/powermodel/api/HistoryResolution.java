@@ -0,0 +1,53 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+/**
+ * The resolutions at which the consumption history is kept by the PowerModel
+ * bundle of Dog: raw samples (one per second) and per-minute and per-hour
+ * rollups.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public enum HistoryResolution
+{
+	SECOND(1000L), MINUTE(60000L), HOUR(3600000L);
+	
+	// the duration of a history slot, in ms
+	private final long slotDuration;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param slotDuration
+	 *            the duration of a history slot, in ms
+	 */
+	private HistoryResolution(long slotDuration)
+	{
+		this.slotDuration = slotDuration;
+	}
+	
+	/**
+	 * @return the duration of a history slot at this resolution, in ms
+	 */
+	public long getSlotDuration()
+	{
+		return this.slotDuration;
+	}
+}
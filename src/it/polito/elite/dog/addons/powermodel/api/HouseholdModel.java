@@ -0,0 +1,124 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+import java.util.Set;
+
+/**
+ * A read-only power model of a single household, as hosted by the
+ * {@link HouseholdRegistry}. It holds, for each device, the power consumption
+ * of each of its states and the room it is located in.<br/>
+ * Household models are immutable snapshots: reloading a household gives a new
+ * instance, while the instances already handed out stay valid.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public interface HouseholdModel
+{
+	/**
+	 * @return the id of the household
+	 */
+	public String getHouseholdId();
+	
+	/**
+	 * @return the number of devices in the household
+	 */
+	public int getDeviceCount();
+	
+	/**
+	 * @return the URIs of all the devices in the household
+	 */
+	public Set<String> getDeviceURIs();
+	
+	/**
+	 * Get the room a device is located in
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device
+	 * @return the room of the device, or null if unknown
+	 */
+	public String getRoom(String deviceURI);
+	
+	/**
+	 * Get the names of the states of a device
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device
+	 * @return the state names, or an empty set if the device is unknown
+	 */
+	public Set<String> getStateNames(String deviceURI);
+	
+	/**
+	 * Get the power consumption of a device in a given state
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device
+	 * @param stateName
+	 *            - the name of the state
+	 * @return the power consumption, in W, or {@link Double#NaN} if the
+	 *         device or the state is unknown
+	 */
+	public double getConsumption(String deviceURI, String stateName);
+	
+	/**
+	 * Get the lowest power consumption of a device, over all its states
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device
+	 * @return the lowest power consumption, in W, or {@link Double#NaN} if the
+	 *         device is unknown
+	 */
+	public double getMinimumConsumption(String deviceURI);
+	
+	/**
+	 * Get the highest power consumption of a device, over all its states
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device
+	 * @return the highest power consumption, in W, or {@link Double#NaN} if
+	 *         the device is unknown
+	 */
+	public double getMaximumConsumption(String deviceURI);
+	
+	/**
+	 * Get the total power consumption of a set of devices, each in a given
+	 * state; unknown devices and states are skipped
+	 * 
+	 * @param deviceURIs
+	 *            - the URIs of the devices
+	 * @param stateNames
+	 *            - the state of each device
+	 * @param count
+	 *            - the number of devices to consider
+	 * @return the total power consumption, in W
+	 */
+	public double getTotalConsumption(String[] deviceURIs, String[] stateNames, int count);
+	
+	/**
+	 * @return the household baseload, i.e., the sum of the lowest consumption
+	 *         of each device, in W
+	 */
+	public double getBaseload();
+	
+	/**
+	 * @return the household peak load, i.e., the sum of the highest
+	 *         consumption of each device, in W
+	 */
+	public double getPeakLoad();
+}
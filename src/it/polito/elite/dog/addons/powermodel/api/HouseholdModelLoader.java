@@ -0,0 +1,68 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+import java.io.IOException;
+
+/**
+ * The interface to implement for supplying household models to the
+ * {@link HouseholdRegistry}. A loader describes a household by adding the
+ * states of its devices to the given {@link Builder}, which takes care of
+ * sharing strings and consumption profiles with the other loaded households.
+ * <br/>
+ * Loaders may be called concurrently for different households.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public interface HouseholdModelLoader
+{
+	/**
+	 * Describe a household
+	 * 
+	 * @param householdId
+	 *            - the id of the household
+	 * @param builder
+	 *            - the {@link Builder} to add the device states to
+	 * @return true if the household exists, false otherwise
+	 * @throws IOException
+	 *             if the household description cannot be read
+	 */
+	public boolean load(String householdId, Builder builder) throws IOException;
+	
+	/**
+	 * The builder a loader fills with the device states of a household
+	 */
+	public interface Builder
+	{
+		/**
+		 * Add a device state to the household; states of the same device may
+		 * be added in any order
+		 * 
+		 * @param deviceURI
+		 *            - the URI of the device
+		 * @param room
+		 *            - the room of the device, or null if unknown
+		 * @param stateName
+		 *            - the name of the state
+		 * @param consumption
+		 *            - the power consumption of the state, in W
+		 */
+		public void addState(String deviceURI, String room, String stateName, double consumption);
+	}
+}
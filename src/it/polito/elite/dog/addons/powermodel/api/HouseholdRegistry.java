@@ -0,0 +1,107 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * The interface defining the multi-household services offered by the
+ * PowerModel bundle of Dog. The registry hosts many independent
+ * {@link HouseholdModel}, keyed by household id: models are loaded on first
+ * access through a {@link HouseholdModelLoader} and the least recently used
+ * ones are unloaded when their estimated memory exceeds a budget.<br/>
+ * Device URIs, room and state names, and the consumption profiles of
+ * catalogue devices are shared among all the loaded households.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public interface HouseholdRegistry
+{
+	/**
+	 * Get the model of a household, loading it if needed; concurrent requests
+	 * for the same household share a single load
+	 * 
+	 * @param householdId
+	 *            - the id of the household
+	 * @return the {@link HouseholdModel}, or null if the household is unknown
+	 *         or no loader is set
+	 * @throws IOException
+	 *             if the household description cannot be read
+	 */
+	public HouseholdModel getModel(String householdId) throws IOException;
+	
+	/**
+	 * Check if the model of a household is currently loaded, without
+	 * affecting its eviction order
+	 * 
+	 * @param householdId
+	 *            - the id of the household
+	 * @return true if the model is loaded
+	 */
+	public boolean isLoaded(String householdId);
+	
+	/**
+	 * Unload the model of a household; it will be loaded again on next access
+	 * 
+	 * @param householdId
+	 *            - the id of the household
+	 */
+	public void unload(String householdId);
+	
+	/**
+	 * Unload all the household models
+	 */
+	public void unloadAll();
+	
+	/**
+	 * Set the loader of the household models, unloading all the models
+	 * loaded by the previous one
+	 * 
+	 * @param loader
+	 *            - the {@link HouseholdModelLoader}, or null to disable
+	 *            loading
+	 */
+	public void setLoader(HouseholdModelLoader loader);
+	
+	/**
+	 * Set the memory budget of the loaded models, evicting the least recently
+	 * used ones if needed
+	 * 
+	 * @param bytes
+	 *            - the budget, in bytes; 0 or less for no limit
+	 */
+	public void setMemoryBudget(long bytes);
+	
+	/**
+	 * @return the memory budget of the loaded models, in bytes
+	 */
+	public long getMemoryBudget();
+	
+	/**
+	 * @return the estimated memory used by the loaded models, in bytes
+	 */
+	public long getMemoryUsage();
+	
+	/**
+	 * @return the ids of the loaded households, from the least to the most
+	 *         recently used
+	 */
+	public Set<String> getLoadedHouseholds();
+}
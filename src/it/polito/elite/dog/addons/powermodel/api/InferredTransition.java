@@ -0,0 +1,136 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+/**
+ * A utility class for representing a state change of a device inferred by
+ * the {@link ConsumptionDisaggregator} from a step of the aggregate
+ * consumption. Simultaneous state changes explaining the same step share the
+ * same timestamp and mismatch.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class InferredTransition
+{
+	// the URI of the device
+	private String deviceURI;
+	
+	// the state the device has left
+	private String fromState;
+	
+	// the state the device has entered
+	private String toState;
+	
+	// the consumption variation of the device, in W
+	private double delta;
+	
+	// the difference between the step and the variations explaining it, in W
+	private double mismatch;
+	
+	// the instant of the step, in ms since the epoch
+	private long timestamp;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param deviceURI
+	 *            the URI of the device
+	 * @param fromState
+	 *            the state the device has left
+	 * @param toState
+	 *            the state the device has entered
+	 * @param delta
+	 *            the consumption variation of the device, in W
+	 * @param mismatch
+	 *            the difference between the aggregate step and the sum of the
+	 *            variations explaining it, in W
+	 * @param timestamp
+	 *            the instant of the step, in ms since the epoch
+	 */
+	public InferredTransition(String deviceURI, String fromState, String toState, double delta, double mismatch,
+			long timestamp)
+	{
+		this.deviceURI = deviceURI;
+		this.fromState = fromState;
+		this.toState = toState;
+		this.delta = delta;
+		this.mismatch = mismatch;
+		this.timestamp = timestamp;
+	}
+	
+	/**
+	 * @return the URI of the device
+	 */
+	public String getDeviceURI()
+	{
+		return this.deviceURI;
+	}
+	
+	/**
+	 * @return the state the device has left
+	 */
+	public String getFromState()
+	{
+		return this.fromState;
+	}
+	
+	/**
+	 * @return the state the device has entered
+	 */
+	public String getToState()
+	{
+		return this.toState;
+	}
+	
+	/**
+	 * @return the consumption variation of the device, in W
+	 */
+	public double getDelta()
+	{
+		return this.delta;
+	}
+	
+	/**
+	 * @return the difference between the aggregate step and the sum of the
+	 *         variations explaining it, in W
+	 */
+	public double getMismatch()
+	{
+		return this.mismatch;
+	}
+	
+	/**
+	 * @return the instant of the step, in ms since the epoch
+	 */
+	public long getTimestamp()
+	{
+		return this.timestamp;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return this.deviceURI + ": " + this.fromState + " -> " + this.toState + " (" + this.delta + " W)";
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+/**
+ * A utility class for representing a short-term forecast of the power
+ * consumption of the household (or of a single device): the expected power
+ * and its variance at evenly spaced instants.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class LoadForecast
+{
+	// the instant the forecast starts from, in ms since the epoch
+	private long start;
+	
+	// the time between two forecast instants, in ms
+	private long step;
+	
+	// the expected power at each instant, in W
+	private double[] means;
+	
+	// the variance of the power at each instant, in W^2
+	private double[] variances;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param start
+	 *            the instant the forecast starts from, in ms since the epoch
+	 * @param step
+	 *            the time between two forecast instants, in ms
+	 * @param means
+	 *            the expected power at each instant, in W
+	 * @param variances
+	 *            the variance of the power at each instant, in W^2
+	 */
+	public LoadForecast(long start, long step, double[] means, double[] variances)
+	{
+		this.start = start;
+		this.step = step;
+		this.means = means;
+		this.variances = variances;
+	}
+	
+	/**
+	 * @return the instant the forecast starts from, in ms since the epoch
+	 */
+	public long getStart()
+	{
+		return this.start;
+	}
+	
+	/**
+	 * @return the time between two forecast instants, in ms
+	 */
+	public long getStep()
+	{
+		return this.step;
+	}
+	
+	/**
+	 * @return the number of forecast instants
+	 */
+	public int size()
+	{
+		return this.means.length;
+	}
+	
+	/**
+	 * @return the i-th forecast instant, i.e., i+1 steps after the start, in
+	 *         ms since the epoch
+	 */
+	public long getTime(int i)
+	{
+		return this.start + (i + 1) * this.step;
+	}
+	
+	/**
+	 * @return the expected power at the i-th forecast instant, in W
+	 */
+	public double getMean(int i)
+	{
+		return this.means[i];
+	}
+	
+	/**
+	 * @return the variance of the power at the i-th forecast instant, in W^2
+	 */
+	public double getVariance(int i)
+	{
+		return this.variances[i];
+	}
+	
+	/**
+	 * @return the standard deviation of the power at the i-th forecast
+	 *         instant, in W
+	 */
+	public double getStandardDeviation(int i)
+	{
+		return Math.sqrt(this.variances[i]);
+	}
+	
+	/**
+	 * @return the expected energy consumed over the whole forecast, in Wh
+	 */
+	public double getExpectedEnergy()
+	{
+		double energy = 0.0;
+		for (double mean : this.means)
+			energy += mean;
+		
+		return energy * this.step / 3600000.0;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return "Forecast from " + this.start + ": " + this.means.length + " steps of " + this.step + " ms, "
+				+ this.getExpectedEnergy() + " Wh expected";
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+/**
+ * The interface defining the short-term load forecasting services offered by
+ * the PowerModel bundle of Dog. The state changes of each device are learned
+ * as a Markov chain over its states, sampled at a fixed step, with a
+ * transition matrix for each time-of-day bucket (e.g., one per hour). From
+ * the current state of the devices, the chains give the probability of each
+ * state in the next hours and, combined with the power consumption of the
+ * states, the expected household load and its variance (devices being
+ * assumed independent).<br/>
+ * Timestamps are expressed in milliseconds since the epoch, since the
+ * statistics depend on the time of day.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public interface LoadForecaster
+{
+	/**
+	 * Learn that a device has entered a given state, e.g., when replaying a
+	 * history. State changes notified to the {@link EnergyMeter} are learned
+	 * automatically, at the time they are notified.
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device
+	 * @param stateName
+	 *            - the new state of the device
+	 * @param timestamp
+	 *            - the instant of the state change, in ms since the epoch
+	 * @return true if the device and the state are known by the power model
+	 */
+	public boolean observe(String deviceURI, String stateName, long timestamp);
+	
+	/**
+	 * Forecast the household load
+	 * 
+	 * @param from
+	 *            - the instant to forecast from, in ms since the epoch
+	 * @param horizon
+	 *            - how far to forecast, in ms (e.g., 1 to 24 hours)
+	 * @return the {@link LoadForecast}, one instant per forecasting step
+	 */
+	public LoadForecast forecast(long from, long horizon);
+	
+	/**
+	 * Forecast the load of a single device
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device
+	 * @param from
+	 *            - the instant to forecast from, in ms since the epoch
+	 * @param horizon
+	 *            - how far to forecast, in ms
+	 * @return the {@link LoadForecast}, or null if the device is unknown
+	 */
+	public LoadForecast forecast(String deviceURI, long from, long horizon);
+	
+	/**
+	 * Get the learned probability that a device is in a given state at a
+	 * given time of day
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device
+	 * @param stateName
+	 *            - the name of the state
+	 * @param timestamp
+	 *            - any instant with the time of day of interest, in ms since
+	 *            the epoch
+	 * @return the probability, or {@link Double#NaN} if nothing has been
+	 *         learned for the device at that time of day
+	 */
+	public double getOccupancy(String deviceURI, String stateName, long timestamp);
+	
+	/**
+	 * Forget everything learned for a device, e.g., after the appliance has
+	 * been replaced
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device
+	 */
+	public void forget(String deviceURI);
+}
@@ -0,0 +1,75 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+import java.util.List;
+
+/**
+ * The interface defining the load shedding services offered by the
+ * PowerModel bundle of Dog. Given the current device states known by the
+ * {@link PowerBudget}, it proposes which devices should be stepped down (and
+ * in which state) to bring the household load under a target.<br/>
+ * Each device carries a priority weight (1 by default): the higher the
+ * weight, the later the device is selected for shedding.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public interface LoadSheddingPlanner
+{
+	/**
+	 * Propose a set of state changes to bring the committed load under the
+	 * given target
+	 * 
+	 * @param targetLoad
+	 *            - the target load, in W
+	 * @return the list of {@link SheddingAction} to perform, in selection
+	 *         order; empty if the committed load is already under the target.
+	 *         The list may not reach the target if all the devices are already
+	 *         in their lowest consumption state.
+	 */
+	public List<SheddingAction> planShedding(double targetLoad);
+	
+	/**
+	 * Propose a set of state changes to bring the committed load under the
+	 * current power budget
+	 * 
+	 * @return the list of {@link SheddingAction} to perform, in selection
+	 *         order
+	 */
+	public List<SheddingAction> planShedding();
+	
+	/**
+	 * Set the priority weight of a device
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device
+	 * @param weight
+	 *            - the priority weight (greater than 0)
+	 */
+	public void setPriority(String deviceURI, double weight);
+	
+	/**
+	 * Get the priority weight of a device
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device
+	 * @return the priority weight of the device, 1 if not set
+	 */
+	public double getPriority(String deviceURI);
+}
@@ -0,0 +1,105 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The interface defining the replication services offered by the PowerModel
+ * bundle of Dog, for primary/standby gateway pairs. Every change of the
+ * device consumptions gives a new model version; a primary exports the
+ * devices added, removed or changed since a given version as a snapshot
+ * delta, and a standby applies it to reach the same model without reasoning
+ * on the power ontology.<br/>
+ * Versions are made of an epoch, set when the primary starts, and of a change
+ * counter, so that a standby behind a restarted primary is sent a full
+ * snapshot; full snapshots are always applied, whatever their version.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public interface ModelReplication
+{
+	/**
+	 * @return the current version of the local model
+	 */
+	public long getVersion();
+	
+	/**
+	 * @return the version of the replicated model reached by the latest
+	 *         applied delta, 0 if none
+	 */
+	public long getAppliedVersion();
+	
+	/**
+	 * Export the changes of the local model since a given version; a full
+	 * snapshot is exported if the version is 0 or older than the changes
+	 * still known
+	 * 
+	 * @param sinceVersion
+	 *            - the version known by the peer, 0 if none
+	 * @param out
+	 *            - the stream to write the delta to, left open
+	 * @return the version reached by applying the delta
+	 * @throws IOException
+	 *             if the stream cannot be written
+	 */
+	public long exportDelta(long sinceVersion, OutputStream out) throws IOException;
+	
+	/**
+	 * Apply a snapshot delta exported by a peer, replacing the local devices
+	 * 
+	 * @param in
+	 *            - the stream to read the delta from, left open
+	 * @return the version of the peer model reached
+	 * @throws IOException
+	 *             if the stream cannot be read or does not hold a delta
+	 * @throws IllegalStateException
+	 *             if the delta is not a full snapshot and does not apply to
+	 *             the latest applied version
+	 */
+	public long applyDelta(InputStream in) throws IOException;
+	
+	/**
+	 * Send the changes since a given version through a transport
+	 * 
+	 * @param transport
+	 *            - the {@link DeltaTransport} to send to
+	 * @param sinceVersion
+	 *            - the version of the latest sent delta, 0 for a full
+	 *            snapshot
+	 * @return the version sent, to pass to the next call
+	 * @throws IOException
+	 *             if the delta cannot be sent
+	 */
+	public long publish(DeltaTransport transport, long sinceVersion) throws IOException;
+	
+	/**
+	 * Apply all the deltas available from a transport, starting from the
+	 * latest applied version
+	 * 
+	 * @param transport
+	 *            - the {@link DeltaTransport} to receive from
+	 * @return the number of deltas applied
+	 * @throws IOException
+	 *             if a delta cannot be received or read
+	 */
+	public int synchronize(DeltaTransport transport) throws IOException;
+}
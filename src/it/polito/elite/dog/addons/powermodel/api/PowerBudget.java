@@ -0,0 +1,141 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+/**
+ * The interface defining the power budget services offered by the PowerModel
+ * bundle of Dog. It keeps track of the load currently committed by all the
+ * devices of the house model (according to their current state and to their
+ * best power consumption) and it answers admission checks against a
+ * contracted power budget, e.g., "can I switch this device in this state
+ * without exceeding 3 kW?".<br/>
+ * To avoid over-commitment when more controllers act concurrently, a state
+ * change can be reserved before being actuated, then committed (or released)
+ * once the actuation has succeeded (or failed).
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public interface PowerBudget
+{
+	/**
+	 * The identifier returned when a reservation cannot be granted
+	 */
+	public static final long NO_RESERVATION = -1;
+	
+	/**
+	 * Set the power budget that the household should not exceed
+	 * 
+	 * @param budget
+	 *            - the budget, in W
+	 */
+	public void setBudget(double budget);
+	
+	/**
+	 * Get the power budget that the household should not exceed
+	 * 
+	 * @return the budget, in W ({@link Double#POSITIVE_INFINITY} if unlimited)
+	 */
+	public double getBudget();
+	
+	/**
+	 * Get the load currently committed by the devices, i.e., the sum of the
+	 * best power consumption of each device in its current state
+	 * 
+	 * @return the committed load, in W
+	 */
+	public double getCommittedLoad();
+	
+	/**
+	 * Get the load currently allocated, i.e., the committed load plus the
+	 * increments of the pending reservations
+	 * 
+	 * @return the allocated load, in W
+	 */
+	public double getAllocatedLoad();
+	
+	/**
+	 * Notify the current state of a device, e.g., upon a state change not
+	 * requested through a reservation. The committed load is updated
+	 * accordingly, without any admission check.
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device
+	 * @param stateName
+	 *            - the current state of the device
+	 * @return true if the device and the state are known by the power model
+	 */
+	public boolean setDeviceState(String deviceURI, String stateName);
+	
+	/**
+	 * Get the current state of a device, as known by the power budget
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device
+	 * @return the state name, or null if the state is not known
+	 */
+	public String getDeviceState(String deviceURI);
+	
+	/**
+	 * Check if a device can be switched in a given state without exceeding
+	 * the power budget
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device to switch
+	 * @param stateName
+	 *            - the target state
+	 * @return true if the state change fits into the budget
+	 */
+	public boolean canSwitch(String deviceURI, String stateName);
+	
+	/**
+	 * Atomically check and reserve the power needed to switch a device in a
+	 * given state. Only one reservation per device can be pending at any
+	 * time.
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device to switch
+	 * @param stateName
+	 *            - the target state
+	 * @return the reservation identifier, or
+	 *         {@link PowerBudget#NO_RESERVATION} if the state change does not
+	 *         fit into the budget, or the device has another pending
+	 *         reservation, or it is unknown
+	 */
+	public long reserve(String deviceURI, String stateName);
+	
+	/**
+	 * Commit a reservation, i.e., the device has been switched in the
+	 * reserved state
+	 * 
+	 * @param reservation
+	 *            - the reservation identifier
+	 * @return true if the reservation was pending and it has been committed
+	 */
+	public boolean commit(long reservation);
+	
+	/**
+	 * Release a reservation without switching the device, e.g., because the
+	 * actuation has failed
+	 * 
+	 * @param reservation
+	 *            - the reservation identifier
+	 * @return true if the reservation was pending and it has been released
+	 */
+	public boolean release(long reservation);
+}
@@ -17,6 +17,10 @@
  */
 package it.polito.elite.dog.addons.powermodel.api;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -84,7 +88,9 @@ public interface PowerModel
 	
 	/**
 	 * Given the URI of a device provides back the most accurate power
-	 * consumption associated to the device, if available
+	 * consumption associated to the device, if available: the learned
+	 * consumption, if any, then the latest meter reading, then the highest
+	 * consumption declared in the ontology
 	 * 
 	 * @param deviceURI
 	 *            - the URI of the device for which power consumption
@@ -97,6 +103,114 @@ public interface PowerModel
 	 */
 	public DevicePowerConsumption getBestDeviceConsumption(String deviceURI, String stateName);
 	
+	/**
+	 * Given the URI of a device provides back the power consumption learned
+	 * from the meter readings of the device, if enough readings are available
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device for which power consumption
+	 *            information must be gathered
+	 * @param stateName
+	 *            - the state value of the device for which power consumption
+	 *            information must be gathered
+	 * @return a {@link DevicePowerConsumption} object representing the
+	 *         device power consumption
+	 */
+	public DevicePowerConsumption getLearnedDeviceConsumption(String deviceURI, String stateName);
+	
+	/**
+	 * Batch version of {@link PowerModel#getBestDeviceConsumption}: given a
+	 * set of (device URI, state name) pairs, as parallel arrays, provides back
+	 * the best power consumption of each pair in a single pass
+	 * 
+	 * @param deviceURIs
+	 *            - the URIs of the devices
+	 * @param stateNames
+	 *            - the state values of the devices
+	 * @param consumptions
+	 *            - the array to fill with the best consumption of each pair,
+	 *            in W; {@link Double#NaN} if the device or the state is not
+	 *            known
+	 * @param count
+	 *            - the number of pairs in the arrays, not greater than the
+	 *            length of any of them
+	 * @return the number of pairs with a known consumption
+	 */
+	public int getBestDeviceConsumptions(String[] deviceURIs, String[] stateNames, double[] consumptions, int count);
+	
+	/**
+	 * Batch version of {@link PowerModel#getBestDeviceConsumption}, for a set
+	 * of (device URI, state name) pairs given as parallel collections
+	 * 
+	 * @param deviceURIs
+	 *            - the URIs of the devices
+	 * @param stateNames
+	 *            - the state values of the devices, in the same iteration
+	 *            order and of the same size
+	 * @return the best consumption of each pair, in W; {@link Double#NaN} if
+	 *         the device or the state is not known
+	 */
+	public double[] getBestDeviceConsumptions(Collection<String> deviceURIs, Collection<String> stateNames);
+	
+	/**
+	 * Sum the best power consumptions of a set of (device URI, state name)
+	 * pairs, given as parallel arrays; unknown pairs are skipped
+	 * 
+	 * @param deviceURIs
+	 *            - the URIs of the devices
+	 * @param stateNames
+	 *            - the state values of the devices
+	 * @param count
+	 *            - the number of pairs in the arrays, not greater than the
+	 *            length of any of them
+	 * @return the total consumption, in W
+	 */
+	public double getTotalBestConsumption(String[] deviceURIs, String[] stateNames, int count);
+	
+	/**
+	 * Sum the best power consumptions of a set of (device URI, state name)
+	 * pairs, given as parallel collections; unknown pairs are skipped
+	 * 
+	 * @param deviceURIs
+	 *            - the URIs of the devices
+	 * @param stateNames
+	 *            - the state values of the devices, in the same iteration
+	 *            order and of the same size
+	 * @return the total consumption, in W
+	 */
+	public double getTotalBestConsumption(Collection<String> deviceURIs, Collection<String> stateNames);
+	
+	/**
+	 * Get the highest of the best power consumptions of a set of (device URI,
+	 * state name) pairs, given as parallel arrays; unknown pairs are skipped
+	 * 
+	 * @param deviceURIs
+	 *            - the URIs of the devices
+	 * @param stateNames
+	 *            - the state values of the devices
+	 * @param count
+	 *            - the number of pairs in the arrays, not greater than the
+	 *            length of any of them
+	 * @return the highest consumption, in W, or {@link Double#NaN} if no pair
+	 *         is known
+	 */
+	public double getMaxBestConsumption(String[] deviceURIs, String[] stateNames, int count);
+	
+	/**
+	 * Get the highest of the best power consumptions of a set of (device URI,
+	 * state name) pairs, given as parallel collections; unknown pairs are
+	 * skipped
+	 * 
+	 * @param deviceURIs
+	 *            - the URIs of the devices
+	 * @param stateNames
+	 *            - the state values of the devices, in the same iteration
+	 *            order and of the same size
+	 * @return the highest consumption, in W, or {@link Double#NaN} if no pair
+	 *         is known
+	 */
+	public double getMaxBestConsumption(Collection<String> deviceURIs, Collection<String> stateNames);
+	
 	/**
 	 * It provides back the highest power consumption associated to each device,
 	 * if available
@@ -106,4 +220,124 @@ public interface PowerModel
 	 */
 	public Set<DevicePowerConsumption> getHighestDeviceConsumptions();
 	
+	/**
+	 * It provides back the lowest power consumption associated to each device,
+	 * if available
+	 * 
+	 * @return a vector of {@link DevicePowerConsumption} objects
+	 *         representing the devices power consumption
+	 */
+	public Set<DevicePowerConsumption> getLowestDeviceConsumptions();
+	
+	/**
+	 * Get the lowest best power consumption of a device across all its states
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device
+	 * @return a {@link DevicePowerConsumption} object storing the lowest
+	 *         consumption, or null if the device is unknown or has no states
+	 */
+	public DevicePowerConsumption getMinimumDeviceConsumption(String deviceURI);
+	
+	/**
+	 * Get the highest best power consumption of a device across all its
+	 * states
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device
+	 * @return a {@link DevicePowerConsumption} object storing the highest
+	 *         consumption, or null if the device is unknown or has no states
+	 */
+	public DevicePowerConsumption getMaximumDeviceConsumption(String deviceURI);
+	
+	/**
+	 * Get the baseload of the household, i.e., the sum of the lowest best
+	 * consumption of each device
+	 * 
+	 * @return the baseload, in W
+	 */
+	public double getBaseload();
+	
+	/**
+	 * Get the theoretical peak load of the household, i.e., the sum of the
+	 * highest best consumption of each device
+	 * 
+	 * @return the peak load, in W
+	 */
+	public double getPeakLoad();
+	
+	/**
+	 * Resolve a device reference to the key used by the power model, i.e.,
+	 * the short form of the device IRI
+	 * 
+	 * @param deviceURI
+	 *            - the short form, full IRI or prefixed name (e.g.,
+	 *            "home:Lamp1") of a device
+	 * @return the key of the device, or null if the device has no declared
+	 *         power consumption
+	 */
+	public String getDeviceKey(String deviceURI);
+	
+	/**
+	 * Get the devices whose IRI belongs to a given namespace
+	 * 
+	 * @param namespace
+	 *            - a namespace IRI (or any IRI prefix), or a prefix name
+	 *            declared by the power ontology (e.g., "home:")
+	 * @return the keys of the devices, in IRI order
+	 */
+	public List<String> getDevicesInNamespace(String namespace);
+	
+	/**
+	 * Dump the best power consumption of every device state, as a binary
+	 * stream of consumption records (see the codec package); the dump can be
+	 * read back with a ConsumptionDecoder
+	 * 
+	 * @param out
+	 *            - the stream to write the dump to, left open
+	 * @return the number of records written
+	 * @throws IOException
+	 *             if the stream cannot be written
+	 */
+	public long dumpConsumptions(OutputStream out) throws IOException;
+	
+	/**
+	 * Store a live meter reading of the actual power consumption of a device
+	 * in a given state. The latest reading overrides the actual consumption
+	 * declared in the ontology for that state, and it is returned by both the
+	 * actual and the best consumption requests. State names are compared
+	 * ignoring case, as for all the consumption requests.
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the metered device
+	 * @param stateName
+	 *            - the state of the device during the reading
+	 * @param power
+	 *            - the metered power consumption, in W; readings that are not
+	 *            finite numbers are rejected
+	 * @param timestamp
+	 *            - the instant of the reading, in ms since the epoch; readings
+	 *            older than the latest one are discarded
+	 * @return true if the reading has been stored
+	 */
+	public boolean updateActualConsumption(String deviceURI, String stateName, double power, long timestamp);
+	
+	/**
+	 * Store a batch of live meter readings, as parallel arrays
+	 * 
+	 * @param deviceURIs
+	 *            - the URIs of the metered devices
+	 * @param stateNames
+	 *            - the states of the devices during the readings
+	 * @param powers
+	 *            - the metered power consumptions, in W
+	 * @param timestamps
+	 *            - the instants of the readings, in ms since the epoch
+	 * @param count
+	 *            - the number of readings in the arrays
+	 * @return the number of readings that have been stored
+	 */
+	public int updateActualConsumptions(String[] deviceURIs, String[] stateNames, double[] powers, long[] timestamps,
+			int count);
+	
 }
@@ -0,0 +1,88 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A utility class for describing a what-if scenario, i.e., an ordered set of
+ * hypothetical device state changes (e.g., a "movie night" scene) to be
+ * evaluated by the {@link ScenarioEvaluator}.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class Scenario
+{
+	// the URIs of the devices to change, in order
+	private List<String> deviceURIs;
+	
+	// the target states of the devices, in order
+	private List<String> stateNames;
+	
+	/**
+	 * Default constructor, for an empty scenario
+	 */
+	public Scenario()
+	{
+		this.deviceURIs = new ArrayList<String>();
+		this.stateNames = new ArrayList<String>();
+	}
+	
+	/**
+	 * Add a state change to the scenario
+	 * 
+	 * @param deviceURI
+	 *            the URI of the device
+	 * @param stateName
+	 *            the target state of the device
+	 * @return the scenario itself, for chaining
+	 */
+	public Scenario set(String deviceURI, String stateName)
+	{
+		this.deviceURIs.add(deviceURI);
+		this.stateNames.add(stateName);
+		
+		return this;
+	}
+	
+	/**
+	 * @return the number of state changes in the scenario
+	 */
+	public int size()
+	{
+		return this.deviceURIs.size();
+	}
+	
+	/**
+	 * @return the URI of the device of the given change
+	 */
+	public String getDeviceURI(int change)
+	{
+		return this.deviceURIs.get(change);
+	}
+	
+	/**
+	 * @return the target state of the given change
+	 */
+	public String getStateName(int change)
+	{
+		return this.stateNames.get(change);
+	}
+}
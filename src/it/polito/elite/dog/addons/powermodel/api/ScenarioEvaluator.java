@@ -0,0 +1,53 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+import java.util.List;
+
+/**
+ * The interface defining the what-if evaluation services offered by the
+ * PowerModel bundle of Dog. A {@link Scenario} is applied to a snapshot of
+ * the live power consumption, never to the live state itself; each device
+ * changed by the scenario draws the best consumption of its target state.
+ * <br/>
+ * Evaluations are thread-safe and can be run concurrently.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public interface ScenarioEvaluator
+{
+	/**
+	 * Evaluate a scenario against the current live consumption
+	 * 
+	 * @param scenario
+	 *            - the {@link Scenario} to evaluate
+	 * @return the {@link ScenarioResult}
+	 */
+	public ScenarioResult evaluate(Scenario scenario);
+	
+	/**
+	 * Evaluate many candidate scenarios, in parallel, against the same
+	 * snapshot of the current live consumption
+	 * 
+	 * @param scenarios
+	 *            - the {@link Scenario}s to evaluate
+	 * @return the {@link ScenarioResult}s, in the same order
+	 */
+	public List<ScenarioResult> evaluateAll(List<Scenario> scenarios);
+}
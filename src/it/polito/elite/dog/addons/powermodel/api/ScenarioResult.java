@@ -0,0 +1,126 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+import java.util.Map;
+
+/**
+ * A utility class for representing the outcome of a what-if
+ * {@link Scenario}: the household power before and after the changes, the
+ * peak reached while applying them in order, and the resulting power of each
+ * room.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class ScenarioResult
+{
+	// the household power before the scenario, in W
+	private double basePower;
+	
+	// the household power after the scenario, in W
+	private double totalPower;
+	
+	// the highest household power after the scenario, in W
+	private double peakPower;
+	
+	// the power of each room after the scenario, in W
+	private Map<String, Double> roomPowers;
+	
+	// the number of changes referring to unknown devices or states
+	private int unknownChanges;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param basePower
+	 *            the household power before the scenario, in W
+	 * @param totalPower
+	 *            the household power after the scenario, in W
+	 * @param peakPower
+	 *            the highest household power after the scenario, with the
+	 *            profiled devices at their peak, in W
+	 * @param roomPowers
+	 *            the power of each room after the scenario, in W
+	 * @param unknownChanges
+	 *            the number of changes referring to unknown devices or states
+	 */
+	public ScenarioResult(double basePower, double totalPower, double peakPower, Map<String, Double> roomPowers,
+			int unknownChanges)
+	{
+		this.basePower = basePower;
+		this.totalPower = totalPower;
+		this.peakPower = peakPower;
+		this.roomPowers = roomPowers;
+		this.unknownChanges = unknownChanges;
+	}
+	
+	/**
+	 * @return the household power before the scenario, in W
+	 */
+	public double getBasePower()
+	{
+		return this.basePower;
+	}
+	
+	/**
+	 * @return the household power after the scenario, in W
+	 */
+	public double getTotalPower()
+	{
+		return this.totalPower;
+	}
+	
+	/**
+	 * @return the highest household power after the scenario, with the
+	 *         profiled devices at their peak, in W
+	 */
+	public double getPeakPower()
+	{
+		return this.peakPower;
+	}
+	
+	/**
+	 * @return the power of each room after the scenario, in W, indexed by
+	 *         room name
+	 */
+	public Map<String, Double> getRoomPowers()
+	{
+		return this.roomPowers;
+	}
+	
+	/**
+	 * @return the number of changes ignored because they refer to unknown
+	 *         devices or states
+	 */
+	public int getUnknownChanges()
+	{
+		return this.unknownChanges;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return this.basePower + " W -> " + this.totalPower + " W (peak " + this.peakPower + " W) " + this.roomPowers;
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+/**
+ * A utility class for representing a deferrable run placed by the
+ * {@link ApplianceScheduler}: the job, when it should start and end, and its
+ * expected energy, peak power and cost. A job evicted from the plan, as it
+ * no longer fits, has no start (see {@link #isPlaced()}) and no cost.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class ScheduledRun
+{
+	// the start of a job evicted from the plan
+	public static final long NOT_PLACED = Long.MIN_VALUE;
+	
+	// the id of the job, given by the scheduler
+	private long jobId;
+	
+	// the scheduled job
+	private DeferrableJob job;
+	
+	// the planned start of the run, in ms since the epoch
+	private long start;
+	
+	// the expected energy of the run, in Wh
+	private double energy;
+	
+	// the peak power of the run, in W
+	private double peak;
+	
+	// the expected cost of the run
+	private double cost;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param jobId
+	 *            the id of the job, given by the scheduler
+	 * @param job
+	 *            the scheduled {@link DeferrableJob}
+	 * @param start
+	 *            the planned start of the run, in ms since the epoch, or
+	 *            {@link #NOT_PLACED}
+	 * @param energy
+	 *            the expected energy of the run, in Wh
+	 * @param peak
+	 *            the peak power of the run, in W
+	 * @param cost
+	 *            the expected cost of the run
+	 */
+	public ScheduledRun(long jobId, DeferrableJob job, long start, double energy, double peak, double cost)
+	{
+		this.jobId = jobId;
+		this.job = job;
+		this.start = start;
+		this.energy = energy;
+		this.peak = peak;
+		this.cost = cost;
+	}
+	
+	/**
+	 * @return the id of the job, given by the scheduler
+	 */
+	public long getJobId()
+	{
+		return this.jobId;
+	}
+	
+	/**
+	 * @return the scheduled {@link DeferrableJob}
+	 */
+	public DeferrableJob getJob()
+	{
+		return this.job;
+	}
+	
+	/**
+	 * @return true if the run has a start, false if the job has been evicted
+	 *         from the plan
+	 */
+	public boolean isPlaced()
+	{
+		return this.start != ScheduledRun.NOT_PLACED;
+	}
+	
+	/**
+	 * @return the planned start of the run, in ms since the epoch, or
+	 *         {@link #NOT_PLACED}
+	 */
+	public long getStart()
+	{
+		return this.start;
+	}
+	
+	/**
+	 * @return the planned end of the run, in ms since the epoch, or
+	 *         {@link #NOT_PLACED}
+	 */
+	public long getEnd()
+	{
+		if (!this.isPlaced())
+			return ScheduledRun.NOT_PLACED;
+		
+		return this.start + this.job.getDuration();
+	}
+	
+	/**
+	 * @return the expected energy of the run, in Wh
+	 */
+	public double getEnergy()
+	{
+		return this.energy;
+	}
+	
+	/**
+	 * @return the peak power of the run, in W
+	 */
+	public double getPeak()
+	{
+		return this.peak;
+	}
+	
+	/**
+	 * @return the expected cost of the run, {@link Double#NaN} if not placed
+	 */
+	public double getCost()
+	{
+		return this.cost;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		String run = this.isPlaced() ? this.start + " - " + this.getEnd() : "not placed";
+		
+		return "#" + this.jobId + " " + this.job.getDeviceURI() + " [" + this.job.getStateName() + "]: " + run
+				+ " (" + this.energy + " Wh, " + this.cost + ")";
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+/**
+ * A utility class for representing a single step of a load shedding plan: the
+ * device to step down, its current state, the proposed (lower consumption)
+ * state and the expected power saving.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class SheddingAction
+{
+	// the URI of the device to step down
+	private String deviceURI;
+	
+	// the current state of the device
+	private String currentState;
+	
+	// the proposed state of the device
+	private String targetState;
+	
+	// the expected power saving, in W
+	private double saving;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param deviceURI
+	 *            the URI of the device to step down
+	 * @param currentState
+	 *            the current state of the device
+	 * @param targetState
+	 *            the proposed state of the device
+	 * @param saving
+	 *            the expected power saving, in W
+	 */
+	public SheddingAction(String deviceURI, String currentState, String targetState, double saving)
+	{
+		this.deviceURI = deviceURI;
+		this.currentState = currentState;
+		this.targetState = targetState;
+		this.saving = saving;
+	}
+	
+	/**
+	 * @return the URI of the device to step down
+	 */
+	public String getDeviceURI()
+	{
+		return this.deviceURI;
+	}
+	
+	/**
+	 * @return the current state of the device
+	 */
+	public String getCurrentState()
+	{
+		return this.currentState;
+	}
+	
+	/**
+	 * @return the proposed state of the device
+	 */
+	public String getTargetState()
+	{
+		return this.targetState;
+	}
+	
+	/**
+	 * @return the expected power saving, in W
+	 */
+	public double getSaving()
+	{
+		return this.saving;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return this.deviceURI + ": " + this.currentState + " -> " + this.targetState + " (-" + this.saving + " W)";
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+import java.util.Map;
+
+/**
+ * A utility class for representing the outcome of the replay of a device
+ * state-change trace: the household load curve (the average power of each
+ * time slot), the energy consumed by each device and a few totals.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class SimulationResult
+{
+	// the name of the replayed trace
+	private String trace;
+	
+	// the start of the first slot of the load curve, in ms since the epoch
+	private long start;
+	
+	// the duration of a slot of the load curve, in ms
+	private long slotDuration;
+	
+	// the average household power of each slot, in W
+	private float[] loadCurve;
+	
+	// the energy consumed by each device, in Wh
+	private Map<String, Double> deviceEnergy;
+	
+	// the energy consumed by the household, in Wh
+	private double totalEnergy;
+	
+	// the highest instantaneous household power, in W
+	private double peakPower;
+	
+	// the number of replayed events
+	private long events;
+	
+	// the number of events skipped, for unknown devices or states
+	private long skippedEvents;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param trace
+	 *            the name of the replayed trace
+	 * @param start
+	 *            the start of the first slot, in ms since the epoch
+	 * @param slotDuration
+	 *            the duration of a slot, in ms
+	 * @param loadCurve
+	 *            the average household power of each slot, in W
+	 * @param deviceEnergy
+	 *            the energy consumed by each device, in Wh
+	 * @param totalEnergy
+	 *            the energy consumed by the household, in Wh
+	 * @param peakPower
+	 *            the highest instantaneous household power, in W
+	 * @param events
+	 *            the number of replayed events
+	 * @param skippedEvents
+	 *            the number of skipped events
+	 */
+	public SimulationResult(String trace, long start, long slotDuration, float[] loadCurve,
+			Map<String, Double> deviceEnergy, double totalEnergy, double peakPower, long events, long skippedEvents)
+	{
+		this.trace = trace;
+		this.start = start;
+		this.slotDuration = slotDuration;
+		this.loadCurve = loadCurve;
+		this.deviceEnergy = deviceEnergy;
+		this.totalEnergy = totalEnergy;
+		this.peakPower = peakPower;
+		this.events = events;
+		this.skippedEvents = skippedEvents;
+	}
+	
+	/**
+	 * @return the name of the replayed trace
+	 */
+	public String getTrace()
+	{
+		return this.trace;
+	}
+	
+	/**
+	 * @return the start of the first slot of the load curve, in ms since the
+	 *         epoch
+	 */
+	public long getStart()
+	{
+		return this.start;
+	}
+	
+	/**
+	 * @return the duration of a slot of the load curve, in ms
+	 */
+	public long getSlotDuration()
+	{
+		return this.slotDuration;
+	}
+	
+	/**
+	 * @return the average household power of each slot, in W; the last slot
+	 *         is only covered up to the last event of the trace
+	 */
+	public float[] getLoadCurve()
+	{
+		return this.loadCurve;
+	}
+	
+	/**
+	 * @return the energy consumed by each device, in Wh, indexed by device
+	 *         URI
+	 */
+	public Map<String, Double> getDeviceEnergy()
+	{
+		return this.deviceEnergy;
+	}
+	
+	/**
+	 * @return the energy consumed by the household, in Wh
+	 */
+	public double getTotalEnergy()
+	{
+		return this.totalEnergy;
+	}
+	
+	/**
+	 * @return the highest instantaneous household power, in W
+	 */
+	public double getPeakPower()
+	{
+		return this.peakPower;
+	}
+	
+	/**
+	 * @return the number of replayed events
+	 */
+	public long getEvents()
+	{
+		return this.events;
+	}
+	
+	/**
+	 * @return the number of events skipped because of unknown devices or
+	 *         states
+	 */
+	public long getSkippedEvents()
+	{
+		return this.skippedEvents;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return this.trace + ": " + this.totalEnergy + " Wh, peak " + this.peakPower + " W, " + this.loadCurve.length
+				+ " slots of " + this.slotDuration + " ms (" + this.events + " events, " + this.skippedEvents
+				+ " skipped)";
+	}
+}
@@ -0,0 +1,230 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * A utility class for describing a time-of-use tariff: a default energy rate,
+ * overridden by weekly time bands (e.g., "weekdays from 8:00 to 19:00"), in a
+ * given time zone. Holidays are billed with the bands of Sundays. Bands are
+ * applied in order, so a later band overrides the earlier ones where they
+ * overlap.<br/>
+ * Rates are expressed in currency units per kWh.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class TariffCalendar
+{
+	// the day of week of a band applying to all the days
+	public static final int EVERY_DAY = 0;
+	
+	// the number of minutes in a day
+	public static final int MINUTES_PER_DAY = 1440;
+	
+	// the rate applied outside of any band
+	private double defaultRate;
+	
+	// the time zone of the bands
+	private TimeZone timeZone;
+	
+	// the day of week of each band (a Calendar constant or EVERY_DAY)
+	private List<Integer> bandDays;
+	
+	// the first minute of the day of each band (inclusive)
+	private List<Integer> bandStarts;
+	
+	// the last minute of the day of each band (exclusive)
+	private List<Integer> bandEnds;
+	
+	// the rate of each band
+	private List<Double> bandRates;
+	
+	// the holidays, as year * 10000 + month * 100 + day
+	private Set<Integer> holidays;
+	
+	/**
+	 * Constructor, for a flat tariff
+	 * 
+	 * @param defaultRate
+	 *            the rate applied outside of any band, per kWh
+	 * @param timeZone
+	 *            the time zone of the bands
+	 */
+	public TariffCalendar(double defaultRate, TimeZone timeZone)
+	{
+		if (defaultRate < 0)
+			throw new IllegalArgumentException("The tariff rate must not be negative");
+		
+		this.defaultRate = defaultRate;
+		this.timeZone = timeZone;
+		this.bandDays = new ArrayList<Integer>();
+		this.bandStarts = new ArrayList<Integer>();
+		this.bandEnds = new ArrayList<Integer>();
+		this.bandRates = new ArrayList<Double>();
+		this.holidays = new HashSet<Integer>();
+	}
+	
+	/**
+	 * Add a time band to the tariff
+	 * 
+	 * @param dayOfWeek
+	 *            the day of week of the band (e.g., {@link Calendar#MONDAY}),
+	 *            or {@link #EVERY_DAY}
+	 * @param fromMinute
+	 *            the first minute of the day of the band (inclusive)
+	 * @param toMinute
+	 *            the last minute of the day of the band (exclusive, up to
+	 *            {@link #MINUTES_PER_DAY}); a band ending before its start
+	 *            spans midnight, and its part after midnight applies to the
+	 *            next day of week
+	 * @param rate
+	 *            the rate of the band, per kWh
+	 * @return the calendar itself, for chaining
+	 */
+	public TariffCalendar setRate(int dayOfWeek, int fromMinute, int toMinute, double rate)
+	{
+		if (dayOfWeek != TariffCalendar.EVERY_DAY && (dayOfWeek < Calendar.SUNDAY || dayOfWeek > Calendar.SATURDAY))
+			throw new IllegalArgumentException("Invalid day of week: " + dayOfWeek);
+		if (fromMinute < 0 || fromMinute >= TariffCalendar.MINUTES_PER_DAY || toMinute < 0
+				|| toMinute > TariffCalendar.MINUTES_PER_DAY || fromMinute == toMinute)
+			throw new IllegalArgumentException("Invalid time band: " + fromMinute + "-" + toMinute);
+		if (rate < 0)
+			throw new IllegalArgumentException("The tariff rate must not be negative");
+		
+		if (fromMinute < toMinute)
+			this.addBand(dayOfWeek, fromMinute, toMinute, rate);
+		else
+		{
+			// split the band at midnight (e.g., 22:00-06:00)
+			this.addBand(dayOfWeek, fromMinute, TariffCalendar.MINUTES_PER_DAY, rate);
+			if (toMinute > 0)
+				this.addBand((dayOfWeek == TariffCalendar.EVERY_DAY) ? TariffCalendar.EVERY_DAY
+						: dayOfWeek % Calendar.SATURDAY + 1, 0, toMinute, rate);
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Store a time band within a single day
+	 */
+	private void addBand(int dayOfWeek, int fromMinute, int toMinute, double rate)
+	{
+		this.bandDays.add(dayOfWeek);
+		this.bandStarts.add(fromMinute);
+		this.bandEnds.add(toMinute);
+		this.bandRates.add(rate);
+	}
+	
+	/**
+	 * Add a holiday, billed with the bands of Sundays
+	 * 
+	 * @param year
+	 *            the year
+	 * @param month
+	 *            the month, from 1 to 12
+	 * @param day
+	 *            the day of the month
+	 * @return the calendar itself, for chaining
+	 */
+	public TariffCalendar addHoliday(int year, int month, int day)
+	{
+		this.holidays.add(year * 10000 + month * 100 + day);
+		
+		return this;
+	}
+	
+	/**
+	 * @return the rate applied outside of any band, per kWh
+	 */
+	public double getDefaultRate()
+	{
+		return this.defaultRate;
+	}
+	
+	/**
+	 * @return the time zone of the bands
+	 */
+	public TimeZone getTimeZone()
+	{
+		return this.timeZone;
+	}
+	
+	/**
+	 * @return the number of time bands
+	 */
+	public int getBandCount()
+	{
+		return this.bandDays.size();
+	}
+	
+	/**
+	 * @return the day of week of the given band, or {@link #EVERY_DAY}
+	 */
+	public int getBandDay(int band)
+	{
+		return this.bandDays.get(band);
+	}
+	
+	/**
+	 * @return the first minute of the day of the given band (inclusive)
+	 */
+	public int getBandStart(int band)
+	{
+		return this.bandStarts.get(band);
+	}
+	
+	/**
+	 * @return the last minute of the day of the given band (exclusive)
+	 */
+	public int getBandEnd(int band)
+	{
+		return this.bandEnds.get(band);
+	}
+	
+	/**
+	 * @return the rate of the given band, per kWh
+	 */
+	public double getBandRate(int band)
+	{
+		return this.bandRates.get(band);
+	}
+	
+	/**
+	 * Check if a day is a holiday
+	 * 
+	 * @param year
+	 *            the year
+	 * @param month
+	 *            the month, from 1 to 12
+	 * @param day
+	 *            the day of the month
+	 * @return true if the day is a holiday
+	 */
+	public boolean isHoliday(int year, int month, int day)
+	{
+		return this.holidays.contains(year * 10000 + month * 100 + day);
+	}
+}
@@ -0,0 +1,61 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+/**
+ * The conditions that can be watched by the {@link ThresholdWatcher}: the
+ * power consumption going above or below a threshold.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public enum ThresholdCondition
+{
+	ABOVE, BELOW;
+	
+	/**
+	 * Check if the condition holds
+	 * 
+	 * @param power
+	 *            the power consumption, in W
+	 * @param threshold
+	 *            the threshold, in W
+	 * @return true if the power is beyond the threshold
+	 */
+	public boolean isMet(double power, double threshold)
+	{
+		return (this == ABOVE) ? power > threshold : power < threshold;
+	}
+	
+	/**
+	 * Check if the condition is released, i.e., if the power is back within
+	 * the threshold by more than the hysteresis margin
+	 * 
+	 * @param power
+	 *            the power consumption, in W
+	 * @param threshold
+	 *            the threshold, in W
+	 * @param hysteresis
+	 *            the hysteresis margin, in W
+	 * @return true if the condition is released
+	 */
+	public boolean isReleased(double power, double threshold, double hysteresis)
+	{
+		return (this == ABOVE) ? power <= threshold - hysteresis : power >= threshold + hysteresis;
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+/**
+ * A utility class for representing the crossing (or the recovery) of a
+ * threshold registered on the {@link ThresholdWatcher}.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class ThresholdEvent
+{
+	// the id of the watch
+	private long watchId;
+	
+	// the scope of the watched consumption
+	private ConsumptionScope scope;
+	
+	// the device URI or the room name, null for the household
+	private String key;
+	
+	// the watched condition
+	private ThresholdCondition condition;
+	
+	// the threshold, in W
+	private double threshold;
+	
+	// the power consumption that triggered the event, in W
+	private double power;
+	
+	// the instant of the event, in ms since the epoch
+	private long timestamp;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param watchId
+	 *            the id of the watch
+	 * @param scope
+	 *            the scope of the watched consumption
+	 * @param key
+	 *            the device URI or the room name, null for the household
+	 * @param condition
+	 *            the watched condition
+	 * @param threshold
+	 *            the threshold, in W
+	 * @param power
+	 *            the power consumption that triggered the event, in W
+	 * @param timestamp
+	 *            the instant of the event, in ms since the epoch
+	 */
+	public ThresholdEvent(long watchId, ConsumptionScope scope, String key, ThresholdCondition condition,
+			double threshold, double power, long timestamp)
+	{
+		this.watchId = watchId;
+		this.scope = scope;
+		this.key = key;
+		this.condition = condition;
+		this.threshold = threshold;
+		this.power = power;
+		this.timestamp = timestamp;
+	}
+	
+	/**
+	 * @return the id of the watch
+	 */
+	public long getWatchId()
+	{
+		return this.watchId;
+	}
+	
+	/**
+	 * @return the scope of the watched consumption
+	 */
+	public ConsumptionScope getScope()
+	{
+		return this.scope;
+	}
+	
+	/**
+	 * @return the device URI or the room name, null for the household
+	 */
+	public String getKey()
+	{
+		return this.key;
+	}
+	
+	/**
+	 * @return the watched condition
+	 */
+	public ThresholdCondition getCondition()
+	{
+		return this.condition;
+	}
+	
+	/**
+	 * @return the threshold, in W
+	 */
+	public double getThreshold()
+	{
+		return this.threshold;
+	}
+	
+	/**
+	 * @return the power consumption that triggered the event, in W
+	 */
+	public double getPower()
+	{
+		return this.power;
+	}
+	
+	/**
+	 * @return the instant of the event, in ms since the epoch
+	 */
+	public long getTimestamp()
+	{
+		return this.timestamp;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return this.scope + ((this.key != null) ? " " + this.key : "") + " " + this.condition + " "
+				+ this.threshold + " W: " + this.power + " W";
+	}
+}
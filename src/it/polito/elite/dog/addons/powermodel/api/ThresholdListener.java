@@ -0,0 +1,46 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+/**
+ * The interface to implement for being notified by the
+ * {@link ThresholdWatcher}. Notifications are delivered sequentially, on a
+ * thread of the watcher.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public interface ThresholdListener
+{
+	/**
+	 * Called when the watched condition has held for the requested duration
+	 * 
+	 * @param event
+	 *            - the {@link ThresholdEvent}
+	 */
+	public void thresholdCrossed(ThresholdEvent event);
+	
+	/**
+	 * Called when the watched condition has been released (beyond the
+	 * hysteresis margin) for the requested duration
+	 * 
+	 * @param event
+	 *            - the {@link ThresholdEvent}
+	 */
+	public void thresholdRecovered(ThresholdEvent event);
+}
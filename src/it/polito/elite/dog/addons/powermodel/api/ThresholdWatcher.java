@@ -0,0 +1,65 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+/**
+ * The interface defining the threshold watching services offered by the
+ * PowerModel bundle of Dog, e.g., "notify when the household power is above 6
+ * kW for 30 s" or "when the kitchen is below 50 W". Conditions are evaluated
+ * incrementally, at each change of the watched consumption.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public interface ThresholdWatcher
+{
+	/**
+	 * Start watching a threshold
+	 * 
+	 * @param scope
+	 *            - the {@link ConsumptionScope} of the consumption to watch
+	 * @param key
+	 *            - the device URI (also as full IRI or prefixed name) or the
+	 *            room name; ignored for the household
+	 * @param condition
+	 *            - the {@link ThresholdCondition} to watch
+	 * @param threshold
+	 *            - the threshold, in W
+	 * @param hysteresis
+	 *            - the margin, in W, by which the consumption must get back
+	 *            within the threshold to release the condition
+	 * @param duration
+	 *            - the time, in ms, for which the condition must hold (or be
+	 *            released) before notifying the listener, measured on the
+	 *            timestamps of the consumption updates
+	 * @param listener
+	 *            - the {@link ThresholdListener} to notify
+	 * @return the id of the watch
+	 */
+	public long watch(ConsumptionScope scope, String key, ThresholdCondition condition, double threshold,
+			double hysteresis, long duration, ThresholdListener listener);
+	
+	/**
+	 * Stop watching a threshold
+	 * 
+	 * @param watchId
+	 *            - the id of the watch
+	 * @return true if the watch existed
+	 */
+	public boolean unwatch(long watchId);
+}
@@ -0,0 +1,72 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The interface defining the trace replay services offered by the PowerModel
+ * bundle of Dog. A trace is a recorded log of device state changes, replayed
+ * much faster than real time through the consumption figures of the power
+ * model, to get the resulting load curve and energy per device.<br/>
+ * Two trace formats are supported:
+ * <ul>
+ * <li>CSV, one "timestamp,deviceURI,stateName" line per state change, with
+ * timestamps in ms since the epoch (lines not starting with a timestamp,
+ * e.g., headers, are skipped);</li>
+ * <li>binary, as written by the BinaryTraceWriter of the bundle, recognized
+ * by its header.</li>
+ * </ul>
+ * Events must be sorted by timestamp; late events are considered simultaneous
+ * to the latest one.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public interface TraceSimulator
+{
+	/**
+	 * Replay a single trace
+	 * 
+	 * @param trace
+	 *            - the trace file, either CSV or binary
+	 * @param slotDuration
+	 *            - the duration of a slot of the load curve, in ms
+	 * @return the {@link SimulationResult}
+	 * @throws IOException
+	 *             if the trace cannot be read
+	 */
+	public SimulationResult simulate(File trace, long slotDuration) throws IOException;
+	
+	/**
+	 * Replay many independent traces (e.g., one per home) in parallel. The
+	 * memory needed by each load curve grows with the trace span divided by
+	 * the slot duration.
+	 * 
+	 * @param traces
+	 *            - the trace files, either CSV or binary
+	 * @param slotDuration
+	 *            - the duration of a slot of the load curves, in ms
+	 * @return the {@link SimulationResult}s, in the same order
+	 * @throws IOException
+	 *             if a trace cannot be read
+	 */
+	public List<SimulationResult> simulateAll(List<File> traces, long slotDuration) throws IOException;
+}
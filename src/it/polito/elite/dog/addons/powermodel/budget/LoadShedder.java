@@ -0,0 +1,299 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.budget;
+
+import it.polito.elite.dog.addons.powermodel.api.LoadSheddingPlanner;
+import it.polito.elite.dog.addons.powermodel.api.SheddingAction;
+import it.polito.elite.dog.addons.powermodel.budget.PowerBudgetManager.DeviceStates;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+import it.polito.elite.dog.addons.powermodel.device.DeviceKeyIndex;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Implementation of the {@link LoadSheddingPlanner} service. It uses a greedy
+ * selection over a binary max-heap of devices, ordered by the saving of their
+ * deepest step down (towards the lowest consumption state) divided by their
+ * priority weight. The heap is built in linear time and only the selected
+ * devices are extracted, so a plan costs O(n + k log n) for n devices and k
+ * actions. Savings are accounted at the peak consumption of each state, i.e.,
+ * the same quantity committed by the {@link PowerBudgetManager}. Priorities
+ * are kept by canonical device key, so that devices may be weighted also by
+ * full IRI or prefixed name.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class LoadShedder implements LoadSheddingPlanner
+{
+	// the default priority weight
+	public static final double DEFAULT_PRIORITY = 1.0;
+	
+	// the power budget holding the current device states
+	private PowerBudgetManager powerBudget;
+	
+	// the priority weights, indexed by canonical device key
+	private ConcurrentMap<String, Double> priorities;
+	
+	// the index resolving the device aliases to their canonical key
+	private DeviceKeyIndex deviceKeys;
+	
+	// incremented at every change of the priority weights
+	private AtomicInteger prioritiesVersion;
+	
+	// the priority weights, as an array bound to a consumption table
+	private volatile Weights weights;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param powerBudget
+	 *            the {@link PowerBudgetManager} holding the current device
+	 *            states
+	 */
+	public LoadShedder(PowerBudgetManager powerBudget)
+	{
+		this.powerBudget = powerBudget;
+		this.priorities = new ConcurrentHashMap<String, Double>();
+		this.prioritiesVersion = new AtomicInteger();
+	}
+	
+	/**
+	 * Set all the priority weights at once, e.g., from the bundle
+	 * configuration
+	 * 
+	 * @param priorities
+	 *            the priority weights, indexed by device URI
+	 */
+	public synchronized void setPriorities(Map<String, Double> priorities)
+	{
+		this.priorities.clear();
+		for (Map.Entry<String, Double> priority : priorities.entrySet())
+			this.priorities.put(this.getCanonicalKey(priority.getKey()), priority.getValue());
+		this.prioritiesVersion.incrementAndGet();
+	}
+	
+	/**
+	 * Set the index of the device keys, moving the priorities set by alias
+	 * under the canonical key of their device
+	 * 
+	 * @param deviceKeys
+	 *            the {@link DeviceKeyIndex} of the current devices
+	 */
+	public synchronized void setDeviceKeys(DeviceKeyIndex deviceKeys)
+	{
+		this.deviceKeys = deviceKeys;
+		
+		// the canonical keys win over the aliases
+		Map<String, Double> aliased = new HashMap<String, Double>();
+		for (Map.Entry<String, Double> priority : this.priorities.entrySet())
+		{
+			String key = this.getCanonicalKey(priority.getKey());
+			if (!key.equals(priority.getKey()))
+				aliased.put(priority.getKey(), priority.getValue());
+		}
+		for (Map.Entry<String, Double> priority : aliased.entrySet())
+		{
+			this.priorities.remove(priority.getKey());
+			this.priorities.putIfAbsent(this.getCanonicalKey(priority.getKey()), priority.getValue());
+		}
+		this.prioritiesVersion.incrementAndGet();
+	}
+	
+	/**
+	 * Get the canonical key of a device reference
+	 */
+	private synchronized String getCanonicalKey(String deviceURI)
+	{
+		String key = (this.deviceKeys != null) ? this.deviceKeys.resolve(deviceURI) : null;
+		
+		return (key != null) ? key : deviceURI;
+	}
+	
+	@Override
+	public synchronized void setPriority(String deviceURI, double weight)
+	{
+		if (weight <= 0)
+			throw new IllegalArgumentException("The priority weight must be greater than 0");
+		
+		this.priorities.put(this.getCanonicalKey(deviceURI), weight);
+		this.prioritiesVersion.incrementAndGet();
+	}
+	
+	@Override
+	public double getPriority(String deviceURI)
+	{
+		return this.getWeight(this.getCanonicalKey(deviceURI));
+	}
+	
+	@Override
+	public List<SheddingAction> planShedding()
+	{
+		return this.planShedding(this.powerBudget.getBudget());
+	}
+	
+	@Override
+	public List<SheddingAction> planShedding(double targetLoad)
+	{
+		// init
+		List<SheddingAction> plan = new ArrayList<SheddingAction>();
+		DeviceStates states = this.powerBudget.getDeviceStates();
+		ConsumptionTable table = states.getTable();
+		
+		// the committed load of the same generation as the states
+		double excess = states.getCommittedLoad() - targetLoad;
+		if (excess <= 0)
+			return plan;
+		
+		// fill the heap with the devices that can be stepped down
+		double[] weight = this.getWeights(table);
+		int[] heap = new int[table.size()];
+		double[] score = new double[table.size()];
+		int size = 0;
+		for (int device = 0; device < table.size(); device++)
+		{
+			int current = states.getState(device);
+			if (current != ConsumptionTable.UNKNOWN)
+			{
+				double saving = -table.getPeakTransitionDelta(device, current, table.getLowestState(device));
+				if (saving > 0)
+				{
+					score[device] = saving / weight[device];
+					heap[size++] = device;
+				}
+			}
+		}
+		for (int i = size / 2 - 1; i >= 0; i--)
+			LoadShedder.siftDown(heap, size, score, i);
+		
+		// greedy selection
+		while (excess > 0 && size > 0)
+		{
+			// pop the best device
+			int device = heap[0];
+			heap[0] = heap[--size];
+			LoadShedder.siftDown(heap, size, score, 0);
+			
+			int current = states.getState(device);
+			if (current == ConsumptionTable.UNKNOWN)
+				continue;
+			
+			int target = table.getLowestState(device);
+			double saving = -table.getPeakTransitionDelta(device, current, target);
+			
+			// last step: the smallest step down still covering the excess
+			// avoids shedding more than needed
+			if (saving >= excess)
+			{
+				for (int state = 0; state < table.getStateCount(device); state++)
+				{
+					double stateSaving = -table.getPeakTransitionDelta(device, current, state);
+					if (stateSaving >= excess && stateSaving < saving)
+					{
+						saving = stateSaving;
+						target = state;
+					}
+				}
+			}
+			
+			plan.add(new SheddingAction(table.getDeviceURI(device), table.getStateName(device, current), table
+					.getStateName(device, target), saving));
+			excess -= saving;
+		}
+		
+		return plan;
+	}
+	
+	/**
+	 * Get the priority weights of all the devices in the given table
+	 * 
+	 * @param table
+	 *            the {@link ConsumptionTable}
+	 * @return the weights, indexed by device id
+	 */
+	private double[] getWeights(ConsumptionTable table)
+	{
+		int version = this.prioritiesVersion.get();
+		Weights current = this.weights;
+		
+		if (current == null || current.table != table || current.version != version)
+		{
+			double[] values = new double[table.size()];
+			for (int device = 0; device < values.length; device++)
+				values[device] = this.getWeight(table.getDeviceURI(device));
+			
+			current = new Weights(table, version, values);
+			this.weights = current;
+		}
+		
+		return current.values;
+	}
+	
+	/**
+	 * Get the priority weight of a canonical device key
+	 */
+	private double getWeight(String deviceKey)
+	{
+		Double weight = this.priorities.get(deviceKey);
+		
+		return (weight != null) ? weight.doubleValue() : LoadShedder.DEFAULT_PRIORITY;
+	}
+	
+	/**
+	 * Restore the max-heap property from the given position downwards
+	 */
+	private static void siftDown(int[] heap, int size, double[] score, int position)
+	{
+		int item = heap[position];
+		int half = size / 2;
+		while (position < half)
+		{
+			int child = 2 * position + 1;
+			if (child + 1 < size && score[heap[child + 1]] > score[heap[child]])
+				child++;
+			if (score[item] >= score[heap[child]])
+				break;
+			heap[position] = heap[child];
+			position = child;
+		}
+		heap[position] = item;
+	}
+	
+	/**
+	 * The priority weights bound to a consumption table
+	 */
+	private static class Weights
+	{
+		private final ConsumptionTable table;
+		private final int version;
+		private final double[] values;
+		
+		Weights(ConsumptionTable table, int version, double[] values)
+		{
+			this.table = table;
+			this.version = version;
+			this.values = values;
+		}
+	}
+}
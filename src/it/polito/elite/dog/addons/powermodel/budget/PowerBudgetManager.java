@@ -0,0 +1,411 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.budget;
+
+import it.polito.elite.dog.addons.powermodel.api.PowerBudget;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Implementation of the {@link PowerBudget} service. Loads are accounted in mW
+ * by means of atomic counters, so that admission checks only need a device
+ * lookup and a read of the state consumptions in the {@link ConsumptionTable}.
+ * States following a load profile are accounted at the peak of the profile,
+ * so that an admitted switch never exceeds the budget later on.<br/>
+ * The device states and the loads belong to a generation, replaced as a whole
+ * when a new table is bound: operations racing a replacement only touch the
+ * loads of the old generation, and the state changes they apply are carried
+ * to the new one.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class PowerBudgetManager implements PowerBudget
+{
+	// the current device states, bound to a consumption table
+	private AtomicReference<DeviceStates> deviceStates;
+	
+	// the power budget, in mW
+	private volatile long budget;
+	
+	// the pending reservations
+	private ConcurrentMap<Long, Reservation> reservations;
+	
+	// reservation identifiers generator
+	private AtomicLong reservationIds;
+	
+	/**
+	 * Default constructor, with an unlimited budget
+	 */
+	public PowerBudgetManager()
+	{
+		// init
+		this.deviceStates = new AtomicReference<DeviceStates>(new DeviceStates(ConsumptionTable.EMPTY));
+		this.budget = Long.MAX_VALUE;
+		this.reservations = new ConcurrentHashMap<Long, Reservation>();
+		this.reservationIds = new AtomicLong();
+	}
+	
+	/**
+	 * Bind the power budget to a new consumption table, e.g., after a model
+	 * (re)load. The known device states are preserved, while the pending
+	 * reservations lose their allocation: committing one of them applies its
+	 * state to the new generation, releasing it has no further effect.
+	 * 
+	 * @param table
+	 *            the new {@link ConsumptionTable}
+	 */
+	public synchronized void setConsumptionTable(ConsumptionTable table)
+	{
+		DeviceStates previous = this.deviceStates.get();
+		DeviceStates current = new DeviceStates(table);
+		
+		// carry the known states and recompute the committed load
+		long committed = 0;
+		for (int device = 0; device < previous.table.size(); device++)
+		{
+			int state = previous.states.get(device);
+			if (state != ConsumptionTable.UNKNOWN)
+			{
+				int newDevice = table.getDeviceId(previous.table.getDeviceURI(device));
+				if (newDevice != ConsumptionTable.UNKNOWN)
+				{
+					int newState = table.getStateIndex(newDevice, previous.table.getStateName(device, state));
+					current.states.set(newDevice, newState);
+					committed += PowerBudgetManager.toMilliWatt(table.getPeakConsumption(newDevice, newState));
+				}
+			}
+		}
+		
+		current.committedLoad.set(committed);
+		current.allocatedLoad.set(committed);
+		
+		// publish
+		this.deviceStates.set(current);
+	}
+	
+	/**
+	 * @return the current device states
+	 */
+	public DeviceStates getDeviceStates()
+	{
+		return this.deviceStates.get();
+	}
+	
+	@Override
+	public void setBudget(double budget)
+	{
+		if (Double.isInfinite(budget) || budget >= Long.MAX_VALUE / 1000.0)
+			this.budget = Long.MAX_VALUE;
+		else
+			this.budget = PowerBudgetManager.toMilliWatt(budget);
+	}
+	
+	@Override
+	public double getBudget()
+	{
+		long current = this.budget;
+		if (current == Long.MAX_VALUE)
+			return Double.POSITIVE_INFINITY;
+		
+		return PowerBudgetManager.toWatt(current);
+	}
+	
+	@Override
+	public double getCommittedLoad()
+	{
+		return PowerBudgetManager.toWatt(this.deviceStates.get().committedLoad.get());
+	}
+	
+	@Override
+	public double getAllocatedLoad()
+	{
+		return PowerBudgetManager.toWatt(this.deviceStates.get().allocatedLoad.get());
+	}
+	
+	@Override
+	public boolean setDeviceState(String deviceURI, String stateName)
+	{
+		DeviceStates current = this.deviceStates.get();
+		while (true)
+		{
+			int device = current.table.getDeviceId(deviceURI);
+			if (device == ConsumptionTable.UNKNOWN)
+				return false;
+		
+			int state = current.table.getStateIndex(device, stateName);
+			if (state == ConsumptionTable.UNKNOWN)
+				return false;
+		
+			// the device has already switched: apply the resulting delta
+			int previous = current.states.getAndSet(device, state);
+			long delta = PowerBudgetManager.getDelta(current.table, device, previous, state);
+			current.committedLoad.addAndGet(delta);
+			current.allocatedLoad.addAndGet(delta);
+		
+			// a new generation may have been built from the old states
+			DeviceStates latest = this.deviceStates.get();
+			if (latest == current)
+				return true;
+			current = latest;
+		}
+	}
+	
+	@Override
+	public String getDeviceState(String deviceURI)
+	{
+		DeviceStates current = this.deviceStates.get();
+		
+		int device = current.table.getDeviceId(deviceURI);
+		if (device == ConsumptionTable.UNKNOWN)
+			return null;
+		
+		int state = current.states.get(device);
+		if (state == ConsumptionTable.UNKNOWN)
+			return null;
+		
+		return current.table.getStateName(device, state);
+	}
+	
+	@Override
+	public boolean canSwitch(String deviceURI, String stateName)
+	{
+		DeviceStates current = this.deviceStates.get();
+		
+		int device = current.table.getDeviceId(deviceURI);
+		if (device == ConsumptionTable.UNKNOWN)
+			return false;
+		
+		int state = current.table.getStateIndex(device, stateName);
+		if (state == ConsumptionTable.UNKNOWN)
+			return false;
+		
+		long delta = PowerBudgetManager.getDelta(current.table, device, current.states.get(device), state);
+		
+		// lowering the consumption is always allowed
+		return (delta <= 0) || (delta <= this.budget - current.allocatedLoad.get());
+	}
+	
+	@Override
+	public long reserve(String deviceURI, String stateName)
+	{
+		DeviceStates current = this.deviceStates.get();
+		
+		int device = current.table.getDeviceId(deviceURI);
+		if (device == ConsumptionTable.UNKNOWN)
+			return PowerBudget.NO_RESERVATION;
+		
+		int state = current.table.getStateIndex(device, stateName);
+		if (state == ConsumptionTable.UNKNOWN)
+			return PowerBudget.NO_RESERVATION;
+		
+		// one pending reservation per device
+		if (!current.pending.compareAndSet(device, 0, 1))
+			return PowerBudget.NO_RESERVATION;
+		
+		long delta = PowerBudgetManager.getDelta(current.table, device, current.states.get(device), state);
+		
+		// only increments are allocated in advance: decrements take effect
+		// when committed
+		long increment = Math.max(delta, 0);
+		if (increment > 0)
+		{
+			long allocated;
+			do
+			{
+				allocated = current.allocatedLoad.get();
+				if (increment > this.budget - allocated)
+				{
+					// does not fit
+					current.pending.set(device, 0);
+					return PowerBudget.NO_RESERVATION;
+				}
+			} while (!current.allocatedLoad.compareAndSet(allocated, allocated + increment));
+		}
+		
+		long id = this.reservationIds.incrementAndGet();
+		this.reservations.put(id, new Reservation(current, device, state, increment));
+		
+		// the table has been replaced in the meanwhile: the allocation only
+		// counts in the old generation, and the reservation is dropped
+		if (current != this.deviceStates.get())
+		{
+			this.reservations.remove(id);
+			return PowerBudget.NO_RESERVATION;
+		}
+		
+		return id;
+	}
+	
+	@Override
+	public boolean commit(long reservation)
+	{
+		Reservation pending = this.reservations.remove(reservation);
+		if (pending == null)
+			return false;
+		
+		// the device state may have been notified in the meanwhile: apply the
+		// effective delta
+		DeviceStates states = pending.states;
+		int previous = states.states.getAndSet(pending.device, pending.state);
+		long delta = PowerBudgetManager.getDelta(states.table, pending.device, previous, pending.state);
+		states.committedLoad.addAndGet(delta);
+		states.allocatedLoad.addAndGet(delta - pending.increment);
+		states.pending.set(pending.device, 0);
+		
+		// the table has been replaced in the meanwhile: the device switches
+		// anyway, in the new generation too
+		if (states != this.deviceStates.get())
+			this.setDeviceState(states.table.getDeviceURI(pending.device),
+					states.table.getStateName(pending.device, pending.state));
+		
+		return true;
+	}
+	
+	@Override
+	public boolean release(long reservation)
+	{
+		Reservation pending = this.reservations.remove(reservation);
+		if (pending == null)
+			return false;
+		
+		// the allocation belongs to the generation of the reservation
+		pending.states.allocatedLoad.addAndGet(-pending.increment);
+		pending.states.pending.set(pending.device, 0);
+		
+		return true;
+	}
+	
+	/**
+	 * Get the load variation of a device state transition, in mW, with the
+	 * peak consumption of each state
+	 */
+	private static long getDelta(ConsumptionTable table, int device, int fromState, int toState)
+	{
+		return PowerBudgetManager.toMilliWatt(table.getPeakTransitionDelta(device, fromState, toState));
+	}
+	
+	/**
+	 * Convert a value in W to mW
+	 */
+	private static long toMilliWatt(double watt)
+	{
+		return Math.round(watt * 1000.0);
+	}
+	
+	/**
+	 * Convert a value in mW to W
+	 */
+	private static double toWatt(long milliWatt)
+	{
+		return milliWatt / 1000.0;
+	}
+	
+	/**
+	 * The state of each device of a {@link ConsumptionTable}
+	 */
+	public static class DeviceStates
+	{
+		// the consumption table
+		private final ConsumptionTable table;
+		
+		// the current state index of each device
+		private final AtomicIntegerArray states;
+		
+		// 1 if a device has a pending reservation, 0 otherwise
+		private final AtomicIntegerArray pending;
+		
+		// the load committed by the devices in their current state, in mW
+		private final AtomicLong committedLoad;
+		
+		// the committed load plus the increments of pending reservations, in
+		// mW
+		private final AtomicLong allocatedLoad;
+		
+		/**
+		 * Build the (unknown) states of all the devices in the given table
+		 */
+		DeviceStates(ConsumptionTable table)
+		{
+			this.table = table;
+			this.states = new AtomicIntegerArray(table.size());
+			this.pending = new AtomicIntegerArray(table.size());
+			this.committedLoad = new AtomicLong();
+			this.allocatedLoad = new AtomicLong();
+			for (int i = 0; i < table.size(); i++)
+				this.states.set(i, ConsumptionTable.UNKNOWN);
+		}
+		
+		/**
+		 * @return the consumption table
+		 */
+		public ConsumptionTable getTable()
+		{
+			return this.table;
+		}
+		
+		/**
+		 * @return the current state index of a device, or
+		 *         {@link ConsumptionTable#UNKNOWN}
+		 */
+		public int getState(int deviceId)
+		{
+			return this.states.get(deviceId);
+		}
+		
+		/**
+		 * @return the load committed by the devices in their current state,
+		 *         in W
+		 */
+		public double getCommittedLoad()
+		{
+			return PowerBudgetManager.toWatt(this.committedLoad.get());
+		}
+	}
+	
+	/**
+	 * A pending reservation
+	 */
+	private static class Reservation
+	{
+		// the device states the reservation refers to
+		private final DeviceStates states;
+		
+		// the device id
+		private final int device;
+		
+		// the target state index
+		private final int state;
+		
+		// the allocated increment, in mW
+		private final long increment;
+		
+		Reservation(DeviceStates states, int device, int state, long increment)
+		{
+			this.states = states;
+			this.device = device;
+			this.state = state;
+			this.increment = increment;
+		}
+	}
+}
@@ -0,0 +1,399 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.codec;
+
+import it.polito.elite.dog.addons.powermodel.api.DevicePowerConsumption;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+
+import javax.measure.DecimalMeasure;
+import javax.measure.unit.SI;
+
+/**
+ * The decoder of the records written by a {@link ConsumptionEncoder}, reading
+ * directly from a {@link ByteBuffer}. Records are read in the same order they
+ * were written, since device and state ids are defined by their first use in
+ * the session.<br/>
+ * An incomplete record at the end of the buffer is not consumed, so that
+ * streams can be read through a buffer that is compacted and refilled.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class ConsumptionDecoder
+{
+	// the timestamp of records without one
+	public static final long NO_TIMESTAMP = WireFormat.NO_TIMESTAMP;
+	
+	// exact powers of ten, to scale the decoded values
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+	
+	// the URIs of the defined devices, indexed by id
+	private String[] devices;
+	
+	// the number of defined devices
+	private int deviceCount;
+	
+	// the names of the defined states, indexed by id
+	private String[] states;
+	
+	// the number of defined states
+	private int stateCount;
+	
+	// the timestamp of the latest record with one
+	private long lastTimestamp;
+	
+	// true once the end of a stream has been read
+	private boolean ended;
+	
+	// scratch buffer for decoding strings
+	private char[] chars;
+	
+	// the fields of the latest decoded record
+	private String deviceURI;
+	private String stateName;
+	private boolean hasValue;
+	private long unscaled;
+	private int scale;
+	private byte[] bigValue;
+	private long timestamp;
+	
+	/**
+	 * Default constructor
+	 */
+	public ConsumptionDecoder()
+	{
+		this.devices = new String[64];
+		this.states = new String[16];
+		this.chars = new char[256];
+	}
+	
+	/**
+	 * Start a new decoding session, forgetting all the defined ids
+	 */
+	public void reset()
+	{
+		Arrays.fill(this.devices, 0, this.deviceCount, null);
+		Arrays.fill(this.states, 0, this.stateCount, null);
+		this.deviceCount = 0;
+		this.stateCount = 0;
+		this.lastTimestamp = 0;
+		this.ended = false;
+	}
+	
+	/**
+	 * Read the header of a batch or stream, starting a new session
+	 * 
+	 * @param buffer
+	 *            the buffer to read from
+	 * @throws IllegalArgumentException
+	 *             if the buffer does not start with a valid header
+	 */
+	public void getHeader(ByteBuffer buffer)
+	{
+		if (buffer.getInt() != WireFormat.MAGIC)
+			throw new IllegalArgumentException("Not a consumption batch or stream");
+		int version = buffer.get();
+		if (version != WireFormat.VERSION)
+			throw new IllegalArgumentException("Unsupported consumption format version: " + version);
+		
+		this.reset();
+	}
+	
+	/**
+	 * @return true if the end of a stream has been read
+	 */
+	public boolean isEnded()
+	{
+		return this.ended;
+	}
+	
+	/**
+	 * Decode a record and pass it to a visitor
+	 * 
+	 * @param buffer
+	 *            the buffer to read from
+	 * @param visitor
+	 *            the {@link ConsumptionRecordVisitor} to call
+	 * @return true if a record was decoded, false if the buffer holds an
+	 *         incomplete record (left unread) or the end of a stream
+	 */
+	public boolean decode(ByteBuffer buffer, ConsumptionRecordVisitor visitor)
+	{
+		if (!this.read(buffer))
+			return false;
+		
+		visitor.visitRecord(this.deviceURI, this.stateName, this.getPower(), this.timestamp);
+		
+		return true;
+	}
+	
+	/**
+	 * Decode a record
+	 * 
+	 * @param buffer
+	 *            the buffer to read from
+	 * @return the {@link DevicePowerConsumption}, or null if the buffer holds
+	 *         an incomplete record (left unread) or the end of a stream
+	 */
+	public DevicePowerConsumption decode(ByteBuffer buffer)
+	{
+		if (!this.read(buffer))
+			return null;
+		
+		DevicePowerConsumption consumption = new DevicePowerConsumption(this.deviceURI,
+				this.hasValue ? DecimalMeasure.valueOf(this.getValue(), SI.WATT) : null);
+		if (this.timestamp != WireFormat.NO_TIMESTAMP)
+		{
+			Calendar latestUpdate = Calendar.getInstance();
+			latestUpdate.setTimeInMillis(this.timestamp);
+			consumption.setLatestUpdate(latestUpdate);
+		}
+		
+		return consumption;
+	}
+	
+	/**
+	 * Decode a batch written by
+	 * {@link ConsumptionEncoder#encodeBatch(ByteBuffer, List)}
+	 * 
+	 * @param buffer
+	 *            the buffer to read from
+	 * @return the decoded records
+	 * @throws IllegalArgumentException
+	 *             if the buffer does not hold a complete batch
+	 */
+	public List<DevicePowerConsumption> decodeBatch(ByteBuffer buffer)
+	{
+		this.getHeader(buffer);
+		int count = buffer.getInt();
+		
+		List<DevicePowerConsumption> consumptions = new ArrayList<DevicePowerConsumption>(count);
+		for (int i = 0; i < count; i++)
+		{
+			DevicePowerConsumption consumption = this.decode(buffer);
+			if (consumption == null)
+				throw new IllegalArgumentException("Truncated consumption batch");
+			consumptions.add(consumption);
+		}
+		
+		return consumptions;
+	}
+	
+	/**
+	 * Decode a whole stream written by a {@link ConsumptionStreamWriter},
+	 * passing each record to a visitor
+	 * 
+	 * @param channel
+	 *            the channel to read from
+	 * @param buffer
+	 *            the buffer to read through, larger than any record
+	 * @param visitor
+	 *            the {@link ConsumptionRecordVisitor} to call
+	 * @return the number of records decoded
+	 * @throws IOException
+	 *             if the channel cannot be read, or ends before the stream
+	 */
+	public long decodeStream(ReadableByteChannel channel, ByteBuffer buffer, ConsumptionRecordVisitor visitor)
+			throws IOException
+	{
+		buffer.clear();
+		boolean header = false;
+		long count = 0;
+		
+		while (true)
+		{
+			// refill
+			int read = channel.read(buffer);
+			buffer.flip();
+			
+			if (!header && buffer.remaining() >= 5)
+			{
+				this.getHeader(buffer);
+				header = true;
+			}
+			
+			int before = buffer.position();
+			while (header && this.read(buffer))
+			{
+				count++;
+				if (!visitor.visitRecord(this.deviceURI, this.stateName, this.getPower(), this.timestamp))
+					return count;
+			}
+			if (this.ended)
+				return count;
+			if (read < 0)
+				throw new EOFException("Consumption stream ended unexpectedly");
+			
+			// no progress on a full buffer: the record cannot fit
+			if (buffer.position() == before && buffer.limit() == buffer.capacity())
+				throw new IOException("Consumption record larger than the buffer");
+			buffer.compact();
+		}
+	}
+	
+	/**
+	 * Read the next record in the decoder fields, committing the session only
+	 * if the record is complete
+	 */
+	private boolean read(ByteBuffer buffer)
+	{
+		if (this.ended || !buffer.hasRemaining())
+			return false;
+		
+		int start = buffer.position();
+		try
+		{
+			int flags = buffer.get() & 0xFF;
+			if (flags == WireFormat.END)
+			{
+				this.ended = true;
+				return false;
+			}
+			
+			// device and state
+			String device;
+			boolean newDevice = (flags & WireFormat.NEW_DEVICE) != 0;
+			if (newDevice)
+				device = WireFormat.getString(buffer, this.chars);
+			else
+				device = this.devices[this.getId(buffer, this.deviceCount)];
+			
+			String state = null;
+			boolean newState = (flags & WireFormat.NEW_STATE) != 0;
+			if (newState)
+				state = WireFormat.getString(buffer, this.chars);
+			else if ((flags & WireFormat.HAS_STATE) != 0)
+				state = this.states[this.getId(buffer, this.stateCount)];
+			
+			// value
+			this.hasValue = (flags & WireFormat.NO_VALUE) == 0;
+			this.bigValue = null;
+			if (this.hasValue)
+			{
+				this.scale = (int) WireFormat.getZigZag(buffer);
+				if ((flags & WireFormat.BIG_VALUE) != 0)
+				{
+					int length = (int) WireFormat.getVarLong(buffer);
+					if (length > buffer.remaining())
+						throw new BufferUnderflowException();
+					this.bigValue = new byte[length];
+					buffer.get(this.bigValue);
+				}
+				else
+					this.unscaled = WireFormat.getZigZag(buffer);
+			}
+			
+			// timestamp
+			this.timestamp = WireFormat.NO_TIMESTAMP;
+			if ((flags & WireFormat.HAS_TIMESTAMP) != 0)
+				this.timestamp = this.lastTimestamp + WireFormat.getZigZag(buffer);
+			
+			// commit the session
+			if (newDevice)
+				device = this.addDevice(device);
+			if (newState)
+				state = this.addState(state);
+			if (this.timestamp != WireFormat.NO_TIMESTAMP)
+				this.lastTimestamp = this.timestamp;
+			this.deviceURI = device;
+			this.stateName = state;
+			
+			return true;
+		}
+		catch (BufferUnderflowException e)
+		{
+			buffer.position(start);
+			return false;
+		}
+	}
+	
+	/**
+	 * Read the id of a defined device or state
+	 */
+	private int getId(ByteBuffer buffer, int count)
+	{
+		long id = WireFormat.getVarLong(buffer);
+		if (id < 0 || id >= count)
+			throw new IllegalArgumentException("Undefined id in consumption record: " + id);
+		
+		return (int) id;
+	}
+	
+	/**
+	 * Define a new device
+	 */
+	private String addDevice(String deviceURI)
+	{
+		if (this.deviceCount == this.devices.length)
+			this.devices = Arrays.copyOf(this.devices, this.deviceCount * 2);
+		this.devices[this.deviceCount++] = deviceURI;
+		
+		return deviceURI;
+	}
+	
+	/**
+	 * Define a new state
+	 */
+	private String addState(String stateName)
+	{
+		if (this.stateCount == this.states.length)
+			this.states = Arrays.copyOf(this.states, this.stateCount * 2);
+		this.states[this.stateCount++] = stateName;
+		
+		return stateName;
+	}
+	
+	/**
+	 * @return the exact value of the latest decoded record
+	 */
+	private BigDecimal getValue()
+	{
+		if (this.bigValue != null)
+			return new BigDecimal(new BigInteger(this.bigValue), this.scale);
+		
+		return BigDecimal.valueOf(this.unscaled, this.scale);
+	}
+	
+	/**
+	 * @return the power of the latest decoded record, in W
+	 */
+	private double getPower()
+	{
+		if (!this.hasValue)
+			return Double.NaN;
+		
+		// exact operands give a correctly rounded result
+		if (this.bigValue == null && this.scale >= 0 && this.scale < ConsumptionDecoder.POWERS_OF_TEN.length
+				&& Math.abs(this.unscaled) < (1L << 53))
+			return this.unscaled / ConsumptionDecoder.POWERS_OF_TEN[this.scale];
+		
+		return this.getValue().doubleValue();
+	}
+}
@@ -0,0 +1,298 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.codec;
+
+import it.polito.elite.dog.addons.powermodel.api.DevicePowerConsumption;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.measure.DecimalMeasure;
+import javax.measure.quantity.Power;
+import javax.measure.unit.SI;
+
+/**
+ * A compact binary encoder of {@link DevicePowerConsumption} records, writing
+ * directly into a {@link ByteBuffer}. Each record is made of:
+ * <ul>
+ * <li>a flags byte;</li>
+ * <li>the device, either as the varint id given by the encoder or, the first
+ * time it is used, as its URI (the next id is then implied);</li>
+ * <li>optionally, the state, interned in the same way;</li>
+ * <li>optionally, the value in W, as a zigzag varint scale followed by the
+ * zigzag varint unscaled value (or by its two's-complement bytes, if larger
+ * than a long);</li>
+ * <li>optionally, the timestamp, as a zigzag varint difference from the
+ * previous one.</li>
+ * </ul>
+ * Ids and timestamps are relative to the encoding session: the decoder must
+ * read the records in the same order, from the same {@link #reset()}. Time
+ * zones of {@link DevicePowerConsumption#getLatestUpdate()} are not encoded,
+ * and infinite values, which have no decimal form, are encoded as missing.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class ConsumptionEncoder
+{
+	// the ids of the devices already defined, indexed by URI
+	private Map<String, Integer> devices;
+	
+	// the ids of the states already defined, indexed by name
+	private Map<String, Integer> states;
+	
+	// the timestamp of the latest record with one
+	private long lastTimestamp;
+	
+	/**
+	 * Default constructor
+	 */
+	public ConsumptionEncoder()
+	{
+		this.devices = new HashMap<String, Integer>();
+		this.states = new HashMap<String, Integer>();
+	}
+	
+	/**
+	 * Start a new encoding session, forgetting all the defined ids
+	 */
+	public void reset()
+	{
+		this.devices.clear();
+		this.states.clear();
+		this.lastTimestamp = 0;
+	}
+	
+	/**
+	 * Write the header of a batch or stream, starting a new session
+	 * 
+	 * @param buffer
+	 *            the buffer to write to
+	 */
+	public void putHeader(ByteBuffer buffer)
+	{
+		this.reset();
+		buffer.putInt(WireFormat.MAGIC);
+		buffer.put((byte) WireFormat.VERSION);
+	}
+	
+	/**
+	 * Write the marker ending a stream
+	 * 
+	 * @param buffer
+	 *            the buffer to write to
+	 */
+	public void putEnd(ByteBuffer buffer)
+	{
+		buffer.put((byte) WireFormat.END);
+	}
+	
+	/**
+	 * Encode a consumption record
+	 * 
+	 * @param buffer
+	 *            the buffer to write to
+	 * @param consumption
+	 *            the {@link DevicePowerConsumption} to encode
+	 * @return true if the record was written, false if the buffer is full
+	 *         (its position and the session are then left unchanged)
+	 */
+	public boolean encode(ByteBuffer buffer, DevicePowerConsumption consumption)
+	{
+		DecimalMeasure<Power> measure = consumption.getConsumption();
+		BigDecimal value = null;
+		if (measure != null)
+		{
+			if (SI.WATT.equals(measure.getUnit()))
+				value = measure.getValue();
+			else
+			{
+				double watt = measure.doubleValue(SI.WATT);
+				if (!Double.isNaN(watt) && !Double.isInfinite(watt))
+					value = BigDecimal.valueOf(watt);
+			}
+		}
+		
+		long timestamp = (consumption.getLatestUpdate() != null) ? consumption.getLatestUpdate().getTimeInMillis()
+				: WireFormat.NO_TIMESTAMP;
+		
+		return this.encode(buffer, consumption.getDeviceURI(), null, value, timestamp);
+	}
+	
+	/**
+	 * Encode a consumption record from primitive values, without creating any
+	 * object; the power is rounded to the mW
+	 * 
+	 * @param buffer
+	 *            the buffer to write to
+	 * @param deviceURI
+	 *            the URI of the device
+	 * @param stateName
+	 *            the state of the device, or null
+	 * @param power
+	 *            the power consumption, in W, or {@link Double#NaN} if none
+	 *            (infinite powers are encoded as none, too)
+	 * @param timestamp
+	 *            the instant of the consumption, in ms since the epoch, or
+	 *            {@link ConsumptionDecoder#NO_TIMESTAMP} if none
+	 * @return true if the record was written, false if the buffer is full
+	 *         (its position and the session are then left unchanged)
+	 */
+	public boolean encode(ByteBuffer buffer, String deviceURI, String stateName, double power, long timestamp)
+	{
+		if (Double.isNaN(power) || Double.isInfinite(power))
+			return this.encode(buffer, deviceURI, stateName, true, 0, 0, null, timestamp);
+		
+		// powers beyond a long of mW are rounded as decimals
+		if (Math.abs(power * 1000.0) >= Long.MAX_VALUE)
+			return this.encode(buffer, deviceURI, stateName, BigDecimal.valueOf(power).setScale(3,
+					RoundingMode.HALF_UP), timestamp);
+		
+		// mW, without trailing zeros
+		long unscaled = Math.round(power * 1000.0);
+		int scale = 3;
+		while (scale > 0 && unscaled % 10 == 0)
+		{
+			unscaled /= 10;
+			scale--;
+		}
+		
+		return this.encode(buffer, deviceURI, stateName, false, unscaled, scale, null, timestamp);
+	}
+	
+	/**
+	 * Encode a self-contained batch of consumption records: a header, the
+	 * number of records and the records, in a new session
+	 * 
+	 * @param buffer
+	 *            the buffer to write to
+	 * @param consumptions
+	 *            the records to encode
+	 * @return the number of records written, fewer than the given ones if the
+	 *         buffer is full
+	 * @throws BufferOverflowException
+	 *             if not even the header fits in the buffer
+	 */
+	public int encodeBatch(ByteBuffer buffer, List<DevicePowerConsumption> consumptions)
+	{
+		this.putHeader(buffer);
+		
+		// the count is patched at the end
+		int countPosition = buffer.position();
+		buffer.putInt(0);
+		
+		int count = 0;
+		while (count < consumptions.size() && this.encode(buffer, consumptions.get(count)))
+			count++;
+		buffer.putInt(countPosition, count);
+		
+		return count;
+	}
+	
+	/**
+	 * Write a record with a decimal value, or without value if null
+	 */
+	private boolean encode(ByteBuffer buffer, String deviceURI, String stateName, BigDecimal value, long timestamp)
+	{
+		if (value == null)
+			return this.encode(buffer, deviceURI, stateName, true, 0, 0, null, timestamp);
+		if (value.precision() <= 18)
+			return this.encode(buffer, deviceURI, stateName, false, value.unscaledValue().longValue(),
+					value.scale(), null, timestamp);
+		return this.encode(buffer, deviceURI, stateName, false, 0, value.scale(), value.unscaledValue()
+				.toByteArray(), timestamp);
+	}
+	
+	/**
+	 * Write a record, rolling back the buffer if it does not fit
+	 */
+	private boolean encode(ByteBuffer buffer, String deviceURI, String stateName, boolean noValue, long unscaled,
+			int scale, byte[] bigValue, long timestamp)
+	{
+		int start = buffer.position();
+		Integer device = this.devices.get(deviceURI);
+		Integer state = (stateName != null) ? this.states.get(stateName) : null;
+		
+		int flags = 0;
+		if (device == null)
+			flags |= WireFormat.NEW_DEVICE;
+		if (stateName != null)
+			flags |= (state == null) ? WireFormat.HAS_STATE | WireFormat.NEW_STATE : WireFormat.HAS_STATE;
+		if (timestamp != WireFormat.NO_TIMESTAMP)
+			flags |= WireFormat.HAS_TIMESTAMP;
+		if (noValue)
+			flags |= WireFormat.NO_VALUE;
+		else if (bigValue != null)
+			flags |= WireFormat.BIG_VALUE;
+		
+		try
+		{
+			buffer.put((byte) flags);
+			
+			// device and state
+			if (device == null)
+				WireFormat.putString(buffer, deviceURI);
+			else
+				WireFormat.putVarLong(buffer, device.intValue());
+			if (stateName != null)
+			{
+				if (state == null)
+					WireFormat.putString(buffer, stateName);
+				else
+					WireFormat.putVarLong(buffer, state.intValue());
+			}
+			
+			// value
+			if (!noValue)
+			{
+				WireFormat.putZigZag(buffer, scale);
+				if (bigValue != null)
+				{
+					WireFormat.putVarLong(buffer, bigValue.length);
+					buffer.put(bigValue);
+				}
+				else
+					WireFormat.putZigZag(buffer, unscaled);
+			}
+			
+			// timestamp
+			if (timestamp != WireFormat.NO_TIMESTAMP)
+				WireFormat.putZigZag(buffer, timestamp - this.lastTimestamp);
+		}
+		catch (BufferOverflowException e)
+		{
+			buffer.position(start);
+			return false;
+		}
+		
+		// commit the session
+		if (device == null)
+			this.devices.put(deviceURI, this.devices.size());
+		if (stateName != null && state == null)
+			this.states.put(stateName, this.states.size());
+		if (timestamp != WireFormat.NO_TIMESTAMP)
+			this.lastTimestamp = timestamp;
+		
+		return true;
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.codec;
+
+/**
+ * Callback interface used by the {@link ConsumptionDecoder}: records are
+ * passed as primitive values, directly decoded from the buffer, so that
+ * reading a batch or a stream does not create any object per record.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public interface ConsumptionRecordVisitor
+{
+	/**
+	 * Visit a consumption record
+	 * 
+	 * @param deviceURI
+	 *            - the URI of the device (the same instance for all the
+	 *            records of a batch or stream)
+	 * @param stateName
+	 *            - the state of the device, or null if not given
+	 * @param power
+	 *            - the power consumption, in W, or {@link Double#NaN} if not
+	 *            given
+	 * @param timestamp
+	 *            - the instant of the consumption, in ms since the epoch, or
+	 *            {@link ConsumptionDecoder#NO_TIMESTAMP} if not given
+	 * @return false to stop reading
+	 */
+	public boolean visitRecord(String deviceURI, String stateName, double power, long timestamp);
+}
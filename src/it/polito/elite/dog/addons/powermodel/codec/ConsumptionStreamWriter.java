@@ -0,0 +1,150 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.codec;
+
+import it.polito.elite.dog.addons.powermodel.api.DevicePowerConsumption;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A streaming writer of consumption records, e.g., for dumping a whole power
+ * model. Records are encoded by a {@link ConsumptionEncoder} into a single
+ * (direct) buffer, which is written to the channel whenever full, so that the
+ * size of the stream is not bounded by memory. The stream starts with a header
+ * and ends with an end marker, written by {@link #finish()}; it can be read
+ * back with
+ * {@link ConsumptionDecoder#decodeStream(java.nio.channels.ReadableByteChannel, ByteBuffer, ConsumptionRecordVisitor)}
+ * .
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class ConsumptionStreamWriter
+{
+	// the default size of the buffer, in bytes
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+	
+	// the channel to write to
+	private WritableByteChannel channel;
+	
+	// the buffer the records are encoded into
+	private ByteBuffer buffer;
+	
+	// the record encoder
+	private ConsumptionEncoder encoder;
+	
+	// the number of records written
+	private long count;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param channel
+	 *            the channel to write to, left open by {@link #finish()}
+	 * @param bufferSize
+	 *            the size of the buffer, in bytes, larger than any record
+	 */
+	public ConsumptionStreamWriter(WritableByteChannel channel, int bufferSize)
+	{
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocateDirect(bufferSize);
+		this.encoder = new ConsumptionEncoder();
+		this.encoder.putHeader(this.buffer);
+	}
+	
+	/**
+	 * Write a consumption record from primitive values; the power is rounded
+	 * to the mW
+	 * 
+	 * @param deviceURI
+	 *            the URI of the device
+	 * @param stateName
+	 *            the state of the device, or null
+	 * @param power
+	 *            the power consumption, in W, or {@link Double#NaN} if none
+	 * @param timestamp
+	 *            the instant of the consumption, in ms since the epoch, or
+	 *            {@link ConsumptionDecoder#NO_TIMESTAMP} if none
+	 * @throws IOException
+	 *             if the channel cannot be written
+	 */
+	public void write(String deviceURI, String stateName, double power, long timestamp) throws IOException
+	{
+		if (!this.encoder.encode(this.buffer, deviceURI, stateName, power, timestamp))
+		{
+			this.flush();
+			if (!this.encoder.encode(this.buffer, deviceURI, stateName, power, timestamp))
+				throw new IllegalArgumentException("Consumption record larger than the buffer");
+		}
+		this.count++;
+	}
+	
+	/**
+	 * Write a consumption record
+	 * 
+	 * @param consumption
+	 *            the {@link DevicePowerConsumption} to write
+	 * @throws IOException
+	 *             if the channel cannot be written
+	 */
+	public void write(DevicePowerConsumption consumption) throws IOException
+	{
+		if (!this.encoder.encode(this.buffer, consumption))
+		{
+			this.flush();
+			if (!this.encoder.encode(this.buffer, consumption))
+				throw new IllegalArgumentException("Consumption record larger than the buffer");
+		}
+		this.count++;
+	}
+	
+	/**
+	 * Write the end marker and all the buffered records
+	 * 
+	 * @throws IOException
+	 *             if the channel cannot be written
+	 */
+	public void finish() throws IOException
+	{
+		if (!this.buffer.hasRemaining())
+			this.flush();
+		this.encoder.putEnd(this.buffer);
+		this.flush();
+	}
+	
+	/**
+	 * @return the number of records written
+	 */
+	public long getCount()
+	{
+		return this.count;
+	}
+	
+	/**
+	 * Write the buffered bytes to the channel
+	 */
+	private void flush() throws IOException
+	{
+		this.buffer.flip();
+		while (this.buffer.hasRemaining())
+			this.channel.write(this.buffer);
+		this.buffer.clear();
+	}
+}
@@ -0,0 +1,213 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.codec;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * The constants and the primitive encodings shared by the
+ * {@link ConsumptionEncoder} and the {@link ConsumptionDecoder}. Integers are
+ * written as base-128 varints (signed ones zigzag-encoded first), strings as
+ * their UTF-8 length followed by their UTF-8 bytes; all of them are read and
+ * written directly from and to a {@link ByteBuffer}.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+final class WireFormat
+{
+	// the magic number of batches and streams
+	static final int MAGIC = 0x44504352;
+	
+	// the version of the format
+	static final int VERSION = 1;
+	
+	// record flag: the device is defined inline, with its URI
+	static final int NEW_DEVICE = 0x01;
+	
+	// record flag: the record carries a state
+	static final int HAS_STATE = 0x02;
+	
+	// record flag: the state is defined inline, with its name
+	static final int NEW_STATE = 0x04;
+	
+	// record flag: the record carries a timestamp
+	static final int HAS_TIMESTAMP = 0x08;
+	
+	// record flag: the unscaled value does not fit a long
+	static final int BIG_VALUE = 0x10;
+	
+	// record flag: the record carries no value
+	static final int NO_VALUE = 0x20;
+	
+	// the flags byte ending a stream
+	static final int END = 0x80;
+	
+	// the timestamp of records without one
+	static final long NO_TIMESTAMP = Long.MIN_VALUE;
+	
+	private WireFormat()
+	{
+		// constants and static methods only
+	}
+	
+	/**
+	 * Write an unsigned varint
+	 */
+	static void putVarLong(ByteBuffer buffer, long value)
+	{
+		while ((value & ~0x7FL) != 0)
+		{
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+	
+	/**
+	 * Read an unsigned varint
+	 * 
+	 * @throws BufferUnderflowException
+	 *             if the buffer ends before the varint
+	 */
+	static long getVarLong(ByteBuffer buffer)
+	{
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7)
+		{
+			byte b = buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0)
+				return value;
+		}
+		
+		throw new IllegalArgumentException("Malformed varint");
+	}
+	
+	/**
+	 * Write a signed varint
+	 */
+	static void putZigZag(ByteBuffer buffer, long value)
+	{
+		WireFormat.putVarLong(buffer, (value << 1) ^ (value >> 63));
+	}
+	
+	/**
+	 * Read a signed varint
+	 */
+	static long getZigZag(ByteBuffer buffer)
+	{
+		long value = WireFormat.getVarLong(buffer);
+		
+		return (value >>> 1) ^ -(value & 1);
+	}
+	
+	/**
+	 * Write a string as its UTF-8 length and bytes
+	 */
+	static void putString(ByteBuffer buffer, String value)
+	{
+		int length = value.length();
+		
+		// length in bytes
+		int bytes = 0;
+		for (int i = 0; i < length; i++)
+		{
+			char c = value.charAt(i);
+			if (c < 0x80)
+				bytes++;
+			else if (c < 0x800)
+				bytes += 2;
+			else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1)))
+			{
+				bytes += 4;
+				i++;
+			}
+			else
+				bytes += 3;
+		}
+		WireFormat.putVarLong(buffer, bytes);
+		
+		// bytes
+		for (int i = 0; i < length; i++)
+		{
+			char c = value.charAt(i);
+			if (c < 0x80)
+				buffer.put((byte) c);
+			else if (c < 0x800)
+			{
+				buffer.put((byte) (0xC0 | (c >> 6)));
+				buffer.put((byte) (0x80 | (c & 0x3F)));
+			}
+			else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1)))
+			{
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				buffer.put((byte) (0xF0 | (codePoint >> 18)));
+				buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+				buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+				buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+			}
+			else
+			{
+				buffer.put((byte) (0xE0 | (c >> 12)));
+				buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+				buffer.put((byte) (0x80 | (c & 0x3F)));
+			}
+		}
+	}
+	
+	/**
+	 * Read a string written by {@link #putString(ByteBuffer, String)}
+	 * 
+	 * @param chars
+	 *            a scratch array, used if large enough
+	 * @return the string
+	 */
+	static String getString(ByteBuffer buffer, char[] chars)
+	{
+		long bytes = WireFormat.getVarLong(buffer);
+		if (bytes > buffer.remaining())
+			throw new BufferUnderflowException();
+		
+		int length = (int) bytes;
+		if (chars.length < length)
+			chars = new char[length];
+		
+		int count = 0;
+		int end = buffer.position() + length;
+		while (buffer.position() < end)
+		{
+			int b = buffer.get() & 0xFF;
+			if (b < 0x80)
+				chars[count++] = (char) b;
+			else if (b < 0xE0)
+				chars[count++] = (char) (((b & 0x1F) << 6) | (buffer.get() & 0x3F));
+			else if (b < 0xF0)
+				chars[count++] = (char) (((b & 0x0F) << 12) | ((buffer.get() & 0x3F) << 6) | (buffer.get() & 0x3F));
+			else
+			{
+				int codePoint = ((b & 0x07) << 18) | ((buffer.get() & 0x3F) << 12) | ((buffer.get() & 0x3F) << 6)
+						| (buffer.get() & 0x3F);
+				count += Character.toChars(codePoint, chars, count);
+			}
+		}
+		
+		return new String(chars, 0, count);
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Run a batch of independent tasks in parallel on a shared executor. The
+ * calling thread takes part in the batch: it runs, in order, every task not
+ * yet started by the executor, and only waits for the ones already running.
+ * Therefore a batch always completes, even when the shared pool is
+ * saturated, shut down, or busy with the very thread waiting for the batch.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class ParallelTasks
+{
+	/**
+	 * Not instantiable
+	 */
+	private ParallelTasks()
+	{
+	}
+	
+	/**
+	 * Run all the given tasks and collect their results
+	 * 
+	 * @param executor
+	 *            the shared {@link Executor}, null for running all the tasks
+	 *            on the calling thread
+	 * @param tasks
+	 *            the tasks to run
+	 * @return the results of the tasks, in the same order
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted while waiting
+	 * @throws ExecutionException
+	 *             if a task fails; the tasks not yet completed are cancelled
+	 */
+	public static <T> List<T> invokeAll(Executor executor, List<? extends Callable<T>> tasks)
+			throws InterruptedException, ExecutionException
+	{
+		List<FutureTask<T>> futures = new ArrayList<FutureTask<T>>(tasks.size());
+		for (Callable<T> task : tasks)
+			futures.add(new FutureTask<T>(task));
+		
+		// the first task is always run by the calling thread
+		if (executor != null)
+		{
+			try
+			{
+				for (int i = 1; i < futures.size(); i++)
+					executor.execute(futures.get(i));
+			}
+			catch (RejectedExecutionException e)
+			{
+				// the remaining tasks are run by the calling thread
+			}
+		}
+		
+		List<T> results = new ArrayList<T>(futures.size());
+		try
+		{
+			for (FutureTask<T> future : futures)
+			{
+				// no-op if already started by the executor
+				future.run();
+				results.add(future.get());
+			}
+		}
+		finally
+		{
+			if (results.size() < futures.size())
+			{
+				for (FutureTask<T> future : futures)
+					future.cancel(true);
+			}
+		}
+		
+		return results;
+	}
+}
@@ -0,0 +1,198 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.concurrent;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An executor running its tasks one at a time, in submission order, on the
+ * threads of a shared executor: background activities needing a single
+ * thread (e.g., the log compaction or the ontology updates) borrow one
+ * thread of the bundle pool instead of owning one. Each task is submitted to
+ * the shared executor on its own, so that a long queue of serial tasks does
+ * not starve the other users of the pool.<br/>
+ * Shutting down a serial executor never shuts down the shared one.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class SerialExecutor extends AbstractExecutorService
+{
+	// the shared executor running the tasks
+	private final Executor executor;
+	
+	// the tasks waiting for their turn
+	private final Queue<Runnable> tasks;
+	
+	// the thread running the current task, if any
+	private Thread runner;
+	
+	// true while a task is submitted to the shared executor or running
+	private boolean active;
+	
+	// true once shut down
+	private boolean shutdown;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param executor
+	 *            the shared {@link Executor} running the tasks
+	 */
+	public SerialExecutor(Executor executor)
+	{
+		if (executor == null)
+			throw new IllegalArgumentException("A shared executor is needed");
+		
+		this.executor = executor;
+		this.tasks = new LinkedList<Runnable>();
+	}
+	
+	@Override
+	public synchronized void execute(Runnable task)
+	{
+		if (this.shutdown)
+			throw new RejectedExecutionException("The serial executor has been shut down");
+		
+		this.tasks.add(task);
+		if (!this.active)
+			this.next();
+	}
+	
+	/**
+	 * Submit the next task to the shared executor, if any; called holding
+	 * the monitor
+	 */
+	private void next()
+	{
+		final Runnable task = this.tasks.poll();
+		this.active = (task != null);
+		if (task == null)
+		{
+			this.notifyAll();
+			return;
+		}
+		
+		try
+		{
+			this.executor.execute(new Runnable() {
+				
+				@Override
+				public void run()
+				{
+					SerialExecutor.this.run(task);
+				}
+			});
+		}
+		catch (RejectedExecutionException e)
+		{
+			// the shared executor is shutting down: drop the queued tasks
+			this.tasks.clear();
+			this.active = false;
+			this.shutdown = true;
+			this.notifyAll();
+		}
+	}
+	
+	/**
+	 * Run a task on the current (shared) thread, then submit the next one
+	 */
+	private void run(Runnable task)
+	{
+		synchronized (this)
+		{
+			this.runner = Thread.currentThread();
+		}
+		
+		try
+		{
+			task.run();
+		}
+		catch (RuntimeException e)
+		{
+			// as in a thread pool, a failing task does not stop the next ones
+		}
+		finally
+		{
+			synchronized (this)
+			{
+				this.runner = null;
+				
+				// do not leak an interruption to the next user of the thread
+				Thread.interrupted();
+				this.next();
+			}
+		}
+	}
+	
+	@Override
+	public synchronized void shutdown()
+	{
+		this.shutdown = true;
+		if (!this.active)
+			this.notifyAll();
+	}
+	
+	@Override
+	public synchronized List<Runnable> shutdownNow()
+	{
+		this.shutdown = true;
+		List<Runnable> dropped = new ArrayList<Runnable>(this.tasks);
+		this.tasks.clear();
+		if (this.runner != null)
+			this.runner.interrupt();
+		if (!this.active)
+			this.notifyAll();
+		
+		return dropped;
+	}
+	
+	@Override
+	public synchronized boolean isShutdown()
+	{
+		return this.shutdown;
+	}
+	
+	@Override
+	public synchronized boolean isTerminated()
+	{
+		return this.shutdown && !this.active;
+	}
+	
+	@Override
+	public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (!this.isTerminated())
+		{
+			long left = deadline - System.nanoTime();
+			if (left <= 0)
+				return false;
+			TimeUnit.NANOSECONDS.timedWait(this, left);
+		}
+		
+		return true;
+	}
+}
@@ -0,0 +1,309 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.device;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The consumption envelope of the household: the lowest and highest power
+ * that each device can draw across its states and, summing them up, the
+ * baseload and the theoretical peak of the whole household. The envelope is
+ * computed once for each {@link ConsumptionTable} and then updated
+ * incrementally, one device at a time, as the best consumption of its states
+ * changes (e.g., on meter readings). States with a load profile are bounded by
+ * the peak of the profile. Sums are kept as integer mW, so that they
+ * do not drift over many updates.<br/>
+ * Updates are lock-free: they only store the new consumption of the state and
+ * mark its device as changed, while the bounds of the changed devices are
+ * recomputed lazily by the readers.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class ConsumptionEnvelope
+{
+	// the state consumptions of the current table
+	private volatile Generation generation;
+	
+	// true if some device has changed since the bounds were last computed
+	private volatile boolean stale;
+	
+	// the lowest consumption of each device, in mW
+	private long[] minimum;
+	
+	// the highest consumption of each device, in mW
+	private long[] maximum;
+	
+	// the sum of the lowest consumptions, in mW
+	private long baseload;
+	
+	// the sum of the highest consumptions, in mW
+	private long peak;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param table
+	 *            the {@link ConsumptionTable} of the household
+	 */
+	public ConsumptionEnvelope(ConsumptionTable table)
+	{
+		double[] statePowers = new double[table.getSlotCount()];
+		for (int device = 0; device < table.size(); device++)
+			for (int state = 0; state < table.getStateCount(device); state++)
+				statePowers[table.getSlot(device, state)] = table.getPeakConsumption(device, state);
+		
+		this.setConsumptionTable(table, statePowers);
+	}
+	
+	/**
+	 * Compute the envelope of a new consumption table, e.g., after a model
+	 * (re)load
+	 * 
+	 * @param table
+	 *            the new {@link ConsumptionTable}
+	 * @param statePowers
+	 *            the best consumption of each state, in W, indexed by state
+	 *            slot
+	 */
+	public synchronized void setConsumptionTable(ConsumptionTable table, double[] statePowers)
+	{
+		Generation next = new Generation(table);
+		for (int slot = 0; slot < statePowers.length; slot++)
+			next.statePower.set(slot, ConsumptionEnvelope.toMilliWatt(statePowers[slot]));
+		
+		this.minimum = new long[table.size()];
+		this.maximum = new long[table.size()];
+		this.baseload = 0;
+		this.peak = 0;
+		this.generation = next;
+		this.stale = false;
+		
+		for (int device = 0; device < table.size(); device++)
+		{
+			this.computeBounds(next, device);
+			this.baseload += this.minimum[device];
+			this.peak += this.maximum[device];
+		}
+	}
+	
+	/**
+	 * Update the best consumption of a device state
+	 * 
+	 * @param table
+	 *            the {@link ConsumptionTable} the ids refer to
+	 * @param device
+	 *            the device id
+	 * @param state
+	 *            the state index
+	 * @param power
+	 *            the new best consumption, in W
+	 * @return true if the table is still the current one
+	 */
+	public boolean update(ConsumptionTable table, int device, int state, double power)
+	{
+		Generation current = this.generation;
+		if (current.table != table)
+			return false;
+		
+		long milliWatt = ConsumptionEnvelope.toMilliWatt(power);
+		if (current.statePower.getAndSet(table.getSlot(device, state), milliWatt) != milliWatt)
+		{
+			// the flags are set after the power, and cleared before reading it
+			current.changed.set(device, 1);
+			this.stale = true;
+		}
+		
+		// the update is lost if the table has been replaced in the meanwhile
+		return this.generation == current;
+	}
+	
+	/**
+	 * Recompute the bounds of the devices changed since the last call
+	 */
+	private void refresh()
+	{
+		if (!this.stale)
+			return;
+		this.stale = false;
+		
+		Generation current = this.generation;
+		for (int device = 0; device < this.minimum.length; device++)
+		{
+			if (current.changed.getAndSet(device, 0) != 0)
+			{
+				long previousMinimum = this.minimum[device];
+				long previousMaximum = this.maximum[device];
+				this.computeBounds(current, device);
+				this.baseload += this.minimum[device] - previousMinimum;
+				this.peak += this.maximum[device] - previousMaximum;
+			}
+		}
+	}
+	
+	/**
+	 * Compute the lowest and highest consumption of a device over its states
+	 */
+	private void computeBounds(Generation current, int device)
+	{
+		int states = current.table.getStateCount(device);
+		if (states == 0)
+		{
+			this.minimum[device] = 0;
+			this.maximum[device] = 0;
+			return;
+		}
+		
+		long low = Long.MAX_VALUE;
+		long high = Long.MIN_VALUE;
+		for (int state = 0; state < states; state++)
+		{
+			long power = current.statePower.get(current.table.getSlot(device, state));
+			low = Math.min(low, power);
+			high = Math.max(high, power);
+		}
+		
+		this.minimum[device] = low;
+		this.maximum[device] = high;
+	}
+	
+	/**
+	 * Get the lowest consumption of a device across its states
+	 * 
+	 * @param deviceURI
+	 *            the URI of the device
+	 * @return the lowest consumption, in W, or {@link Double#NaN} if the
+	 *         device is unknown or has no states
+	 */
+	public synchronized double getMinimum(String deviceURI)
+	{
+		ConsumptionTable table = this.generation.table;
+		int device = table.getDeviceId(deviceURI);
+		if (device == ConsumptionTable.UNKNOWN || table.getStateCount(device) == 0)
+			return Double.NaN;
+		
+		this.refresh();
+		return this.minimum[device] / 1000.0;
+	}
+	
+	/**
+	 * Get the highest consumption of a device across its states
+	 * 
+	 * @param deviceURI
+	 *            the URI of the device
+	 * @return the highest consumption, in W, or {@link Double#NaN} if the
+	 *         device is unknown or has no states
+	 */
+	public synchronized double getMaximum(String deviceURI)
+	{
+		ConsumptionTable table = this.generation.table;
+		int device = table.getDeviceId(deviceURI);
+		if (device == ConsumptionTable.UNKNOWN || table.getStateCount(device) == 0)
+			return Double.NaN;
+		
+		this.refresh();
+		return this.maximum[device] / 1000.0;
+	}
+	
+	/**
+	 * Copy the lowest and highest consumption of all the devices in the given
+	 * buffers
+	 * 
+	 * @param minimums
+	 *            the buffer of the lowest consumptions, in W, indexed by
+	 *            device id
+	 * @param maximums
+	 *            the buffer of the highest consumptions, in W, indexed by
+	 *            device id
+	 * @return the {@link ConsumptionTable} the device ids refer to, or null
+	 *         if the buffers are smaller than the table
+	 */
+	public synchronized ConsumptionTable getBounds(double[] minimums, double[] maximums)
+	{
+		if (minimums.length < this.minimum.length || maximums.length < this.maximum.length)
+			return null;
+		
+		this.refresh();
+		for (int device = 0; device < this.minimum.length; device++)
+		{
+			minimums[device] = this.minimum[device] / 1000.0;
+			maximums[device] = this.maximum[device] / 1000.0;
+		}
+		
+		return this.generation.table;
+	}
+	
+	/**
+	 * @return the consumption table the envelope refers to
+	 */
+	public ConsumptionTable getConsumptionTable()
+	{
+		return this.generation.table;
+	}
+	
+	/**
+	 * @return the baseload of the household, i.e., the sum of the lowest
+	 *         consumption of each device, in W
+	 */
+	public synchronized double getBaseload()
+	{
+		this.refresh();
+		return this.baseload / 1000.0;
+	}
+	
+	/**
+	 * @return the theoretical peak of the household, i.e., the sum of the
+	 *         highest consumption of each device, in W
+	 */
+	public synchronized double getPeak()
+	{
+		this.refresh();
+		return this.peak / 1000.0;
+	}
+	
+	/**
+	 * Convert a power in W to an integer number of mW
+	 */
+	private static long toMilliWatt(double power)
+	{
+		return Double.isNaN(power) ? 0 : Math.round(power * 1000.0);
+	}
+	
+	/**
+	 * The state consumptions of a consumption table, written without locks
+	 */
+	private static class Generation
+	{
+		// the consumption table
+		private final ConsumptionTable table;
+		
+		// the best consumption of each state, indexed by state slot, in mW
+		private final AtomicLongArray statePower;
+		
+		// 1 for each device whose bounds have to be recomputed
+		private final AtomicIntegerArray changed;
+		
+		Generation(ConsumptionTable table)
+		{
+			this.table = table;
+			this.statePower = new AtomicLongArray(table.getSlotCount());
+			this.changed = new AtomicIntegerArray(table.size());
+		}
+	}
+}
@@ -0,0 +1,606 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.device;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.measure.DecimalMeasure;
+import javax.measure.quantity.Power;
+import javax.measure.unit.SI;
+
+/**
+ * The class ConsumptionTable is an immutable, array-based snapshot of the
+ * {@link PowerDevice} map built by the PowerModel bundle. Each device is given
+ * a dense integer id and each of its states a dense index, so that the best
+ * consumption of a state (in Watt) and the consumption delta of any state
+ * transition can be read without lookups in the {@link PowerState} sets.
+ * <br/>
+ * A new table is built every time the device map is (re)loaded: holders of a
+ * table should always refer to the latest one published by the power model.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class ConsumptionTable
+{
+	// constant used for an unknown device or state
+	public static final int UNKNOWN = -1;
+	
+	// the table without any device, bound before the first model load
+	public static final ConsumptionTable EMPTY = ConsumptionTable.build(new HashMap<String, PowerDevice>());
+	
+	// device URI to device id
+	private final Map<String, Integer> deviceIds;
+	
+	// device URIs, indexed by device id
+	private final String[] deviceURIs;
+	
+	// state names for each device, indexed by device id and state index
+	private final String[][] stateNames;
+	
+	// the best consumption (in W) of each device state
+	private final double[][] bestConsumptions;
+	
+	// the precomputed consumption delta (in W) of each state transition,
+	// stored as a flattened (from * states + to) matrix for each device
+	private final double[][] transitionDeltas;
+	
+	// the peak consumption (in W) of each device state, i.e., the best
+	// consumption for the devices without any load profile
+	private final double[][] peakConsumptions;
+	
+	// the precomputed peak consumption delta (in W) of each state transition,
+	// stored like the transition deltas
+	private final double[][] peakDeltas;
+	
+	// the load profile of each device state, null for the devices without
+	// any
+	private final LoadProfile[][] loadProfiles;
+	
+	// the index of the lowest consumption state of each device
+	private final int[] lowestStates;
+	
+	// the first state slot of each device, to address per-state data in
+	// flat arrays
+	private final int[] slotOffsets;
+	
+	// the total number of device states
+	private final int slotCount;
+	
+	// room name to room id
+	private final Map<String, Integer> roomIds;
+	
+	// room names, indexed by room id
+	private final String[] roomNames;
+	
+	// the room id of each device, UNKNOWN if not known
+	private final int[] deviceRooms;
+	
+	/**
+	 * Build a table from a set of arrays; use
+	 * {@link ConsumptionTable#build(Map)} to get a new table.
+	 */
+	private ConsumptionTable(Map<String, Integer> deviceIds, String[] deviceURIs, String[][] stateNames,
+			double[][] bestConsumptions, LoadProfile[][] loadProfiles, Map<String, Integer> roomIds, String[] roomNames,
+			int[] deviceRooms)
+	{
+		this.deviceIds = deviceIds;
+		this.deviceURIs = deviceURIs;
+		this.stateNames = stateNames;
+		this.bestConsumptions = bestConsumptions;
+		this.loadProfiles = loadProfiles;
+		this.roomIds = roomIds;
+		this.roomNames = roomNames;
+		this.deviceRooms = deviceRooms;
+		this.transitionDeltas = new double[deviceURIs.length][];
+		this.peakConsumptions = new double[deviceURIs.length][];
+		this.peakDeltas = new double[deviceURIs.length][];
+		this.lowestStates = new int[deviceURIs.length];
+		this.slotOffsets = new int[deviceURIs.length];
+		int slots = 0;
+		
+		// precompute all the transition deltas
+		for (int device = 0; device < deviceURIs.length; device++)
+		{
+			double[] consumptions = bestConsumptions[device];
+			int states = consumptions.length;
+			double[] deltas = new double[states * states];
+			int lowest = ConsumptionTable.UNKNOWN;
+			for (int from = 0; from < states; from++)
+			{
+				for (int to = 0; to < states; to++)
+					deltas[from * states + to] = consumptions[to] - consumptions[from];
+				
+				if (lowest == ConsumptionTable.UNKNOWN || consumptions[from] < consumptions[lowest])
+					lowest = from;
+			}
+			this.transitionDeltas[device] = deltas;
+			
+			// devices without any profile peak at their best consumption
+			double[] peaks = consumptions;
+			double[] peakDeltas = deltas;
+			if (loadProfiles[device] != null)
+			{
+				peaks = new double[states];
+				for (int state = 0; state < states; state++)
+				{
+					LoadProfile profile = loadProfiles[device][state];
+					peaks[state] = (profile != null) ? Math.round(profile.getPeak() * 1000.0) / 1000.0
+							: consumptions[state];
+				}
+				peakDeltas = new double[states * states];
+				for (int from = 0; from < states; from++)
+					for (int to = 0; to < states; to++)
+						peakDeltas[from * states + to] = peaks[to] - peaks[from];
+			}
+			this.peakConsumptions[device] = peaks;
+			this.peakDeltas[device] = peakDeltas;
+			this.lowestStates[device] = lowest;
+			this.slotOffsets[device] = slots;
+			slots += states;
+		}
+		this.slotCount = slots;
+	}
+	
+	/**
+	 * Build a new table from the given device map
+	 * 
+	 * @param devices
+	 *            the map of {@link PowerDevice}, indexed by device URI
+	 * @return the corresponding {@link ConsumptionTable}
+	 */
+	public static ConsumptionTable build(Map<String, PowerDevice> devices)
+	{
+		return ConsumptionTable.build(devices, null);
+	}
+	
+	/**
+	 * Build a new table from the given device map, resolving device ids also
+	 * by the aliases of a key index (e.g., full IRIs and prefixed names)
+	 * 
+	 * @param devices
+	 *            the map of {@link PowerDevice}, indexed by device URI
+	 * @param keys
+	 *            the {@link DeviceKeyIndex} of the devices, or null
+	 * @return the corresponding {@link ConsumptionTable}
+	 */
+	public static ConsumptionTable build(Map<String, PowerDevice> devices, DeviceKeyIndex keys)
+	{
+		// take a snapshot of the device map, which may be concurrently updated
+		List<Map.Entry<String, PowerDevice>> entries = new ArrayList<Map.Entry<String, PowerDevice>>(
+				devices.entrySet());
+		
+		// init
+		int size = entries.size();
+		Map<String, Integer> deviceIds = new HashMap<String, Integer>(size * 2);
+		String[] deviceURIs = new String[size];
+		String[][] stateNames = new String[size][];
+		double[][] bestConsumptions = new double[size][];
+		LoadProfile[][] loadProfiles = new LoadProfile[size][];
+		Map<String, Integer> roomIds = new HashMap<String, Integer>();
+		List<String> roomNames = new ArrayList<String>();
+		int[] deviceRooms = new int[size];
+		
+		int id = 0;
+		for (Map.Entry<String, PowerDevice> entry : entries)
+		{
+			PowerState[] states = entry.getValue().getStateConsumptions().toArray(new PowerState[0]);
+			
+			deviceIds.put(entry.getKey(), id);
+			deviceURIs[id] = entry.getKey();
+			
+			// assign the room id
+			String room = entry.getValue().getRoom();
+			deviceRooms[id] = ConsumptionTable.UNKNOWN;
+			if (room != null)
+			{
+				Integer roomId = roomIds.get(room);
+				if (roomId == null)
+				{
+					roomId = roomNames.size();
+					roomIds.put(room, roomId);
+					roomNames.add(room);
+				}
+				deviceRooms[id] = roomId.intValue();
+			}
+			
+			stateNames[id] = new String[states.length];
+			bestConsumptions[id] = new double[states.length];
+			
+			for (int i = 0; i < states.length; i++)
+			{
+				stateNames[id][i] = states[i].getStateName();
+				bestConsumptions[id][i] = ConsumptionTable.getBestConsumption(states[i]);
+				
+				// profiles are rare: devices without any have no array
+				if (states[i].hasLoadProfile())
+				{
+					if (loadProfiles[id] == null)
+						loadProfiles[id] = new LoadProfile[states.length];
+					loadProfiles[id][i] = states[i].getLoadProfile();
+				}
+			}
+			
+			id++;
+		}
+		
+		// the aliases share the id of their device
+		if (keys != null)
+		{
+			for (Map.Entry<String, String> alias : keys.getAliases().entrySet())
+			{
+				Integer aliasId = deviceIds.get(alias.getValue());
+				if (aliasId != null && !deviceIds.containsKey(alias.getKey()))
+					deviceIds.put(alias.getKey(), aliasId);
+			}
+		}
+		
+		return new ConsumptionTable(deviceIds, deviceURIs, stateNames, bestConsumptions, loadProfiles, roomIds,
+				roomNames.toArray(new String[roomNames.size()]), deviceRooms);
+	}
+	
+	/**
+	 * Get the best consumption of a state, in Watt, i.e., the highest value
+	 * among its typical, nominal and actual consumptions (the same rule
+	 * adopted by the PowerModel to answer the best consumption requests). The
+	 * value is rounded to the mW, so that sums and differences of table
+	 * entries can be accounted as integer mW without drifting.
+	 * 
+	 * @param state
+	 *            the {@link PowerState} to evaluate
+	 * @return the best consumption in W, 0 if the state has no consumption
+	 */
+	public static double getBestConsumption(PowerState state)
+	{
+		double best = 0.0;
+		
+		if (state.hasTypicalConsumption())
+			best = Math.max(best, ConsumptionTable.toWatt(state.getTypicalConsumption()));
+		if (state.hasNominalConsumption())
+			best = Math.max(best, ConsumptionTable.toWatt(state.getNominalConsumption()));
+		if (state.hasActualConsumption())
+			best = Math.max(best, ConsumptionTable.toWatt(state.getActualConsumption()));
+		
+		return Math.round(best * 1000.0) / 1000.0;
+	}
+	
+	/**
+	 * Convert a power measure in Watt
+	 * 
+	 * @param consumption
+	 *            the power measure to convert
+	 * @return its value in W, 0 if null
+	 */
+	public static double toWatt(DecimalMeasure<Power> consumption)
+	{
+		if (consumption == null)
+			return 0.0;
+		
+		return consumption.doubleValue(SI.WATT);
+	}
+	
+	/**
+	 * @return the number of devices in the table
+	 */
+	public int size()
+	{
+		return this.deviceURIs.length;
+	}
+	
+	/**
+	 * Get the id of a given device
+	 * 
+	 * @param deviceURI
+	 *            the URI of the device
+	 * @return the device id, or {@link ConsumptionTable#UNKNOWN} if the device
+	 *         has no declared power consumption
+	 */
+	public int getDeviceId(String deviceURI)
+	{
+		Integer id = this.deviceIds.get(deviceURI);
+		
+		return (id != null) ? id.intValue() : ConsumptionTable.UNKNOWN;
+	}
+	
+	/**
+	 * Get all the keys resolved by {@link ConsumptionTable#getDeviceId}: the
+	 * device URIs and, if the table was built with a {@link DeviceKeyIndex},
+	 * their aliases
+	 * 
+	 * @return an unmodifiable set of the device keys
+	 */
+	public Set<String> getDeviceKeys()
+	{
+		return Collections.unmodifiableSet(this.deviceIds.keySet());
+	}
+	
+	/**
+	 * @return the URI of the device with the given id
+	 */
+	public String getDeviceURI(int deviceId)
+	{
+		return this.deviceURIs[deviceId];
+	}
+	
+	/**
+	 * @return the number of rooms hosting at least one device of the table
+	 */
+	public int getRoomCount()
+	{
+		return this.roomNames.length;
+	}
+	
+	/**
+	 * Get the id of a given room
+	 * 
+	 * @param roomName
+	 *            the name of the room
+	 * @return the room id, or {@link ConsumptionTable#UNKNOWN} if no device of
+	 *         the table is located in the room
+	 */
+	public int getRoomId(String roomName)
+	{
+		Integer id = this.roomIds.get(roomName);
+		
+		return (id != null) ? id.intValue() : ConsumptionTable.UNKNOWN;
+	}
+	
+	/**
+	 * @return the name of the room with the given id
+	 */
+	public String getRoomName(int roomId)
+	{
+		return this.roomNames[roomId];
+	}
+	
+	/**
+	 * @return the id of the room in which the given device is located, or
+	 *         {@link ConsumptionTable#UNKNOWN} if not known
+	 */
+	public int getRoom(int deviceId)
+	{
+		return this.deviceRooms[deviceId];
+	}
+	
+	/**
+	 * @return the number of states with a declared consumption for the given
+	 *         device
+	 */
+	public int getStateCount(int deviceId)
+	{
+		return this.stateNames[deviceId].length;
+	}
+	
+	/**
+	 * Get the index of a state of the given device; state names are compared
+	 * ignoring case, as for best consumption requests.
+	 * 
+	 * @param deviceId
+	 *            the device id
+	 * @param stateName
+	 *            the name of the state
+	 * @return the state index, or {@link ConsumptionTable#UNKNOWN} if the state
+	 *         does not exist
+	 */
+	public int getStateIndex(int deviceId, String stateName)
+	{
+		String[] names = this.stateNames[deviceId];
+		for (int i = 0; i < names.length; i++)
+		{
+			if (names[i].equalsIgnoreCase(stateName))
+				return i;
+		}
+		
+		return ConsumptionTable.UNKNOWN;
+	}
+	
+	/**
+	 * @return the name of the given device state
+	 */
+	public String getStateName(int deviceId, int stateIndex)
+	{
+		return this.stateNames[deviceId][stateIndex];
+	}
+	
+	/**
+	 * @return the index of the lowest consumption state of the given device,
+	 *         or {@link ConsumptionTable#UNKNOWN} if the device has no states
+	 */
+	public int getLowestState(int deviceId)
+	{
+		return this.lowestStates[deviceId];
+	}
+	
+	/**
+	 * Get the slot of a device state, i.e., its position in flat arrays
+	 * holding one entry for each state of each device
+	 * 
+	 * @param deviceId
+	 *            the device id
+	 * @param stateIndex
+	 *            the state index
+	 * @return the state slot
+	 */
+	public int getSlot(int deviceId, int stateIndex)
+	{
+		return this.slotOffsets[deviceId] + stateIndex;
+	}
+	
+	/**
+	 * @return the total number of state slots, i.e., of device states
+	 */
+	public int getSlotCount()
+	{
+		return this.slotCount;
+	}
+	
+	/**
+	 * Get the best consumption of a device state
+	 * 
+	 * @param deviceId
+	 *            the device id
+	 * @param stateIndex
+	 *            the state index, {@link ConsumptionTable#UNKNOWN} stands for
+	 *            "no consumption"
+	 * @return the best consumption in W
+	 */
+	public double getBestConsumption(int deviceId, int stateIndex)
+	{
+		if (stateIndex == ConsumptionTable.UNKNOWN)
+			return 0.0;
+		
+		return this.bestConsumptions[deviceId][stateIndex];
+	}
+	
+	/**
+	 * Get the load profile of a device state
+	 * 
+	 * @param deviceId
+	 *            the device id
+	 * @param stateIndex
+	 *            the state index
+	 * @return the {@link LoadProfile}, or null if the state has none
+	 */
+	public LoadProfile getLoadProfile(int deviceId, int stateIndex)
+	{
+		if (stateIndex == ConsumptionTable.UNKNOWN || this.loadProfiles[deviceId] == null)
+			return null;
+		
+		return this.loadProfiles[deviceId][stateIndex];
+	}
+	
+	/**
+	 * Get the consumption of a device state at a given time since the state
+	 * was entered: the load profile value, if any, the best consumption
+	 * otherwise
+	 * 
+	 * @param deviceId
+	 *            the device id
+	 * @param stateIndex
+	 *            the state index, {@link ConsumptionTable#UNKNOWN} stands for
+	 *            "no consumption"
+	 * @param seconds
+	 *            the time spent in the state, in s
+	 * @return the consumption in W
+	 */
+	public double getConsumption(int deviceId, int stateIndex, double seconds)
+	{
+		LoadProfile profile = this.getLoadProfile(deviceId, stateIndex);
+		if (profile == null)
+			return this.getBestConsumption(deviceId, stateIndex);
+		
+		return profile.getPower(seconds);
+	}
+	
+	/**
+	 * Get the highest consumption of a device state: the peak of its load
+	 * profile (rounded to the mW, like the best consumptions), if any, the
+	 * best consumption otherwise
+	 * 
+	 * @param deviceId
+	 *            the device id
+	 * @param stateIndex
+	 *            the state index, {@link ConsumptionTable#UNKNOWN} stands for
+	 *            "no consumption"
+	 * @return the consumption in W
+	 */
+	public double getPeakConsumption(int deviceId, int stateIndex)
+	{
+		if (stateIndex == ConsumptionTable.UNKNOWN)
+			return 0.0;
+		
+		return this.peakConsumptions[deviceId][stateIndex];
+	}
+	
+	/**
+	 * Get the energy consumed by a device state in a time interval since the
+	 * state was entered, following its load profile, if any
+	 * 
+	 * @param deviceId
+	 *            the device id
+	 * @param stateIndex
+	 *            the state index, {@link ConsumptionTable#UNKNOWN} stands for
+	 *            "no consumption"
+	 * @param fromSeconds
+	 *            the start of the interval, in s since the state was entered
+	 * @param toSeconds
+	 *            the end of the interval, in s since the state was entered
+	 * @return the energy in J
+	 */
+	public double getEnergy(int deviceId, int stateIndex, double fromSeconds, double toSeconds)
+	{
+		LoadProfile profile = this.getLoadProfile(deviceId, stateIndex);
+		if (profile == null)
+			return this.getBestConsumption(deviceId, stateIndex) * (toSeconds - fromSeconds);
+		
+		return profile.getEnergy(fromSeconds, toSeconds);
+	}
+	
+	/**
+	 * Get the consumption variation caused by a device state transition
+	 * 
+	 * @param deviceId
+	 *            the device id
+	 * @param fromState
+	 *            the index of the current state, {@link ConsumptionTable#UNKNOWN}
+	 *            if the state is not known
+	 * @param toState
+	 *            the index of the target state
+	 * @return the consumption delta in W (negative if the device will consume
+	 *         less)
+	 */
+	public double getTransitionDelta(int deviceId, int fromState, int toState)
+	{
+		if (fromState == ConsumptionTable.UNKNOWN)
+			return this.getBestConsumption(deviceId, toState);
+		if (toState == ConsumptionTable.UNKNOWN)
+			return -this.getBestConsumption(deviceId, fromState);
+		
+		return this.transitionDeltas[deviceId][fromState * this.stateNames[deviceId].length + toState];
+	}
+	
+	/**
+	 * Get the peak consumption variation caused by a device state transition,
+	 * i.e., the difference between the peak consumptions of the two states
+	 * 
+	 * @param deviceId
+	 *            the device id
+	 * @param fromState
+	 *            the index of the current state, {@link ConsumptionTable#UNKNOWN}
+	 *            if the state is not known
+	 * @param toState
+	 *            the index of the target state, {@link ConsumptionTable#UNKNOWN}
+	 *            stands for "no consumption"
+	 * @return the peak consumption delta in W (negative if the device will
+	 *         consume less)
+	 */
+	public double getPeakTransitionDelta(int deviceId, int fromState, int toState)
+	{
+		if (fromState == ConsumptionTable.UNKNOWN)
+			return this.getPeakConsumption(deviceId, toState);
+		if (toState == ConsumptionTable.UNKNOWN)
+			return -this.getPeakConsumption(deviceId, fromState);
+		
+		return this.peakDeltas[deviceId][fromState * this.stateNames[deviceId].length + toState];
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.device;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The normalized index of the device keys of the power model. Devices are
+ * keyed by the short form of their IRI (e.g., "Lamp1"), but other components
+ * may refer to them by full IRI (e.g., "http://.../home.owl#Lamp1") or by
+ * prefixed name (e.g., "home:Lamp1"): all these aliases are precomputed when
+ * the index is built, so that any of them is resolved to the canonical key
+ * with a single hash probe. The full IRIs are also stored in a compact trie,
+ * answering namespace queries without scanning all the devices. Indexes are
+ * immutable.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class DeviceKeyIndex
+{
+	// the canonical key of each alias (canonical keys included)
+	private final Map<String, String> aliases;
+	
+	// the namespace of each prefix name (e.g., "home:")
+	private final Map<String, String> prefixes;
+	
+	// the canonical keys, indexed by full IRI
+	private final IriTrie iris;
+	
+	/**
+	 * Constructor
+	 */
+	private DeviceKeyIndex(Map<String, String> aliases, Map<String, String> prefixes, IriTrie iris)
+	{
+		this.aliases = aliases;
+		this.prefixes = prefixes;
+		this.iris = iris;
+	}
+	
+	/**
+	 * Build the index of the given devices
+	 * 
+	 * @param devices
+	 *            the map of {@link PowerDevice}, indexed by canonical key
+	 * @param prefixes
+	 *            the namespace of each prefix name known by the ontology
+	 *            (e.g., "home:" to "http://.../home.owl#")
+	 * @return the {@link DeviceKeyIndex}
+	 */
+	public static DeviceKeyIndex build(Map<String, PowerDevice> devices, Map<String, String> prefixes)
+	{
+		// normalize the prefix names, with their trailing colon
+		Map<String, String> namespaces = new HashMap<String, String>();
+		for (Map.Entry<String, String> prefix : prefixes.entrySet())
+		{
+			String name = prefix.getKey().endsWith(":") ? prefix.getKey() : prefix.getKey() + ":";
+			namespaces.put(name, prefix.getValue());
+		}
+		
+		// canonical keys first, so that they win over colliding aliases
+		Map<String, String> aliases = new HashMap<String, String>(devices.size() * 4);
+		for (String key : devices.keySet())
+			aliases.put(key, key);
+		
+		IriTrie iris = new IriTrie();
+		for (Map.Entry<String, PowerDevice> device : devices.entrySet())
+		{
+			String key = device.getKey();
+			String iri = device.getValue().getIRI();
+			if (iri == null)
+				continue;
+			
+			DeviceKeyIndex.putAlias(aliases, iri, key);
+			iris.put(iri, key);
+			
+			// the prefixed names, for each namespace holding the device
+			for (Map.Entry<String, String> namespace : namespaces.entrySet())
+			{
+				if (iri.startsWith(namespace.getValue()) && iri.length() > namespace.getValue().length())
+					DeviceKeyIndex.putAlias(aliases,
+							namespace.getKey() + iri.substring(namespace.getValue().length()), key);
+			}
+		}
+		
+		return new DeviceKeyIndex(aliases, namespaces, iris);
+	}
+	
+	/**
+	 * Add an alias, unless already taken by another key
+	 */
+	private static void putAlias(Map<String, String> aliases, String alias, String key)
+	{
+		if (!aliases.containsKey(alias))
+			aliases.put(alias, key);
+	}
+	
+	/**
+	 * Resolve a device reference to its canonical key
+	 * 
+	 * @param deviceURI
+	 *            the short form, full IRI or prefixed name of a device
+	 * @return the canonical key, or null if the device is not known
+	 */
+	public String resolve(String deviceURI)
+	{
+		return (deviceURI != null) ? this.aliases.get(deviceURI) : null;
+	}
+	
+	/**
+	 * Get all the aliases of the indexed devices
+	 * 
+	 * @return an unmodifiable map of the canonical key of each alias,
+	 *         canonical keys included
+	 */
+	public Map<String, String> getAliases()
+	{
+		return Collections.unmodifiableMap(this.aliases);
+	}
+	
+	/**
+	 * Get the devices whose IRI starts with the given namespace
+	 * 
+	 * @param namespace
+	 *            a namespace IRI (or any IRI prefix), or a prefix name (e.g.,
+	 *            "home:")
+	 * @return the canonical keys of the devices, in IRI order
+	 */
+	public List<String> getDevices(String namespace)
+	{
+		String expanded = this.prefixes.get(namespace);
+		if (expanded == null)
+			expanded = namespace;
+		
+		List<String> devices = new ArrayList<String>();
+		this.iris.collect(expanded, devices);
+		
+		return devices;
+	}
+}
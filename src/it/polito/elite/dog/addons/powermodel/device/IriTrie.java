@@ -0,0 +1,201 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.device;
+
+import java.util.List;
+
+/**
+ * A compact (radix) trie of IRIs: each edge is labelled with a whole IRI
+ * fragment, and nodes only exist where IRIs branch, so the trie takes little
+ * more space than the distinct parts of its IRIs. A prefix query walks down
+ * the trie once and then collects the values of the reached subtree, in IRI
+ * order.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+class IriTrie
+{
+	// the root node, with an empty label
+	private final Node root;
+	
+	/**
+	 * Default constructor, for an empty trie
+	 */
+	IriTrie()
+	{
+		this.root = new Node("", null);
+	}
+	
+	/**
+	 * Add an IRI to the trie
+	 * 
+	 * @param iri
+	 *            the IRI
+	 * @param value
+	 *            the value associated to the IRI
+	 */
+	void put(String iri, String value)
+	{
+		Node node = this.root;
+		int position = 0;
+		while (position < iri.length())
+		{
+			Node child = node.getChild(iri.charAt(position));
+			if (child == null)
+			{
+				node.addChild(new Node(iri.substring(position), value));
+				return;
+			}
+			
+			int common = IriTrie.commonLength(child.label, iri, position);
+			if (common < child.label.length())
+			{
+				// split the edge where the IRIs diverge
+				Node middle = new Node(child.label.substring(0, common), null);
+				node.replaceChild(middle);
+				child.label = child.label.substring(common);
+				middle.addChild(child);
+				child = middle;
+			}
+			
+			node = child;
+			position += common;
+		}
+		node.value = value;
+	}
+	
+	/**
+	 * Collect the values of all the IRIs starting with the given prefix
+	 * 
+	 * @param prefix
+	 *            the IRI prefix (e.g., a namespace)
+	 * @param values
+	 *            the list to fill, in IRI order
+	 */
+	void collect(String prefix, List<String> values)
+	{
+		Node node = this.root;
+		int position = 0;
+		while (position < prefix.length())
+		{
+			Node child = node.getChild(prefix.charAt(position));
+			if (child == null)
+				return;
+			
+			int common = IriTrie.commonLength(child.label, prefix, position);
+			if (common < child.label.length() && position + common < prefix.length())
+				return;
+			
+			node = child;
+			position += common;
+		}
+		
+		IriTrie.collect(node, values);
+	}
+	
+	/**
+	 * Collect the values of a subtree, depth first
+	 */
+	private static void collect(Node node, List<String> values)
+	{
+		if (node.value != null)
+			values.add(node.value);
+		for (Node child : node.children)
+			IriTrie.collect(child, values);
+	}
+	
+	/**
+	 * @return the length of the common prefix of a label and of a string from
+	 *         the given position
+	 */
+	private static int commonLength(String label, String string, int position)
+	{
+		int length = Math.min(label.length(), string.length() - position);
+		int common = 0;
+		while (common < length && label.charAt(common) == string.charAt(position + common))
+			common++;
+		
+		return common;
+	}
+	
+	/**
+	 * A trie node, with its children sorted by the first char of their label
+	 */
+	private static class Node
+	{
+		// an empty children array, shared by all leaves
+		private static final Node[] LEAF = new Node[0];
+		
+		private String label;
+		private String value;
+		private Node[] children;
+		
+		Node(String label, String value)
+		{
+			this.label = label;
+			this.value = value;
+			this.children = Node.LEAF;
+		}
+		
+		/**
+		 * @return the position of the child starting with the given char, or
+		 *         the negated insertion point minus one
+		 */
+		private int find(char first)
+		{
+			int low = 0;
+			int high = this.children.length - 1;
+			while (low <= high)
+			{
+				int middle = (low + high) >>> 1;
+				char current = this.children[middle].label.charAt(0);
+				if (current < first)
+					low = middle + 1;
+				else if (current > first)
+					high = middle - 1;
+				else
+					return middle;
+			}
+			
+			return -(low + 1);
+		}
+		
+		Node getChild(char first)
+		{
+			int index = this.find(first);
+			
+			return (index >= 0) ? this.children[index] : null;
+		}
+		
+		void addChild(Node child)
+		{
+			int index = -(this.find(child.label.charAt(0)) + 1);
+			Node[] larger = new Node[this.children.length + 1];
+			System.arraycopy(this.children, 0, larger, 0, index);
+			larger[index] = child;
+			System.arraycopy(this.children, index, larger, index + 1, this.children.length - index);
+			this.children = larger;
+		}
+		
+		void replaceChild(Node child)
+		{
+			this.children[this.find(child.label.charAt(0))] = child;
+		}
+	}
+}
@@ -0,0 +1,429 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.device;
+
+import java.util.Arrays;
+
+/**
+ * The load profile of a device state, i.e., its power over the time spent in
+ * the state (e.g., the 90 minutes curve of a washing machine program, or the
+ * compressor cycle of a fridge). A profile is a sequence of (time, power)
+ * points, with the time in seconds since the state was entered (the first
+ * point at 0) and the power in W, and is either:
+ * <ul>
+ * <li><i>step</i>: piecewise constant, each power holding until the next
+ * point;</li>
+ * <li><i>linear</i>: sampled, the power being interpolated between the
+ * points.</li>
+ * </ul>
+ * After the last point, the power of a profile holds, unless the profile is
+ * <i>cyclic</i>: then the last point marks the period, and the profile
+ * restarts from its first point.<br/>
+ * Profiles are immutable and stored in primitive arrays, with the cumulative
+ * energy of each point, so that both the power at a given time and the
+ * energy of an interval are evaluated in O(log points), without allocations.
+ * Equal profiles are shared: use {@link #valueOf} or {@link #parse} to get
+ * one.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public final class LoadProfile
+{
+	// the shared profiles, weakly referenced
+	private static final WeakInterner<LoadProfile> PROFILES = new WeakInterner<LoadProfile>();
+	
+	// the time of each point, in s since the state was entered
+	private final double[] times;
+	
+	// the power of each point, in W
+	private final double[] powers;
+	
+	// the energy consumed from the state entry to each point, in J
+	private final double[] energies;
+	
+	// true if the power is interpolated between the points
+	private final boolean linear;
+	
+	// true if the profile restarts after the last point
+	private final boolean cyclic;
+	
+	// the hash code, computed once
+	private final int hash;
+	
+	/**
+	 * Build a profile from validated arrays, owned by the profile
+	 */
+	private LoadProfile(double[] times, double[] powers, boolean linear, boolean cyclic)
+	{
+		this.times = times;
+		this.powers = powers;
+		this.linear = linear;
+		this.cyclic = cyclic;
+		
+		this.energies = new double[times.length];
+		for (int i = 1; i < times.length; i++)
+			this.energies[i] = this.energies[i - 1] + this.getSegmentEnergy(i - 1, times[i]);
+		
+		this.hash = 31 * (31 * Arrays.hashCode(times) + Arrays.hashCode(powers)) + (linear ? 2 : 0)
+				+ (cyclic ? 1 : 0);
+	}
+	
+	/**
+	 * Get the shared profile with the given points
+	 * 
+	 * @param times
+	 *            the time of each point, in s since the state was entered,
+	 *            starting from 0 and strictly increasing
+	 * @param powers
+	 *            the power of each point, in W, non negative
+	 * @param linear
+	 *            true to interpolate the power between the points, false for
+	 *            a piecewise constant power
+	 * @param cyclic
+	 *            true if the profile restarts after the last point
+	 * @return the {@link LoadProfile}
+	 * @throws IllegalArgumentException
+	 *             if the points are not valid
+	 */
+	public static LoadProfile valueOf(double[] times, double[] powers, boolean linear, boolean cyclic)
+	{
+		if (times.length == 0 || times.length != powers.length)
+			throw new IllegalArgumentException("A load profile needs one power for each of its times");
+		if (times[0] != 0.0)
+			throw new IllegalArgumentException("A load profile starts at 0 s, not at " + times[0]);
+		for (int i = 0; i < times.length; i++)
+		{
+			if ((i > 0 && !(times[i] > times[i - 1])) || Double.isInfinite(times[i]))
+				throw new IllegalArgumentException("The times of a load profile must be strictly increasing: "
+						+ times[i]);
+			if (!(powers[i] >= 0.0) || Double.isInfinite(powers[i]))
+				throw new IllegalArgumentException("Invalid load profile power: " + powers[i]);
+		}
+		if (cyclic && times.length < 2)
+			throw new IllegalArgumentException("A cyclic load profile needs at least two points");
+		
+		return LoadProfile.PROFILES.intern(new LoadProfile(times.clone(), powers.clone(), linear, cyclic));
+	}
+	
+	/**
+	 * Parse a profile, e.g., from a PowerOnt annotation: an optional
+	 * <code>step</code> (the default) or <code>linear</code> keyword, an
+	 * optional <code>cyclic</code> keyword and the <code>time:power</code>
+	 * points, in s and W, separated by blanks, commas or semicolons (e.g.,
+	 * "<code>step cyclic 0:120 900:2 2400:120</code>")
+	 * 
+	 * @param text
+	 *            the profile to parse
+	 * @return the {@link LoadProfile}
+	 * @throws IllegalArgumentException
+	 *             if the text is not a valid profile
+	 */
+	public static LoadProfile parse(String text)
+	{
+		String[] tokens = text.trim().split("[\\s,;]+");
+		double[] times = new double[tokens.length];
+		double[] powers = new double[tokens.length];
+		boolean linear = false;
+		boolean cyclic = false;
+		int count = 0;
+		
+		for (String token : tokens)
+		{
+			if (token.equalsIgnoreCase("linear"))
+				linear = true;
+			else if (token.equalsIgnoreCase("cyclic"))
+				cyclic = true;
+			else if (!token.equalsIgnoreCase("step") && !token.isEmpty())
+			{
+				int colon = token.indexOf(':');
+				if (colon < 0)
+					throw new IllegalArgumentException("Invalid load profile point: " + token);
+				times[count] = Double.parseDouble(token.substring(0, colon));
+				powers[count] = Double.parseDouble(token.substring(colon + 1));
+				count++;
+			}
+		}
+		
+		return LoadProfile.valueOf(Arrays.copyOf(times, count), Arrays.copyOf(powers, count), linear, cyclic);
+	}
+	
+	/**
+	 * Get the power at a given time
+	 * 
+	 * @param seconds
+	 *            the time since the state was entered, in s
+	 * @return the power, in W
+	 */
+	public double getPower(double seconds)
+	{
+		int last = this.times.length - 1;
+		double t = this.normalize(seconds);
+		if (t >= this.times[last])
+			return this.powers[last];
+		
+		int point = this.getPoint(t);
+		if (!this.linear)
+			return this.powers[point];
+		
+		return this.interpolate(point, t);
+	}
+	
+	/**
+	 * Get the energy consumed in a time interval
+	 * 
+	 * @param fromSeconds
+	 *            the start of the interval, in s since the state was entered
+	 * @param toSeconds
+	 *            the end of the interval, in s since the state was entered
+	 * @return the energy, in J (negative if the interval is reversed)
+	 */
+	public double getEnergy(double fromSeconds, double toSeconds)
+	{
+		return this.getCumulativeEnergy(toSeconds) - this.getCumulativeEnergy(fromSeconds);
+	}
+	
+	/**
+	 * @return the time of the last point, i.e., the period of a cyclic
+	 *         profile, in s
+	 */
+	public double getDuration()
+	{
+		return this.times[this.times.length - 1];
+	}
+	
+	/**
+	 * @return the highest power of the profile, in W
+	 */
+	public double getPeak()
+	{
+		double peak = 0.0;
+		for (double power : this.powers)
+			peak = Math.max(peak, power);
+		
+		return peak;
+	}
+	
+	/**
+	 * Get the highest power in a time interval
+	 * 
+	 * @param fromSeconds
+	 *            the start of the interval, in s since the state was entered
+	 * @param toSeconds
+	 *            the end of the interval, in s since the state was entered
+	 * @return the highest power, in W
+	 */
+	public double getPeak(double fromSeconds, double toSeconds)
+	{
+		int last = this.times.length - 1;
+		if (this.cyclic && toSeconds - fromSeconds >= this.times[last])
+			return this.getPeak();
+		
+		// linear profiles peak at the bounds or at a point
+		double peak = this.getPower(fromSeconds);
+		if (this.linear)
+			peak = Math.max(peak, this.getPower(toSeconds));
+		
+		double from = this.normalize(fromSeconds);
+		double to = from + (toSeconds - Math.max(fromSeconds, 0.0));
+		if (this.cyclic && to > this.times[last])
+		{
+			// the interval wraps around the end of the period, where the
+			// profile starts again from its first point
+			peak = Math.max(peak, this.getPointPeak(from, this.times[last]));
+			peak = Math.max(peak, this.powers[0]);
+			return Math.max(peak, this.getPointPeak(0.0, to - this.times[last]));
+		}
+		
+		return Math.max(peak, this.getPointPeak(from, to));
+	}
+	
+	/**
+	 * @return the mean power over the duration of the profile, in W (the
+	 *         first power if the profile has a single point)
+	 */
+	public double getMean()
+	{
+		int last = this.times.length - 1;
+		if (last == 0)
+			return this.powers[0];
+		
+		return this.energies[last] / this.times[last];
+	}
+	
+	/**
+	 * @return the number of points
+	 */
+	public int size()
+	{
+		return this.times.length;
+	}
+	
+	/**
+	 * @return the time of a point, in s
+	 */
+	public double getTime(int point)
+	{
+		return this.times[point];
+	}
+	
+	/**
+	 * @return the power of a point, in W
+	 */
+	public double getPointPower(int point)
+	{
+		return this.powers[point];
+	}
+	
+	/**
+	 * @return true if the power is interpolated between the points
+	 */
+	public boolean isLinear()
+	{
+		return this.linear;
+	}
+	
+	/**
+	 * @return true if the profile restarts after the last point
+	 */
+	public boolean isCyclic()
+	{
+		return this.cyclic;
+	}
+	
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (this == obj)
+			return true;
+		if (!(obj instanceof LoadProfile))
+			return false;
+		
+		LoadProfile other = (LoadProfile) obj;
+		return this.hash == other.hash && this.linear == other.linear && this.cyclic == other.cyclic
+				&& Arrays.equals(this.times, other.times) && Arrays.equals(this.powers, other.powers);
+	}
+	
+	@Override
+	public int hashCode()
+	{
+		return this.hash;
+	}
+	
+	/**
+	 * @return the profile in the format read by {@link #parse(String)}
+	 */
+	@Override
+	public String toString()
+	{
+		StringBuilder text = new StringBuilder(this.linear ? "linear" : "step");
+		if (this.cyclic)
+			text.append(" cyclic");
+		for (int i = 0; i < this.times.length; i++)
+			text.append(' ').append(this.times[i]).append(':').append(this.powers[i]);
+		
+		return text.toString();
+	}
+	
+	/**
+	 * Map a time to the first period of a cyclic profile; times before the
+	 * state entry are mapped to 0
+	 */
+	private double normalize(double seconds)
+	{
+		if (!(seconds > 0.0))
+			return 0.0;
+		if (this.cyclic)
+			return seconds % this.times[this.times.length - 1];
+		
+		return seconds;
+	}
+	
+	/**
+	 * @return the index of the last point at or before the given time, within
+	 *         the profile
+	 */
+	private int getPoint(double t)
+	{
+		int point = Arrays.binarySearch(this.times, t);
+		
+		return (point >= 0) ? point : -point - 2;
+	}
+	
+	/**
+	 * @return the highest power of the points strictly within a time
+	 *         interval, within the profile
+	 */
+	private double getPointPeak(double from, double to)
+	{
+		double peak = 0.0;
+		for (int point = this.getPoint(from) + 1; point < this.times.length && this.times[point] < to; point++)
+			peak = Math.max(peak, this.powers[point]);
+		
+		return peak;
+	}
+	
+	/**
+	 * @return the power interpolated within the segment starting at a point
+	 */
+	private double interpolate(int point, double t)
+	{
+		double start = this.times[point];
+		double fraction = (t - start) / (this.times[point + 1] - start);
+		
+		return this.powers[point] + fraction * (this.powers[point + 1] - this.powers[point]);
+	}
+	
+	/**
+	 * @return the energy of the segment starting at a point, up to a time
+	 *         within the segment, in J
+	 */
+	private double getSegmentEnergy(int point, double t)
+	{
+		double elapsed = t - this.times[point];
+		if (!this.linear)
+			return this.powers[point] * elapsed;
+		
+		return (this.powers[point] + this.interpolate(point, t)) * elapsed / 2.0;
+	}
+	
+	/**
+	 * @return the energy consumed from the state entry to a given time, in J
+	 */
+	private double getCumulativeEnergy(double seconds)
+	{
+		int last = this.times.length - 1;
+		if (!(seconds > 0.0))
+			return 0.0;
+		
+		double energy = 0.0;
+		double t = seconds;
+		if (this.cyclic)
+		{
+			double periods = Math.floor(seconds / this.times[last]);
+			energy = periods * this.energies[last];
+			t = seconds - periods * this.times[last];
+		}
+		
+		if (t >= this.times[last])
+			return energy + this.energies[last] + this.powers[last] * (t - this.times[last]);
+		
+		int point = this.getPoint(t);
+		return energy + this.energies[point] + this.getSegmentEnergy(point, t);
+	}
+}
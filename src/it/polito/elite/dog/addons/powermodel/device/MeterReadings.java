@@ -0,0 +1,197 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.device;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The class MeterReadings stores the latest metered (actual) consumption of
+ * each device state of a {@link ConsumptionTable}: the power, in W, and the
+ * instant of the reading, in ms since the epoch.<br/>
+ * Each state slot holds an immutable reading, published with a single atomic
+ * write: readers never block nor retry, and see the power and the instant of
+ * the same reading. Writers of the same slot only retry their
+ * compare-and-set when a concurrent reading has been stored in the meanwhile;
+ * writers of different slots never interfere.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class MeterReadings
+{
+	// the consumption table the slots refer to
+	private final ConsumptionTable table;
+	
+	// the latest reading of each slot, null if none
+	private final AtomicReferenceArray<Reading> readings;
+	
+	/**
+	 * Build an empty set of readings for the given table
+	 * 
+	 * @param table
+	 *            the {@link ConsumptionTable}
+	 */
+	public MeterReadings(ConsumptionTable table)
+	{
+		this.table = table;
+		this.readings = new AtomicReferenceArray<Reading>(table.getSlotCount());
+	}
+	
+	/**
+	 * Build the readings for a new table, carrying the readings of the
+	 * device states still in the table
+	 * 
+	 * @param table
+	 *            the new {@link ConsumptionTable}
+	 * @param previous
+	 *            the readings of the previous table
+	 */
+	public MeterReadings(ConsumptionTable table, MeterReadings previous)
+	{
+		this(table);
+		
+		for (int device = 0; device < table.size(); device++)
+		{
+			int previousDevice = previous.table.getDeviceId(table.getDeviceURI(device));
+			if (previousDevice == ConsumptionTable.UNKNOWN)
+				continue;
+			
+			for (int state = 0; state < table.getStateCount(device); state++)
+			{
+				int previousState = previous.table.getStateIndex(previousDevice, table.getStateName(device, state));
+				if (previousState == ConsumptionTable.UNKNOWN)
+					continue;
+				
+				Reading reading = previous.readings.get(previous.table.getSlot(previousDevice, previousState));
+				if (reading != null)
+					this.readings.set(table.getSlot(device, state), reading);
+			}
+		}
+	}
+	
+	/**
+	 * @return the consumption table the readings refer to
+	 */
+	public ConsumptionTable getTable()
+	{
+		return this.table;
+	}
+	
+	/**
+	 * Store a new reading; readings older than the stored one are discarded
+	 * 
+	 * @param device
+	 *            the device id
+	 * @param state
+	 *            the state index
+	 * @param power
+	 *            the metered power, in W
+	 * @param timestamp
+	 *            the instant of the reading, in ms since the epoch (greater
+	 *            than 0)
+	 * @return true if the reading has been stored
+	 */
+	public boolean update(int device, int state, double power, long timestamp)
+	{
+		int slot = this.table.getSlot(device, state);
+		Reading reading = new Reading(power, timestamp);
+		
+		while (true)
+		{
+			Reading latest = this.readings.get(slot);
+			if (latest != null && timestamp < latest.timestamp)
+				return false;
+			if (this.readings.compareAndSet(slot, latest, reading))
+				return true;
+		}
+	}
+	
+	/**
+	 * Read the latest power of a device state
+	 * 
+	 * @param device
+	 *            the device id
+	 * @param state
+	 *            the state index
+	 * @param timestamp
+	 *            if not null, its first element is set to the instant of the
+	 *            reading
+	 * @return the latest power, in W, or {@link Double#NaN} if no reading is
+	 *         available
+	 */
+	public double read(int device, int state, long[] timestamp)
+	{
+		Reading reading = this.readings.get(this.table.getSlot(device, state));
+		if (reading == null)
+			return Double.NaN;
+		if (timestamp != null)
+			timestamp[0] = reading.timestamp;
+		
+		return reading.power;
+	}
+	
+	/**
+	 * Read the instant of the latest reading of a device state
+	 * 
+	 * @param device
+	 *            the device id
+	 * @param state
+	 *            the state index
+	 * @return the instant of the reading, in ms since the epoch, or 0 if no
+	 *         reading is available
+	 */
+	public long getTimestamp(int device, int state)
+	{
+		Reading reading = this.readings.get(this.table.getSlot(device, state));
+		
+		return (reading != null) ? reading.timestamp : 0;
+	}
+	
+	/**
+	 * Read the latest power of a device state, without its timestamp
+	 * 
+	 * @param device
+	 *            the device id
+	 * @param state
+	 *            the state index
+	 * @return the latest power, in W, or {@link Double#NaN} if no reading is
+	 *         available
+	 */
+	public double getPower(int device, int state)
+	{
+		return this.read(device, state, null);
+	}
+	
+	/**
+	 * An immutable meter reading
+	 */
+	private static class Reading
+	{
+		// the metered power, in W
+		private final double power;
+		
+		// the instant of the reading, in ms since the epoch
+		private final long timestamp;
+		
+		Reading(double power, long timestamp)
+		{
+			this.power = power;
+			this.timestamp = timestamp;
+		}
+	}
+}
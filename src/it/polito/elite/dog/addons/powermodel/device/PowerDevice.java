@@ -37,6 +37,12 @@ public class PowerDevice
 	// the set for storing the consumptions for each device states
 	private Set<PowerState> stateConsumptions;
 	
+	// the room in which the device is located, if known
+	private String room;
+	
+	// the full IRI of the device, if known
+	private String iri;
+	
 	/**
 	 * Base constructor, to be used when the states information were not yet
 	 * available. It also initializes the set used to store the states and
@@ -117,4 +123,46 @@ public class PowerDevice
 	{
 		this.stateConsumptions.add(consumption);
 	}
+	
+	/**
+	 * getter for retrieving the room in which the device is located
+	 * 
+	 * @return the room name, or null if not known
+	 */
+	public String getRoom()
+	{
+		return this.room;
+	}
+	
+	/**
+	 * setter for the room in which the device is located
+	 * 
+	 * @param room
+	 *            the room name
+	 */
+	public void setRoom(String room)
+	{
+		this.room = room;
+	}
+	
+	/**
+	 * getter for retrieving the full IRI of the device
+	 * 
+	 * @return the full IRI, or null if not known
+	 */
+	public String getIRI()
+	{
+		return this.iri;
+	}
+	
+	/**
+	 * setter for the full IRI of the device
+	 * 
+	 * @param iri
+	 *            the full IRI
+	 */
+	public void setIRI(String iri)
+	{
+		this.iri = iri;
+	}
 }
@@ -46,6 +46,10 @@ public class PowerState
 	private boolean hasNominalConsumption;
 	private boolean hasActualConsumption;
 	
+	// the (shared) load profile of the state, null if the consumption does
+	// not vary over the time spent in the state
+	private LoadProfile loadProfile;
+	
 	/**
 	 * Base constructor, to be used when the consumption information were not
 	 * yet available.
@@ -245,6 +249,31 @@ public class PowerState
 		return hasActualConsumption;
 	}
 	
+	/**
+	 * @return the load profile of the state, null if none
+	 */
+	public LoadProfile getLoadProfile()
+	{
+		return this.loadProfile;
+	}
+	
+	/**
+	 * @param loadProfile
+	 *            the {@link LoadProfile} of the state, null if none
+	 */
+	public void setLoadProfile(LoadProfile loadProfile)
+	{
+		this.loadProfile = loadProfile;
+	}
+	
+	/**
+	 * @return true if the state has a load profile
+	 */
+	public boolean hasLoadProfile()
+	{
+		return this.loadProfile != null;
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * 
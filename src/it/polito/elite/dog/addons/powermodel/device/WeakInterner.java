@@ -0,0 +1,78 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.device;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A canonicalizing pool of immutable values, e.g., the strings and profiles
+ * shared by all the household models, or the {@link LoadProfile} instances:
+ * equal values are replaced by a single instance. Values are weakly
+ * referenced, so they are collected as soon as no loaded model uses them
+ * (unlike {@link String#intern()}, whose pool lives in the permanent
+ * generation).
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class WeakInterner<T>
+{
+	// the canonical instance of each value
+	private Map<T, WeakReference<T>> pool;
+	
+	/**
+	 * Default constructor
+	 */
+	public WeakInterner()
+	{
+		this.pool = new WeakHashMap<T, WeakReference<T>>();
+	}
+	
+	/**
+	 * Get the canonical instance of a value
+	 * 
+	 * @param value
+	 *            the value, or null
+	 * @return the canonical instance equal to the value, or null
+	 */
+	public synchronized T intern(T value)
+	{
+		if (value == null)
+			return null;
+		
+		WeakReference<T> reference = this.pool.get(value);
+		T canonical = (reference != null) ? reference.get() : null;
+		if (canonical == null)
+		{
+			this.pool.put(value, new WeakReference<T>(value));
+			canonical = value;
+		}
+		
+		return canonical;
+	}
+	
+	/**
+	 * @return the number of values currently in the pool
+	 */
+	public synchronized int size()
+	{
+		return this.pool.size();
+	}
+}
@@ -0,0 +1,543 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.disaggregation;
+
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionDisaggregator;
+import it.polito.elite.dog.addons.powermodel.api.InferredTransition;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+import it.polito.elite.dog.addons.powermodel.device.PowerDevice;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implementation of the {@link ConsumptionDisaggregator} service, based on
+ * the detection of steps in the aggregate consumption. A reading differing
+ * from the current level by more than the threshold opens a candidate level,
+ * which becomes the new level once it has been steady for a few readings
+ * (single spikes, e.g., inrush currents, are therefore ignored).<br/>
+ * Each step is matched against a {@link TransitionIndex} of the consumption
+ * variations of all the device transitions: a single transition is found by a
+ * range lookup, in O(log n), while combinations of up to
+ * {@link StepDisaggregator#MAX_COMBINATION} simultaneous transitions are
+ * searched depth-first, taking their variations in ascending order and
+ * pruning the branches whose remaining variation cannot be reached. Only the
+ * transitions leaving the estimated state of a device are applicable; each
+ * additional transition in a combination costs a penalty, so that larger
+ * combinations are searched only while they may beat the best match found,
+ * and the search of each step visits a bounded number of entries.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class StepDisaggregator implements ConsumptionDisaggregator
+{
+	// the default minimum step of the aggregate consumption, in W
+	public static final double DEFAULT_THRESHOLD = 20.0;
+	
+	// the default tolerated mismatch of a step, as a fraction of the step
+	public static final double DEFAULT_TOLERANCE = 0.1;
+	
+	// the default number of steady readings settling a new level
+	public static final int DEFAULT_SETTLING = 2;
+	
+	// the maximum number of simultaneous transitions explaining a step
+	public static final int MAX_COMBINATION = 3;
+	
+	// the cost of each additional transition in a combination, in tolerance
+	// units
+	private static final double COMBINATION_PENALTY = 0.5;
+	
+	// the maximum number of index entries visited for a step
+	private static final int MAX_VISITS = 100000;
+	
+	// the minimum weight of a reading in the current level
+	private static final double LEVEL_SMOOTHING = 0.05;
+	
+	// the minimum step, in W
+	private double threshold;
+	
+	// the tolerated mismatch, as a fraction of the step
+	private double tolerance;
+	
+	// the number of steady readings settling a new level
+	private int settling;
+	
+	// the index of the device transitions
+	private TransitionIndex index;
+	
+	// the estimated state of each device
+	private int[] states;
+	
+	// the consumption of the estimated states, in W
+	private double explained;
+	
+	// the lowest consumption of the estimated states, in W
+	private double floor;
+	
+	// the current level of the aggregate consumption, in W
+	private double level;
+	
+	// the number of readings in the current level, 0 before the first one
+	private long levelReadings;
+	
+	// the sum of the readings of the candidate level, in W
+	private double candidateSum;
+	
+	// the number of readings of the candidate level
+	private int candidateReadings;
+	
+	// the instant of the first reading of the candidate level
+	private long candidateStart;
+	
+	// the instant of the latest reading
+	private long lastTimestamp;
+	
+	// the entries of the combination being searched
+	private final int[] path;
+	
+	// the entries of the best combination found
+	private final int[] bestPath;
+	
+	// the number of transitions of the best combination found
+	private int bestSize;
+	
+	// the cost of the best combination found
+	private double bestCost;
+	
+	// the number of index entries visited for the current step
+	private int visits;
+	
+	/**
+	 * Default constructor
+	 */
+	public StepDisaggregator()
+	{
+		this.threshold = StepDisaggregator.DEFAULT_THRESHOLD;
+		this.tolerance = StepDisaggregator.DEFAULT_TOLERANCE;
+		this.settling = StepDisaggregator.DEFAULT_SETTLING;
+		this.path = new int[StepDisaggregator.MAX_COMBINATION];
+		this.bestPath = new int[StepDisaggregator.MAX_COMBINATION];
+		this.setConsumptionTable(ConsumptionTable.EMPTY, new HashMap<String, PowerDevice>());
+	}
+	
+	/**
+	 * Set the minimum step of the aggregate consumption: smaller variations
+	 * are taken as noise
+	 * 
+	 * @param threshold
+	 *            the minimum step, in W (greater than 0)
+	 */
+	public synchronized void setThreshold(double threshold)
+	{
+		if (threshold <= 0)
+			throw new IllegalArgumentException("The disaggregation threshold must be greater than 0");
+		
+		this.threshold = threshold;
+	}
+	
+	/**
+	 * Set the tolerated mismatch between a step and the consumption
+	 * variations explaining it; it is never less than half the threshold
+	 * 
+	 * @param tolerance
+	 *            the tolerated mismatch, as a fraction of the step (greater
+	 *            than 0)
+	 */
+	public synchronized void setTolerance(double tolerance)
+	{
+		if (tolerance <= 0)
+			throw new IllegalArgumentException("The disaggregation tolerance must be greater than 0");
+		
+		this.tolerance = tolerance;
+	}
+	
+	/**
+	 * Set the number of steady readings settling a new level
+	 * 
+	 * @param settling
+	 *            the number of readings (at least 1)
+	 */
+	public synchronized void setSettling(int settling)
+	{
+		if (settling < 1)
+			throw new IllegalArgumentException("The disaggregation settling must be at least 1 reading");
+		
+		this.settling = settling;
+	}
+	
+	/**
+	 * Bind the disaggregation to a new consumption table, e.g., after a model
+	 * (re)load, preserving the estimated states still in the table
+	 * 
+	 * @param table
+	 *            the new {@link ConsumptionTable}
+	 * @param devices
+	 *            the map of {@link PowerDevice} the table has been built from
+	 */
+	public synchronized void setConsumptionTable(ConsumptionTable table, Map<String, PowerDevice> devices)
+	{
+		TransitionIndex previous = this.index;
+		int[] states = new int[table.size()];
+		
+		for (int device = 0; device < table.size(); device++)
+		{
+			states[device] = table.getLowestState(device);
+			if (previous == null)
+				continue;
+			
+			int previousDevice = previous.getTable().getDeviceId(table.getDeviceURI(device));
+			if (previousDevice == ConsumptionTable.UNKNOWN)
+				continue;
+			
+			int state = table.getStateIndex(device,
+					previous.getTable().getStateName(previousDevice, this.states[previousDevice]));
+			if (state != ConsumptionTable.UNKNOWN)
+				states[device] = state;
+		}
+		
+		this.index = TransitionIndex.build(table, devices);
+		this.states = states;
+		this.explain();
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * it.polito.elite.dog.addons.powermodel.api.ConsumptionDisaggregator#observe
+	 * (double, long)
+	 */
+	@Override
+	public synchronized List<InferredTransition> observe(double power, long timestamp)
+	{
+		// NaN and infinite readings would poison the level and the candidate
+		if (Double.isNaN(power) || Double.isInfinite(power))
+			return Collections.<InferredTransition> emptyList();
+		if (this.levelReadings > 0 && timestamp <= this.lastTimestamp)
+			return Collections.<InferredTransition> emptyList();
+		this.lastTimestamp = timestamp;
+		
+		// the first reading opens the level
+		if (this.levelReadings == 0)
+		{
+			this.level = power;
+			this.levelReadings = 1;
+			return Collections.<InferredTransition> emptyList();
+		}
+		
+		// a reading back to the level drops the candidate, a spike
+		if (Math.abs(power - this.level) <= this.threshold)
+		{
+			this.candidateReadings = 0;
+			this.levelReadings++;
+			this.level += Math.max(StepDisaggregator.LEVEL_SMOOTHING, 1.0 / this.levelReadings)
+					* (power - this.level);
+			return Collections.<InferredTransition> emptyList();
+		}
+		
+		// a reading away from both the level and the candidate opens a new
+		// candidate
+		if (this.candidateReadings == 0
+				|| Math.abs(power - this.candidateSum / this.candidateReadings) > this.threshold)
+		{
+			this.candidateSum = 0.0;
+			this.candidateReadings = 0;
+			this.candidateStart = timestamp;
+		}
+		this.candidateSum += power;
+		this.candidateReadings++;
+		
+		if (this.candidateReadings < this.settling)
+			return Collections.<InferredTransition> emptyList();
+		
+		// the candidate is steady: a step
+		double candidate = this.candidateSum / this.candidateReadings;
+		double step = candidate - this.level;
+		this.level = candidate;
+		this.levelReadings = this.candidateReadings;
+		this.candidateReadings = 0;
+		
+		return this.explain(step, this.candidateStart);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see it.polito.elite.dog.addons.powermodel.api.ConsumptionDisaggregator#
+	 * getEstimatedState(java.lang.String)
+	 */
+	@Override
+	public synchronized String getEstimatedState(String deviceURI)
+	{
+		ConsumptionTable table = this.index.getTable();
+		int device = table.getDeviceId(deviceURI);
+		if (device == ConsumptionTable.UNKNOWN)
+			return null;
+		
+		return table.getStateName(device, this.states[device]);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see it.polito.elite.dog.addons.powermodel.api.ConsumptionDisaggregator#
+	 * getEstimatedStates()
+	 */
+	@Override
+	public synchronized Map<String, String> getEstimatedStates()
+	{
+		ConsumptionTable table = this.index.getTable();
+		Map<String, String> estimated = new HashMap<String, String>();
+		
+		for (int device = 0; device < table.size(); device++)
+		{
+			if (this.states[device] != table.getLowestState(device))
+				estimated.put(table.getDeviceURI(device), table.getStateName(device, this.states[device]));
+		}
+		
+		return estimated;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see it.polito.elite.dog.addons.powermodel.api.ConsumptionDisaggregator#
+	 * getEstimatedConsumption(java.lang.String)
+	 */
+	@Override
+	public synchronized double getEstimatedConsumption(String deviceURI)
+	{
+		ConsumptionTable table = this.index.getTable();
+		int device = table.getDeviceId(deviceURI);
+		if (device == ConsumptionTable.UNKNOWN)
+			return 0.0;
+		
+		return table.getBestConsumption(device, this.states[device]);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see it.polito.elite.dog.addons.powermodel.api.ConsumptionDisaggregator#
+	 * getUnexplainedConsumption()
+	 */
+	@Override
+	public synchronized double getUnexplainedConsumption()
+	{
+		return (this.levelReadings > 0) ? this.level - this.explained : 0.0;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * it.polito.elite.dog.addons.powermodel.api.ConsumptionDisaggregator#reset()
+	 */
+	@Override
+	public synchronized void reset()
+	{
+		ConsumptionTable table = this.index.getTable();
+		for (int device = 0; device < table.size(); device++)
+			this.states[device] = table.getLowestState(device);
+		this.explain();
+		
+		this.levelReadings = 0;
+		this.candidateReadings = 0;
+	}
+	
+	/**
+	 * Compute the consumption of the estimated states
+	 */
+	private void explain()
+	{
+		ConsumptionTable table = this.index.getTable();
+		double explained = 0.0;
+		double floor = 0.0;
+		for (int device = 0; device < table.size(); device++)
+		{
+			explained += table.getBestConsumption(device, this.states[device]);
+			floor += this.index.getFloor(device, this.states[device]);
+		}
+		this.explained = explained;
+		this.floor = floor;
+	}
+	
+	/**
+	 * Explain a step of the aggregate consumption by the best combination of
+	 * applicable transitions, and apply it to the estimated states
+	 * 
+	 * @param step
+	 *            the step, in W
+	 * @param timestamp
+	 *            the instant of the step
+	 * @return the transitions explaining the step, none if the step cannot
+	 *         be explained within the tolerance
+	 */
+	private List<InferredTransition> explain(double step, long timestamp)
+	{
+		TransitionIndex index = this.index;
+		if (index.size() == 0)
+			return Collections.<InferredTransition> emptyList();
+		
+		double tolerance = Math.max(this.threshold / 2, this.tolerance * Math.abs(step));
+		this.bestSize = 0;
+		this.bestCost = Double.MAX_VALUE;
+		this.visits = 0;
+		
+		for (int size = 1; size <= StepDisaggregator.MAX_COMBINATION; size++)
+		{
+			// a larger combination cannot beat the best one found
+			if (this.bestCost <= StepDisaggregator.COMBINATION_PENALTY * (size - 1))
+				break;
+			this.search(index, 0, size, 0, step, tolerance);
+		}
+		
+		if (this.bestSize == 0)
+			return Collections.<InferredTransition> emptyList();
+		
+		// apply the combination
+		ConsumptionTable table = index.getTable();
+		double mismatch = step;
+		for (int i = 0; i < this.bestSize; i++)
+			mismatch -= index.getDelta(this.bestPath[i]);
+		
+		List<InferredTransition> transitions = new ArrayList<InferredTransition>(this.bestSize);
+		for (int i = 0; i < this.bestSize; i++)
+		{
+			int entry = this.bestPath[i];
+			int device = index.getDevice(entry);
+			int from = index.getFromState(entry);
+			int to = index.getToState(entry);
+			
+			this.states[device] = to;
+			this.explained += table.getTransitionDelta(device, from, to);
+			this.floor += index.getFloor(device, to) - index.getFloor(device, from);
+			transitions.add(new InferredTransition(table.getDeviceURI(device), table.getStateName(device, from),
+					table.getStateName(device, to), index.getDelta(entry), mismatch, timestamp));
+		}
+		
+		return transitions;
+	}
+	
+	/**
+	 * Search the combinations of a given size explaining a residual step,
+	 * extending the first transitions in the path
+	 * 
+	 * @param index
+	 *            the {@link TransitionIndex} to search
+	 * @param depth
+	 *            the number of transitions already in the path
+	 * @param size
+	 *            the size of the combinations
+	 * @param start
+	 *            the first entry that may extend the path, since the
+	 *            variations of a combination are taken in ascending order
+	 * @param residual
+	 *            the part of the step not yet explained, in W
+	 * @param tolerance
+	 *            the tolerated mismatch, in W
+	 */
+	private void search(TransitionIndex index, int depth, int size, int start, double residual, double tolerance)
+	{
+		int remaining = size - depth;
+		
+		if (remaining == 1)
+		{
+			// the last transition closes the residual: a range lookup
+			for (int entry = Math.max(start, index.lowerBound(residual - tolerance)); entry < index.size()
+					&& index.getDelta(entry) <= residual + tolerance; entry++)
+			{
+				if (++this.visits > StepDisaggregator.MAX_VISITS)
+					return;
+				if (!this.isApplicable(index, entry, depth))
+					continue;
+				
+				double cost = Math.abs(residual - index.getDelta(entry)) / tolerance
+						+ StepDisaggregator.COMBINATION_PENALTY * (size - 1);
+				if (cost >= this.bestCost)
+					continue;
+				
+				// the estimated states cannot consume more than the new level
+				this.path[depth] = entry;
+				if (this.isFeasible(index, size, tolerance))
+				{
+					System.arraycopy(this.path, 0, this.bestPath, 0, size);
+					this.bestSize = size;
+					this.bestCost = cost;
+				}
+			}
+			return;
+		}
+		
+		// the next variation is at most the average of the remaining ones,
+		// and the following ones add at most the highest variation each
+		double lowest = residual - tolerance - (remaining - 1) * index.getDelta(index.size() - 1);
+		double highest = (residual + tolerance) / remaining;
+		for (int entry = Math.max(start, index.lowerBound(lowest)); entry < index.size()
+				&& index.getDelta(entry) <= highest; entry++)
+		{
+			if (++this.visits > StepDisaggregator.MAX_VISITS)
+				return;
+			if (!this.isApplicable(index, entry, depth))
+				continue;
+			
+			this.path[depth] = entry;
+			this.search(index, depth + 1, size, entry + 1, residual - index.getDelta(entry), tolerance);
+		}
+	}
+	
+	/**
+	 * Check if a combination keeps the lowest consumption of the estimated
+	 * states within the current level
+	 */
+	private boolean isFeasible(TransitionIndex index, int size, double tolerance)
+	{
+		double floor = this.floor;
+		for (int i = 0; i < size; i++)
+		{
+			int entry = this.path[i];
+			int device = index.getDevice(entry);
+			floor += index.getFloor(device, index.getToState(entry)) - index.getFloor(device, index.getFromState(entry));
+		}
+		
+		return floor <= this.level + tolerance;
+	}
+	
+	/**
+	 * Check if an entry may extend the path: its transition must leave the
+	 * estimated state of a device not yet in the path
+	 */
+	private boolean isApplicable(TransitionIndex index, int entry, int depth)
+	{
+		int device = index.getDevice(entry);
+		if (index.getFromState(entry) != this.states[device])
+			return false;
+		
+		for (int i = 0; i < depth; i++)
+		{
+			if (index.getDevice(this.path[i]) == device)
+				return false;
+		}
+		
+		return true;
+	}
+}
@@ -0,0 +1,306 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.disaggregation;
+
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+import it.polito.elite.dog.addons.powermodel.device.PowerDevice;
+import it.polito.elite.dog.addons.powermodel.device.PowerState;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The sorted index of the consumption variations of all the state
+ * transitions of a {@link ConsumptionTable}. Each transition is indexed once
+ * for each distinct variation given by the typical, nominal and actual
+ * consumptions of its states (a missing one is replaced by the best
+ * consumption), and once for the variation of the best consumptions; the
+ * transitions whose variation falls in a given range are therefore found by
+ * a binary search, in O(log n).<br/>
+ * Entries are stored as parallel arrays, sorted by ascending variation.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class TransitionIndex
+{
+	// the consumption variations below which a transition is not indexed,
+	// in W
+	private static final double MIN_DELTA = 0.001;
+	
+	// the table the ids refer to
+	private final ConsumptionTable table;
+	
+	// the consumption variation of each entry, in W, ascending
+	private final double[] deltas;
+	
+	// the device id of each entry
+	private final int[] devices;
+	
+	// the state left by each entry
+	private final int[] fromStates;
+	
+	// the state entered by each entry
+	private final int[] toStates;
+	
+	// the lowest consumption of each device state among its typical, nominal
+	// and actual ones, in W
+	private final double[][] floors;
+	
+	/**
+	 * Build an index from a set of sorted arrays; use
+	 * {@link TransitionIndex#build(ConsumptionTable, Map)} to get a new index.
+	 */
+	private TransitionIndex(ConsumptionTable table, double[] deltas, int[] devices, int[] fromStates,
+			int[] toStates, double[][] floors)
+	{
+		this.table = table;
+		this.deltas = deltas;
+		this.devices = devices;
+		this.fromStates = fromStates;
+		this.toStates = toStates;
+		this.floors = floors;
+	}
+	
+	/**
+	 * Build the index of the transitions of a consumption table
+	 * 
+	 * @param table
+	 *            the {@link ConsumptionTable} to index
+	 * @param devices
+	 *            the map of {@link PowerDevice} the table has been built
+	 *            from, giving the consumptions of each state; devices missing
+	 *            from the map are indexed by their best consumptions only
+	 * @return the corresponding {@link TransitionIndex}
+	 */
+	public static TransitionIndex build(ConsumptionTable table, Map<String, PowerDevice> devices)
+	{
+		List<Entry> entries = new ArrayList<Entry>();
+		double[][] floors = new double[table.size()][];
+		
+		for (int device = 0; device < table.size(); device++)
+		{
+			int states = table.getStateCount(device);
+			double[][] signatures = TransitionIndex.getSignatures(table, device,
+					devices.get(table.getDeviceURI(device)));
+			
+			floors[device] = signatures[0].clone();
+			for (int signature = 1; signature < signatures.length; signature++)
+				for (int state = 0; state < states; state++)
+					floors[device][state] = Math.min(floors[device][state], signatures[signature][state]);
+			
+			for (int from = 0; from < states; from++)
+			{
+				for (int to = 0; to < states; to++)
+				{
+					if (from == to)
+						continue;
+					
+					// the first variation is the one of the best consumptions
+					int first = entries.size();
+					for (int signature = 0; signature < signatures.length; signature++)
+					{
+						double delta = Math.round((signatures[signature][to] - signatures[signature][from]) * 1000.0)
+								/ 1000.0;
+						if (Math.abs(delta) < TransitionIndex.MIN_DELTA)
+							continue;
+						
+						// skip the variations already indexed for the transition
+						boolean indexed = false;
+						for (int i = first; i < entries.size() && !indexed; i++)
+							indexed = (entries.get(i).delta == delta);
+						if (!indexed)
+							entries.add(new Entry(delta, device, from, to));
+					}
+				}
+			}
+		}
+		
+		// sort by variation
+		Collections.sort(entries, new Comparator<Entry>() {
+			
+			@Override
+			public int compare(Entry entry1, Entry entry2)
+			{
+				return Double.compare(entry1.delta, entry2.delta);
+			}
+		});
+		
+		int size = entries.size();
+		double[] deltas = new double[size];
+		int[] deviceIds = new int[size];
+		int[] fromStates = new int[size];
+		int[] toStates = new int[size];
+		for (int i = 0; i < size; i++)
+		{
+			Entry entry = entries.get(i);
+			deltas[i] = entry.delta;
+			deviceIds[i] = entry.device;
+			fromStates[i] = entry.from;
+			toStates[i] = entry.to;
+		}
+		
+		return new TransitionIndex(table, deltas, deviceIds, fromStates, toStates, floors);
+	}
+	
+	/**
+	 * Get the consumptions of the states of a device, in W: the best ones,
+	 * then the typical, nominal and actual ones, if any state has them
+	 */
+	private static double[][] getSignatures(ConsumptionTable table, int device, PowerDevice powerDevice)
+	{
+		int states = table.getStateCount(device);
+		double[] best = new double[states];
+		for (int state = 0; state < states; state++)
+			best[state] = table.getBestConsumption(device, state);
+		
+		if (powerDevice == null)
+			return new double[][] { best };
+		
+		double[] typical = best.clone();
+		double[] nominal = best.clone();
+		double[] actual = best.clone();
+		for (PowerState powerState : powerDevice.getStateConsumptions())
+		{
+			int state = table.getStateIndex(device, powerState.getStateName());
+			if (state == ConsumptionTable.UNKNOWN)
+				continue;
+			
+			if (powerState.hasTypicalConsumption())
+				typical[state] = ConsumptionTable.toWatt(powerState.getTypicalConsumption());
+			if (powerState.hasNominalConsumption())
+				nominal[state] = ConsumptionTable.toWatt(powerState.getNominalConsumption());
+			if (powerState.hasActualConsumption())
+				actual[state] = ConsumptionTable.toWatt(powerState.getActualConsumption());
+		}
+		
+		return new double[][] { best, typical, nominal, actual };
+	}
+	
+	/**
+	 * @return the table the ids refer to
+	 */
+	public ConsumptionTable getTable()
+	{
+		return this.table;
+	}
+	
+	/**
+	 * @return the number of entries
+	 */
+	public int size()
+	{
+		return this.deltas.length;
+	}
+	
+	/**
+	 * Get the consumption variation of an entry, in W
+	 */
+	public double getDelta(int entry)
+	{
+		return this.deltas[entry];
+	}
+	
+	/**
+	 * Get the device id of an entry
+	 */
+	public int getDevice(int entry)
+	{
+		return this.devices[entry];
+	}
+	
+	/**
+	 * Get the state left by the transition of an entry
+	 */
+	public int getFromState(int entry)
+	{
+		return this.fromStates[entry];
+	}
+	
+	/**
+	 * Get the state entered by the transition of an entry
+	 */
+	public int getToState(int entry)
+	{
+		return this.toStates[entry];
+	}
+	
+	/**
+	 * Get the lowest consumption of a device state, in W, among its typical,
+	 * nominal and actual ones
+	 */
+	public double getFloor(int device, int state)
+	{
+		return this.floors[device][state];
+	}
+	
+	/**
+	 * Find the first entry whose variation is not lower than a given value
+	 * 
+	 * @param delta
+	 *            the consumption variation, in W
+	 * @return the index of the entry, or the number of entries if all the
+	 *         variations are lower
+	 */
+	public int lowerBound(double delta)
+	{
+		int low = 0;
+		int high = this.deltas.length;
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+			if (this.deltas[middle] < delta)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+	
+	/**
+	 * An index entry, while building the index
+	 */
+	private static class Entry
+	{
+		// the consumption variation, in W
+		final double delta;
+		
+		// the device id
+		final int device;
+		
+		// the state left
+		final int from;
+		
+		// the state entered
+		final int to;
+		
+		/**
+		 * Constructor
+		 */
+		Entry(double delta, int device, int from, int to)
+		{
+			this.delta = delta;
+			this.device = device;
+			this.from = from;
+			this.to = to;
+		}
+	}
+}
@@ -0,0 +1,794 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.energy;
+
+import it.polito.elite.dog.addons.powermodel.api.EnergyMeter;
+import it.polito.elite.dog.addons.powermodel.api.PowerBudget;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+import it.polito.elite.dog.addons.powermodel.device.LoadProfile;
+import it.polito.elite.dog.addons.powermodel.forecast.MarkovForecaster;
+import it.polito.elite.dog.addons.powermodel.live.LivePower;
+
+import java.util.Arrays;
+
+/**
+ * Implementation of the {@link EnergyMeter} service. The per-device state,
+ * power and energy counters are kept in primitive arrays indexed by the
+ * device ids of the current {@link ConsumptionTable}, so that a state change
+ * is integrated without allocating any object. States with a
+ * {@link LoadProfile} are integrated along their profile, from the instant
+ * they were entered, and their power is re-evaluated along the profile on
+ * every {@link #advance(long)}: the accumulator is the only place where
+ * profiles are evaluated over time, and it feeds the resulting power to the
+ * {@link LivePower} aggregates (and, through them, to their listeners).
+ * Every integrated interval is also notified to the {@link IntervalListener},
+ * if any, so that it follows the very same device states, and every state
+ * change is forwarded to the {@link PowerBudget}, so that its committed
+ * states are the ones metered here.<br/>
+ * Notifications are collected holding the accumulator monitor and dispatched
+ * in order after releasing it, holding a separate dispatch lock: readers of
+ * the counters never wait for the listeners.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class EnergyAccumulator implements EnergyMeter
+{
+	// milliseconds in one hour, to convert W*ms in Wh
+	private static final double MS_PER_HOUR = 3600000.0;
+	
+	// seconds in one hour, to convert J in Wh
+	private static final double S_PER_HOUR = 3600.0;
+	
+	// the notification of an integrated interval
+	private static final int INTERVAL = 0;
+	
+	// the notification of a new consumption table
+	private static final int TABLE = 1;
+	
+	// the notification of a new device power
+	private static final int POWER = 2;
+	
+	// the notification of a state change
+	private static final int STATE = 3;
+	
+	// the consumption table
+	private ConsumptionTable table;
+	
+	// the current state index of each device
+	private int[] states;
+	
+	// the current power of each device, in W
+	private double[] power;
+	
+	// the instant of the latest update of each device, in ms
+	private long[] since;
+	
+	// the instant each device entered its current state, in ms
+	private long[] entered;
+	
+	// the ids of the devices in a state with a load profile, and the
+	// position of each device in that list (UNKNOWN if not there)
+	private int[] profiled;
+	private int profiledCount;
+	private int[] profiledPositions;
+	
+	// the household power of the devices in a state without a load profile,
+	// in W
+	private double flatPower;
+	
+	// the energy consumed by each device up to its latest update, in Wh
+	private double[] energy;
+	
+	// the current household power, in W
+	private double totalPower;
+	
+	// the instant of the latest household update, in ms
+	private long totalSince;
+	
+	// the energy consumed by the household up to its latest update, in Wh
+	private double totalEnergy;
+	
+	// false until the first state change is notified
+	private boolean started;
+	
+	// the live aggregates to update on state changes, if any
+	private volatile LivePower livePower;
+	
+	// the load forecaster learning the state changes, if any
+	private volatile MarkovForecaster loadForecaster;
+	
+	// the listener of the integrated intervals, if any
+	private IntervalListener intervalListener;
+	
+	// the power budget following the state changes, if any
+	private volatile PowerBudget powerBudget;
+	
+	// held while collecting and dispatching the notifications, so that they
+	// are delivered in order
+	private final Object dispatchLock = new Object();
+	
+	// the notifications not dispatched yet
+	private final Notifications notifications = new Notifications();
+	
+	/**
+	 * Default constructor
+	 */
+	public EnergyAccumulator()
+	{
+		this.setConsumptionTable(ConsumptionTable.EMPTY);
+	}
+	
+	/**
+	 * Set the live aggregates to update with the power of the device states
+	 * notified to the accumulator
+	 * 
+	 * @param livePower
+	 *            the {@link LivePower} aggregates
+	 */
+	public void setLivePower(LivePower livePower)
+	{
+		this.livePower = livePower;
+	}
+	
+	/**
+	 * Set the load forecaster learning the state changes notified to the
+	 * accumulator, at the instant of each state change
+	 * 
+	 * @param loadForecaster
+	 *            the {@link MarkovForecaster}
+	 */
+	public void setLoadForecaster(MarkovForecaster loadForecaster)
+	{
+		this.loadForecaster = loadForecaster;
+	}
+	
+	/**
+	 * Set the power budget whose device states follow the state changes
+	 * notified to the accumulator
+	 * 
+	 * @param powerBudget
+	 *            the {@link PowerBudget}
+	 */
+	public void setPowerBudget(PowerBudget powerBudget)
+	{
+		this.powerBudget = powerBudget;
+	}
+	
+	/**
+	 * Set the listener of the intervals integrated by the accumulator; the
+	 * listener is called holding the dispatch lock only, never the
+	 * accumulator monitor, and is kept bound to the consumption table of the
+	 * accumulator
+	 * 
+	 * @param intervalListener
+	 *            the {@link IntervalListener}, or null
+	 */
+	public void setIntervalListener(IntervalListener intervalListener)
+	{
+		synchronized (this.dispatchLock)
+		{
+			ConsumptionTable current;
+			synchronized (this)
+			{
+				this.intervalListener = intervalListener;
+				current = this.table;
+			}
+			
+			if (intervalListener != null)
+				intervalListener.setConsumptionTable(current);
+		}
+	}
+	
+	/**
+	 * Bind the accumulator to a new consumption table, e.g., after a model
+	 * (re)load, at the current time
+	 * 
+	 * @param table
+	 *            the new {@link ConsumptionTable}
+	 */
+	public void setConsumptionTable(ConsumptionTable table)
+	{
+		this.setConsumptionTable(table, System.currentTimeMillis());
+	}
+	
+	/**
+	 * Bind the accumulator to a new consumption table, e.g., after a model
+	 * (re)load. The energy is integrated with the previous table up to the
+	 * given instant; then energy counters and device states are preserved
+	 * for the devices still in the table, while the power of each device is
+	 * re-evaluated from the new table.
+	 * 
+	 * @param table
+	 *            the new {@link ConsumptionTable}
+	 * @param timestamp
+	 *            the instant of the swap, in ms since the epoch
+	 */
+	public void setConsumptionTable(ConsumptionTable table, long timestamp)
+	{
+		synchronized (this.dispatchLock)
+		{
+			this.swap(table, timestamp);
+			this.dispatch();
+		}
+	}
+	
+	/**
+	 * Bind the accumulator to a new consumption table, collecting the
+	 * notifications
+	 */
+	private synchronized void swap(ConsumptionTable table, long timestamp)
+	{
+		// integrate up to the swap, with the previous consumptions
+		if (this.table != null)
+		{
+			for (int device = 0; device < this.table.size(); device++)
+				this.account(device, timestamp);
+			if (this.started && timestamp > this.totalSince)
+			{
+				this.totalEnergy += this.getHouseholdEnergy(this.totalSince, timestamp);
+				this.totalSince = timestamp;
+			}
+		}
+		
+		// init
+		int size = table.size();
+		int[] newStates = new int[size];
+		double[] newPower = new double[size];
+		long[] newSince = new long[size];
+		long[] newEntered = new long[size];
+		double[] newEnergy = new double[size];
+		double newTotalPower = 0.0;
+		
+		for (int device = 0; device < size; device++)
+		{
+			newStates[device] = ConsumptionTable.UNKNOWN;
+			
+			// carry the previous counters, if any
+			int previous = (this.table != null) ? this.table.getDeviceId(table.getDeviceURI(device))
+					: ConsumptionTable.UNKNOWN;
+			if (previous != ConsumptionTable.UNKNOWN)
+			{
+				if (this.states[previous] != ConsumptionTable.UNKNOWN)
+					newStates[device] = table.getStateIndex(device,
+							this.table.getStateName(previous, this.states[previous]));
+				newSince[device] = this.since[previous];
+				newEntered[device] = this.entered[previous];
+				newEnergy[device] = this.energy[previous];
+			}
+			
+			newPower[device] = table.getConsumption(device, newStates[device],
+					Math.max(0, timestamp - newEntered[device]) / 1000.0);
+			newTotalPower += newPower[device];
+		}
+		
+		// publish
+		this.table = table;
+		this.states = newStates;
+		this.power = newPower;
+		this.since = newSince;
+		this.entered = newEntered;
+		this.energy = newEnergy;
+		this.totalPower = newTotalPower;
+		
+		// split the devices following a load profile
+		this.profiled = new int[size];
+		this.profiledPositions = new int[size];
+		this.profiledCount = 0;
+		this.flatPower = 0.0;
+		for (int device = 0; device < size; device++)
+		{
+			this.profiledPositions[device] = ConsumptionTable.UNKNOWN;
+			this.addPower(device);
+		}
+		
+		// notify the next intervals with the new table
+		this.notifications.add(EnergyAccumulator.TABLE, table, ConsumptionTable.UNKNOWN, ConsumptionTable.UNKNOWN,
+				0, 0, timestamp, 0.0);
+	}
+	
+	@Override
+	public boolean notifyStateChange(String deviceURI, String stateName, long timestamp)
+	{
+		synchronized (this.dispatchLock)
+		{
+			boolean known = this.switchState(deviceURI, stateName, timestamp);
+			this.dispatch();
+			
+			return known;
+		}
+	}
+	
+	/**
+	 * Switch a device to a new state, collecting the notifications
+	 * 
+	 * @return true if the device and the state are known
+	 */
+	private synchronized boolean switchState(String deviceURI, String stateName, long timestamp)
+	{
+		int device = this.table.getDeviceId(deviceURI);
+		if (device == ConsumptionTable.UNKNOWN)
+			return false;
+		
+		int state = this.table.getStateIndex(device, stateName);
+		if (state == ConsumptionTable.UNKNOWN)
+			return false;
+		
+		this.integrate(device, state, timestamp);
+		
+		return true;
+	}
+	
+	/**
+	 * Integrate the energy of a device up to the given instant, then switch
+	 * it to a new state
+	 * 
+	 * @param device
+	 *            the device id
+	 * @param state
+	 *            the new state index
+	 * @param timestamp
+	 *            the instant of the state change, in ms
+	 */
+	private void integrate(int device, int state, long timestamp)
+	{
+		// the first notification starts the household clock
+		if (!this.started)
+		{
+			this.totalSince = timestamp;
+			this.started = true;
+		}
+		
+		// device counters
+		this.account(device, timestamp);
+		if (this.states[device] == ConsumptionTable.UNKNOWN)
+			this.since[device] = timestamp;
+		
+		// household counters
+		if (timestamp > this.totalSince)
+		{
+			this.totalEnergy += this.getHouseholdEnergy(this.totalSince, timestamp);
+			this.totalSince = timestamp;
+		}
+		
+		// switch state; the same state goes on along its profile
+		this.removePower(device);
+		if (this.states[device] != state)
+			this.entered[device] = timestamp;
+		this.states[device] = state;
+		double newPower = this.table.getConsumption(device, state, (timestamp - this.entered[device]) / 1000.0);
+		this.totalPower += newPower - this.power[device];
+		this.power[device] = newPower;
+		this.addPower(device);
+		
+		// update the live aggregates, then learn the state change
+		this.publish(device, newPower, timestamp);
+		this.notifications.add(EnergyAccumulator.STATE, this.table, device, state, 0, 0, timestamp, 0.0);
+	}
+	
+	/**
+	 * Integrate the energy of a device in its current state, and notify the
+	 * interval, from its latest update up to the given instant; late instants
+	 * are simultaneous to the latest update
+	 * 
+	 * @param device
+	 *            the device id
+	 * @param timestamp
+	 *            the end of the interval, in ms
+	 */
+	private void account(int device, long timestamp)
+	{
+		if (this.states[device] == ConsumptionTable.UNKNOWN || timestamp <= this.since[device])
+			return;
+		
+		this.energy[device] += this.getStateEnergy(device, this.since[device], timestamp);
+		if (this.intervalListener != null)
+			this.notifications.add(EnergyAccumulator.INTERVAL, this.table, device, this.states[device],
+					this.entered[device], this.since[device], timestamp, 0.0);
+		this.since[device] = timestamp;
+	}
+	
+	/**
+	 * Collect the update of the live aggregates with the power of a device
+	 */
+	private void publish(int device, double power, long timestamp)
+	{
+		if (this.livePower != null)
+			this.notifications.add(EnergyAccumulator.POWER, this.table, device, ConsumptionTable.UNKNOWN, 0, 0,
+					timestamp, power);
+	}
+	
+	/**
+	 * Dispatch the collected notifications, in order, holding the dispatch
+	 * lock but not the accumulator monitor
+	 */
+	private void dispatch()
+	{
+		Notifications pending = this.notifications;
+		try
+		{
+			for (int i = 0; i < pending.size; i++)
+			{
+				ConsumptionTable table = pending.tables[i];
+				int device = pending.devices[i];
+				int kind = pending.kinds[i];
+				if (kind == EnergyAccumulator.INTERVAL)
+				{
+					IntervalListener listener = this.intervalListener;
+					if (listener != null)
+						listener.integrate(table, device, pending.states[i], pending.entered[i], pending.from[i],
+								pending.to[i]);
+				}
+				else if (kind == EnergyAccumulator.TABLE)
+				{
+					IntervalListener listener = this.intervalListener;
+					if (listener != null)
+						listener.setConsumptionTable(table);
+				}
+				else if (kind == EnergyAccumulator.POWER)
+				{
+					LivePower live = this.livePower;
+					if (live != null && !live.setModelledPower(table, device, pending.powers[i], pending.to[i]))
+						live.setModelledPower(table.getDeviceURI(device), pending.powers[i], pending.to[i]);
+				}
+				else
+				{
+					String deviceURI = table.getDeviceURI(device);
+					String stateName = table.getStateName(device, pending.states[i]);
+					
+					MarkovForecaster forecaster = this.loadForecaster;
+					if (forecaster != null && !forecaster.observe(table, device, pending.states[i], pending.to[i]))
+						forecaster.observe(deviceURI, stateName, pending.to[i]);
+					
+					PowerBudget budget = this.powerBudget;
+					if (budget != null)
+						budget.setDeviceState(deviceURI, stateName);
+				}
+			}
+		}
+		finally
+		{
+			pending.clear();
+		}
+	}
+	
+	/**
+	 * Integrate the energy of every device up to the given instant, e.g.,
+	 * before the pricing of the intervals changes or periodically, without
+	 * changing any state; the power of the devices following a load profile
+	 * is moved along the profile, and published to the live aggregates
+	 * 
+	 * @param timestamp
+	 *            the instant, in ms since the epoch
+	 */
+	public void advance(long timestamp)
+	{
+		synchronized (this.dispatchLock)
+		{
+			this.moveOn(timestamp);
+			this.dispatch();
+		}
+	}
+	
+	/**
+	 * Integrate the energy of every device up to the given instant,
+	 * collecting the notifications
+	 */
+	private synchronized void moveOn(long timestamp)
+	{
+		for (int device = 0; device < this.states.length; device++)
+			this.account(device, timestamp);
+		if (this.started && timestamp > this.totalSince)
+		{
+			this.totalEnergy += this.getHouseholdEnergy(this.totalSince, timestamp);
+			this.totalSince = timestamp;
+		}
+		
+		for (int i = 0; i < this.profiledCount; i++)
+		{
+			int device = this.profiled[i];
+			if (timestamp < this.entered[device])
+				continue;
+			
+			double newPower = this.table.getConsumption(device, this.states[device],
+					(timestamp - this.entered[device]) / 1000.0);
+			if (newPower != this.power[device])
+			{
+				this.totalPower += newPower - this.power[device];
+				this.power[device] = newPower;
+				this.publish(device, newPower, timestamp);
+			}
+		}
+	}
+	
+	@Override
+	public synchronized double getDeviceEnergy(String deviceURI)
+	{
+		int device = this.table.getDeviceId(deviceURI);
+		if (device == ConsumptionTable.UNKNOWN)
+			return 0.0;
+		
+		return this.energy[device];
+	}
+	
+	@Override
+	public synchronized double getDeviceEnergy(String deviceURI, long timestamp)
+	{
+		int device = this.table.getDeviceId(deviceURI);
+		if (device == ConsumptionTable.UNKNOWN)
+			return 0.0;
+		
+		double current = this.energy[device];
+		if (this.states[device] != ConsumptionTable.UNKNOWN && timestamp > this.since[device])
+			current += this.getStateEnergy(device, this.since[device], timestamp);
+		
+		return current;
+	}
+	
+	@Override
+	public synchronized double getTotalEnergy()
+	{
+		return this.totalEnergy;
+	}
+	
+	@Override
+	public synchronized double getTotalEnergy(long timestamp)
+	{
+		double current = this.totalEnergy;
+		if (this.started && timestamp > this.totalSince)
+			current += this.getHouseholdEnergy(this.totalSince, timestamp);
+		
+		return current;
+	}
+	
+	/**
+	 * Get the energy consumed by a device in its current state
+	 * 
+	 * @param device
+	 *            the device id
+	 * @param from
+	 *            the start of the interval, in ms
+	 * @param to
+	 *            the end of the interval, in ms
+	 * @return the energy, in Wh
+	 */
+	private double getStateEnergy(int device, long from, long to)
+	{
+		LoadProfile profile = this.table.getLoadProfile(device, this.states[device]);
+		if (profile == null)
+			return this.power[device] * (to - from) / EnergyAccumulator.MS_PER_HOUR;
+		
+		long entry = this.entered[device];
+		return profile.getEnergy((from - entry) / 1000.0, (to - entry) / 1000.0) / EnergyAccumulator.S_PER_HOUR;
+	}
+	
+	/**
+	 * Get the energy consumed by the household in its current state, i.e.,
+	 * the flat power plus the profile of each device following one
+	 * 
+	 * @param from
+	 *            the start of the interval, in ms
+	 * @param to
+	 *            the end of the interval, in ms
+	 * @return the energy, in Wh
+	 */
+	private double getHouseholdEnergy(long from, long to)
+	{
+		double energy = this.flatPower * (to - from) / EnergyAccumulator.MS_PER_HOUR;
+		for (int i = 0; i < this.profiledCount; i++)
+			energy += this.getStateEnergy(this.profiled[i], from, to);
+		
+		return energy;
+	}
+	
+	/**
+	 * Account the power of a device in its current state, either as flat
+	 * power or as a device following a profile
+	 */
+	private void addPower(int device)
+	{
+		if (this.table.getLoadProfile(device, this.states[device]) != null)
+		{
+			this.profiledPositions[device] = this.profiledCount;
+			this.profiled[this.profiledCount++] = device;
+		}
+		else
+			this.flatPower += this.power[device];
+	}
+	
+	/**
+	 * Remove the power of a device in its current state, before a switch
+	 */
+	private void removePower(int device)
+	{
+		int position = this.profiledPositions[device];
+		if (position != ConsumptionTable.UNKNOWN)
+		{
+			// move the last device of the list in place of the removed one
+			int last = this.profiled[--this.profiledCount];
+			this.profiled[position] = last;
+			this.profiledPositions[last] = position;
+			this.profiledPositions[device] = ConsumptionTable.UNKNOWN;
+		}
+		else
+			this.flatPower -= this.power[device];
+	}
+	
+	/**
+	 * Copy the current power of each device in the given buffer
+	 * 
+	 * @param powers
+	 *            the buffer to fill, indexed by device id; devices in an
+	 *            unknown state get {@link Double#NaN}
+	 * @return the {@link ConsumptionTable} the device ids refer to, or null
+	 *         if the buffer is smaller than the table
+	 */
+	public synchronized ConsumptionTable getDevicePowers(double[] powers)
+	{
+		if (powers.length < this.power.length)
+			return null;
+		
+		for (int device = 0; device < this.power.length; device++)
+			powers[device] = (this.states[device] != ConsumptionTable.UNKNOWN) ? this.power[device] : Double.NaN;
+		
+		return this.table;
+	}
+	
+	/**
+	 * Copy the current state of each device in the given buffers, consistent
+	 * with the intervals already notified to the {@link IntervalListener}
+	 * 
+	 * @param states
+	 *            the buffer of the state indexes, {@link ConsumptionTable#UNKNOWN}
+	 *            for devices in an unknown state
+	 * @param entered
+	 *            the buffer of the instants each state was entered, in ms
+	 * @param since
+	 *            the buffer of the instants of the latest updates, in ms
+	 * @return the {@link ConsumptionTable} the device ids refer to, or null
+	 *         if the buffers are smaller than the table
+	 */
+	public ConsumptionTable getDeviceStates(int[] states, long[] entered, long[] since)
+	{
+		// no notification is pending while the dispatch lock is held
+		synchronized (this.dispatchLock)
+		{
+			synchronized (this)
+			{
+				int size = this.states.length;
+				if (states.length < size || entered.length < size || since.length < size)
+					return null;
+		
+				System.arraycopy(this.states, 0, states, 0, size);
+				System.arraycopy(this.entered, 0, entered, 0, size);
+				System.arraycopy(this.since, 0, since, 0, size);
+		
+				return this.table;
+			}
+		}
+	}
+	
+	/**
+	 * @return the consumption table currently in use
+	 */
+	public synchronized ConsumptionTable getConsumptionTable()
+	{
+		return this.table;
+	}
+	
+	@Override
+	public synchronized double getTotalPower()
+	{
+		return this.totalPower;
+	}
+	
+	@Override
+	public synchronized void reset(long timestamp)
+	{
+		for (int device = 0; device < this.energy.length; device++)
+		{
+			this.energy[device] = 0.0;
+			this.since[device] = timestamp;
+		}
+		this.totalEnergy = 0.0;
+		this.totalSince = timestamp;
+		this.started = true;
+	}
+	
+	/**
+	 * The notifications collected holding the accumulator monitor, kept in
+	 * parallel arrays reused from one dispatch to the next, so that a state
+	 * change does not allocate any object
+	 */
+	private static class Notifications
+	{
+		// the number of pending notifications
+		private int size;
+		
+		// the kind of each notification
+		private int[] kinds;
+		
+		// the consumption table each notification refers to
+		private ConsumptionTable[] tables;
+		
+		// the device id and state index, UNKNOWN if not relevant
+		private int[] devices;
+		private int[] states;
+		
+		// the instant the state was entered and the interval start, in ms
+		private long[] entered;
+		private long[] from;
+		
+		// the interval end or the instant of the notification, in ms
+		private long[] to;
+		
+		// the device power, in W
+		private double[] powers;
+		
+		Notifications()
+		{
+			this.kinds = new int[16];
+			this.tables = new ConsumptionTable[16];
+			this.devices = new int[16];
+			this.states = new int[16];
+			this.entered = new long[16];
+			this.from = new long[16];
+			this.to = new long[16];
+			this.powers = new double[16];
+		}
+		
+		/**
+		 * Append a notification
+		 */
+		void add(int kind, ConsumptionTable table, int device, int state, long entered, long from, long to,
+				double power)
+		{
+			if (this.size == this.kinds.length)
+			{
+				int capacity = this.size * 2;
+				this.kinds = Arrays.copyOf(this.kinds, capacity);
+				this.tables = Arrays.copyOf(this.tables, capacity);
+				this.devices = Arrays.copyOf(this.devices, capacity);
+				this.states = Arrays.copyOf(this.states, capacity);
+				this.entered = Arrays.copyOf(this.entered, capacity);
+				this.from = Arrays.copyOf(this.from, capacity);
+				this.to = Arrays.copyOf(this.to, capacity);
+				this.powers = Arrays.copyOf(this.powers, capacity);
+			}
+			
+			this.kinds[this.size] = kind;
+			this.tables[this.size] = table;
+			this.devices[this.size] = device;
+			this.states[this.size] = state;
+			this.entered[this.size] = entered;
+			this.from[this.size] = from;
+			this.to[this.size] = to;
+			this.powers[this.size] = power;
+			this.size++;
+		}
+		
+		/**
+		 * Drop all the notifications, releasing the tables
+		 */
+		void clear()
+		{
+			Arrays.fill(this.tables, 0, this.size, null);
+			this.size = 0;
+		}
+	}
+}
@@ -0,0 +1,59 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.energy;
+
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+
+/**
+ * The interface to implement for following the intervals integrated by the
+ * {@link EnergyAccumulator}, e.g., to price them. For each device, intervals
+ * are notified in time order and never overlap, so a listener sees exactly
+ * the energy counted by the accumulator.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public interface IntervalListener
+{
+	/**
+	 * Called when the accumulator is bound to a new consumption table, before
+	 * any interval of the new table is notified
+	 * 
+	 * @param table
+	 *            the new {@link ConsumptionTable}
+	 */
+	public void setConsumptionTable(ConsumptionTable table);
+	
+	/**
+	 * Called for every interval spent by a device in a known state
+	 * 
+	 * @param table
+	 *            the {@link ConsumptionTable} the ids refer to
+	 * @param device
+	 *            the device id
+	 * @param state
+	 *            the state index
+	 * @param entered
+	 *            the instant the state was entered, in ms
+	 * @param from
+	 *            the start of the interval, in ms
+	 * @param to
+	 *            the end of the interval, in ms
+	 */
+	public void integrate(ConsumptionTable table, int device, int state, long entered, long from, long to);
+}
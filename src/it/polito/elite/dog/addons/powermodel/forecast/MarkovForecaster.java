@@ -0,0 +1,723 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.forecast;
+
+import it.polito.elite.dog.addons.powermodel.api.LoadForecast;
+import it.polito.elite.dog.addons.powermodel.api.LoadForecaster;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+import it.polito.elite.dog.addons.powermodel.device.LoadProfile;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.TimeZone;
+
+/**
+ * Implementation of the {@link LoadForecaster} service. The state of each
+ * device is sampled on a grid of fixed steps, and each pair of consecutive
+ * samples is counted as a transition in the time-of-day bucket of the first
+ * one. The counts of all the devices are kept in a single primitive array,
+ * one n x n matrix per bucket, contiguous for each device, together with
+ * their row totals (the occupancy of each state) and the transition
+ * probabilities. The prior of each row is a single transition, distributed
+ * as the transitions of the same state in the whole day, so that a state
+ * seldom seen in a bucket follows the habits of the device. A new transition
+ * only updates the rows of one state, and a forecast costs O(devices x steps
+ * x states^2), without allocations per device. Forecasts run on a copy of
+ * the probabilities taken under the monitor, so that the state changes being
+ * learned (notified holding the monitor of the energy accumulator) never wait
+ * for a forecast.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class MarkovForecaster implements LoadForecaster
+{
+	// the default sampling step, in ms
+	public static final long DEFAULT_STEP = 15 * 60 * 1000L;
+	
+	// the default number of time-of-day buckets
+	public static final int DEFAULT_BUCKETS = 24;
+	
+	// the longest forecast horizon, in ms
+	public static final long MAX_HORIZON = 7 * 24 * 3600 * 1000L;
+	
+	// milliseconds in one day
+	private static final long MS_PER_DAY = 24 * 3600 * 1000L;
+	
+	// the sampling step, in ms
+	private long step;
+	
+	// the number of time-of-day buckets
+	private int buckets;
+	
+	// the time zone defining the time of day
+	private TimeZone timeZone;
+	
+	// the consumption table
+	private ConsumptionTable table;
+	
+	// the offset of the transition matrices of each device
+	private int[] blockOffsets;
+	
+	// the transition counts, by device, bucket, origin and destination state
+	private double[] transitions;
+	
+	// the transition counts from each state, by device, bucket and state
+	private double[] occupancy;
+	
+	// the transition probabilities, laid out as the counts
+	private double[] probabilities;
+	
+	// the number of transitions counted for each device
+	private double[] observed;
+	
+	// the current state index of each device
+	private int[] states;
+	
+	// the state of each device at its latest sample
+	private int[] sampled;
+	
+	// the next sampling instant of each device, in ms since the epoch
+	private long[] nextSamples;
+	
+	/**
+	 * Default constructor
+	 */
+	public MarkovForecaster()
+	{
+		this.step = MarkovForecaster.DEFAULT_STEP;
+		this.buckets = MarkovForecaster.DEFAULT_BUCKETS;
+		this.timeZone = TimeZone.getDefault();
+		this.setConsumptionTable(ConsumptionTable.EMPTY);
+	}
+	
+	/**
+	 * Copy constructor, freezing what is needed for forecasting; called
+	 * holding the monitor of the original forecaster
+	 * 
+	 * @param original
+	 *            the {@link MarkovForecaster} to copy
+	 */
+	private MarkovForecaster(MarkovForecaster original)
+	{
+		this.step = original.step;
+		this.buckets = original.buckets;
+		this.timeZone = original.timeZone;
+		this.table = original.table;
+		this.blockOffsets = original.blockOffsets.clone();
+		this.occupancy = original.occupancy.clone();
+		this.probabilities = original.probabilities.clone();
+		this.observed = original.observed.clone();
+		this.states = original.states.clone();
+	}
+	
+	/**
+	 * Set the sampling step and the number of time-of-day buckets; everything
+	 * learned so far is forgotten if they change
+	 * 
+	 * @param step
+	 *            the sampling step, in ms, dividing one day
+	 * @param buckets
+	 *            the number of time-of-day buckets, between 1 and the number
+	 *            of steps in one day
+	 */
+	public synchronized void setResolution(long step, int buckets)
+	{
+		if (step <= 0 || MarkovForecaster.MS_PER_DAY % step != 0)
+			throw new IllegalArgumentException("The forecasting step must divide one day: " + step + " ms");
+		if (buckets <= 0 || buckets > MarkovForecaster.MS_PER_DAY / step)
+			throw new IllegalArgumentException("Invalid number of time-of-day buckets: " + buckets);
+		
+		if (step == this.step && buckets == this.buckets)
+			return;
+		
+		this.step = step;
+		this.buckets = buckets;
+		
+		// restart learning, from the current states
+		int size = this.layout(this.table, this.blockOffsets);
+		this.transitions = new double[size];
+		this.occupancy = new double[buckets * this.table.getSlotCount()];
+		this.probabilities = new double[size];
+		for (int device = 0; device < this.table.size(); device++)
+		{
+			this.observed[device] = 0.0;
+			this.sampled[device] = ConsumptionTable.UNKNOWN;
+			this.nextSamples[device] = this.getNextSample(this.nextSamples[device]);
+			this.normalize(device);
+		}
+	}
+	
+	/**
+	 * Set the time zone defining the time of day of the buckets
+	 * 
+	 * @param timeZone
+	 *            the {@link TimeZone}
+	 */
+	public synchronized void setTimeZone(TimeZone timeZone)
+	{
+		this.timeZone = timeZone;
+	}
+	
+	/**
+	 * Bind the chains to a new consumption table, e.g., after a model
+	 * (re)load, preserving what has been learned for the device states still
+	 * in the table
+	 * 
+	 * @param table
+	 *            the new {@link ConsumptionTable}
+	 */
+	public synchronized void setConsumptionTable(ConsumptionTable table)
+	{
+		// lay out the transition matrices
+		int size = table.size();
+		int[] newOffsets = new int[size];
+		int matrixSize = this.layout(table, newOffsets);
+		
+		double[] newTransitions = new double[matrixSize];
+		double[] newOccupancy = new double[this.buckets * table.getSlotCount()];
+		double[] newObserved = new double[size];
+		int[] newStates = new int[size];
+		int[] newSampled = new int[size];
+		long[] newNextSamples = new long[size];
+		
+		for (int device = 0; device < size; device++)
+		{
+			newStates[device] = ConsumptionTable.UNKNOWN;
+			newSampled[device] = ConsumptionTable.UNKNOWN;
+			
+			// carry the previous chain, if any
+			int previous = (this.table != null) ? this.table.getDeviceId(table.getDeviceURI(device))
+					: ConsumptionTable.UNKNOWN;
+			if (previous == ConsumptionTable.UNKNOWN)
+				continue;
+			
+			int n = table.getStateCount(device);
+			int previousN = this.table.getStateCount(previous);
+			int[] map = new int[n];
+			for (int state = 0; state < n; state++)
+				map[state] = this.table.getStateIndex(previous, table.getStateName(device, state));
+			
+			for (int bucket = 0; bucket < this.buckets; bucket++)
+			{
+				int base = newOffsets[device] + bucket * n * n;
+				int previousBase = this.blockOffsets[previous] + bucket * previousN * previousN;
+				for (int from = 0; from < n; from++)
+				{
+					if (map[from] == ConsumptionTable.UNKNOWN)
+						continue;
+					
+					double total = 0.0;
+					for (int to = 0; to < n; to++)
+					{
+						if (map[to] == ConsumptionTable.UNKNOWN)
+							continue;
+						
+						double count = this.transitions[previousBase + map[from] * previousN + map[to]];
+						newTransitions[base + from * n + to] = count;
+						total += count;
+					}
+					newOccupancy[table.getSlot(device, 0) * this.buckets + bucket * n + from] = total;
+					newObserved[device] += total;
+				}
+			}
+			
+			newStates[device] = this.mapState(map, this.states[previous]);
+			newSampled[device] = this.mapState(map, this.sampled[previous]);
+			newNextSamples[device] = this.nextSamples[previous];
+		}
+		
+		// publish
+		this.table = table;
+		this.blockOffsets = newOffsets;
+		this.transitions = newTransitions;
+		this.occupancy = newOccupancy;
+		this.probabilities = new double[matrixSize];
+		this.observed = newObserved;
+		this.states = newStates;
+		this.sampled = newSampled;
+		this.nextSamples = newNextSamples;
+		for (int device = 0; device < size; device++)
+			this.normalize(device);
+	}
+	
+	@Override
+	public synchronized boolean observe(String deviceURI, String stateName, long timestamp)
+	{
+		int device = this.table.getDeviceId(deviceURI);
+		if (device == ConsumptionTable.UNKNOWN)
+			return false;
+		
+		int state = this.table.getStateIndex(device, stateName);
+		if (state == ConsumptionTable.UNKNOWN)
+			return false;
+		
+		this.observe(device, state, timestamp);
+		
+		return true;
+	}
+	
+	/**
+	 * Learn a state change, given the device id and the state index
+	 * 
+	 * @param table
+	 *            the {@link ConsumptionTable} the ids refer to
+	 * @param device
+	 *            the device id
+	 * @param state
+	 *            the new state index
+	 * @param timestamp
+	 *            the instant of the state change, in ms since the epoch
+	 * @return true if the table is still the current one
+	 */
+	public synchronized boolean observe(ConsumptionTable table, int device, int state, long timestamp)
+	{
+		if (this.table != table)
+			return false;
+		
+		this.observe(device, state, timestamp);
+		
+		return true;
+	}
+	
+	@Override
+	public LoadForecast forecast(long from, long horizon)
+	{
+		return this.copy().forecast(ConsumptionTable.UNKNOWN, from, horizon, null);
+	}
+	
+	/**
+	 * Forecast the household load, leaving some devices out (e.g., those
+	 * whose runs are planned by a scheduler)
+	 * 
+	 * @param from
+	 *            the instant to forecast from, in ms since the epoch
+	 * @param horizon
+	 *            how far to forecast, in ms
+	 * @param excluded
+	 *            the URIs of the devices to leave out
+	 * @return the {@link LoadForecast}, one instant per forecasting step
+	 */
+	public LoadForecast forecast(long from, long horizon, Collection<String> excluded)
+	{
+		MarkovForecaster chains = this.copy();
+		boolean[] skipped = new boolean[chains.table.size()];
+		for (String deviceURI : excluded)
+		{
+			int device = chains.table.getDeviceId(deviceURI);
+			if (device != ConsumptionTable.UNKNOWN)
+				skipped[device] = true;
+		}
+		
+		return chains.forecast(ConsumptionTable.UNKNOWN, from, horizon, skipped);
+	}
+	
+	@Override
+	public LoadForecast forecast(String deviceURI, long from, long horizon)
+	{
+		MarkovForecaster chains = this.copy();
+		int device = chains.table.getDeviceId(deviceURI);
+		if (device == ConsumptionTable.UNKNOWN)
+			return null;
+		
+		return chains.forecast(device, from, horizon, null);
+	}
+	
+	/**
+	 * @return a copy of the chains, to forecast from outside of the monitor
+	 */
+	private synchronized MarkovForecaster copy()
+	{
+		return new MarkovForecaster(this);
+	}
+	
+	@Override
+	public synchronized double getOccupancy(String deviceURI, String stateName, long timestamp)
+	{
+		int device = this.table.getDeviceId(deviceURI);
+		if (device == ConsumptionTable.UNKNOWN)
+			return Double.NaN;
+		
+		int state = this.table.getStateIndex(device, stateName);
+		if (state == ConsumptionTable.UNKNOWN)
+			return Double.NaN;
+		
+		int base = this.getOccupancyIndex(device, this.getBucket(timestamp), 0);
+		double total = 0.0;
+		for (int i = 0; i < this.table.getStateCount(device); i++)
+			total += this.occupancy[base + i];
+		if (total == 0.0)
+			return Double.NaN;
+		
+		return this.occupancy[base + state] / total;
+	}
+	
+	@Override
+	public synchronized void forget(String deviceURI)
+	{
+		int device = this.table.getDeviceId(deviceURI);
+		if (device == ConsumptionTable.UNKNOWN)
+			return;
+		
+		int n = this.table.getStateCount(device);
+		Arrays.fill(this.transitions, this.blockOffsets[device], this.blockOffsets[device] + this.buckets * n * n, 0.0);
+		int slotBase = this.getOccupancyIndex(device, 0, 0);
+		Arrays.fill(this.occupancy, slotBase, slotBase + this.buckets * n, 0.0);
+		this.observed[device] = 0.0;
+		this.sampled[device] = ConsumptionTable.UNKNOWN;
+		this.normalize(device);
+	}
+	
+	/**
+	 * Sample the current state of a device up to the given instant, then
+	 * switch it to a new state
+	 */
+	private void observe(int device, int state, long timestamp)
+	{
+		int current = this.states[device];
+		if (current != ConsumptionTable.UNKNOWN)
+			this.sample(device, current, timestamp);
+		else
+		{
+			// the first state known: sampling starts at the next step
+			this.nextSamples[device] = this.getNextSample(timestamp);
+			this.sampled[device] = ConsumptionTable.UNKNOWN;
+		}
+		
+		this.states[device] = state;
+	}
+	
+	/**
+	 * Count the transitions of a device up to the given instant (excluded),
+	 * during which it stayed in its current state
+	 */
+	private void sample(int device, int current, long timestamp)
+	{
+		long next = this.nextSamples[device];
+		if (next >= timestamp)
+			return;
+		
+		// the first sample closes the transition from the previous state
+		int previous = this.sampled[device];
+		if (previous != ConsumptionTable.UNKNOWN)
+			this.count(device, this.getBucket(next - this.step), previous, current, 1.0);
+		this.sampled[device] = current;
+		next += this.step;
+		
+		// all the other samples stay in the current state: the buckets of one
+		// day of steps are counted once for each day
+		if (next < timestamp)
+		{
+			long remaining = (timestamp - next + this.step - 1) / this.step;
+			long stepsPerDay = MarkovForecaster.MS_PER_DAY / this.step;
+			long days = remaining / stepsPerDay;
+			long rest = remaining % stepsPerDay;
+			for (long i = 0; i < Math.min(remaining, stepsPerDay); i++)
+				this.count(device, this.getBucket(next + (i - 1) * this.step), current, current, days
+						+ ((i < rest) ? 1 : 0));
+			next += remaining * this.step;
+		}
+		
+		this.nextSamples[device] = next;
+		
+		// update the rows of the counted states
+		if (previous != ConsumptionTable.UNKNOWN && previous != current)
+			this.normalize(device, previous);
+		this.normalize(device, current);
+	}
+	
+	/**
+	 * Add transitions to the counts of a device
+	 */
+	private void count(int device, int bucket, int from, int to, double transitions)
+	{
+		this.transitions[this.getRow(device, bucket, from) + to] += transitions;
+		this.occupancy[this.getOccupancyIndex(device, bucket, from)] += transitions;
+		this.observed[device] += transitions;
+	}
+	
+	/**
+	 * Compute all the transition probabilities of a device
+	 */
+	private void normalize(int device)
+	{
+		for (int from = 0; from < this.table.getStateCount(device); from++)
+			this.normalize(device, from);
+	}
+	
+	/**
+	 * Compute the transition probabilities from a state of a device, in all
+	 * the buckets; the prior of each row is a single transition, distributed
+	 * as the transitions from the state in the whole day (themselves with a
+	 * prior of a single transition to the same state)
+	 */
+	private void normalize(int device, int from)
+	{
+		int n = this.table.getStateCount(device);
+		double dayTotal = 1.0;
+		for (int bucket = 0; bucket < this.buckets; bucket++)
+			dayTotal += this.occupancy[this.getOccupancyIndex(device, bucket, from)];
+		
+		for (int to = 0; to < n; to++)
+		{
+			double day = (to == from) ? 1.0 : 0.0;
+			for (int bucket = 0; bucket < this.buckets; bucket++)
+				day += this.transitions[this.getRow(device, bucket, from) + to];
+			double prior = day / dayTotal;
+			
+			for (int bucket = 0; bucket < this.buckets; bucket++)
+			{
+				int row = this.getRow(device, bucket, from);
+				double total = this.occupancy[this.getOccupancyIndex(device, bucket, from)] + 1.0;
+				this.probabilities[row + to] = (this.transitions[row + to] + prior) / total;
+			}
+		}
+	}
+	
+	/**
+	 * Forecast the load of a device, or of all the devices if UNKNOWN, but
+	 * the skipped ones, if any
+	 */
+	private LoadForecast forecast(int device, long from, long horizon, boolean[] skipped)
+	{
+		if (horizon <= 0 || horizon > MarkovForecaster.MAX_HORIZON)
+			throw new IllegalArgumentException("The forecast horizon must be in (0, " + MarkovForecaster.MAX_HORIZON
+					+ "] ms: " + horizon);
+		
+		// the bucket of each step, shared by all the devices
+		int steps = (int) ((horizon + this.step - 1) / this.step);
+		int[] stepBuckets = new int[steps];
+		for (int k = 0; k < steps; k++)
+			stepBuckets[k] = this.getBucket(from + k * this.step);
+		
+		// scratch arrays, large enough for any device
+		int maxStates = 0;
+		for (int i = 0; i < this.table.size(); i++)
+			maxStates = Math.max(maxStates, this.table.getStateCount(i));
+		double[] power = new double[maxStates];
+		double[] current = new double[maxStates];
+		double[] next = new double[maxStates];
+		
+		double[] means = new double[steps];
+		double[] variances = new double[steps];
+		int first = (device != ConsumptionTable.UNKNOWN) ? device : 0;
+		int last = (device != ConsumptionTable.UNKNOWN) ? device + 1 : this.table.size();
+		for (int i = first; i < last; i++)
+		{
+			int n = this.table.getStateCount(i);
+			if (n == 0 || (skipped != null && skipped[i])
+					|| !this.getInitialDistribution(i, stepBuckets[0], current))
+				continue;
+			
+			for (int state = 0; state < n; state++)
+				power[state] = this.getPower(i, state);
+			
+			// a device never observed changing keeps its distribution
+			if (this.observed[i] == 0.0)
+			{
+				double mean = this.getMean(current, power, n);
+				double variance = this.getVariance(current, power, n, mean);
+				for (int k = 0; k < steps; k++)
+				{
+					means[k] += mean;
+					variances[k] += variance;
+				}
+				continue;
+			}
+			
+			for (int k = 0; k < steps; k++)
+			{
+				this.transition(i, n, stepBuckets[k], current, next);
+				double[] swap = current;
+				current = next;
+				next = swap;
+				
+				double mean = this.getMean(current, power, n);
+				means[k] += mean;
+				variances[k] += this.getVariance(current, power, n, mean);
+			}
+		}
+		
+		return new LoadForecast(from, this.step, means, variances);
+	}
+	
+	/**
+	 * Fill the state distribution of a device at the forecast start: its
+	 * current state, if known, otherwise the occupancy of its states in the
+	 * given bucket
+	 * 
+	 * @return false if nothing is known about the device, i.e., it has no
+	 *         consumption
+	 */
+	private boolean getInitialDistribution(int device, int bucket, double[] distribution)
+	{
+		int n = this.table.getStateCount(device);
+		int state = this.states[device];
+		if (state != ConsumptionTable.UNKNOWN)
+		{
+			for (int i = 0; i < n; i++)
+				distribution[i] = (i == state) ? 1.0 : 0.0;
+			return true;
+		}
+		
+		int base = this.getOccupancyIndex(device, bucket, 0);
+		double total = 0.0;
+		for (int i = 0; i < n; i++)
+			total += this.occupancy[base + i];
+		if (total == 0.0)
+			return false;
+		
+		for (int i = 0; i < n; i++)
+			distribution[i] = this.occupancy[base + i] / total;
+		return true;
+	}
+	
+	/**
+	 * Apply one step of the chain of a device to a state distribution
+	 */
+	private void transition(int device, int n, int bucket, double[] current, double[] next)
+	{
+		int row = this.getRow(device, bucket, 0);
+		
+		for (int to = 0; to < n; to++)
+			next[to] = 0.0;
+		for (int from = 0; from < n; from++, row += n)
+		{
+			double p = current[from];
+			if (p == 0.0)
+				continue;
+			
+			for (int to = 0; to < n; to++)
+				next[to] += this.probabilities[row + to] * p;
+		}
+	}
+	
+	/**
+	 * @return the mean power of a device state over the forecasting step, in
+	 *         W: the mean of its load profile, if any, or its best consumption
+	 */
+	private double getPower(int device, int state)
+	{
+		LoadProfile profile = this.table.getLoadProfile(device, state);
+		if (profile != null)
+			return profile.getMean();
+		
+		return this.table.getBestConsumption(device, state);
+	}
+	
+	/**
+	 * @return the expected power of a state distribution, in W
+	 */
+	private double getMean(double[] distribution, double[] power, int n)
+	{
+		double mean = 0.0;
+		for (int i = 0; i < n; i++)
+			mean += distribution[i] * power[i];
+		
+		return mean;
+	}
+	
+	/**
+	 * @return the variance of the power of a state distribution, in W^2
+	 */
+	private double getVariance(double[] distribution, double[] power, int n, double mean)
+	{
+		double square = 0.0;
+		for (int i = 0; i < n; i++)
+			square += distribution[i] * power[i] * power[i];
+		
+		return Math.max(0.0, square - mean * mean);
+	}
+	
+	/**
+	 * Lay out the transition matrices of the devices of a table, those of
+	 * each device being contiguous
+	 * 
+	 * @return the size of all the matrices
+	 */
+	private int layout(ConsumptionTable table, int[] offsets)
+	{
+		int size = 0;
+		for (int device = 0; device < table.size(); device++)
+		{
+			offsets[device] = size;
+			size += this.buckets * table.getStateCount(device) * table.getStateCount(device);
+		}
+		
+		return size;
+	}
+	
+	/**
+	 * @return the index of the transition probabilities (or counts) from a
+	 *         state of a device, in a bucket
+	 */
+	private int getRow(int device, int bucket, int from)
+	{
+		int n = this.table.getStateCount(device);
+		
+		return this.blockOffsets[device] + (bucket * n + from) * n;
+	}
+	
+	/**
+	 * @return the index of the occupancy of a state of a device, in a bucket
+	 */
+	private int getOccupancyIndex(int device, int bucket, int state)
+	{
+		return this.table.getSlot(device, 0) * this.buckets + bucket * this.table.getStateCount(device) + state;
+	}
+	
+	/**
+	 * @return the time-of-day bucket of an instant
+	 */
+	private int getBucket(long timestamp)
+	{
+		long time = (timestamp + this.timeZone.getOffset(timestamp)) % MarkovForecaster.MS_PER_DAY;
+		if (time < 0)
+			time += MarkovForecaster.MS_PER_DAY;
+		
+		return (int) (time * this.buckets / MarkovForecaster.MS_PER_DAY);
+	}
+	
+	/**
+	 * @return the first sampling instant at or after the given one
+	 */
+	private long getNextSample(long timestamp)
+	{
+		long remainder = timestamp % this.step;
+		if (remainder < 0)
+			remainder += this.step;
+		
+		return (remainder == 0) ? timestamp : timestamp - remainder + this.step;
+	}
+	
+	/**
+	 * @return the state index in a new table, given the map of the new states
+	 *         to the previous ones
+	 */
+	private int mapState(int[] map, int previousState)
+	{
+		if (previousState == ConsumptionTable.UNKNOWN)
+			return ConsumptionTable.UNKNOWN;
+		
+		for (int state = 0; state < map.length; state++)
+			if (map[state] == previousState)
+				return state;
+		
+		return ConsumptionTable.UNKNOWN;
+	}
+}
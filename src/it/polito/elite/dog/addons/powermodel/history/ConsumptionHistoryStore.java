@@ -0,0 +1,290 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.history;
+
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionHistory;
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionStatistics;
+import it.polito.elite.dog.addons.powermodel.api.HistoryResolution;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Implementation of the {@link ConsumptionHistory} service. Each device (and
+ * the household) owns one {@link RingSeries} for each
+ * {@link HistoryResolution}; every sample is added to all of them, so that
+ * the per-minute and per-hour rollups are always up to date. Device series
+ * are allocated at the first sample of the device, with a fixed capacity.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class ConsumptionHistoryStore implements ConsumptionHistory
+{
+	// default number of slots for each resolution: 5 minutes of raw samples,
+	// 1 day of per-minute rollups and 1 week of per-hour rollups
+	public static final int[] DEFAULT_CAPACITIES = { 300, 1440, 168 };
+	
+	// the number of slots for each resolution
+	private volatile int[] capacities;
+	
+	// the device series, bound to a consumption table
+	private volatile DeviceSeries deviceSeries;
+	
+	// the household series
+	private volatile RingSeries[] totalSeries;
+	
+	/**
+	 * Default constructor, with the default capacities
+	 */
+	public ConsumptionHistoryStore()
+	{
+		this(ConsumptionHistoryStore.DEFAULT_CAPACITIES);
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param capacities
+	 *            the number of slots to keep for each
+	 *            {@link HistoryResolution}, in declaration order
+	 */
+	public ConsumptionHistoryStore(int[] capacities)
+	{
+		this.deviceSeries = new DeviceSeries(ConsumptionTable.EMPTY);
+		this.setCapacities(capacities);
+	}
+	
+	/**
+	 * Change the number of slots kept for each resolution; the recorded
+	 * history is discarded
+	 * 
+	 * @param capacities
+	 *            the number of slots to keep for each
+	 *            {@link HistoryResolution}, in declaration order
+	 */
+	public synchronized void setCapacities(int[] capacities)
+	{
+		if (capacities.length != HistoryResolution.values().length)
+			throw new IllegalArgumentException("One capacity for each history resolution is needed");
+		for (int capacity : capacities)
+		{
+			if (capacity <= 0)
+				throw new IllegalArgumentException("History capacities must be greater than 0");
+		}
+		
+		this.capacities = capacities.clone();
+		this.totalSeries = this.createSeries();
+		this.deviceSeries = new DeviceSeries(this.deviceSeries.table);
+	}
+	
+	/**
+	 * Bind the history to a new consumption table, e.g., after a model
+	 * (re)load, preserving the history of the devices still in the table
+	 * 
+	 * @param table
+	 *            the new {@link ConsumptionTable}
+	 */
+	public synchronized void setConsumptionTable(ConsumptionTable table)
+	{
+		DeviceSeries previous = this.deviceSeries;
+		DeviceSeries current = new DeviceSeries(table);
+		
+		for (int device = 0; device < table.size(); device++)
+		{
+			int previousId = previous.table.getDeviceId(table.getDeviceURI(device));
+			if (previousId != ConsumptionTable.UNKNOWN)
+				current.series[device] = previous.series[previousId];
+		}
+		
+		this.deviceSeries = current;
+	}
+	
+	/**
+	 * @return the maximum memory used by the history of a single device, in
+	 *         bytes
+	 */
+	public long getDeviceFootprint()
+	{
+		long footprint = 0;
+		for (int capacity : this.capacities)
+			footprint += RingSeries.getFootprint(capacity);
+		
+		return footprint;
+	}
+	
+	@Override
+	public boolean record(String deviceURI, double power, long timestamp)
+	{
+		DeviceSeries current = this.deviceSeries;
+		
+		int device = current.table.getDeviceId(deviceURI);
+		if (device == ConsumptionTable.UNKNOWN)
+			return false;
+		
+		this.record(current, device, power, timestamp);
+		
+		return true;
+	}
+	
+	/**
+	 * Record a power sample for a device, given its id
+	 * 
+	 * @param table
+	 *            the {@link ConsumptionTable} the device id refers to
+	 * @param device
+	 *            the device id
+	 * @param power
+	 *            the power drawn by the device, in W
+	 * @param timestamp
+	 *            the instant of the sample, in ms since the epoch
+	 * @return true if the table is still the current one
+	 */
+	public boolean record(ConsumptionTable table, int device, double power, long timestamp)
+	{
+		DeviceSeries current = this.deviceSeries;
+		if (current.table != table)
+			return false;
+		
+		this.record(current, device, power, timestamp);
+		
+		return true;
+	}
+	
+	/**
+	 * Add a sample to all the series of a device
+	 */
+	private void record(DeviceSeries current, int device, double power, long timestamp)
+	{
+		RingSeries[] series = current.series[device];
+		if (series == null)
+		{
+			synchronized (current)
+			{
+				series = current.series[device];
+				if (series == null)
+				{
+					series = this.createSeries();
+					current.series[device] = series;
+				}
+			}
+		}
+		
+		for (RingSeries tier : series)
+			tier.add(power, timestamp);
+	}
+	
+	@Override
+	public void recordTotal(double power, long timestamp)
+	{
+		for (RingSeries tier : this.totalSeries)
+			tier.add(power, timestamp);
+	}
+	
+	@Override
+	public List<ConsumptionStatistics> getDeviceHistory(String deviceURI, HistoryResolution resolution, long from,
+			long to)
+	{
+		List<ConsumptionStatistics> history = new ArrayList<ConsumptionStatistics>();
+		
+		RingSeries series = this.getDeviceSeries(deviceURI, resolution);
+		if (series != null)
+			series.query(from, to, history);
+		
+		return history;
+	}
+	
+	@Override
+	public List<ConsumptionStatistics> getTotalHistory(HistoryResolution resolution, long from, long to)
+	{
+		List<ConsumptionStatistics> history = new ArrayList<ConsumptionStatistics>();
+		this.totalSeries[resolution.ordinal()].query(from, to, history);
+		
+		return history;
+	}
+	
+	@Override
+	public ConsumptionStatistics getDeviceSummary(String deviceURI, HistoryResolution resolution, long from, long to)
+	{
+		RingSeries series = this.getDeviceSeries(deviceURI, resolution);
+		if (series == null)
+			return null;
+		
+		return series.summarize(from, to);
+	}
+	
+	@Override
+	public ConsumptionStatistics getTotalSummary(HistoryResolution resolution, long from, long to)
+	{
+		return this.totalSeries[resolution.ordinal()].summarize(from, to);
+	}
+	
+	/**
+	 * Get the series of a device at the given resolution
+	 * 
+	 * @return the {@link RingSeries}, or null if the device is unknown or it
+	 *         has no samples
+	 */
+	private RingSeries getDeviceSeries(String deviceURI, HistoryResolution resolution)
+	{
+		DeviceSeries current = this.deviceSeries;
+		
+		int device = current.table.getDeviceId(deviceURI);
+		if (device == ConsumptionTable.UNKNOWN)
+			return null;
+		
+		RingSeries[] series = current.series[device];
+		if (series == null)
+			return null;
+		
+		return series[resolution.ordinal()];
+	}
+	
+	/**
+	 * Create the series for all the resolutions
+	 */
+	private RingSeries[] createSeries()
+	{
+		int[] current = this.capacities;
+		HistoryResolution[] resolutions = HistoryResolution.values();
+		RingSeries[] series = new RingSeries[resolutions.length];
+		for (int i = 0; i < resolutions.length; i++)
+			series[i] = new RingSeries(resolutions[i].getSlotDuration(), current[i]);
+		
+		return series;
+	}
+	
+	/**
+	 * The series of all the devices of a consumption table
+	 */
+	private static class DeviceSeries
+	{
+		// the consumption table
+		private final ConsumptionTable table;
+		
+		// the series of each device, one for each resolution
+		private final RingSeries[][] series;
+		
+		DeviceSeries(ConsumptionTable table)
+		{
+			this.table = table;
+			this.series = new RingSeries[table.size()][];
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.history;
+
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+import it.polito.elite.dog.addons.powermodel.energy.EnergyAccumulator;
+import it.polito.elite.dog.addons.powermodel.live.LivePower;
+import it.polito.elite.dog.addons.powermodel.live.PowerSnapshot;
+
+/**
+ * Periodic task feeding the {@link ConsumptionHistoryStore} with the power
+ * currently drawn by each device (and by the household), as known by the
+ * {@link LivePower} aggregates, i.e., metered by the latest readings or
+ * modelled by the {@link EnergyAccumulator}, after moving the devices
+ * following a load profile to the current instant. It is meant to be
+ * scheduled once per second; a failing run never cancels the next ones.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class HistorySampler implements Runnable
+{
+	// the accumulator moving the devices along their load profiles
+	private EnergyAccumulator energyAccumulator;
+	
+	// the source of the device power figures
+	private LivePower livePower;
+	
+	// the history to feed
+	private ConsumptionHistoryStore history;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param energyAccumulator
+	 *            the {@link EnergyAccumulator} feeding the modelled power to
+	 *            the live aggregates
+	 * @param livePower
+	 *            the {@link LivePower} aggregates holding the current device
+	 *            power
+	 * @param history
+	 *            the {@link ConsumptionHistoryStore} to feed
+	 */
+	public HistorySampler(EnergyAccumulator energyAccumulator, LivePower livePower, ConsumptionHistoryStore history)
+	{
+		this.energyAccumulator = energyAccumulator;
+		this.livePower = livePower;
+		this.history = history;
+	}
+	
+	@Override
+	public void run()
+	{
+		// an exception would silently cancel the periodic task
+		try
+		{
+			this.sample(System.currentTimeMillis());
+		}
+		catch (RuntimeException e)
+		{
+			// skip this sample
+		}
+	}
+	
+	/**
+	 * Record the power drawn by each device, and by the household, at the
+	 * given instant
+	 * 
+	 * @param timestamp
+	 *            the instant of the sample, in ms since the epoch
+	 */
+	void sample(long timestamp)
+	{
+		// publish the profiled power at the current instant
+		this.energyAccumulator.advance(timestamp);
+		
+		// the snapshot is copied only after a change
+		PowerSnapshot snapshot = this.livePower.getSnapshot();
+		ConsumptionTable table = snapshot.getTable();
+		
+		// nothing to record until the model is loaded
+		if (table.size() == 0)
+			return;
+		
+		for (int device = 0; device < table.size(); device++)
+		{
+			// skip devices whose power is not known
+			double power = snapshot.getDevicePower(device);
+			if (!Double.isNaN(power) && !this.history.record(table, device, power, timestamp))
+				this.history.record(table.getDeviceURI(device), power, timestamp);
+		}
+		this.history.recordTotal(snapshot.getHouseholdPower(), timestamp);
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.history;
+
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionStatistics;
+
+import java.util.List;
+
+/**
+ * A fixed-size ring buffer of power statistics, with one slot for each time
+ * interval of a given duration. Slots are addressed by their sequence number
+ * since the epoch (timestamp / duration) modulo the capacity: a slot is
+ * recycled when a sample of a newer interval falls into it, so that only the
+ * latest "capacity" intervals are kept.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class RingSeries
+{
+	// the duration of each slot, in ms
+	private final long slotDuration;
+	
+	// the number of slots
+	private final int capacity;
+	
+	// the sequence number of the interval stored in each slot, -1 if empty
+	private final long[] intervals;
+	
+	// the minimum power of each slot, in W
+	private final float[] min;
+	
+	// the maximum power of each slot, in W
+	private final float[] max;
+	
+	// the sum of the power samples of each slot, in W
+	private final double[] sum;
+	
+	// the number of samples of each slot
+	private final int[] count;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param slotDuration
+	 *            the duration of each slot, in ms
+	 * @param capacity
+	 *            the number of slots to keep
+	 */
+	public RingSeries(long slotDuration, int capacity)
+	{
+		this.slotDuration = slotDuration;
+		this.capacity = capacity;
+		this.intervals = new long[capacity];
+		this.min = new float[capacity];
+		this.max = new float[capacity];
+		this.sum = new double[capacity];
+		this.count = new int[capacity];
+		
+		for (int i = 0; i < capacity; i++)
+			this.intervals[i] = -1;
+	}
+	
+	/**
+	 * Add a sample to the slot of the given instant
+	 * 
+	 * @param power
+	 *            the power sample, in W
+	 * @param timestamp
+	 *            the instant of the sample, in ms since the epoch
+	 */
+	public synchronized void add(double power, long timestamp)
+	{
+		long interval = timestamp / this.slotDuration;
+		int slot = (int) (interval % this.capacity);
+		
+		if (this.intervals[slot] != interval)
+		{
+			// the sample is older than the whole buffer
+			if (this.intervals[slot] > interval)
+				return;
+			
+			// recycle the slot
+			this.intervals[slot] = interval;
+			this.min[slot] = (float) power;
+			this.max[slot] = (float) power;
+			this.sum[slot] = power;
+			this.count[slot] = 1;
+		}
+		else
+		{
+			this.min[slot] = Math.min(this.min[slot], (float) power);
+			this.max[slot] = Math.max(this.max[slot], (float) power);
+			this.sum[slot] += power;
+			this.count[slot]++;
+		}
+	}
+	
+	/**
+	 * Get the statistics of each slot overlapping a time window
+	 * 
+	 * @param from
+	 *            the start of the window (inclusive), in ms since the epoch
+	 * @param to
+	 *            the end of the window (exclusive), in ms since the epoch
+	 * @param statistics
+	 *            the list to fill with the {@link ConsumptionStatistics} of
+	 *            each slot with samples, in chronological order
+	 */
+	public synchronized void query(long from, long to, List<ConsumptionStatistics> statistics)
+	{
+		if (to <= from)
+			return;
+		
+		long first = this.getFirstInterval(from, to);
+		long last = (to - 1) / this.slotDuration;
+		for (long interval = first; interval <= last; interval++)
+		{
+			int slot = (int) (interval % this.capacity);
+			if (this.intervals[slot] == interval)
+				statistics.add(new ConsumptionStatistics(interval * this.slotDuration, this.slotDuration,
+						this.min[slot], this.max[slot], this.sum[slot] / this.count[slot], this.count[slot]));
+		}
+	}
+	
+	/**
+	 * Get the overall statistics of the slots overlapping a time window
+	 * 
+	 * @param from
+	 *            the start of the window (inclusive), in ms since the epoch
+	 * @param to
+	 *            the end of the window (exclusive), in ms since the epoch
+	 * @return the {@link ConsumptionStatistics} of the whole window, or null if
+	 *         no samples are available
+	 */
+	public synchronized ConsumptionStatistics summarize(long from, long to)
+	{
+		if (to <= from)
+			return null;
+		
+		double windowMin = Double.POSITIVE_INFINITY, windowMax = Double.NEGATIVE_INFINITY, windowSum = 0.0;
+		int windowCount = 0;
+		
+		long first = this.getFirstInterval(from, to);
+		long last = (to - 1) / this.slotDuration;
+		for (long interval = first; interval <= last; interval++)
+		{
+			int slot = (int) (interval % this.capacity);
+			if (this.intervals[slot] == interval)
+			{
+				windowMin = Math.min(windowMin, this.min[slot]);
+				windowMax = Math.max(windowMax, this.max[slot]);
+				windowSum += this.sum[slot];
+				windowCount += this.count[slot];
+			}
+		}
+		
+		if (windowCount == 0)
+			return null;
+		
+		return new ConsumptionStatistics(first * this.slotDuration, (last - first + 1) * this.slotDuration,
+				windowMin, windowMax, windowSum / windowCount, windowCount);
+	}
+	
+	/**
+	 * Get the first interval of a window to scan, skipping the intervals
+	 * which cannot be in the buffer anymore
+	 */
+	private long getFirstInterval(long from, long to)
+	{
+		long first = Math.max(from, 0) / this.slotDuration;
+		long last = (to - 1) / this.slotDuration;
+		
+		return Math.max(first, last - this.capacity + 1);
+	}
+	
+	/**
+	 * @return the memory footprint of a series with the given capacity, in
+	 *         bytes (excluding the object headers)
+	 */
+	public static long getFootprint(int capacity)
+	{
+		return capacity * (8L + 4L + 4L + 8L + 4L);
+	}
+}
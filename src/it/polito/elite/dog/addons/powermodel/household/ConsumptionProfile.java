@@ -0,0 +1,171 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.household;
+
+import java.util.Arrays;
+
+/**
+ * The immutable consumption profile of a device: the power consumption of
+ * each of its states. Devices of the same catalogue model have equal profiles,
+ * which are deduplicated among all the loaded households; states are kept in
+ * name order, so that the profile does not depend on the order in which they
+ * were described.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+class ConsumptionProfile
+{
+	// the state names, in name order
+	private final String[] stateNames;
+	
+	// the power consumption of each state, in W
+	private final double[] consumptions;
+	
+	// the lowest consumption, in W
+	private final double minimum;
+	
+	// the highest consumption, in W
+	private final double maximum;
+	
+	// the hash code, computed once
+	private final int hash;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param stateNames
+	 *            the state names, in name order
+	 * @param consumptions
+	 *            the power consumption of each state, in W
+	 */
+	ConsumptionProfile(String[] stateNames, double[] consumptions)
+	{
+		this.stateNames = stateNames;
+		this.consumptions = consumptions;
+		
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for (double consumption : consumptions)
+		{
+			min = Math.min(min, consumption);
+			max = Math.max(max, consumption);
+		}
+		this.minimum = (consumptions.length > 0) ? min : Double.NaN;
+		this.maximum = (consumptions.length > 0) ? max : Double.NaN;
+		
+		this.hash = 31 * Arrays.hashCode(stateNames) + Arrays.hashCode(consumptions);
+	}
+	
+	/**
+	 * @return the number of states
+	 */
+	int getStateCount()
+	{
+		return this.stateNames.length;
+	}
+	
+	/**
+	 * @return the name of the given state
+	 */
+	String getStateName(int state)
+	{
+		return this.stateNames[state];
+	}
+	
+	/**
+	 * Get the index of a state, ignoring the case of its name
+	 * 
+	 * @param stateName
+	 *            the name of the state
+	 * @return the state index, or -1 if unknown
+	 */
+	int getStateIndex(String stateName)
+	{
+		for (int i = 0; i < this.stateNames.length; i++)
+		{
+			if (this.stateNames[i].equalsIgnoreCase(stateName))
+				return i;
+		}
+		
+		return -1;
+	}
+	
+	/**
+	 * @return the power consumption of the given state, in W
+	 */
+	double getConsumption(int state)
+	{
+		return this.consumptions[state];
+	}
+	
+	/**
+	 * @return the lowest consumption, in W
+	 */
+	double getMinimum()
+	{
+		return this.minimum;
+	}
+	
+	/**
+	 * @return the highest consumption, in W
+	 */
+	double getMaximum()
+	{
+		return this.maximum;
+	}
+	
+	/**
+	 * @return the estimated heap size of the profile, in bytes, excluding
+	 *         the state names
+	 */
+	long getFootprint()
+	{
+		// object, plus the two arrays
+		return 40 + 16 + 4L * this.stateNames.length + 16 + 8L * this.consumptions.length;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode()
+	{
+		return this.hash;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (this == obj)
+			return true;
+		if (!(obj instanceof ConsumptionProfile))
+			return false;
+		
+		ConsumptionProfile other = (ConsumptionProfile) obj;
+		return this.hash == other.hash && Arrays.equals(this.stateNames, other.stateNames)
+				&& Arrays.equals(this.consumptions, other.consumptions);
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.household;
+
+import it.polito.elite.dog.addons.powermodel.api.HouseholdModelLoader;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+/**
+ * A {@link HouseholdModelLoader} reading each household from a CSV file named
+ * after its id (e.g., home42.csv) in a given folder. Each line describes a
+ * device state as:
+ * 
+ * <pre>
+ * deviceURI,room,stateName,consumption
+ * </pre>
+ * 
+ * where the room may be empty and the consumption is in W; empty lines and
+ * lines starting with # are ignored.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class CsvHouseholdLoader implements HouseholdModelLoader
+{
+	// the extension of the household files
+	public static final String EXTENSION = ".csv";
+	
+	// the folder of the household files
+	private File folder;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param folder
+	 *            the folder of the household files
+	 */
+	public CsvHouseholdLoader(File folder)
+	{
+		this.folder = folder;
+	}
+	
+	/**
+	 * @return the folder of the household files
+	 */
+	public File getFolder()
+	{
+		return this.folder;
+	}
+	
+	@Override
+	public boolean load(String householdId, Builder builder) throws IOException
+	{
+		// household ids must not escape the folder
+		if (householdId.isEmpty() || householdId.startsWith(".") || householdId.indexOf('/') >= 0
+				|| householdId.indexOf('\\') >= 0)
+			return false;
+		
+		File file = new File(this.folder, householdId + CsvHouseholdLoader.EXTENSION);
+		if (!file.isFile())
+			return false;
+		
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try
+		{
+			String line;
+			int number = 0;
+			while ((line = reader.readLine()) != null)
+			{
+				number++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+				
+				String[] fields = line.split(",", -1);
+				if (fields.length != 4 || fields[0].trim().isEmpty() || fields[2].trim().isEmpty())
+					throw new IOException("Malformed household description " + file + " at line " + number);
+				
+				String room = fields[1].trim();
+				try
+				{
+					builder.addState(fields[0].trim(), room.isEmpty() ? null : room, fields[2].trim(),
+							Double.parseDouble(fields[3].trim()));
+				}
+				catch (NumberFormatException e)
+				{
+					throw new IOException("Invalid consumption in " + file + " at line " + number, e);
+				}
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		
+		return true;
+	}
+}
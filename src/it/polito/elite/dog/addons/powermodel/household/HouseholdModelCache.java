@@ -0,0 +1,286 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.household;
+
+import it.polito.elite.dog.addons.powermodel.api.HouseholdModel;
+import it.polito.elite.dog.addons.powermodel.api.HouseholdModelLoader;
+import it.polito.elite.dog.addons.powermodel.api.HouseholdRegistry;
+import it.polito.elite.dog.addons.powermodel.device.WeakInterner;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Implementation of the {@link HouseholdRegistry} service. Loaded models are
+ * kept in an access-ordered map, so that the least recently used ones are
+ * evicted first when the memory budget is exceeded. A household is loaded by
+ * the first thread asking for it, outside the registry lock, while the other
+ * threads asking for the same household wait for that load.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class HouseholdModelCache implements HouseholdRegistry
+{
+	// the default memory budget, in bytes
+	public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+	
+	// the loaded models, from the least to the most recently used
+	private LinkedHashMap<String, HouseholdTable> models;
+	
+	// the loads in progress, indexed by household id
+	private Map<String, FutureTask<HouseholdTable>> loading;
+	
+	// the loader of the household models
+	private HouseholdModelLoader loader;
+	
+	// the memory budget, in bytes
+	private long memoryBudget;
+	
+	// the estimated memory used by the loaded models, in bytes
+	private long memoryUsage;
+	
+	// the strings shared by all the households
+	private WeakInterner<String> strings;
+	
+	// the consumption profiles shared by all the households
+	private WeakInterner<ConsumptionProfile> profiles;
+	
+	/**
+	 * Default constructor
+	 */
+	public HouseholdModelCache()
+	{
+		this.models = new LinkedHashMap<String, HouseholdTable>(16, 0.75f, true);
+		this.loading = new HashMap<String, FutureTask<HouseholdTable>>();
+		this.memoryBudget = HouseholdModelCache.DEFAULT_MEMORY_BUDGET;
+		this.strings = new WeakInterner<String>();
+		this.profiles = new WeakInterner<ConsumptionProfile>();
+	}
+	
+	@Override
+	public HouseholdModel getModel(final String householdId) throws IOException
+	{
+		if (householdId == null)
+			throw new IllegalArgumentException("The household id must not be null");
+		
+		FutureTask<HouseholdTable> task;
+		boolean owner = false;
+		synchronized (this)
+		{
+			HouseholdTable model = this.models.get(householdId);
+			if (model != null)
+				return model;
+			
+			task = this.loading.get(householdId);
+			if (task == null)
+			{
+				final HouseholdModelLoader currentLoader = this.loader;
+				if (currentLoader == null)
+					return null;
+				
+				task = new FutureTask<HouseholdTable>(new Callable<HouseholdTable>() {
+					@Override
+					public HouseholdTable call() throws IOException
+					{
+						return HouseholdModelCache.this.load(currentLoader, householdId);
+					}
+				});
+				this.loading.put(householdId, task);
+				owner = true;
+			}
+		}
+		
+		// the first thread asking for the household runs the load
+		if (owner)
+		{
+			task.run();
+			
+			synchronized (this)
+			{
+				// store the model, unless unloaded in the meantime
+				if (this.loading.get(householdId) == task)
+				{
+					this.loading.remove(householdId);
+					HouseholdTable model = HouseholdModelCache.getResult(task);
+					if (model != null)
+						this.store(model);
+				}
+			}
+		}
+		
+		try
+		{
+			return task.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Loading of household " + householdId + " interrupted", e);
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException("Loading of household " + householdId + " failed", e.getCause());
+		}
+	}
+	
+	@Override
+	public synchronized boolean isLoaded(String householdId)
+	{
+		return this.models.containsKey(householdId);
+	}
+	
+	@Override
+	public synchronized void unload(String householdId)
+	{
+		HouseholdTable model = this.models.remove(householdId);
+		if (model != null)
+			this.memoryUsage -= model.getFootprint();
+		this.loading.remove(householdId);
+	}
+	
+	@Override
+	public synchronized void unloadAll()
+	{
+		this.models.clear();
+		this.loading.clear();
+		this.memoryUsage = 0;
+	}
+	
+	@Override
+	public synchronized void setLoader(HouseholdModelLoader loader)
+	{
+		this.loader = loader;
+		this.unloadAll();
+	}
+	
+	/**
+	 * @return the loader of the household models, or null if not set
+	 */
+	public synchronized HouseholdModelLoader getLoader()
+	{
+		return this.loader;
+	}
+	
+	@Override
+	public synchronized void setMemoryBudget(long bytes)
+	{
+		this.memoryBudget = bytes;
+		this.evict(null);
+	}
+	
+	@Override
+	public synchronized long getMemoryBudget()
+	{
+		return this.memoryBudget;
+	}
+	
+	@Override
+	public synchronized long getMemoryUsage()
+	{
+		return this.memoryUsage;
+	}
+	
+	@Override
+	public synchronized Set<String> getLoadedHouseholds()
+	{
+		return new LinkedHashSet<String>(this.models.keySet());
+	}
+	
+	/**
+	 * Load a household model with the given loader
+	 * 
+	 * @return the {@link HouseholdTable}, or null if the household is unknown
+	 */
+	private HouseholdTable load(HouseholdModelLoader loader, String householdId) throws IOException
+	{
+		HouseholdTableBuilder builder = new HouseholdTableBuilder(this.strings, this.profiles);
+		
+		return loader.load(householdId, builder) ? builder.build(householdId) : null;
+	}
+	
+	/**
+	 * Add a model to the loaded ones, then evict the least recently used
+	 * models exceeding the memory budget; the given model is never evicted,
+	 * so that a model larger than the whole budget can still be used
+	 */
+	private void store(HouseholdTable model)
+	{
+		HouseholdTable previous = this.models.put(model.getHouseholdId(), model);
+		if (previous != null)
+			this.memoryUsage -= previous.getFootprint();
+		this.memoryUsage += model.getFootprint();
+		
+		this.evict(model.getHouseholdId());
+	}
+	
+	/**
+	 * Evict the least recently used models until the memory budget is met
+	 * 
+	 * @param keep
+	 *            the id of the household not to evict, or null
+	 */
+	private void evict(String keep)
+	{
+		if (this.memoryBudget <= 0)
+			return;
+		
+		Iterator<Map.Entry<String, HouseholdTable>> eldest = this.models.entrySet().iterator();
+		while (this.memoryUsage > this.memoryBudget && eldest.hasNext())
+		{
+			Map.Entry<String, HouseholdTable> entry = eldest.next();
+			if (!entry.getKey().equals(keep))
+			{
+				this.memoryUsage -= entry.getValue().getFootprint();
+				eldest.remove();
+			}
+		}
+	}
+	
+	/**
+	 * @return the result of a completed load, or null if it failed
+	 */
+	private static HouseholdTable getResult(FutureTask<HouseholdTable> task)
+	{
+		try
+		{
+			return task.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		catch (ExecutionException e)
+		{
+			return null;
+		}
+	}
+}
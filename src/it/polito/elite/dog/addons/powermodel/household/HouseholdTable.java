@@ -0,0 +1,245 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.household;
+
+import it.polito.elite.dog.addons.powermodel.api.HouseholdModel;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The immutable, array-based implementation of a {@link HouseholdModel}. Each
+ * device is given a dense id, indexing its room and its (shared)
+ * {@link ConsumptionProfile}.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class HouseholdTable implements HouseholdModel
+{
+	// the id of the household
+	private final String householdId;
+	
+	// the device id of each device URI
+	private final Map<String, Integer> deviceIds;
+	
+	// the URI of each device
+	private final String[] deviceURIs;
+	
+	// the room of each device
+	private final String[] rooms;
+	
+	// the consumption profile of each device
+	private final ConsumptionProfile[] profiles;
+	
+	// the sum of the lowest consumption of each device, in W
+	private final double baseload;
+	
+	// the sum of the highest consumption of each device, in W
+	private final double peakLoad;
+	
+	// the estimated heap size of the model, in bytes
+	private final long footprint;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param householdId
+	 *            the id of the household
+	 * @param deviceURIs
+	 *            the URI of each device
+	 * @param rooms
+	 *            the room of each device
+	 * @param profiles
+	 *            the consumption profile of each device
+	 */
+	HouseholdTable(String householdId, String[] deviceURIs, String[] rooms, ConsumptionProfile[] profiles)
+	{
+		this.householdId = householdId;
+		this.deviceURIs = deviceURIs;
+		this.rooms = rooms;
+		this.profiles = profiles;
+		this.deviceIds = new HashMap<String, Integer>(deviceURIs.length * 4 / 3 + 1);
+		
+		double base = 0.0;
+		double peak = 0.0;
+		// object, map and arrays
+		long size = 64 + 48 + 3 * 16 + HouseholdTable.stringFootprint(householdId);
+		Set<Object> counted = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+		for (int device = 0; device < deviceURIs.length; device++)
+		{
+			this.deviceIds.put(deviceURIs[device], device);
+			if (profiles[device].getStateCount() > 0)
+			{
+				base += profiles[device].getMinimum();
+				peak += profiles[device].getMaximum();
+			}
+			
+			// map entry, boxed id and array slots; shared strings and profiles
+			// are counted once per household, so the estimate is conservative
+			size += 48 + 16 + 3 * 4;
+			size += HouseholdTable.stringFootprint(deviceURIs[device]);
+			if (rooms[device] != null && counted.add(rooms[device]))
+				size += HouseholdTable.stringFootprint(rooms[device]);
+			if (counted.add(profiles[device]))
+			{
+				size += profiles[device].getFootprint();
+				for (int state = 0; state < profiles[device].getStateCount(); state++)
+				{
+					if (counted.add(profiles[device].getStateName(state)))
+						size += HouseholdTable.stringFootprint(profiles[device].getStateName(state));
+				}
+			}
+		}
+		this.baseload = base;
+		this.peakLoad = peak;
+		this.footprint = size;
+	}
+	
+	@Override
+	public String getHouseholdId()
+	{
+		return this.householdId;
+	}
+	
+	@Override
+	public int getDeviceCount()
+	{
+		return this.deviceURIs.length;
+	}
+	
+	@Override
+	public Set<String> getDeviceURIs()
+	{
+		Set<String> uris = new LinkedHashSet<String>();
+		for (String uri : this.deviceURIs)
+			uris.add(uri);
+		
+		return uris;
+	}
+	
+	@Override
+	public String getRoom(String deviceURI)
+	{
+		Integer device = this.deviceIds.get(deviceURI);
+		
+		return (device != null) ? this.rooms[device] : null;
+	}
+	
+	@Override
+	public Set<String> getStateNames(String deviceURI)
+	{
+		Set<String> names = new LinkedHashSet<String>();
+		Integer device = this.deviceIds.get(deviceURI);
+		if (device != null)
+		{
+			ConsumptionProfile profile = this.profiles[device];
+			for (int state = 0; state < profile.getStateCount(); state++)
+				names.add(profile.getStateName(state));
+		}
+		
+		return names;
+	}
+	
+	@Override
+	public double getConsumption(String deviceURI, String stateName)
+	{
+		Integer device = this.deviceIds.get(deviceURI);
+		if (device == null)
+			return Double.NaN;
+		
+		ConsumptionProfile profile = this.profiles[device];
+		int state = profile.getStateIndex(stateName);
+		
+		return (state >= 0) ? profile.getConsumption(state) : Double.NaN;
+	}
+	
+	@Override
+	public double getMinimumConsumption(String deviceURI)
+	{
+		Integer device = this.deviceIds.get(deviceURI);
+		
+		return (device != null) ? this.profiles[device].getMinimum() : Double.NaN;
+	}
+	
+	@Override
+	public double getMaximumConsumption(String deviceURI)
+	{
+		Integer device = this.deviceIds.get(deviceURI);
+		
+		return (device != null) ? this.profiles[device].getMaximum() : Double.NaN;
+	}
+	
+	@Override
+	public double getTotalConsumption(String[] deviceURIs, String[] stateNames, int count)
+	{
+		double total = 0.0;
+		for (int i = 0; i < count; i++)
+		{
+			double consumption = this.getConsumption(deviceURIs[i], stateNames[i]);
+			if (!Double.isNaN(consumption))
+				total += consumption;
+		}
+		
+		return total;
+	}
+	
+	@Override
+	public double getBaseload()
+	{
+		return this.baseload;
+	}
+	
+	@Override
+	public double getPeakLoad()
+	{
+		return this.peakLoad;
+	}
+	
+	/**
+	 * @return the estimated heap size of the model, in bytes
+	 */
+	public long getFootprint()
+	{
+		return this.footprint;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return this.householdId + ": " + this.deviceURIs.length + " devices, " + this.baseload + "-"
+				+ this.peakLoad + " W";
+	}
+	
+	/**
+	 * @return the estimated heap size of a string, in bytes
+	 */
+	private static long stringFootprint(String value)
+	{
+		return 40 + 2L * value.length();
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.household;
+
+import it.polito.elite.dog.addons.powermodel.api.HouseholdModelLoader;
+import it.polito.elite.dog.addons.powermodel.device.WeakInterner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@link HouseholdModelLoader.Builder} collecting the device states of a
+ * household and turning them into a {@link HouseholdTable}, whose strings and
+ * consumption profiles are taken from the shared pools.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+class HouseholdTableBuilder implements HouseholdModelLoader.Builder
+{
+	// the order of the states in a profile
+	private static final Comparator<String> STATE_ORDER = new Comparator<String>() {
+		@Override
+		public int compare(String first, String second)
+		{
+			int order = String.CASE_INSENSITIVE_ORDER.compare(first, second);
+			
+			return (order != 0) ? order : first.compareTo(second);
+		}
+	};
+	
+	// the shared strings
+	private WeakInterner<String> strings;
+	
+	// the shared consumption profiles
+	private WeakInterner<ConsumptionProfile> profiles;
+	
+	// the states of each device, in insertion order
+	private Map<String, DeviceStates> devices;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param strings
+	 *            the shared strings
+	 * @param profiles
+	 *            the shared consumption profiles
+	 */
+	HouseholdTableBuilder(WeakInterner<String> strings, WeakInterner<ConsumptionProfile> profiles)
+	{
+		this.strings = strings;
+		this.profiles = profiles;
+		this.devices = new LinkedHashMap<String, DeviceStates>();
+	}
+	
+	@Override
+	public void addState(String deviceURI, String room, String stateName, double consumption)
+	{
+		if (deviceURI == null || stateName == null)
+			throw new IllegalArgumentException("The device URI and the state name must not be null");
+		
+		DeviceStates states = this.devices.get(deviceURI);
+		if (states == null)
+		{
+			states = new DeviceStates();
+			this.devices.put(deviceURI, states);
+		}
+		if (room != null)
+			states.room = room;
+		
+		// a state described twice keeps its latest consumption
+		for (int i = 0; i < states.names.size(); i++)
+		{
+			if (states.names.get(i).equalsIgnoreCase(stateName))
+			{
+				states.consumptions.set(i, consumption);
+				return;
+			}
+		}
+		states.names.add(stateName);
+		states.consumptions.add(consumption);
+	}
+	
+	/**
+	 * Build the household model from the collected device states
+	 * 
+	 * @param householdId
+	 *            the id of the household
+	 * @return the {@link HouseholdTable}
+	 */
+	HouseholdTable build(String householdId)
+	{
+		int size = this.devices.size();
+		String[] deviceURIs = new String[size];
+		String[] rooms = new String[size];
+		ConsumptionProfile[] deviceProfiles = new ConsumptionProfile[size];
+		
+		int device = 0;
+		for (Map.Entry<String, DeviceStates> entry : this.devices.entrySet())
+		{
+			DeviceStates states = entry.getValue();
+			deviceURIs[device] = this.strings.intern(entry.getKey());
+			rooms[device] = this.strings.intern(states.room);
+			
+			// sort the states by name
+			String[] names = states.names.toArray(new String[states.names.size()]);
+			Arrays.sort(names, HouseholdTableBuilder.STATE_ORDER);
+			double[] consumptions = new double[names.length];
+			for (int state = 0; state < names.length; state++)
+			{
+				consumptions[state] = states.consumptions.get(states.names.indexOf(names[state]));
+				names[state] = this.strings.intern(names[state]);
+			}
+			deviceProfiles[device] = this.profiles.intern(new ConsumptionProfile(names, consumptions));
+			
+			device++;
+		}
+		
+		return new HouseholdTable(this.strings.intern(householdId), deviceURIs, rooms, deviceProfiles);
+	}
+	
+	/**
+	 * The states of a device, as described by the loader
+	 */
+	private static class DeviceStates
+	{
+		private String room;
+		private final List<String> names = new ArrayList<String>();
+		private final List<Double> consumptions = new ArrayList<Double>();
+	}
+}
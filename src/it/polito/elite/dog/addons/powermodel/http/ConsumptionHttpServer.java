@@ -0,0 +1,825 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.http;
+
+import it.polito.elite.dog.addons.powermodel.api.PowerModel;
+import it.polito.elite.dog.addons.powermodel.codec.ConsumptionStreamWriter;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionEnvelope;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+import it.polito.elite.dog.addons.powermodel.live.LivePower;
+import it.polito.elite.dog.addons.powermodel.live.PowerSnapshot;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A lightweight HTTP endpoint for bulk consumption queries, meant for local
+ * dashboards and analytics jobs that would otherwise issue one service call
+ * per device. All the resources are under {@value #CONTEXT}:
+ * <ul>
+ * <li><code>lookup</code>: the best consumption of a batch of (device, state)
+ * pairs, given either as repeated <code>device</code> and <code>state</code>
+ * query parameters or, with POST, as <code>deviceURI[,stateName]</code>
+ * lines; a device without a state stands for all its states;</li>
+ * <li><code>top?k=&amp;by=live|peak</code>: the k devices with the highest
+ * live or peak consumption;</li>
+ * <li><code>aggregate</code>: the live household and room consumptions, the
+ * baseload and the peak load;</li>
+ * <li><code>snapshot</code>: the best consumption of every device state.</li>
+ * </ul>
+ * Responses are JSON, or binary consumption records (see the codec package)
+ * when asked with <code>format=binary</code> or an
+ * <code>Accept: application/octet-stream</code> header, except for the
+ * aggregates, which are always JSON. Responses are streamed with chunked
+ * encoding while being computed, and connections are kept alive between
+ * requests. Requests are served on the shared pool of the bundle, by a small
+ * bounded number of workers: when all the workers are busy and their queue is
+ * full, the request is rejected at once with a 503 (Service Unavailable)
+ * response, instead of queuing without bound.<br/>
+ * Small responses on kept-alive connections may wait for the delayed
+ * acknowledgement of their headers: deployments needing a low latency should
+ * start the JVM with <code>-Dsun.net.httpserver.nodelay=true</code>, which
+ * disables the Nagle algorithm on the connections of the JDK HTTP server.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class ConsumptionHttpServer
+{
+	// the path of the endpoint
+	public static final String CONTEXT = "/powermodel";
+	
+	// the default number of workers
+	public static final int DEFAULT_THREADS = 4;
+	
+	// the number of pairs looked up at once
+	private static final int BATCH_SIZE = 1024;
+	
+	// the number of requests waiting for a worker, per worker
+	private static final int QUEUE_PER_THREAD = 16;
+	
+	// the default number of devices of a top-k query
+	private static final int DEFAULT_TOP = 10;
+	
+	// the seconds after which a rejected client may retry
+	private static final String RETRY_AFTER = "1";
+	
+	// set on the accepting thread while it rejects an exchange
+	private static final ThreadLocal<Boolean> OVERLOADED = new ThreadLocal<Boolean>();
+	
+	// the content type of JSON responses
+	private static final String JSON = "application/json; charset=UTF-8";
+	
+	// the content type of binary responses
+	private static final String BINARY = "application/octet-stream";
+	
+	// the power model to query
+	private PowerModel model;
+	
+	// the live consumptions
+	private LivePower livePower;
+	
+	// the consumption bounds of the devices
+	private ConsumptionEnvelope envelope;
+	
+	// the HTTP server, null if not running
+	private HttpServer server;
+	
+	// the shared pool running the workers
+	private Executor executor;
+	
+	// the dispatcher of the exchanges to the workers, null if not running
+	private Dispatcher dispatcher;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param model
+	 *            the {@link PowerModel} to query
+	 * @param livePower
+	 *            the {@link LivePower} consumptions
+	 * @param envelope
+	 *            the {@link ConsumptionEnvelope} of the devices
+	 */
+	public ConsumptionHttpServer(PowerModel model, LivePower livePower, ConsumptionEnvelope envelope)
+	{
+		this.model = model;
+		this.livePower = livePower;
+		this.envelope = envelope;
+	}
+	
+	/**
+	 * Set the shared pool running the workers, used from the next start
+	 * 
+	 * @param executor
+	 *            the shared {@link Executor}
+	 */
+	public synchronized void setExecutor(Executor executor)
+	{
+		this.executor = executor;
+	}
+	
+	/**
+	 * Start serving requests, stopping the current server, if any
+	 * 
+	 * @param address
+	 *            the address and port to listen to
+	 * @param threads
+	 *            the maximum number of requests served at once
+	 * @throws IOException
+	 *             if the address cannot be bound
+	 */
+	public synchronized void start(InetSocketAddress address, int threads) throws IOException
+	{
+		if (threads < 1)
+			throw new IllegalArgumentException("The number of HTTP threads must be positive: " + threads);
+		if (this.executor == null)
+			throw new IllegalStateException("The HTTP endpoint needs the shared pool of the bundle");
+		
+		this.stop();
+		
+		Dispatcher dispatcher = new Dispatcher(this.executor, threads);
+		
+		HttpServer server = HttpServer.create(address, 0);
+		server.createContext(ConsumptionHttpServer.CONTEXT, new QueryHandler());
+		server.setExecutor(dispatcher);
+		server.start();
+		
+		this.server = server;
+		this.dispatcher = dispatcher;
+	}
+	
+	/**
+	 * Stop serving requests, waiting at most one second for the running ones
+	 */
+	public synchronized void stop()
+	{
+		if (this.server != null)
+		{
+			this.server.stop(1);
+			this.dispatcher.stop();
+			this.server = null;
+			this.dispatcher = null;
+		}
+	}
+	
+	/**
+	 * @return the address the server listens to, or null if not running
+	 */
+	public synchronized InetSocketAddress getAddress()
+	{
+		return (this.server != null) ? this.server.getAddress() : null;
+	}
+	
+	/**
+	 * The dispatcher of the exchanges to a bounded number of workers running
+	 * on the shared pool; each worker serves the queued exchanges until the
+	 * queue is empty
+	 */
+	private static class Dispatcher implements Executor, Runnable
+	{
+		// the shared pool
+		private final Executor executor;
+		
+		// the exchanges waiting for a worker
+		private final BlockingQueue<Runnable> queue;
+		
+		// the maximum number of workers
+		private final int workers;
+		
+		// the number of running workers
+		private int running;
+		
+		// true once stopped
+		private volatile boolean stopped;
+		
+		Dispatcher(Executor executor, int workers)
+		{
+			this.executor = executor;
+			this.queue = new ArrayBlockingQueue<Runnable>(workers * ConsumptionHttpServer.QUEUE_PER_THREAD);
+			this.workers = workers;
+		}
+		
+		@Override
+		public void execute(Runnable exchange)
+		{
+			// all the workers busy and the queue full: the accepting thread
+			// only rejects the exchange, without serving it
+			if (this.stopped || !this.queue.offer(exchange))
+			{
+				ConsumptionHttpServer.OVERLOADED.set(Boolean.TRUE);
+				try
+				{
+					exchange.run();
+				}
+				finally
+				{
+					ConsumptionHttpServer.OVERLOADED.remove();
+				}
+				return;
+			}
+			
+			synchronized (this)
+			{
+				if (this.running >= this.workers)
+					return;
+				this.running++;
+			}
+			
+			try
+			{
+				this.executor.execute(this);
+			}
+			catch (RejectedExecutionException e)
+			{
+				// the shared pool is shutting down
+				synchronized (this)
+				{
+					this.running--;
+				}
+				this.drain();
+			}
+		}
+		
+		@Override
+		public void run()
+		{
+			while (true)
+			{
+				this.drain();
+				
+				// retire, unless an exchange arrived in the meanwhile
+				synchronized (this)
+				{
+					if (this.stopped || this.queue.isEmpty())
+					{
+						this.running--;
+						return;
+					}
+				}
+			}
+		}
+		
+		/**
+		 * Serve the queued exchanges on the current thread
+		 */
+		private void drain()
+		{
+			Runnable exchange;
+			while (!this.stopped && (exchange = this.queue.poll()) != null)
+			{
+				try
+				{
+					exchange.run();
+				}
+				catch (RuntimeException e)
+				{
+					// the exchange is closed by the server
+				}
+			}
+		}
+		
+		/**
+		 * Drop the queued exchanges and stop serving
+		 */
+		void stop()
+		{
+			this.stopped = true;
+			this.queue.clear();
+		}
+	}
+	
+	/**
+	 * The handler of all the resources of the endpoint
+	 */
+	private class QueryHandler implements HttpHandler
+	{
+		@Override
+		public void handle(HttpExchange exchange) throws IOException
+		{
+			if (ConsumptionHttpServer.OVERLOADED.get() != null)
+			{
+				// the request body is not read: the connection is closed
+				try
+				{
+					exchange.getResponseHeaders().set("Retry-After", ConsumptionHttpServer.RETRY_AFTER);
+					exchange.getResponseHeaders().set("Connection", "close");
+					ConsumptionHttpServer.sendError(exchange, 503, "Too many requests");
+				}
+				finally
+				{
+					exchange.close();
+				}
+				return;
+			}
+			
+			try
+			{
+				String path = exchange.getRequestURI().getPath().substring(ConsumptionHttpServer.CONTEXT.length());
+				Map<String, List<String>> query = ConsumptionHttpServer.parseQuery(exchange.getRequestURI()
+						.getRawQuery());
+				String method = exchange.getRequestMethod();
+				boolean post = "POST".equals(method);
+				
+				if (!post && !"GET".equals(method))
+					ConsumptionHttpServer.sendError(exchange, 405, "Unsupported method: " + method);
+				else if (path.equals("/lookup"))
+					ConsumptionHttpServer.this.lookup(exchange, query, post);
+				else if (post)
+					ConsumptionHttpServer.sendError(exchange, 405, "Unsupported method: " + method);
+				else if (path.equals("/top"))
+					ConsumptionHttpServer.this.top(exchange, query);
+				else if (path.equals("/aggregate"))
+					ConsumptionHttpServer.this.aggregate(exchange);
+				else if (path.equals("/snapshot"))
+					ConsumptionHttpServer.this.snapshot(exchange, query);
+				else
+					ConsumptionHttpServer.sendError(exchange, 404, "Unknown resource: " + path);
+			}
+			catch (IllegalArgumentException e)
+			{
+				// malformed parameters, detected before any response
+				ConsumptionHttpServer.sendError(exchange, 400, e.getMessage());
+			}
+			finally
+			{
+				try
+				{
+					// drain the request, so that the connection can be reused
+					InputStream body = exchange.getRequestBody();
+					byte[] skip = new byte[512];
+					while (body.read(skip) >= 0)
+						;
+				}
+				finally
+				{
+					exchange.close();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Serve the best consumption of a batch of (device, state) pairs
+	 */
+	private void lookup(HttpExchange exchange, Map<String, List<String>> query, boolean post) throws IOException
+	{
+		List<String> devices = ConsumptionHttpServer.getAll(query, "device");
+		List<String> states = ConsumptionHttpServer.getAll(query, "state");
+		if (!post && devices.isEmpty())
+			throw new IllegalArgumentException("No device to look up");
+		
+		PairWriter writer = this.openPairs(exchange, query);
+		
+		// query parameters, then body lines
+		ConsumptionTable table = this.envelope.getConsumptionTable();
+		for (int i = 0; i < devices.size(); i++)
+			this.addPairs(writer, table, devices.get(i), (i < states.size()) ? states.get(i) : null);
+		if (post)
+		{
+			BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), "UTF-8"));
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				line = line.trim();
+				if (line.isEmpty())
+					continue;
+				int comma = line.indexOf(',');
+				if (comma < 0)
+					this.addPairs(writer, table, line, null);
+				else
+					this.addPairs(writer, table, line.substring(0, comma).trim(), line.substring(comma + 1).trim());
+			}
+		}
+		
+		writer.finish();
+	}
+	
+	/**
+	 * Add a (device, state) pair to a lookup, or all the states of a device
+	 * if no state is given
+	 */
+	private void addPairs(PairWriter writer, ConsumptionTable table, String deviceURI, String stateName)
+			throws IOException
+	{
+		if (stateName != null && !stateName.isEmpty())
+		{
+			writer.add(deviceURI, stateName);
+			return;
+		}
+		
+		String key = this.model.getDeviceKey(deviceURI);
+		int device = (key != null) ? table.getDeviceId(key) : ConsumptionTable.UNKNOWN;
+		if (device == ConsumptionTable.UNKNOWN)
+			writer.add(deviceURI, null);
+		else
+			for (int state = 0; state < table.getStateCount(device); state++)
+				writer.add(deviceURI, table.getStateName(device, state));
+	}
+	
+	/**
+	 * Serve the devices with the highest live or peak consumption
+	 */
+	private void top(HttpExchange exchange, Map<String, List<String>> query) throws IOException
+	{
+		int k = ConsumptionHttpServer.DEFAULT_TOP;
+		String count = ConsumptionHttpServer.getFirst(query, "k");
+		if (count != null)
+		{
+			k = Integer.parseInt(count);
+			if (k < 1)
+				throw new IllegalArgumentException("k must be positive: " + k);
+		}
+		
+		// the consumption of each device
+		String by = ConsumptionHttpServer.getFirst(query, "by");
+		ConsumptionTable table;
+		double[] powers;
+		if (by == null || by.equals("live"))
+		{
+			PowerSnapshot snapshot = this.livePower.getSnapshot();
+			table = snapshot.getTable();
+			powers = new double[table.size()];
+			for (int device = 0; device < powers.length; device++)
+				powers[device] = snapshot.getDevicePower(device);
+		}
+		else if (by.equals("peak"))
+		{
+			// the table may change between sizing and copying the bounds
+			table = null;
+			powers = null;
+			while (table == null)
+			{
+				int size = this.envelope.getConsumptionTable().size();
+				powers = new double[size];
+				table = this.envelope.getBounds(new double[size], powers);
+			}
+		}
+		else
+			throw new IllegalArgumentException("Unknown ranking: " + by);
+		
+		// a min-heap of the best k devices, the lowest one on top
+		int[] heap = new int[Math.min(k, table.size())];
+		int size = 0;
+		for (int device = 0; device < table.size(); device++)
+		{
+			double power = powers[device];
+			if (Double.isNaN(power))
+				continue;
+			if (size < heap.length)
+			{
+				// sift up
+				int child = size++;
+				while (child > 0 && powers[heap[(child - 1) / 2]] > power)
+				{
+					heap[child] = heap[(child - 1) / 2];
+					child = (child - 1) / 2;
+				}
+				heap[child] = device;
+			}
+			else if (size > 0 && power > powers[heap[0]])
+				ConsumptionHttpServer.siftDown(heap, size, powers, device);
+		}
+		
+		// extract the lowest first, filling the ranking from its end
+		int[] ranking = new int[size];
+		for (int i = size - 1; i >= 0; i--)
+		{
+			ranking[i] = heap[0];
+			if (i > 0)
+				ConsumptionHttpServer.siftDown(heap, i, powers, heap[i]);
+		}
+		
+		if (ConsumptionHttpServer.isBinary(exchange, query))
+		{
+			ConsumptionStreamWriter writer = ConsumptionHttpServer.openBinary(exchange);
+			long timestamp = System.currentTimeMillis();
+			for (int device : ranking)
+				writer.write(table.getDeviceURI(device), null, powers[device], timestamp);
+			writer.finish();
+		}
+		else
+		{
+			JsonOutput json = ConsumptionHttpServer.openJson(exchange);
+			json.beginArray();
+			for (int device : ranking)
+			{
+				int room = table.getRoom(device);
+				json.beginObject();
+				json.name("device").value(table.getDeviceURI(device));
+				json.name("room").value((room != ConsumptionTable.UNKNOWN) ? table.getRoomName(room) : null);
+				json.name("power").value(powers[device]);
+				json.endObject();
+			}
+			json.endArray();
+			json.flush();
+		}
+	}
+	
+	/**
+	 * Serve the live household and room consumptions, with the load bounds
+	 */
+	private void aggregate(HttpExchange exchange) throws IOException
+	{
+		PowerSnapshot snapshot = this.livePower.getSnapshot();
+		ConsumptionTable table = snapshot.getTable();
+		
+		JsonOutput json = ConsumptionHttpServer.openJson(exchange);
+		json.beginObject();
+		json.name("household").value(snapshot.getHouseholdPower());
+		json.name("baseload").value(this.model.getBaseload());
+		json.name("peak").value(this.model.getPeakLoad());
+		json.name("rooms").beginObject();
+		for (int room = 0; room < table.getRoomCount(); room++)
+			json.name(table.getRoomName(room)).value(snapshot.getRoomPower(room));
+		json.endObject();
+		json.endObject();
+		json.flush();
+	}
+	
+	/**
+	 * Serve the best consumption of every device state
+	 */
+	private void snapshot(HttpExchange exchange, Map<String, List<String>> query) throws IOException
+	{
+		if (ConsumptionHttpServer.isBinary(exchange, query))
+		{
+			exchange.getResponseHeaders().set("Content-Type", ConsumptionHttpServer.BINARY);
+			exchange.sendResponseHeaders(200, 0);
+			this.model.dumpConsumptions(exchange.getResponseBody());
+		}
+		else
+		{
+			PairWriter writer = this.openPairs(exchange, query);
+			ConsumptionTable table = this.envelope.getConsumptionTable();
+			for (int device = 0; device < table.size(); device++)
+				for (int state = 0; state < table.getStateCount(device); state++)
+					writer.add(table.getDeviceURI(device), table.getStateName(device, state));
+			writer.finish();
+		}
+	}
+	
+	/**
+	 * Start a response of (device, state, consumption) records
+	 */
+	private PairWriter openPairs(HttpExchange exchange, Map<String, List<String>> query) throws IOException
+	{
+		if (ConsumptionHttpServer.isBinary(exchange, query))
+			return new PairWriter(ConsumptionHttpServer.openBinary(exchange), null);
+		
+		JsonOutput json = ConsumptionHttpServer.openJson(exchange);
+		json.beginArray();
+		return new PairWriter(null, json);
+	}
+	
+	/**
+	 * Collects (device, state) pairs and writes their best consumption, a
+	 * batch at a time, as binary records or as JSON objects
+	 */
+	private class PairWriter
+	{
+		// the batch of pairs
+		private String[] deviceURIs;
+		private String[] stateNames;
+		private double[] consumptions;
+		
+		// the number of pairs in the batch
+		private int count;
+		
+		// the timestamp of the binary records
+		private long timestamp;
+		
+		// the binary writer, or null
+		private ConsumptionStreamWriter binary;
+		
+		// the JSON writer, or null
+		private JsonOutput json;
+		
+		/**
+		 * Constructor
+		 */
+		PairWriter(ConsumptionStreamWriter binary, JsonOutput json)
+		{
+			this.deviceURIs = new String[ConsumptionHttpServer.BATCH_SIZE];
+			this.stateNames = new String[ConsumptionHttpServer.BATCH_SIZE];
+			this.consumptions = new double[ConsumptionHttpServer.BATCH_SIZE];
+			this.timestamp = System.currentTimeMillis();
+			this.binary = binary;
+			this.json = json;
+		}
+		
+		/**
+		 * Add a pair, writing the batch if full
+		 */
+		void add(String deviceURI, String stateName) throws IOException
+		{
+			this.deviceURIs[this.count] = deviceURI;
+			this.stateNames[this.count] = stateName;
+			if (++this.count == this.deviceURIs.length)
+				this.flush();
+		}
+		
+		/**
+		 * Write the remaining pairs and end the response
+		 */
+		void finish() throws IOException
+		{
+			this.flush();
+			if (this.binary != null)
+				this.binary.finish();
+			else
+			{
+				this.json.endArray();
+				this.json.flush();
+			}
+		}
+		
+		/**
+		 * Look up and write the batch
+		 */
+		private void flush() throws IOException
+		{
+			Arrays.fill(this.consumptions, 0, this.count, Double.NaN);
+			ConsumptionHttpServer.this.model.getBestDeviceConsumptions(this.deviceURIs, this.stateNames,
+					this.consumptions, this.count);
+			
+			for (int i = 0; i < this.count; i++)
+			{
+				if (this.binary != null)
+					this.binary.write(this.deviceURIs[i], this.stateNames[i], this.consumptions[i], this.timestamp);
+				else
+				{
+					this.json.beginObject();
+					this.json.name("device").value(this.deviceURIs[i]);
+					this.json.name("state").value(this.stateNames[i]);
+					this.json.name("power").value(this.consumptions[i]);
+					this.json.endObject();
+				}
+			}
+			
+			Arrays.fill(this.deviceURIs, 0, this.count, null);
+			Arrays.fill(this.stateNames, 0, this.count, null);
+			this.count = 0;
+		}
+	}
+	
+	/**
+	 * Replace the top of a min-heap of device ids and restore the heap
+	 */
+	private static void siftDown(int[] heap, int size, double[] powers, int device)
+	{
+		double power = powers[device];
+		int parent = 0;
+		while (2 * parent + 1 < size)
+		{
+			int child = 2 * parent + 1;
+			if (child + 1 < size && powers[heap[child + 1]] < powers[heap[child]])
+				child++;
+			if (powers[heap[child]] >= power)
+				break;
+			heap[parent] = heap[child];
+			parent = child;
+		}
+		heap[parent] = device;
+	}
+	
+	/**
+	 * @return true if the response should be binary
+	 */
+	private static boolean isBinary(HttpExchange exchange, Map<String, List<String>> query)
+	{
+		String format = ConsumptionHttpServer.getFirst(query, "format");
+		if (format != null)
+		{
+			if (format.equals("binary"))
+				return true;
+			if (format.equals("json"))
+				return false;
+			throw new IllegalArgumentException("Unknown format: " + format);
+		}
+		
+		String accept = exchange.getRequestHeaders().getFirst("Accept");
+		return accept != null && accept.contains(ConsumptionHttpServer.BINARY);
+	}
+	
+	/**
+	 * Start a chunked JSON response
+	 */
+	private static JsonOutput openJson(HttpExchange exchange) throws IOException
+	{
+		exchange.getResponseHeaders().set("Content-Type", ConsumptionHttpServer.JSON);
+		exchange.sendResponseHeaders(200, 0);
+		
+		return new JsonOutput(new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), "UTF-8"),
+				ConsumptionStreamWriter.DEFAULT_BUFFER_SIZE));
+	}
+	
+	/**
+	 * Start a chunked binary response
+	 */
+	private static ConsumptionStreamWriter openBinary(HttpExchange exchange) throws IOException
+	{
+		exchange.getResponseHeaders().set("Content-Type", ConsumptionHttpServer.BINARY);
+		exchange.sendResponseHeaders(200, 0);
+		
+		return new ConsumptionStreamWriter(Channels.newChannel(exchange.getResponseBody()),
+				ConsumptionStreamWriter.DEFAULT_BUFFER_SIZE);
+	}
+	
+	/**
+	 * Send an error response with a plain text message
+	 */
+	private static void sendError(HttpExchange exchange, int status, String message) throws IOException
+	{
+		byte[] body = String.valueOf(message).getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+		exchange.sendResponseHeaders(status, body.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(body);
+		out.flush();
+	}
+	
+	/**
+	 * Parse a raw query string into its (repeated) parameters
+	 */
+	private static Map<String, List<String>> parseQuery(String rawQuery) throws UnsupportedEncodingException
+	{
+		Map<String, List<String>> query = new HashMap<String, List<String>>();
+		if (rawQuery == null || rawQuery.isEmpty())
+			return query;
+		
+		for (String parameter : rawQuery.split("&"))
+		{
+			if (parameter.isEmpty())
+				continue;
+			int equals = parameter.indexOf('=');
+			String name = URLDecoder.decode((equals < 0) ? parameter : parameter.substring(0, equals), "UTF-8");
+			String value = (equals < 0) ? "" : URLDecoder.decode(parameter.substring(equals + 1), "UTF-8");
+			
+			List<String> values = query.get(name);
+			if (values == null)
+			{
+				values = new ArrayList<String>();
+				query.put(name, values);
+			}
+			values.add(value);
+		}
+		
+		return query;
+	}
+	
+	/**
+	 * @return all the values of a query parameter
+	 */
+	private static List<String> getAll(Map<String, List<String>> query, String name)
+	{
+		List<String> values = query.get(name);
+		return (values != null) ? values : new ArrayList<String>();
+	}
+	
+	/**
+	 * @return the first value of a query parameter, or null
+	 */
+	private static String getFirst(Map<String, List<String>> query, String name)
+	{
+		List<String> values = query.get(name);
+		return (values != null && !values.isEmpty()) ? values.get(0) : null;
+	}
+}
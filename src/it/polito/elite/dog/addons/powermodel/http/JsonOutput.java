@@ -0,0 +1,176 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.http;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A minimal streaming JSON writer: values are written as soon as they are
+ * given, so that a response never needs to be buffered as a whole.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+class JsonOutput
+{
+	// the writer to write to
+	private Writer writer;
+	
+	// true if the next value of the current array or object needs a comma
+	private boolean separate;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param writer
+	 *            the writer to write to
+	 */
+	JsonOutput(Writer writer)
+	{
+		this.writer = writer;
+	}
+	
+	/**
+	 * Start an array
+	 */
+	JsonOutput beginArray() throws IOException
+	{
+		this.separator();
+		this.writer.write('[');
+		this.separate = false;
+		return this;
+	}
+	
+	/**
+	 * End an array
+	 */
+	JsonOutput endArray() throws IOException
+	{
+		this.writer.write(']');
+		this.separate = true;
+		return this;
+	}
+	
+	/**
+	 * Start an object
+	 */
+	JsonOutput beginObject() throws IOException
+	{
+		this.separator();
+		this.writer.write('{');
+		this.separate = false;
+		return this;
+	}
+	
+	/**
+	 * End an object
+	 */
+	JsonOutput endObject() throws IOException
+	{
+		this.writer.write('}');
+		this.separate = true;
+		return this;
+	}
+	
+	/**
+	 * Write the name of an object member
+	 */
+	JsonOutput name(String name) throws IOException
+	{
+		this.separator();
+		this.quote(name);
+		this.writer.write(':');
+		this.separate = false;
+		return this;
+	}
+	
+	/**
+	 * Write a string value, or null
+	 */
+	JsonOutput value(String value) throws IOException
+	{
+		this.separator();
+		if (value == null)
+			this.writer.write("null");
+		else
+			this.quote(value);
+		this.separate = true;
+		return this;
+	}
+	
+	/**
+	 * Write a number value; NaN and infinite values are written as null
+	 */
+	JsonOutput value(double value) throws IOException
+	{
+		this.separator();
+		if (Double.isNaN(value) || Double.isInfinite(value))
+			this.writer.write("null");
+		else
+			this.writer.write(Double.toString(value));
+		this.separate = true;
+		return this;
+	}
+	
+	/**
+	 * Flush the underlying writer
+	 */
+	void flush() throws IOException
+	{
+		this.writer.flush();
+	}
+	
+	/**
+	 * Write a comma, if needed
+	 */
+	private void separator() throws IOException
+	{
+		if (this.separate)
+			this.writer.write(',');
+	}
+	
+	/**
+	 * Write a quoted and escaped string
+	 */
+	private void quote(String value) throws IOException
+	{
+		this.writer.write('"');
+		for (int i = 0; i < value.length(); i++)
+		{
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\')
+			{
+				this.writer.write('\\');
+				this.writer.write(c);
+			}
+			else if (c < 0x20)
+			{
+				// control characters, as unicode escapes
+				String hex = Integer.toHexString(c);
+				this.writer.write("\\u");
+				for (int pad = hex.length(); pad < 4; pad++)
+					this.writer.write('0');
+				this.writer.write(hex);
+			}
+			else
+				this.writer.write(c);
+		}
+		this.writer.write('"');
+	}
+}
@@ -0,0 +1,319 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.learning;
+
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionEstimate;
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionLearner;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+
+/**
+ * Implementation of the {@link ConsumptionLearner} service. Each device state
+ * of the current {@link ConsumptionTable} owns a {@link StateEstimator},
+ * allocated at its first reading; readings of different states never contend
+ * with each other.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class ConsumptionEstimator implements ConsumptionLearner
+{
+	// the default weight of a new reading in the learned mean
+	public static final double DEFAULT_SMOOTHING = 0.05;
+	
+	// the default number of readings needed to trust the learned mean
+	public static final int DEFAULT_MIN_SAMPLES = 30;
+	
+	// the number of recent readings represented by the quantiles, at least
+	public static final int QUANTILE_WINDOW = 4096;
+	
+	// the weight of a new reading in the learned mean
+	private volatile double smoothing;
+	
+	// the number of readings needed to trust the learned mean
+	private volatile int minSamples;
+	
+	// the state estimators, bound to a consumption table
+	private volatile Estimators estimators;
+	
+	/**
+	 * Default constructor
+	 */
+	public ConsumptionEstimator()
+	{
+		this.smoothing = ConsumptionEstimator.DEFAULT_SMOOTHING;
+		this.minSamples = ConsumptionEstimator.DEFAULT_MIN_SAMPLES;
+		this.estimators = new Estimators(ConsumptionTable.EMPTY);
+	}
+	
+	/**
+	 * Set the weight of a new reading in the learned mean and variance
+	 * 
+	 * @param smoothing
+	 *            the weight, greater than 0 and not greater than 1
+	 */
+	public void setSmoothing(double smoothing)
+	{
+		if (smoothing <= 0 || smoothing > 1)
+			throw new IllegalArgumentException("The smoothing factor must be in (0, 1]");
+		
+		this.smoothing = smoothing;
+	}
+	
+	/**
+	 * Set the number of readings needed before the learned mean is used as
+	 * the consumption of a state
+	 * 
+	 * @param minSamples
+	 *            the number of readings, greater than 0
+	 */
+	public void setMinSamples(int minSamples)
+	{
+		if (minSamples <= 0)
+			throw new IllegalArgumentException("The minimum number of samples must be greater than 0");
+		
+		this.minSamples = minSamples;
+	}
+	
+	/**
+	 * Bind the estimators to a new consumption table, e.g., after a model
+	 * (re)load, preserving what has been learned for the device states still
+	 * in the table
+	 * 
+	 * @param table
+	 *            the new {@link ConsumptionTable}
+	 */
+	public synchronized void setConsumptionTable(ConsumptionTable table)
+	{
+		Estimators previous = this.estimators;
+		Estimators current = new Estimators(table);
+		
+		for (int device = 0; device < table.size(); device++)
+		{
+			int previousDevice = previous.table.getDeviceId(table.getDeviceURI(device));
+			if (previousDevice == ConsumptionTable.UNKNOWN)
+				continue;
+			
+			for (int state = 0; state < table.getStateCount(device); state++)
+			{
+				int previousState = previous.table.getStateIndex(previousDevice, table.getStateName(device, state));
+				if (previousState != ConsumptionTable.UNKNOWN)
+					current.states[table.getSlot(device, state)] = previous.states[previous.table.getSlot(
+							previousDevice, previousState)];
+			}
+		}
+		
+		this.estimators = current;
+	}
+	
+	@Override
+	public boolean learn(String deviceURI, String stateName, double power)
+	{
+		Estimators current = this.estimators;
+		
+		int slot = current.getSlot(deviceURI, stateName);
+		if (slot == ConsumptionTable.UNKNOWN)
+			return false;
+		
+		this.learn(current, slot, power);
+		
+		return true;
+	}
+	
+	/**
+	 * Learn a power reading, given the device id and the state index
+	 * 
+	 * @param table
+	 *            the {@link ConsumptionTable} the ids refer to
+	 * @param device
+	 *            the device id
+	 * @param state
+	 *            the state index
+	 * @param power
+	 *            the power reading, in W
+	 * @return true if the table is still the current one
+	 */
+	public boolean learn(ConsumptionTable table, int device, int state, double power)
+	{
+		Estimators current = this.estimators;
+		if (current.table != table)
+			return false;
+		
+		this.learn(current, table.getSlot(device, state), power);
+		
+		return true;
+	}
+	
+	/**
+	 * Add a reading to the estimator of a state slot
+	 */
+	private void learn(Estimators current, int slot, double power)
+	{
+		// discard meter glitches
+		if (Double.isNaN(power) || Double.isInfinite(power))
+			return;
+		
+		StateEstimator estimator = current.states[slot];
+		if (estimator == null)
+		{
+			synchronized (current)
+			{
+				estimator = current.states[slot];
+				if (estimator == null)
+				{
+					estimator = new StateEstimator(ConsumptionEstimator.QUANTILE_WINDOW);
+					current.states[slot] = estimator;
+				}
+			}
+		}
+		
+		estimator.add(power, this.smoothing);
+	}
+	
+	@Override
+	public ConsumptionEstimate getEstimate(String deviceURI, String stateName)
+	{
+		StateEstimator estimator = this.getEstimator(deviceURI, stateName);
+		if (estimator == null)
+			return null;
+		
+		return estimator.getEstimate(deviceURI, stateName);
+	}
+	
+	@Override
+	public double getQuantile(String deviceURI, String stateName, double quantile)
+	{
+		StateEstimator estimator = this.getEstimator(deviceURI, stateName);
+		if (estimator == null)
+			return Double.NaN;
+		
+		return estimator.getQuantile(quantile);
+	}
+	
+	/**
+	 * Get the learned mean consumption of a device state, if enough readings
+	 * have been learned to trust it
+	 * 
+	 * @param deviceURI
+	 *            the URI of the device
+	 * @param stateName
+	 *            the name of the state
+	 * @return the learned mean, in W, or {@link Double#NaN} if not enough
+	 *         readings are available
+	 */
+	public double getLearnedConsumption(String deviceURI, String stateName)
+	{
+		StateEstimator estimator = this.getEstimator(deviceURI, stateName);
+		if (estimator == null || estimator.getSamples() < this.minSamples)
+			return Double.NaN;
+		
+		return estimator.getMean();
+	}
+	
+	/**
+	 * Get the learned mean consumption of a device state, given the device id
+	 * and the state index
+	 * 
+	 * @param table
+	 *            the {@link ConsumptionTable} the ids refer to
+	 * @param device
+	 *            the device id
+	 * @param state
+	 *            the state index
+	 * @return the learned mean, in W, or {@link Double#NaN} if not enough
+	 *         readings are available
+	 */
+	public double getLearnedConsumption(ConsumptionTable table, int device, int state)
+	{
+		Estimators current = this.estimators;
+		if (current.table != table)
+			return this.getLearnedConsumption(table.getDeviceURI(device), table.getStateName(device, state));
+		
+		StateEstimator estimator = current.states[table.getSlot(device, state)];
+		if (estimator == null || estimator.getSamples() < this.minSamples)
+			return Double.NaN;
+		
+		return estimator.getMean();
+	}
+	
+	@Override
+	public void forget(String deviceURI)
+	{
+		Estimators current = this.estimators;
+		
+		int device = current.table.getDeviceId(deviceURI);
+		if (device == ConsumptionTable.UNKNOWN)
+			return;
+		
+		synchronized (current)
+		{
+			for (int state = 0; state < current.table.getStateCount(device); state++)
+				current.states[current.table.getSlot(device, state)] = null;
+		}
+	}
+	
+	/**
+	 * Get the estimator of a device state
+	 * 
+	 * @return the {@link StateEstimator}, or null if the state is unknown or
+	 *         it has no readings
+	 */
+	private StateEstimator getEstimator(String deviceURI, String stateName)
+	{
+		Estimators current = this.estimators;
+		
+		int slot = current.getSlot(deviceURI, stateName);
+		if (slot == ConsumptionTable.UNKNOWN)
+			return null;
+		
+		return current.states[slot];
+	}
+	
+	/**
+	 * The estimators of all the device states of a consumption table
+	 */
+	private static class Estimators
+	{
+		// the consumption table
+		private final ConsumptionTable table;
+		
+		// the estimator of each state slot
+		private final StateEstimator[] states;
+		
+		Estimators(ConsumptionTable table)
+		{
+			this.table = table;
+			this.states = new StateEstimator[table.getSlotCount()];
+		}
+		
+		/**
+		 * Get the slot of a device state, or UNKNOWN
+		 */
+		int getSlot(String deviceURI, String stateName)
+		{
+			int device = this.table.getDeviceId(deviceURI);
+			if (device == ConsumptionTable.UNKNOWN)
+				return ConsumptionTable.UNKNOWN;
+			
+			int state = this.table.getStateIndex(device, stateName);
+			if (state == ConsumptionTable.UNKNOWN)
+				return ConsumptionTable.UNKNOWN;
+			
+			return this.table.getSlot(device, state);
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.learning;
+
+/**
+ * A fixed-size sketch for the approximate quantiles of a power series. Values
+ * are counted in logarithmic buckets (each bucket is 10% wider than the
+ * previous one), so any quantile is returned with a relative error below 5%
+ * whatever the magnitude of the power. All the counts are halved once the
+ * window is exceeded twice, so that older values gradually fade out.<br/>
+ * The sketch is not thread-safe: callers must synchronize its access.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class QuantileSketch
+{
+	// the lowest tracked power, in W; lower values are counted as 0 W
+	public static final double MIN_POWER = 0.1;
+	
+	// the ratio between the bounds of two consecutive buckets
+	public static final double GAMMA = 1.1;
+	
+	// the number of buckets, tracking up to about 400 kW
+	public static final int BUCKETS = 160;
+	
+	// the logarithm of GAMMA, to find the bucket of a value
+	private static final double LOG_GAMMA = Math.log(QuantileSketch.GAMMA);
+	
+	// the number of values in each bucket
+	private final int[] counts;
+	
+	// the number of values below the lowest bucket
+	private int zeroCount;
+	
+	// the number of values in the sketch
+	private int total;
+	
+	// the number of values kept at least, once the counts are halved
+	private final int window;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param window
+	 *            the number of most recent values the sketch is guaranteed to
+	 *            represent, at least
+	 */
+	public QuantileSketch(int window)
+	{
+		this.counts = new int[QuantileSketch.BUCKETS];
+		this.window = window;
+	}
+	
+	/**
+	 * Add a value to the sketch
+	 * 
+	 * @param power
+	 *            the power, in W
+	 */
+	public void add(double power)
+	{
+		if (power < QuantileSketch.MIN_POWER)
+			this.zeroCount++;
+		else
+		{
+			int bucket = (int) (Math.log(power / QuantileSketch.MIN_POWER) / QuantileSketch.LOG_GAMMA);
+			this.counts[Math.min(bucket, QuantileSketch.BUCKETS - 1)]++;
+		}
+		this.total++;
+		
+		// fade out the older values
+		if (this.total >= 2 * this.window)
+		{
+			this.zeroCount >>= 1;
+			this.total = this.zeroCount;
+			for (int bucket = 0; bucket < QuantileSketch.BUCKETS; bucket++)
+			{
+				this.counts[bucket] >>= 1;
+				this.total += this.counts[bucket];
+			}
+		}
+	}
+	
+	/**
+	 * Get an approximate quantile of the values in the sketch
+	 * 
+	 * @param quantile
+	 *            the quantile, between 0 and 1
+	 * @return the quantile, in W, or {@link Double#NaN} if the sketch is empty
+	 */
+	public double getQuantile(double quantile)
+	{
+		if (this.total == 0)
+			return Double.NaN;
+		
+		// the rank of the quantile, from 1 to total
+		long rank = Math.max(1, (long) Math.ceil(quantile * this.total));
+		
+		long seen = this.zeroCount;
+		if (seen >= rank)
+			return 0.0;
+		
+		int bucket = 0;
+		while (bucket < QuantileSketch.BUCKETS - 1)
+		{
+			seen += this.counts[bucket];
+			if (seen >= rank)
+				break;
+			bucket++;
+		}
+		
+		// the geometric middle of the bucket
+		return QuantileSketch.MIN_POWER * Math.pow(QuantileSketch.GAMMA, bucket + 0.5);
+	}
+	
+	/**
+	 * @return the number of values in the sketch
+	 */
+	public int getCount()
+	{
+		return this.total;
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.learning;
+
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionEstimate;
+
+/**
+ * The online estimator of the power consumption of a single device state. It
+ * keeps the exponentially weighted mean and variance of the readings, and a
+ * {@link QuantileSketch} of their distribution: each reading is learned in
+ * constant time, using a constant amount of memory.<br/>
+ * Until 1 / smoothing readings are learned, the mean and the variance are the
+ * plain ones, so that the first readings are not biased towards 0.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class StateEstimator
+{
+	// the distribution of the readings
+	private final QuantileSketch sketch;
+	
+	// the number of readings learned
+	private long samples;
+	
+	// the exponentially weighted mean, in W
+	private double mean;
+	
+	// the exponentially weighted variance, in W^2
+	private double variance;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param window
+	 *            the number of most recent readings represented by the
+	 *            quantiles, at least
+	 */
+	public StateEstimator(int window)
+	{
+		this.sketch = new QuantileSketch(window);
+	}
+	
+	/**
+	 * Learn a new reading
+	 * 
+	 * @param power
+	 *            the power reading, in W
+	 * @param smoothing
+	 *            the weight of the new reading in the mean and in the
+	 *            variance, between 0 and 1
+	 */
+	public synchronized void add(double power, double smoothing)
+	{
+		this.samples++;
+		double weight = Math.max(smoothing, 1.0 / this.samples);
+		
+		double difference = power - this.mean;
+		double increment = weight * difference;
+		this.mean += increment;
+		this.variance = (1 - weight) * (this.variance + difference * increment);
+		
+		this.sketch.add(power);
+	}
+	
+	/**
+	 * @return the number of readings learned
+	 */
+	public synchronized long getSamples()
+	{
+		return this.samples;
+	}
+	
+	/**
+	 * @return the exponentially weighted mean, in W
+	 */
+	public synchronized double getMean()
+	{
+		return this.mean;
+	}
+	
+	/**
+	 * Get an approximate quantile of the readings
+	 * 
+	 * @param quantile
+	 *            the quantile, between 0 and 1
+	 * @return the quantile, in W, or {@link Double#NaN} if no reading has
+	 *         been learned
+	 */
+	public synchronized double getQuantile(double quantile)
+	{
+		return this.sketch.getQuantile(quantile);
+	}
+	
+	/**
+	 * Get a consistent snapshot of the estimator
+	 * 
+	 * @param deviceURI
+	 *            the URI of the device
+	 * @param stateName
+	 *            the name of the state
+	 * @return the {@link ConsumptionEstimate}
+	 */
+	public synchronized ConsumptionEstimate getEstimate(String deviceURI, String stateName)
+	{
+		return new ConsumptionEstimate(deviceURI, stateName, this.samples, this.mean, this.variance,
+				this.sketch.getQuantile(0.05), this.sketch.getQuantile(0.5), this.sketch.getQuantile(0.95));
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.live;
+
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+
+/**
+ * The interface to implement for being notified of the changes of the live
+ * power aggregates kept by {@link LivePower}. Notifications are delivered on
+ * the updating thread, after the aggregates have been updated without locks:
+ * updates of different threads may therefore be notified out of order, and
+ * each notification carries the sequence number of its change, so that the
+ * older ones can be discarded: the change with the greatest sequence number
+ * carries the latest value of the aggregate. Listeners should return quickly;
+ * exceptions thrown by a listener are ignored.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public interface AggregateListener
+{
+	/**
+	 * Called when the power of a device changes
+	 * 
+	 * @param table
+	 *            the {@link ConsumptionTable} the device id refers to
+	 * @param device
+	 *            the device id
+	 * @param power
+	 *            the new power of the device, in W
+	 * @param timestamp
+	 *            the instant of the change, in ms since the epoch
+	 * @param sequence
+	 *            the sequence number of the change
+	 */
+	public void deviceChanged(ConsumptionTable table, int device, double power, long timestamp, long sequence);
+	
+	/**
+	 * Called when the power of a room changes
+	 * 
+	 * @param table
+	 *            the {@link ConsumptionTable} the room id refers to
+	 * @param room
+	 *            the room id
+	 * @param power
+	 *            the new power of the room, in W
+	 * @param timestamp
+	 *            the instant of the change, in ms since the epoch
+	 * @param sequence
+	 *            the sequence number of the change
+	 */
+	public void roomChanged(ConsumptionTable table, int room, double power, long timestamp, long sequence);
+	
+	/**
+	 * Called when the power of the household changes
+	 * 
+	 * @param power
+	 *            the new power of the household, in W
+	 * @param timestamp
+	 *            the instant of the change, in ms since the epoch
+	 * @param sequence
+	 *            the sequence number of the change
+	 */
+	public void householdChanged(double power, long timestamp, long sequence);
+}
@@ -0,0 +1,462 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.live;
+
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionChange;
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionPublisher;
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionScope;
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionSubscriber;
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionSubscription;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+import it.polito.elite.dog.addons.powermodel.device.DeviceKeyIndex;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Implementation of the {@link ConsumptionPublisher} service, fed by the
+ * {@link LivePower} aggregates. Each subscription holds a single slot with the
+ * latest change: a newer change overwrites the slot and schedules one
+ * delivery task, if none is pending, while changes older than the stored one
+ * (by sequence number) are dropped, so that a subscriber never receives an
+ * aggregate going back in time. Therefore, the pool queue never
+ * holds more than one task per subscription, and the ingestion thread only
+ * pays for a few atomic operations per subscriber. Deliveries run on the
+ * shared pool of the bundle; until the pool is set, changes are only stored.
+ * Device subscriptions are keyed by the canonical device key, so that
+ * devices may be subscribed also by full IRI or prefixed name.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class ConsumptionPublisherService implements ConsumptionPublisher, AggregateListener
+{
+	// the live aggregates
+	private LivePower livePower;
+	
+	// the shared pool running the deliveries, if any
+	private volatile ScheduledExecutorService executor;
+	
+	// the device subscriptions, indexed by canonical device key
+	private ConcurrentMap<String, List<Delivery>> deviceSubscriptions;
+	
+	// the index resolving the device aliases to their canonical key
+	private DeviceKeyIndex deviceKeys;
+	
+	// the room subscriptions, indexed by room name
+	private ConcurrentMap<String, List<Delivery>> roomSubscriptions;
+	
+	// the household subscriptions
+	private List<Delivery> householdSubscriptions;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param livePower
+	 *            the {@link LivePower} aggregates to publish
+	 */
+	public ConsumptionPublisherService(LivePower livePower)
+	{
+		this.livePower = livePower;
+		this.deviceSubscriptions = new ConcurrentHashMap<String, List<Delivery>>();
+		this.roomSubscriptions = new ConcurrentHashMap<String, List<Delivery>>();
+		this.householdSubscriptions = new CopyOnWriteArrayList<Delivery>();
+		
+		this.livePower.addAggregateListener(this);
+	}
+	
+	/**
+	 * Set the index of the device keys, moving the device subscriptions made
+	 * by alias under the canonical key of their device
+	 * 
+	 * @param deviceKeys
+	 *            the {@link DeviceKeyIndex} of the current devices
+	 */
+	public synchronized void setDeviceKeys(DeviceKeyIndex deviceKeys)
+	{
+		this.deviceKeys = deviceKeys;
+		
+		for (Map.Entry<String, List<Delivery>> entry : this.deviceSubscriptions.entrySet())
+		{
+			String key = this.getCanonicalKey(entry.getKey());
+			if (!key.equals(entry.getKey()) && this.deviceSubscriptions.remove(entry.getKey(), entry.getValue()))
+				this.getDeliveries(this.deviceSubscriptions, key).addAll(entry.getValue());
+		}
+	}
+	
+	/**
+	 * Get the canonical key of a device reference
+	 */
+	private synchronized String getCanonicalKey(String deviceURI)
+	{
+		String key = (this.deviceKeys != null) ? this.deviceKeys.resolve(deviceURI) : null;
+		
+		return (key != null) ? key : deviceURI;
+	}
+	
+	/**
+	 * Set the pool running the deliveries
+	 * 
+	 * @param executor
+	 *            the shared {@link ScheduledExecutorService}
+	 */
+	public void setExecutor(ScheduledExecutorService executor)
+	{
+		this.executor = executor;
+	}
+	
+	/**
+	 * Stop the delivery of changes and complete all the subscriptions; the
+	 * shared pool is left running, and the pending deliveries find their
+	 * subscription terminated
+	 */
+	public void close()
+	{
+		this.livePower.removeAggregateListener(this);
+		
+		for (List<Delivery> deliveries : this.deviceSubscriptions.values())
+			this.complete(deliveries);
+		for (List<Delivery> deliveries : this.roomSubscriptions.values())
+			this.complete(deliveries);
+		this.complete(this.householdSubscriptions);
+	}
+	
+	/**
+	 * Complete all the given subscriptions
+	 */
+	private void complete(List<Delivery> deliveries)
+	{
+		for (Delivery delivery : deliveries)
+		{
+			if (delivery.terminate())
+				delivery.subscriber.onComplete();
+		}
+	}
+	
+	@Override
+	public void subscribe(ConsumptionScope scope, String key, long minInterval, ConsumptionSubscriber subscriber)
+	{
+		if (scope != ConsumptionScope.HOUSEHOLD && key == null)
+			throw new IllegalArgumentException("A device URI or a room name is needed");
+		
+		Delivery delivery;
+		
+		// the current consumption, if known
+		double current;
+		switch (scope)
+		{
+			case DEVICE:
+				// register under the canonical key, atomically with respect
+				// to the key index updates
+				synchronized (this)
+				{
+					delivery = new Delivery(scope, this.getCanonicalKey(key),
+							TimeUnit.MILLISECONDS.toNanos(Math.max(0, minInterval)), subscriber);
+					this.getDeliveries(this.deviceSubscriptions, delivery.key).add(delivery);
+				}
+				current = this.livePower.getDevicePower(key);
+				break;
+			case ROOM:
+				delivery = new Delivery(scope, key, TimeUnit.MILLISECONDS.toNanos(Math.max(0, minInterval)),
+						subscriber);
+				this.getDeliveries(this.roomSubscriptions, key).add(delivery);
+				current = this.livePower.getRoomPower(key);
+				break;
+			default:
+				delivery = new Delivery(scope, null, TimeUnit.MILLISECONDS.toNanos(Math.max(0, minInterval)),
+						subscriber);
+				this.householdSubscriptions.add(delivery);
+				current = this.livePower.getHouseholdPower();
+				break;
+		}
+		
+		// the current consumption has no sequence number: any live change
+		// supersedes it
+		subscriber.onSubscribe(delivery);
+		if (!Double.isNaN(current))
+			delivery.offer(new ConsumptionChange(delivery.scope, delivery.key, current, System.currentTimeMillis()));
+	}
+	
+	/**
+	 * Get the subscriptions for a key, creating the list if needed
+	 */
+	private List<Delivery> getDeliveries(ConcurrentMap<String, List<Delivery>> subscriptions, String key)
+	{
+		List<Delivery> deliveries = subscriptions.get(key);
+		if (deliveries == null)
+		{
+			List<Delivery> created = new CopyOnWriteArrayList<Delivery>();
+			deliveries = subscriptions.putIfAbsent(key, created);
+			if (deliveries == null)
+				deliveries = created;
+		}
+		
+		return deliveries;
+	}
+	
+	/**
+	 * Remove a cancelled subscription
+	 */
+	private void remove(Delivery delivery)
+	{
+		switch (delivery.scope)
+		{
+			case DEVICE:
+				// the subscription may have been moved under another key
+				synchronized (this)
+				{
+					for (List<Delivery> deliveries : this.deviceSubscriptions.values())
+						deliveries.remove(delivery);
+				}
+				break;
+			case ROOM:
+				this.getDeliveries(this.roomSubscriptions, delivery.key).remove(delivery);
+				break;
+			default:
+				this.householdSubscriptions.remove(delivery);
+				break;
+		}
+	}
+	
+	@Override
+	public void deviceChanged(ConsumptionTable table, int device, double power, long timestamp, long sequence)
+	{
+		String deviceURI = table.getDeviceURI(device);
+		this.publish(this.deviceSubscriptions.get(deviceURI), ConsumptionScope.DEVICE, deviceURI, power, timestamp,
+				sequence);
+	}
+	
+	@Override
+	public void roomChanged(ConsumptionTable table, int room, double power, long timestamp, long sequence)
+	{
+		String roomName = table.getRoomName(room);
+		this.publish(this.roomSubscriptions.get(roomName), ConsumptionScope.ROOM, roomName, power, timestamp,
+				sequence);
+	}
+	
+	@Override
+	public void householdChanged(double power, long timestamp, long sequence)
+	{
+		this.publish(this.householdSubscriptions, ConsumptionScope.HOUSEHOLD, null, power, timestamp, sequence);
+	}
+	
+	/**
+	 * Offer a change to all the given subscriptions
+	 */
+	private void publish(List<Delivery> deliveries, ConsumptionScope scope, String key, double power,
+			long timestamp, long sequence)
+	{
+		if (deliveries == null || deliveries.isEmpty())
+			return;
+		
+		ConsumptionChange change = new ConsumptionChange(scope, key, power, timestamp, sequence);
+		for (Delivery delivery : deliveries)
+			delivery.offer(change);
+	}
+	
+	/**
+	 * A subscription, delivering the latest change to its subscriber
+	 */
+	private class Delivery implements ConsumptionSubscription, Runnable
+	{
+		// the scope of the subscription
+		private final ConsumptionScope scope;
+		
+		// the canonical device key or the room name, null for the household
+		private final String key;
+		
+		// the minimum time between two deliveries, in ns
+		private final long minInterval;
+		
+		// the subscriber
+		private final ConsumptionSubscriber subscriber;
+		
+		// the latest change, if any
+		private final AtomicReference<ConsumptionChange> latest;
+		
+		// the sequence number of the latest delivered change, -1 if none;
+		// only written by the delivery task
+		private volatile long delivered;
+		
+		// the outstanding demand
+		private final AtomicLong demand;
+		
+		// true while a delivery task is pending or running
+		private final AtomicBoolean scheduled;
+		
+		// true once cancelled or completed
+		private final AtomicBoolean terminated;
+		
+		// the instant of the latest delivery, in ns (0 if none)
+		private volatile long lastDelivery;
+		
+		Delivery(ConsumptionScope scope, String key, long minInterval, ConsumptionSubscriber subscriber)
+		{
+			this.scope = scope;
+			this.key = key;
+			this.minInterval = minInterval;
+			this.subscriber = subscriber;
+			this.latest = new AtomicReference<ConsumptionChange>();
+			this.delivered = -1;
+			this.demand = new AtomicLong();
+			this.scheduled = new AtomicBoolean();
+			this.terminated = new AtomicBoolean();
+		}
+		
+		/**
+		 * Store a new change, replacing any undelivered one, unless a newer
+		 * change has already been stored
+		 * 
+		 * @param change
+		 *            the change
+		 */
+		void offer(ConsumptionChange change)
+		{
+			while (true)
+			{
+				ConsumptionChange stored = this.latest.get();
+				if (stored != null && stored.getSequence() >= change.getSequence())
+					return;
+				if (this.latest.compareAndSet(stored, change))
+					break;
+			}
+			
+			this.schedule();
+		}
+		
+		/**
+		 * @return the stored change, if not delivered yet
+		 */
+		private ConsumptionChange getUndelivered()
+		{
+			ConsumptionChange stored = this.latest.get();
+			
+			return (stored != null && stored.getSequence() > this.delivered) ? stored : null;
+		}
+		
+		/**
+		 * Schedule a delivery task, if there is something to deliver and no
+		 * task is pending
+		 */
+		private void schedule()
+		{
+			if (this.terminated.get() || this.demand.get() == 0 || this.getUndelivered() == null
+					|| !this.scheduled.compareAndSet(false, true))
+				return;
+			
+			ScheduledExecutorService executor = ConsumptionPublisherService.this.executor;
+			try
+			{
+				long delay = (this.lastDelivery != 0) ? this.lastDelivery + this.minInterval - System.nanoTime() : 0;
+				if (executor == null)
+					this.scheduled.set(false);
+				else if (delay > 0)
+					executor.schedule(this, delay, TimeUnit.NANOSECONDS);
+				else
+					executor.execute(this);
+			}
+			catch (RejectedExecutionException e)
+			{
+				// the pool is shutting down
+				this.scheduled.set(false);
+			}
+		}
+		
+		@Override
+		public void run()
+		{
+			ConsumptionChange change = null;
+			if (!this.terminated.get() && this.demand.get() > 0)
+				change = this.getUndelivered();
+			
+			if (change != null)
+			{
+				// the stored changes only move forward: none older than this
+				// one is delivered from now on
+				this.delivered = change.getSequence();
+				if (this.demand.get() != Long.MAX_VALUE)
+					this.demand.decrementAndGet();
+				this.lastDelivery = System.nanoTime();
+				
+				try
+				{
+					this.subscriber.onNext(change);
+				}
+				catch (RuntimeException e)
+				{
+					// a failing subscriber is dropped
+					this.cancel();
+				}
+			}
+			
+			// catch up with the changes arrived in the meanwhile
+			this.scheduled.set(false);
+			this.schedule();
+		}
+		
+		@Override
+		public void request(long n)
+		{
+			if (n <= 0)
+			{
+				if (this.terminate())
+				{
+					ConsumptionPublisherService.this.remove(this);
+					this.subscriber.onError(new IllegalArgumentException("The requested demand must be positive"));
+				}
+				return;
+			}
+			
+			// add to the demand, capped at Long.MAX_VALUE
+			long current, next;
+			do
+			{
+				current = this.demand.get();
+				next = current + n;
+				if (next < 0)
+					next = Long.MAX_VALUE;
+			} while (!this.demand.compareAndSet(current, next));
+			
+			this.schedule();
+		}
+		
+		@Override
+		public void cancel()
+		{
+			if (this.terminate())
+				ConsumptionPublisherService.this.remove(this);
+		}
+		
+		/**
+		 * @return true if the subscription has just been terminated
+		 */
+		boolean terminate()
+		{
+			return this.terminated.compareAndSet(false, true);
+		}
+	}
+}
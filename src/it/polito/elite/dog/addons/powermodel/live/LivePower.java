@@ -0,0 +1,486 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.live;
+
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The live power consumption of each device, room and of the whole
+ * household, as last known from the meter readings and the device state
+ * changes. Aggregates are updated incrementally, in constant time and without
+ * locks: the power of the device is swapped atomically and its difference is
+ * added to the room and household sums with a compare-and-set. Each actual
+ * change is then notified to the registered {@link AggregateListener}s on the
+ * updating thread, so that a slow listener never holds up the other updates.
+ * <br/>
+ * The power of a device has a single writer at a time: a meter reading owns
+ * the device for {@link LivePower#DEFAULT_METERED_VALIDITY} (by default),
+ * and the power modelled from the device state is ignored in the meanwhile.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class LivePower
+{
+	// the default time for which a meter reading overrides the modelled
+	// power, in ms
+	public static final long DEFAULT_METERED_VALIDITY = 60000;
+	
+	// the time for which a meter reading overrides the modelled power, in ms
+	private volatile long meteredValidity;
+	
+	// the aggregates of the current table
+	private volatile Aggregates aggregates;
+	
+	// the number of changes of the aggregates, to validate the snapshots
+	private final AtomicLong changes;
+	
+	// the registered listeners
+	private CopyOnWriteArrayList<AggregateListener> listeners;
+	
+	// the latest snapshot, null if none
+	private volatile CachedSnapshot snapshot;
+	
+	/**
+	 * Default constructor
+	 */
+	public LivePower()
+	{
+		this.meteredValidity = LivePower.DEFAULT_METERED_VALIDITY;
+		this.changes = new AtomicLong();
+		this.listeners = new CopyOnWriteArrayList<AggregateListener>();
+		this.setConsumptionTable(ConsumptionTable.EMPTY);
+	}
+	
+	/**
+	 * Set the time for which a meter reading overrides the power modelled
+	 * from the device state
+	 * 
+	 * @param meteredValidity
+	 *            the validity of a reading, in ms (not negative)
+	 */
+	public void setMeteredValidity(long meteredValidity)
+	{
+		if (meteredValidity < 0)
+			throw new IllegalArgumentException("The validity of the meter readings must not be negative");
+		
+		this.meteredValidity = meteredValidity;
+	}
+	
+	/**
+	 * Register a listener for the aggregate changes
+	 * 
+	 * @param listener
+	 *            the {@link AggregateListener} to add
+	 */
+	public void addAggregateListener(AggregateListener listener)
+	{
+		this.listeners.addIfAbsent(listener);
+	}
+	
+	/**
+	 * Unregister a listener for the aggregate changes
+	 * 
+	 * @param listener
+	 *            the {@link AggregateListener} to remove
+	 */
+	public void removeAggregateListener(AggregateListener listener)
+	{
+		this.listeners.remove(listener);
+	}
+	
+	/**
+	 * Bind the aggregates to a new consumption table, e.g., after a model
+	 * (re)load, preserving the power of the devices still in the table
+	 * 
+	 * @param table
+	 *            the new {@link ConsumptionTable}
+	 */
+	public synchronized void setConsumptionTable(ConsumptionTable table)
+	{
+		Aggregates previous = this.aggregates;
+		Aggregates next = new Aggregates(table);
+		
+		// updates of the previous table applied from now on are retried on
+		// the new one, the others are carried below
+		if (previous != null)
+			previous.retired = true;
+		
+		double householdPower = 0.0;
+		double[] roomPower = new double[table.getRoomCount()];
+		for (int device = 0; device < table.size(); device++)
+		{
+			// carry the previous power, if any
+			int previousDevice = (previous != null) ? previous.table.getDeviceId(table.getDeviceURI(device))
+					: ConsumptionTable.UNKNOWN;
+			if (previousDevice != ConsumptionTable.UNKNOWN)
+			{
+				next.meteredAt.set(device, previous.meteredAt.get(previousDevice));
+				double power = Double.longBitsToDouble(previous.devicePower.get(previousDevice));
+				if (!Double.isNaN(power))
+				{
+					next.devicePower.set(device, Double.doubleToRawLongBits(power));
+					householdPower += power;
+					if (table.getRoom(device) != ConsumptionTable.UNKNOWN)
+						roomPower[table.getRoom(device)] += power;
+				}
+			}
+		}
+		for (int room = 0; room < roomPower.length; room++)
+			next.roomPower.set(room, Double.doubleToRawLongBits(roomPower[room]));
+		next.householdPower.set(Double.doubleToRawLongBits(householdPower));
+		
+		this.aggregates = next;
+		this.changes.incrementAndGet();
+	}
+	
+	/**
+	 * Get an immutable snapshot of the aggregates; the snapshot is copied
+	 * only after a change, so consecutive calls share the same copy. Room and
+	 * household powers are summed from the copied device powers, so that the
+	 * snapshot is consistent even while updates are in progress.
+	 * 
+	 * @return the {@link PowerSnapshot}
+	 */
+	public PowerSnapshot getSnapshot()
+	{
+		// read the version first: a change applied while copying only
+		// invalidates the copy sooner
+		long version = this.changes.get();
+		Aggregates current = this.aggregates;
+		CachedSnapshot cached = this.snapshot;
+		if (cached != null && cached.version == version && cached.aggregates == current)
+			return cached.snapshot;
+		
+		ConsumptionTable table = current.table;
+		double[] devicePower = new double[table.size()];
+		double[] roomPower = new double[table.getRoomCount()];
+		double householdPower = 0.0;
+		for (int device = 0; device < devicePower.length; device++)
+		{
+			devicePower[device] = Double.longBitsToDouble(current.devicePower.get(device));
+			if (!Double.isNaN(devicePower[device]))
+			{
+				householdPower += devicePower[device];
+				if (table.getRoom(device) != ConsumptionTable.UNKNOWN)
+					roomPower[table.getRoom(device)] += devicePower[device];
+			}
+		}
+		
+		PowerSnapshot snapshot = new PowerSnapshot(table, devicePower, roomPower, householdPower);
+		this.snapshot = new CachedSnapshot(current, version, snapshot);
+		
+		return snapshot;
+	}
+	
+	/**
+	 * Set the metered power of a device, given its id
+	 * 
+	 * @param table
+	 *            the {@link ConsumptionTable} the device id refers to
+	 * @param device
+	 *            the device id
+	 * @param power
+	 *            the metered power of the device, in W
+	 * @param timestamp
+	 *            the instant of the reading, in ms since the epoch
+	 * @return true if the table is still the current one
+	 */
+	public boolean setMeteredPower(ConsumptionTable table, int device, double power, long timestamp)
+	{
+		return this.setDevicePower(table, device, power, timestamp, false);
+	}
+	
+	/**
+	 * Set the power of a device modelled from its state, given its id,
+	 * unless a recent meter reading owns the device
+	 * 
+	 * @param table
+	 *            the {@link ConsumptionTable} the device id refers to
+	 * @param device
+	 *            the device id
+	 * @param power
+	 *            the modelled power of the device, in W
+	 * @param timestamp
+	 *            the instant of the change, in ms since the epoch
+	 * @return true if the table is still the current one
+	 */
+	public boolean setModelledPower(ConsumptionTable table, int device, double power, long timestamp)
+	{
+		return this.setDevicePower(table, device, power, timestamp, true);
+	}
+	
+	/**
+	 * Set the live power of a device and update the aggregates
+	 */
+	private boolean setDevicePower(ConsumptionTable table, int device, double power, long timestamp,
+			boolean modelled)
+	{
+		Aggregates current = this.aggregates;
+		if (current.table != table || current.retired)
+			return false;
+		
+		// update the device: a reading takes the device over, while the
+		// modelled power yields to a recent reading, also one stored while
+		// swapping the power
+		long bits = Double.doubleToRawLongBits(power);
+		double previous;
+		if (modelled)
+		{
+			long previousBits;
+			do
+			{
+				previousBits = current.devicePower.get(device);
+				long meteredAt = current.meteredAt.get(device);
+				if (meteredAt != 0 && timestamp - meteredAt < this.meteredValidity)
+					return true;
+			} while (!current.devicePower.compareAndSet(device, previousBits, bits));
+			previous = Double.longBitsToDouble(previousBits);
+		}
+		else
+		{
+			current.meteredAt.set(device, timestamp);
+			previous = Double.longBitsToDouble(current.devicePower.getAndSet(device, bits));
+		}
+		if (previous == power)
+			return true;
+		double delta = Double.isNaN(previous) ? power : power - previous;
+		
+		int room = table.getRoom(device);
+		if (room != ConsumptionTable.UNKNOWN)
+			LivePower.add(current.roomPower, room, delta);
+		LivePower.add(current.householdPower, delta);
+		long sequence = this.changes.incrementAndGet();
+		
+		// read the values after taking the sequence number: the greatest
+		// one sees every change applied so far
+		double newDevicePower = Double.longBitsToDouble(current.devicePower.get(device));
+		double newRoomPower = (room != ConsumptionTable.UNKNOWN) ? Double.longBitsToDouble(current.roomPower
+				.get(room)) : Double.NaN;
+		double newHouseholdPower = Double.longBitsToDouble(current.householdPower.get());
+		
+		// the change may have been missed by the carry of a new table, in
+		// which case it is notified anyway and retried on the new table
+		boolean carried = !current.retired;
+			
+		// notify the changes; a failing listener must not break the meter
+		// path, nor the other listeners
+		for (AggregateListener listener : this.listeners)
+		{
+			try
+			{
+				listener.deviceChanged(table, device, newDevicePower, timestamp, sequence);
+				if (room != ConsumptionTable.UNKNOWN)
+					listener.roomChanged(table, room, newRoomPower, timestamp, sequence);
+				listener.householdChanged(newHouseholdPower, timestamp, sequence);
+			}
+			catch (RuntimeException e)
+			{
+				// ignore the listener failure
+			}
+		}
+		
+		return carried;
+	}
+	
+	/**
+	 * Set the metered power of a device
+	 * 
+	 * @param deviceURI
+	 *            the URI of the device
+	 * @param power
+	 *            the metered power of the device, in W
+	 * @param timestamp
+	 *            the instant of the reading, in ms since the epoch
+	 * @return true if the device is known
+	 */
+	public boolean setMeteredPower(String deviceURI, double power, long timestamp)
+	{
+		return this.setDevicePower(deviceURI, power, timestamp, false);
+	}
+	
+	/**
+	 * Set the power of a device modelled from its state, unless a recent
+	 * meter reading owns the device
+	 * 
+	 * @param deviceURI
+	 *            the URI of the device
+	 * @param power
+	 *            the modelled power of the device, in W
+	 * @param timestamp
+	 *            the instant of the change, in ms since the epoch
+	 * @return true if the device is known
+	 */
+	public boolean setModelledPower(String deviceURI, double power, long timestamp)
+	{
+		return this.setDevicePower(deviceURI, power, timestamp, true);
+	}
+	
+	/**
+	 * Set the live power of a device, resolving its URI
+	 */
+	private boolean setDevicePower(String deviceURI, double power, long timestamp, boolean modelled)
+	{
+		while (true)
+		{
+			ConsumptionTable current = this.getConsumptionTable();
+			int device = current.getDeviceId(deviceURI);
+			if (device == ConsumptionTable.UNKNOWN)
+				return false;
+		
+			// retry if the table has been replaced in the meanwhile
+			if (this.setDevicePower(current, device, power, timestamp, modelled))
+				return true;
+		}
+	}
+	
+	/**
+	 * @return the consumption table currently in use
+	 */
+	public ConsumptionTable getConsumptionTable()
+	{
+		return this.aggregates.table;
+	}
+	
+	/**
+	 * @return the live power of the given device, in W, or
+	 *         {@link Double#NaN} if not known
+	 */
+	public double getDevicePower(String deviceURI)
+	{
+		Aggregates current = this.aggregates;
+		int device = current.table.getDeviceId(deviceURI);
+		if (device == ConsumptionTable.UNKNOWN)
+			return Double.NaN;
+		
+		return Double.longBitsToDouble(current.devicePower.get(device));
+	}
+	
+	/**
+	 * @return the live power of the given room, in W, or {@link Double#NaN}
+	 *         if the room is not known
+	 */
+	public double getRoomPower(String roomName)
+	{
+		Aggregates current = this.aggregates;
+		int room = current.table.getRoomId(roomName);
+		if (room == ConsumptionTable.UNKNOWN)
+			return Double.NaN;
+		
+		return Double.longBitsToDouble(current.roomPower.get(room));
+	}
+	
+	/**
+	 * @return the live power of the household, in W
+	 */
+	public double getHouseholdPower()
+	{
+		return Double.longBitsToDouble(this.aggregates.householdPower.get());
+	}
+	
+	/**
+	 * Atomically add a delta to a power stored as double bits
+	 */
+	private static void add(AtomicLongArray powers, int index, double delta)
+	{
+		while (true)
+		{
+			long bits = powers.get(index);
+			double sum = Double.longBitsToDouble(bits) + delta;
+			if (powers.compareAndSet(index, bits, Double.doubleToRawLongBits(sum)))
+				return;
+		}
+	}
+	
+	/**
+	 * Atomically add a delta to a power stored as double bits
+	 */
+	private static void add(AtomicLong power, double delta)
+	{
+		while (true)
+		{
+			long bits = power.get();
+			double sum = Double.longBitsToDouble(bits) + delta;
+			if (power.compareAndSet(bits, Double.doubleToRawLongBits(sum)))
+				return;
+		}
+	}
+	
+	/**
+	 * The aggregates of a consumption table, each power stored as double bits
+	 */
+	private static class Aggregates
+	{
+		// the consumption table
+		private final ConsumptionTable table;
+		
+		// the power of each device, in W (NaN if not known)
+		private final AtomicLongArray devicePower;
+		
+		// the instant of the latest reading of each device, 0 if none
+		private final AtomicLongArray meteredAt;
+		
+		// the power of each room, in W
+		private final AtomicLongArray roomPower;
+		
+		// the power of the household, in W
+		private final AtomicLong householdPower;
+		
+		// true once the table has been replaced
+		private volatile boolean retired;
+		
+		Aggregates(ConsumptionTable table)
+		{
+			this.table = table;
+			this.devicePower = new AtomicLongArray(table.size());
+			this.meteredAt = new AtomicLongArray(table.size());
+			this.roomPower = new AtomicLongArray(table.getRoomCount());
+			this.householdPower = new AtomicLong();
+			
+			long unknown = Double.doubleToRawLongBits(Double.NaN);
+			for (int device = 0; device < table.size(); device++)
+				this.devicePower.set(device, unknown);
+		}
+	}
+	
+	/**
+	 * A snapshot, with the version of the aggregates it was copied from
+	 */
+	private static class CachedSnapshot
+	{
+		// the aggregates the snapshot was copied from
+		private final Aggregates aggregates;
+		
+		// the number of changes when the copy started
+		private final long version;
+		
+		// the snapshot
+		private final PowerSnapshot snapshot;
+		
+		CachedSnapshot(Aggregates aggregates, long version, PowerSnapshot snapshot)
+		{
+			this.aggregates = aggregates;
+			this.version = version;
+			this.snapshot = snapshot;
+		}
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.live;
+
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+
+/**
+ * An immutable snapshot of the {@link LivePower} aggregates, to be used as
+ * the base of hypothetical evaluations without locking the live state.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class PowerSnapshot
+{
+	// the consumption table
+	private final ConsumptionTable table;
+	
+	// the power of each device, in W (NaN if not known)
+	private final double[] devicePower;
+	
+	// the power of each room, in W
+	private final double[] roomPower;
+	
+	// the power of the household, in W
+	private final double householdPower;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param table
+	 *            the {@link ConsumptionTable} the ids refer to
+	 * @param devicePower
+	 *            the power of each device, in W (not copied)
+	 * @param roomPower
+	 *            the power of each room, in W (not copied)
+	 * @param householdPower
+	 *            the power of the household, in W
+	 */
+	PowerSnapshot(ConsumptionTable table, double[] devicePower, double[] roomPower, double householdPower)
+	{
+		this.table = table;
+		this.devicePower = devicePower;
+		this.roomPower = roomPower;
+		this.householdPower = householdPower;
+	}
+	
+	/**
+	 * @return the consumption table the ids refer to
+	 */
+	public ConsumptionTable getTable()
+	{
+		return this.table;
+	}
+	
+	/**
+	 * @return the power of the given device, in W, or {@link Double#NaN} if
+	 *         not known
+	 */
+	public double getDevicePower(int device)
+	{
+		return this.devicePower[device];
+	}
+	
+	/**
+	 * @return the power of the given room, in W
+	 */
+	public double getRoomPower(int room)
+	{
+		return this.roomPower[room];
+	}
+	
+	/**
+	 * @return the power of the household, in W
+	 */
+	public double getHouseholdPower()
+	{
+		return this.householdPower;
+	}
+}
@@ -0,0 +1,507 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.live;
+
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionScope;
+import it.polito.elite.dog.addons.powermodel.api.ThresholdCondition;
+import it.polito.elite.dog.addons.powermodel.api.ThresholdEvent;
+import it.polito.elite.dog.addons.powermodel.api.ThresholdListener;
+import it.polito.elite.dog.addons.powermodel.api.ThresholdWatcher;
+import it.polito.elite.dog.addons.powermodel.concurrent.SerialExecutor;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+import it.polito.elite.dog.addons.powermodel.device.DeviceKeyIndex;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Implementation of the {@link ThresholdWatcher} service, fed by the
+ * {@link LivePower} aggregates. Watches are indexed by the aggregate they
+ * watch, so that an update only evaluates the watches of the changed
+ * aggregate, each in constant time. A watch is a small state machine: the
+ * condition (or its release, beyond the hysteresis margin) must hold for the
+ * whole debounce duration, measured on the timestamps of the updates, before
+ * the state flips and the listener is notified; a single timer per watch
+ * covers aggregates that stop changing while the condition holds, assuming
+ * that the latest value holds from its timestamp on. Values older than the
+ * latest one received, by sequence number, are ignored. Device watches are
+ * keyed by the canonical device key, so that devices may be watched also by
+ * full IRI or prefixed name.<br/>
+ * Timers run on the shared pool of the bundle, and listeners are notified
+ * sequentially on a serial executor borrowing its threads, never on the
+ * thread updating the aggregates; until the pool is set, the watches are
+ * evaluated but neither timers nor notifications run.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class ThresholdWatcherRegistry implements ThresholdWatcher, AggregateListener
+{
+	// the live aggregates
+	private LivePower livePower;
+	
+	// the shared pool running the debounce timers, if any
+	private volatile ScheduledExecutorService executor;
+	
+	// the serial executor notifying the listeners, if any
+	private volatile ExecutorService notifier;
+	
+	// the generator of watch ids
+	private AtomicLong nextId;
+	
+	// all the watches, indexed by id
+	private ConcurrentMap<Long, Watch> watches;
+	
+	// the device watches, indexed by canonical device key
+	private ConcurrentMap<String, List<Watch>> deviceWatches;
+	
+	// the index resolving the device aliases to their canonical key
+	private DeviceKeyIndex deviceKeys;
+	
+	// the room watches, indexed by room name
+	private ConcurrentMap<String, List<Watch>> roomWatches;
+	
+	// the household watches
+	private List<Watch> householdWatches;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param livePower
+	 *            the {@link LivePower} aggregates to watch
+	 */
+	public ThresholdWatcherRegistry(LivePower livePower)
+	{
+		this.livePower = livePower;
+		this.nextId = new AtomicLong();
+		this.watches = new ConcurrentHashMap<Long, Watch>();
+		this.deviceWatches = new ConcurrentHashMap<String, List<Watch>>();
+		this.roomWatches = new ConcurrentHashMap<String, List<Watch>>();
+		this.householdWatches = new CopyOnWriteArrayList<Watch>();
+		
+		this.livePower.addAggregateListener(this);
+	}
+	
+	/**
+	 * Set the pool running the timers and the notifications
+	 * 
+	 * @param executor
+	 *            the shared {@link ScheduledExecutorService}
+	 */
+	public synchronized void setExecutor(ScheduledExecutorService executor)
+	{
+		if (this.notifier != null)
+			this.notifier.shutdown();
+		
+		this.notifier = (executor != null) ? new SerialExecutor(executor) : null;
+		this.executor = executor;
+	}
+	
+	/**
+	 * Stop watching all the thresholds; the shared pool is left running, and
+	 * the pending timers find their watch cancelled
+	 */
+	public void close()
+	{
+		this.livePower.removeAggregateListener(this);
+		for (Watch watch : this.watches.values())
+			watch.cancel();
+		
+		ExecutorService notifier = this.notifier;
+		if (notifier != null)
+			notifier.shutdownNow();
+	}
+	
+	/**
+	 * Set the index of the device keys, moving the device watches made by
+	 * alias under the canonical key of their device
+	 * 
+	 * @param deviceKeys
+	 *            the {@link DeviceKeyIndex} of the current devices
+	 */
+	public synchronized void setDeviceKeys(DeviceKeyIndex deviceKeys)
+	{
+		this.deviceKeys = deviceKeys;
+		
+		for (Map.Entry<String, List<Watch>> entry : this.deviceWatches.entrySet())
+		{
+			String key = this.getCanonicalKey(entry.getKey());
+			if (!key.equals(entry.getKey()) && this.deviceWatches.remove(entry.getKey(), entry.getValue()))
+				this.getWatches(this.deviceWatches, key).addAll(entry.getValue());
+		}
+	}
+	
+	/**
+	 * Get the canonical key of a device reference
+	 */
+	private synchronized String getCanonicalKey(String deviceURI)
+	{
+		String key = (this.deviceKeys != null) ? this.deviceKeys.resolve(deviceURI) : null;
+		
+		return (key != null) ? key : deviceURI;
+	}
+	
+	@Override
+	public long watch(ConsumptionScope scope, String key, ThresholdCondition condition, double threshold,
+			double hysteresis, long duration, ThresholdListener listener)
+	{
+		if (scope != ConsumptionScope.HOUSEHOLD && key == null)
+			throw new IllegalArgumentException("A device URI or a room name is needed");
+		if (hysteresis < 0 || duration < 0)
+			throw new IllegalArgumentException("Hysteresis and duration cannot be negative");
+		
+		Watch watch;
+		
+		// index the watch and evaluate the current consumption, if known
+		double current;
+		switch (scope)
+		{
+			case DEVICE:
+				// register under the canonical key, atomically with respect
+				// to the key index updates
+				synchronized (this)
+				{
+					watch = new Watch(this.nextId.incrementAndGet(), scope, this.getCanonicalKey(key), condition,
+							threshold, hysteresis, duration, listener);
+					this.watches.put(watch.id, watch);
+					this.getWatches(this.deviceWatches, watch.key).add(watch);
+				}
+				current = this.livePower.getDevicePower(key);
+				break;
+			case ROOM:
+				watch = new Watch(this.nextId.incrementAndGet(), scope, key, condition, threshold, hysteresis,
+						duration, listener);
+				this.watches.put(watch.id, watch);
+				this.getWatches(this.roomWatches, key).add(watch);
+				current = this.livePower.getRoomPower(key);
+				break;
+			default:
+				watch = new Watch(this.nextId.incrementAndGet(), scope, null, condition, threshold, hysteresis,
+						duration, listener);
+				this.watches.put(watch.id, watch);
+				this.householdWatches.add(watch);
+				current = this.livePower.getHouseholdPower();
+				break;
+		}
+		// the current value has no sequence number: any live change
+		// supersedes it
+		if (!Double.isNaN(current))
+			watch.update(current, System.currentTimeMillis(), 0);
+		
+		return watch.id;
+	}
+	
+	@Override
+	public boolean unwatch(long watchId)
+	{
+		Watch watch = this.watches.remove(watchId);
+		if (watch == null)
+			return false;
+		
+		watch.cancel();
+		switch (watch.scope)
+		{
+			case DEVICE:
+				// the watch may have been moved under another key
+				synchronized (this)
+				{
+					for (List<Watch> keyWatches : this.deviceWatches.values())
+						keyWatches.remove(watch);
+				}
+				break;
+			case ROOM:
+				this.getWatches(this.roomWatches, watch.key).remove(watch);
+				break;
+			default:
+				this.householdWatches.remove(watch);
+				break;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Get the watches for a key, creating the list if needed
+	 */
+	private List<Watch> getWatches(ConcurrentMap<String, List<Watch>> index, String key)
+	{
+		List<Watch> keyWatches = index.get(key);
+		if (keyWatches == null)
+		{
+			List<Watch> created = new CopyOnWriteArrayList<Watch>();
+			keyWatches = index.putIfAbsent(key, created);
+			if (keyWatches == null)
+				keyWatches = created;
+		}
+		
+		return keyWatches;
+	}
+	
+	@Override
+	public void deviceChanged(ConsumptionTable table, int device, double power, long timestamp, long sequence)
+	{
+		this.update(this.deviceWatches.get(table.getDeviceURI(device)), power, timestamp, sequence);
+	}
+	
+	@Override
+	public void roomChanged(ConsumptionTable table, int room, double power, long timestamp, long sequence)
+	{
+		this.update(this.roomWatches.get(table.getRoomName(room)), power, timestamp, sequence);
+	}
+	
+	@Override
+	public void householdChanged(double power, long timestamp, long sequence)
+	{
+		this.update(this.householdWatches, power, timestamp, sequence);
+	}
+	
+	/**
+	 * Evaluate the given watches on a new consumption value
+	 */
+	private void update(List<Watch> keyWatches, double power, long timestamp, long sequence)
+	{
+		if (keyWatches == null)
+			return;
+		
+		for (Watch watch : keyWatches)
+			watch.update(power, timestamp, sequence);
+	}
+	
+	/**
+	 * A registered threshold, with its debounce state
+	 */
+	private class Watch implements Runnable
+	{
+		// the watch id
+		private final long id;
+		
+		// the scope of the watched consumption
+		private final ConsumptionScope scope;
+		
+		// the canonical device key or the room name, null for the household
+		private final String key;
+		
+		// the watched condition
+		private final ThresholdCondition condition;
+		
+		// the threshold, in W
+		private final double threshold;
+		
+		// the hysteresis margin, in W
+		private final double hysteresis;
+		
+		// the debounce duration, in ms
+		private final long duration;
+		
+		// the listener to notify
+		private final ThresholdListener listener;
+		
+		// true while the condition is notified as crossed
+		private volatile boolean crossed;
+		
+		// true while the state is about to flip, waiting for the debounce
+		private volatile boolean pending;
+		
+		// the instant from which the state is about to flip, in ms since the
+		// epoch
+		private long pendingSince;
+		
+		// true while a debounce timer is scheduled
+		private boolean timer;
+		
+		// true once the watch is removed
+		private boolean cancelled;
+		
+		// the latest consumption value, in W
+		private double power;
+		
+		// the instant of the latest consumption value, in ms since the epoch
+		private long timestamp;
+		
+		// the greatest sequence number received
+		private final AtomicLong sequence;
+		
+		// the instant at which the latest consumption value was received, in
+		// ns
+		private long received;
+		
+		Watch(long id, ConsumptionScope scope, String key, ThresholdCondition condition, double threshold,
+				double hysteresis, long duration, ThresholdListener listener)
+		{
+			this.id = id;
+			this.scope = scope;
+			this.key = key;
+			this.condition = condition;
+			this.threshold = threshold;
+			this.hysteresis = hysteresis;
+			this.duration = duration;
+			this.listener = listener;
+			this.sequence = new AtomicLong();
+		}
+		
+		/**
+		 * Evaluate a new consumption value
+		 */
+		void update(double power, long timestamp, long sequence)
+		{
+			// a value older than the latest one is out of date
+			long latest;
+			do
+			{
+				latest = this.sequence.get();
+				if (sequence < latest)
+					return;
+			} while (sequence != latest && !this.sequence.compareAndSet(latest, sequence));
+			
+			// fast path: most of the updates leave the watch as it is
+			if (!this.pending && !this.isFlipping(power))
+				return;
+			
+			synchronized (this)
+			{
+				// a newer value may have been evaluated in the meanwhile
+				if (sequence < this.sequence.get())
+					return;
+				
+				this.update(this.isFlipping(power), power, timestamp);
+			}
+		}
+		
+		/**
+		 * @return true if the given value would flip the state of the watch
+		 */
+		private boolean isFlipping(double power)
+		{
+			return this.crossed ? this.condition.isReleased(power, this.threshold, this.hysteresis) : this.condition
+					.isMet(power, this.threshold);
+		}
+		
+		/**
+		 * Evaluate a new consumption value, holding the watch lock
+		 */
+		private void update(boolean flip, double power, long timestamp)
+		{
+			if (this.cancelled)
+				return;
+			
+			this.power = power;
+			this.timestamp = timestamp;
+			this.received = System.nanoTime();
+			
+			if (!flip)
+			{
+				this.pending = false;
+				return;
+			}
+			
+			if (!this.pending)
+			{
+				this.pending = true;
+				this.pendingSince = timestamp;
+			}
+			
+			this.evaluate(timestamp);
+		}
+		
+		/**
+		 * Flip the state if the debounce duration has elapsed at the given
+		 * instant, otherwise wait for it
+		 */
+		private void evaluate(long now)
+		{
+			long elapsed = now - this.pendingSince;
+			if (elapsed >= this.duration)
+			{
+				this.pending = false;
+				this.crossed = !this.crossed;
+				this.notifyListener(new ThresholdEvent(this.id, this.scope, this.key, this.condition,
+						this.threshold, this.power, this.timestamp), this.crossed);
+			}
+			else if (!this.timer && ThresholdWatcherRegistry.this.executor != null)
+			{
+				try
+				{
+					ThresholdWatcherRegistry.this.executor.schedule(this, this.duration - elapsed,
+							TimeUnit.MILLISECONDS);
+					this.timer = true;
+				}
+				catch (RejectedExecutionException e)
+				{
+					// the pool is shutting down
+				}
+			}
+		}
+		
+		@Override
+		public synchronized void run()
+		{
+			this.timer = false;
+			
+			// the latest value still holds: advance its timestamp by the time
+			// elapsed since it was received
+			if (this.pending && !this.cancelled)
+				this.evaluate(this.timestamp
+						+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.received));
+		}
+		
+		/**
+		 * Notify the listener on the serial notifier
+		 */
+		private void notifyListener(final ThresholdEvent event, final boolean crossed)
+		{
+			ExecutorService notifier = ThresholdWatcherRegistry.this.notifier;
+			if (notifier == null)
+				return;
+			
+			try
+			{
+				notifier.execute(new Runnable() {
+					
+					@Override
+					public void run()
+					{
+						if (crossed)
+							Watch.this.listener.thresholdCrossed(event);
+						else
+							Watch.this.listener.thresholdRecovered(event);
+					}
+				});
+			}
+			catch (RejectedExecutionException e)
+			{
+				// the registry is shutting down
+			}
+		}
+		
+		/**
+		 * Stop evaluating the watch
+		 */
+		synchronized void cancel()
+		{
+			this.cancelled = true;
+		}
+	}
+}
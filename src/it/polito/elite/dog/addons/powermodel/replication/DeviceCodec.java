@@ -0,0 +1,206 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.replication;
+
+import it.polito.elite.dog.addons.powermodel.device.LoadProfile;
+import it.polito.elite.dog.addons.powermodel.device.PowerDevice;
+import it.polito.elite.dog.addons.powermodel.device.PowerState;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+
+import javax.measure.DecimalMeasure;
+import javax.measure.quantity.Power;
+
+/**
+ * The binary form of the devices in a snapshot delta: the device URI, the
+ * optional room and IRI, and each state with its optional typical, nominal
+ * and actual consumption and its optional load profile. States are written in name order, so that equal
+ * devices always have equal encodings and changes can be detected by
+ * comparing them.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+class DeviceCodec
+{
+	// the magic number of snapshot deltas ("DPMD")
+	static final int MAGIC = 0x44504D44;
+	
+	// the format version of snapshot deltas
+	static final int FORMAT = 2;
+	
+	// orders the states by name
+	private static final Comparator<PowerState> BY_NAME = new Comparator<PowerState>() {
+		
+		@Override
+		public int compare(PowerState first, PowerState second)
+		{
+			return first.getStateName().compareTo(second.getStateName());
+		}
+	};
+	
+	/**
+	 * Not instantiable
+	 */
+	private DeviceCodec()
+	{
+	}
+	
+	/**
+	 * Encode a device
+	 * 
+	 * @param device
+	 *            the {@link PowerDevice} to encode
+	 * @return the encoded device
+	 */
+	static byte[] encode(PowerDevice device)
+	{
+		PowerState[] states = device.getStateConsumptions().toArray(
+				new PowerState[device.getStateConsumptions().size()]);
+		Arrays.sort(states, DeviceCodec.BY_NAME);
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + 48 * states.length);
+		DataOutputStream out = new DataOutputStream(bytes);
+		try
+		{
+			out.writeUTF(device.getDeviceURI());
+			DeviceCodec.writeOptional(out, device.getRoom());
+			DeviceCodec.writeOptional(out, device.getIRI());
+			out.writeInt(states.length);
+			for (PowerState state : states)
+			{
+				out.writeUTF(state.getStateName());
+				DeviceCodec.writeMeasure(out, state.hasTypicalConsumption() ? state.getTypicalConsumption() : null);
+				DeviceCodec.writeMeasure(out, state.hasNominalConsumption() ? state.getNominalConsumption() : null);
+				DeviceCodec.writeMeasure(out, state.hasActualConsumption() ? state.getActualConsumption() : null);
+				DeviceCodec.writeOptional(out, state.hasLoadProfile() ? state.getLoadProfile().toString() : null);
+			}
+			out.flush();
+		}
+		catch (IOException e)
+		{
+			// in-memory streams do not fail
+			throw new IllegalStateException("Device encoding failed", e);
+		}
+		
+		return bytes.toByteArray();
+	}
+	
+	/**
+	 * Decode a device
+	 * 
+	 * @param in
+	 *            the stream to read from
+	 * @return the decoded {@link PowerDevice}
+	 * @throws IOException
+	 *             if the stream cannot be read
+	 */
+	static PowerDevice decode(DataInputStream in) throws IOException
+	{
+		String deviceURI = in.readUTF();
+		String room = DeviceCodec.readOptional(in);
+		String iri = DeviceCodec.readOptional(in);
+		int count = in.readInt();
+		if (count < 0)
+			throw new IOException("Invalid number of device states: " + count);
+		
+		PowerDevice device = new PowerDevice(deviceURI, new HashSet<PowerState>());
+		device.setRoom(room);
+		device.setIRI(iri);
+		for (int i = 0; i < count; i++)
+		{
+			String stateName = in.readUTF();
+			DecimalMeasure<Power> typical = DeviceCodec.readMeasure(in);
+			DecimalMeasure<Power> nominal = DeviceCodec.readMeasure(in);
+			DecimalMeasure<Power> actual = DeviceCodec.readMeasure(in);
+			PowerState state = new PowerState(stateName, typical, nominal, actual);
+			String profile = DeviceCodec.readOptional(in);
+			if (profile != null)
+			{
+				try
+				{
+					state.setLoadProfile(LoadProfile.parse(profile));
+				}
+				catch (IllegalArgumentException e)
+				{
+					throw new IOException("Invalid load profile in delta: " + profile, e);
+				}
+			}
+			device.addSinglePowerState(state);
+		}
+		
+		return device;
+	}
+	
+	/**
+	 * Write a string that may be null
+	 */
+	private static void writeOptional(DataOutputStream out, String value) throws IOException
+	{
+		out.writeBoolean(value != null);
+		if (value != null)
+			out.writeUTF(value);
+	}
+	
+	/**
+	 * Read a string that may be null
+	 */
+	private static String readOptional(DataInputStream in) throws IOException
+	{
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+	
+	/**
+	 * Write a consumption that may be null, as its exact value and unit
+	 */
+	private static void writeMeasure(DataOutputStream out, DecimalMeasure<Power> measure) throws IOException
+	{
+		out.writeBoolean(measure != null);
+		if (measure != null)
+		{
+			out.writeUTF(measure.getValue().toString());
+			out.writeUTF(measure.getUnit().toString());
+		}
+	}
+	
+	/**
+	 * Read a consumption that may be null
+	 */
+	private static DecimalMeasure<Power> readMeasure(DataInputStream in) throws IOException
+	{
+		if (!in.readBoolean())
+			return null;
+		
+		String value = in.readUTF();
+		String unit = in.readUTF();
+		try
+		{
+			return DecimalMeasure.valueOf(value + " " + unit);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new IOException("Invalid consumption in delta: " + value + " " + unit, e);
+		}
+	}
+}
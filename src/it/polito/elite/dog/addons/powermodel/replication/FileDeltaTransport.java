@@ -0,0 +1,179 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.replication;
+
+import it.polito.elite.dog.addons.powermodel.api.DeltaTransport;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * A {@link DeltaTransport} through a folder, e.g., a shared or synchronized
+ * one between two gateways, or a local one for tests. Each delta is a file
+ * named <code>&lt;from&gt;-&lt;to&gt;.delta</code>, written under a temporary
+ * name and then renamed, so that receivers never read partial deltas. A full
+ * snapshot deletes all the older deltas.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class FileDeltaTransport implements DeltaTransport
+{
+	// the extension of the delta files
+	private static final String EXTENSION = ".delta";
+	
+	// the folder of the delta files
+	private File folder;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param folder
+	 *            the folder of the delta files, created if needed
+	 */
+	public FileDeltaTransport(File folder)
+	{
+		this.folder = folder;
+	}
+	
+	/**
+	 * @return the folder of the delta files
+	 */
+	public File getFolder()
+	{
+		return this.folder;
+	}
+	
+	@Override
+	public void send(long fromVersion, long toVersion, byte[] delta) throws IOException
+	{
+		if (!this.folder.isDirectory() && !this.folder.mkdirs())
+			throw new IOException("Unable to create the delta folder " + this.folder);
+		
+		String name = fromVersion + "-" + toVersion + FileDeltaTransport.EXTENSION;
+		File temporary = new File(this.folder, name + ".tmp");
+		FileOutputStream out = new FileOutputStream(temporary);
+		try
+		{
+			out.write(delta);
+			out.getFD().sync();
+		}
+		finally
+		{
+			out.close();
+		}
+		
+		File file = new File(this.folder, name);
+		if (!temporary.renameTo(file))
+		{
+			// some platforms do not rename over an existing file
+			file.delete();
+			if (!temporary.renameTo(file))
+				throw new IOException("Unable to publish the delta " + file);
+		}
+		
+		// a full snapshot replaces everything before it
+		if (fromVersion == 0)
+			for (File old : this.listDeltas())
+				if (FileDeltaTransport.getToVersion(old) <= toVersion && !old.equals(file))
+					old.delete();
+	}
+	
+	@Override
+	public byte[] receive(long version) throws IOException
+	{
+		File best = null;
+		for (File file : this.listDeltas())
+			if (FileDeltaTransport.getFromVersion(file) <= version && FileDeltaTransport.getToVersion(file) > version
+					&& (best == null || FileDeltaTransport.getToVersion(file) > FileDeltaTransport.getToVersion(best)))
+				best = file;
+		if (best == null)
+			return null;
+		
+		byte[] delta = new byte[(int) best.length()];
+		DataInputStream in = new DataInputStream(new FileInputStream(best));
+		try
+		{
+			in.readFully(delta);
+		}
+		finally
+		{
+			in.close();
+		}
+		
+		return delta;
+	}
+	
+	/**
+	 * @return the delta files of the folder
+	 */
+	private File[] listDeltas()
+	{
+		File[] files = this.folder.listFiles();
+		if (files == null)
+			return new File[0];
+		
+		int count = 0;
+		for (File file : files)
+			if (file.getName().endsWith(FileDeltaTransport.EXTENSION) && FileDeltaTransport.getFromVersion(file) >= 0
+					&& FileDeltaTransport.getToVersion(file) > 0)
+				files[count++] = file;
+		
+		File[] deltas = new File[count];
+		System.arraycopy(files, 0, deltas, 0, count);
+		return deltas;
+	}
+	
+	/**
+	 * @return the version a delta file applies to, -1 if malformed
+	 */
+	private static long getFromVersion(File file)
+	{
+		String name = file.getName();
+		int dash = name.indexOf('-');
+		try
+		{
+			return (dash > 0) ? Long.parseLong(name.substring(0, dash)) : -1;
+		}
+		catch (NumberFormatException e)
+		{
+			return -1;
+		}
+	}
+	
+	/**
+	 * @return the version reached by a delta file, -1 if malformed
+	 */
+	private static long getToVersion(File file)
+	{
+		String name = file.getName();
+		int dash = name.indexOf('-');
+		try
+		{
+			return (dash > 0) ? Long.parseLong(name.substring(dash + 1,
+					name.length() - FileDeltaTransport.EXTENSION.length())) : -1;
+		}
+		catch (NumberFormatException e)
+		{
+			return -1;
+		}
+	}
+}
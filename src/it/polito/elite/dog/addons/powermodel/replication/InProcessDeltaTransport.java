@@ -0,0 +1,107 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.replication;
+
+import it.polito.elite.dog.addons.powermodel.api.DeltaTransport;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A {@link DeltaTransport} within the same JVM, e.g., for tests or for
+ * replicating into a second model instance: deltas are kept in memory until
+ * a full snapshot makes them useless.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class InProcessDeltaTransport implements DeltaTransport
+{
+	// the deltas sent since the latest full snapshot, included
+	private List<Delta> deltas;
+	
+	/**
+	 * Default constructor
+	 */
+	public InProcessDeltaTransport()
+	{
+		this.deltas = new ArrayList<Delta>();
+	}
+	
+	@Override
+	public synchronized void send(long fromVersion, long toVersion, byte[] delta)
+	{
+		// a full snapshot replaces everything before it
+		if (fromVersion == 0)
+			this.deltas.clear();
+		this.deltas.add(new Delta(fromVersion, toVersion, delta.clone()));
+	}
+	
+	@Override
+	public synchronized byte[] receive(long version)
+	{
+		Delta best = null;
+		for (Delta delta : this.deltas)
+			if (delta.fromVersion <= version && delta.toVersion > version
+					&& (best == null || delta.toVersion > best.toVersion))
+				best = delta;
+		
+		return (best != null) ? best.bytes.clone() : null;
+	}
+	
+	/**
+	 * Drop the deltas that bring no model beyond a given version, e.g., once
+	 * all the receivers reached it
+	 * 
+	 * @param version
+	 *            the version reached by all the receivers
+	 */
+	public synchronized void discard(long version)
+	{
+		Iterator<Delta> deltas = this.deltas.iterator();
+		while (deltas.hasNext())
+			if (deltas.next().toVersion <= version)
+				deltas.remove();
+	}
+	
+	/**
+	 * A sent delta
+	 */
+	private static class Delta
+	{
+		// the version the delta applies to
+		private long fromVersion;
+		
+		// the version reached by the delta
+		private long toVersion;
+		
+		// the encoded delta
+		private byte[] bytes;
+		
+		/**
+		 * Constructor
+		 */
+		Delta(long fromVersion, long toVersion, byte[] bytes)
+		{
+			this.fromVersion = fromVersion;
+			this.toVersion = toVersion;
+			this.bytes = bytes;
+		}
+	}
+}
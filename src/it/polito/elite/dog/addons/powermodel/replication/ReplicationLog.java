@@ -0,0 +1,245 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.replication;
+
+import it.polito.elite.dog.addons.powermodel.device.PowerDevice;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The version log of a power model, from which snapshot deltas are
+ * exported. The log keeps the encoding of each device and the version of
+ * its latest change: recording the device map compares the encodings, and
+ * only actual changes give a new version. Removed devices are kept as
+ * tombstones, so that deltas since any version of the log can be exported.
+ * <br/>
+ * A version is made of an epoch, the creation time of the log in s since
+ * the epoch, followed by a counter of the changes in the log: versions grow
+ * with every change, independently of the clock, and grow across restarts
+ * unless the clock goes backwards; deltas since versions outside the log are
+ * exported as full snapshots.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class ReplicationLog
+{
+	// the bits of a version holding the change counter
+	private static final int COUNTER_BITS = 24;
+	
+	// the latest change of each device, indexed by name
+	private Map<String, Change> changes;
+	
+	// the current version
+	private long version;
+	
+	// the first version of the log
+	private long horizon;
+	
+	/**
+	 * Default constructor, with the current time as epoch
+	 */
+	public ReplicationLog()
+	{
+		this(System.currentTimeMillis() / 1000);
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param epoch
+	 *            the epoch of the log, greater than the one of any previous
+	 *            log of the same model (e.g., a restart counter)
+	 */
+	public ReplicationLog(long epoch)
+	{
+		if (epoch <= 0 || epoch >= (1L << (63 - ReplicationLog.COUNTER_BITS)))
+			throw new IllegalArgumentException("Invalid replication epoch: " + epoch);
+		
+		this.changes = new HashMap<String, Change>();
+		this.horizon = epoch << ReplicationLog.COUNTER_BITS;
+		this.version = this.horizon;
+	}
+	
+	/**
+	 * @return the current version
+	 */
+	public synchronized long getVersion()
+	{
+		return this.version;
+	}
+	
+	/**
+	 * Record the whole device map: devices missing from the map are removed
+	 * 
+	 * @param devices
+	 *            the devices of the model, indexed by name
+	 * @return true if anything changed, i.e., if the version grew
+	 */
+	public synchronized boolean record(Map<String, PowerDevice> devices)
+	{
+		List<String> changed = new ArrayList<String>();
+		List<byte[]> encodings = new ArrayList<byte[]>();
+		for (Map.Entry<String, PowerDevice> device : devices.entrySet())
+			this.compare(device.getKey(), device.getValue(), changed, encodings);
+		for (Map.Entry<String, Change> change : this.changes.entrySet())
+			if (change.getValue().encoding != null && !devices.containsKey(change.getKey()))
+				this.compare(change.getKey(), null, changed, encodings);
+		
+		return this.commit(changed, encodings);
+	}
+	
+	/**
+	 * Record a subset of the device map
+	 * 
+	 * @param deviceNames
+	 *            the names of the devices to record
+	 * @param devices
+	 *            the devices of the model, indexed by name; the given devices
+	 *            missing from the map are removed
+	 * @return true if anything changed, i.e., if the version grew
+	 */
+	public synchronized boolean record(Set<String> deviceNames, Map<String, PowerDevice> devices)
+	{
+		List<String> changed = new ArrayList<String>();
+		List<byte[]> encodings = new ArrayList<byte[]>();
+		for (String deviceName : deviceNames)
+			this.compare(deviceName, devices.get(deviceName), changed, encodings);
+		
+		return this.commit(changed, encodings);
+	}
+	
+	/**
+	 * Get the version a delta since a given version applies to
+	 * 
+	 * @param sinceVersion
+	 *            the version known by the peer
+	 * @return the given version, or 0 (a full snapshot) if outside the log
+	 */
+	public synchronized long getBaseVersion(long sinceVersion)
+	{
+		return (sinceVersion < this.horizon || sinceVersion > this.version) ? 0 : sinceVersion;
+	}
+	
+	/**
+	 * Write the delta since a given version
+	 * 
+	 * @param sinceVersion
+	 *            the version known by the peer, 0 for a full snapshot
+	 * @param out
+	 *            the stream to write to, left open
+	 * @return the version reached by applying the delta
+	 * @throws IOException
+	 *             if the stream cannot be written
+	 */
+	public synchronized long writeDelta(long sinceVersion, OutputStream out) throws IOException
+	{
+		long from = this.getBaseVersion(sinceVersion);
+		
+		List<String> devices = new ArrayList<String>();
+		List<String> removed = new ArrayList<String>();
+		for (Map.Entry<String, Change> change : this.changes.entrySet())
+		{
+			if (change.getValue().encoding == null)
+			{
+				if (from != 0 && change.getValue().version > from)
+					removed.add(change.getKey());
+			}
+			else if (change.getValue().version > from)
+				devices.add(change.getKey());
+		}
+		
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(DeviceCodec.MAGIC);
+		data.writeByte(DeviceCodec.FORMAT);
+		data.writeLong(from);
+		data.writeLong(this.version);
+		data.writeInt(devices.size());
+		for (String deviceName : devices)
+		{
+			data.writeUTF(deviceName);
+			data.write(this.changes.get(deviceName).encoding);
+		}
+		data.writeInt(removed.size());
+		for (String deviceName : removed)
+			data.writeUTF(deviceName);
+		data.flush();
+		
+		return this.version;
+	}
+	
+	/**
+	 * Compare a device with its latest recorded encoding
+	 */
+	private void compare(String deviceName, PowerDevice device, List<String> changed, List<byte[]> encodings)
+	{
+		Change latest = this.changes.get(deviceName);
+		byte[] encoding = (device != null) ? DeviceCodec.encode(device) : null;
+		
+		boolean same = (latest == null) ? encoding == null : Arrays.equals(latest.encoding, encoding);
+		if (!same)
+		{
+			changed.add(deviceName);
+			encodings.add(encoding);
+		}
+	}
+	
+	/**
+	 * Store the changes with a new version, if any
+	 */
+	private boolean commit(List<String> changed, List<byte[]> encodings)
+	{
+		if (changed.isEmpty())
+			return false;
+		
+		this.version++;
+		for (int i = 0; i < changed.size(); i++)
+			this.changes.put(changed.get(i), new Change(this.version, encodings.get(i)));
+		
+		return true;
+	}
+	
+	/**
+	 * The latest change of a device
+	 */
+	private static class Change
+	{
+		// the version of the change
+		private long version;
+		
+		// the encoding of the device, null if removed
+		private byte[] encoding;
+		
+		/**
+		 * Constructor
+		 */
+		Change(long version, byte[] encoding)
+		{
+			this.version = version;
+			this.encoding = encoding;
+		}
+	}
+}
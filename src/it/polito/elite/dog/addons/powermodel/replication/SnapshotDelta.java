@@ -0,0 +1,145 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.replication;
+
+import it.polito.elite.dog.addons.powermodel.device.PowerDevice;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A decoded snapshot delta, as written by a {@link ReplicationLog}: the
+ * devices added or changed and the devices removed between two versions of
+ * a power model. A delta from version 0 is a full snapshot: the devices it
+ * does not hold are removed.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class SnapshotDelta
+{
+	// the version the delta applies to, 0 for a full snapshot
+	private long fromVersion;
+	
+	// the version reached by applying the delta
+	private long toVersion;
+	
+	// the added or changed devices, indexed by name
+	private Map<String, PowerDevice> devices;
+	
+	// the names of the removed devices
+	private Set<String> removed;
+	
+	/**
+	 * Constructor
+	 */
+	private SnapshotDelta(long fromVersion, long toVersion, Map<String, PowerDevice> devices, Set<String> removed)
+	{
+		this.fromVersion = fromVersion;
+		this.toVersion = toVersion;
+		this.devices = Collections.unmodifiableMap(devices);
+		this.removed = Collections.unmodifiableSet(removed);
+	}
+	
+	/**
+	 * Read a snapshot delta
+	 * 
+	 * @param in
+	 *            the stream to read from, left open
+	 * @return the {@link SnapshotDelta}
+	 * @throws IOException
+	 *             if the stream cannot be read or does not hold a delta
+	 */
+	public static SnapshotDelta read(InputStream in) throws IOException
+	{
+		DataInputStream data = new DataInputStream(in);
+		if (data.readInt() != DeviceCodec.MAGIC)
+			throw new IOException("Not a power model snapshot delta");
+		int format = data.readUnsignedByte();
+		if (format != DeviceCodec.FORMAT)
+			throw new IOException("Unsupported snapshot delta format: " + format);
+		
+		long fromVersion = data.readLong();
+		long toVersion = data.readLong();
+		
+		int count = data.readInt();
+		if (count < 0)
+			throw new IOException("Invalid number of devices in delta: " + count);
+		Map<String, PowerDevice> devices = new HashMap<String, PowerDevice>();
+		for (int i = 0; i < count; i++)
+		{
+			String deviceName = data.readUTF();
+			devices.put(deviceName, DeviceCodec.decode(data));
+		}
+		
+		count = data.readInt();
+		if (count < 0)
+			throw new IOException("Invalid number of removed devices in delta: " + count);
+		Set<String> removed = new HashSet<String>();
+		for (int i = 0; i < count; i++)
+			removed.add(data.readUTF());
+		
+		return new SnapshotDelta(fromVersion, toVersion, devices, removed);
+	}
+	
+	/**
+	 * @return the version the delta applies to, 0 for a full snapshot
+	 */
+	public long getFromVersion()
+	{
+		return this.fromVersion;
+	}
+	
+	/**
+	 * @return the version reached by applying the delta
+	 */
+	public long getToVersion()
+	{
+		return this.toVersion;
+	}
+	
+	/**
+	 * @return true if the delta is a full snapshot
+	 */
+	public boolean isFull()
+	{
+		return this.fromVersion == 0;
+	}
+	
+	/**
+	 * @return the added or changed devices, indexed by name
+	 */
+	public Map<String, PowerDevice> getDevices()
+	{
+		return this.devices;
+	}
+	
+	/**
+	 * @return the names of the removed devices
+	 */
+	public Set<String> getRemoved()
+	{
+		return this.removed;
+	}
+}
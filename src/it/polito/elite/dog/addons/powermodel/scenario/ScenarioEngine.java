@@ -0,0 +1,249 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.scenario;
+
+import it.polito.elite.dog.addons.powermodel.api.Scenario;
+import it.polito.elite.dog.addons.powermodel.api.ScenarioEvaluator;
+import it.polito.elite.dog.addons.powermodel.api.ScenarioResult;
+import it.polito.elite.dog.addons.powermodel.concurrent.ParallelTasks;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+import it.polito.elite.dog.addons.powermodel.device.LoadProfile;
+import it.polito.elite.dog.addons.powermodel.device.MeterReadings;
+import it.polito.elite.dog.addons.powermodel.learning.ConsumptionEstimator;
+import it.polito.elite.dog.addons.powermodel.live.LivePower;
+import it.polito.elite.dog.addons.powermodel.live.PowerSnapshot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Implementation of the {@link ScenarioEvaluator} service. Each scenario is
+ * applied to a copy-on-write overlay of a {@link PowerSnapshot}: only the
+ * devices changed by the scenario are stored in the overlay, while all the
+ * others are read from the shared (immutable) snapshot. Household and room
+ * aggregates are updated incrementally, change by change, so a scenario costs
+ * O(k) for k changes, whatever the number of devices.<br/>
+ * The power of a target state is resolved as for the best consumption of the
+ * power model: learned consumption, latest meter reading, declared
+ * consumption. A declared state with a load profile enters the state at the
+ * start of its profile; the scenario peak is the resulting household power
+ * with every profiled device at its profile peak, whatever the order of the
+ * changes.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class ScenarioEngine implements ScenarioEvaluator
+{
+	// the minimum number of scenarios per parallel task
+	private static final int MIN_BATCH = 64;
+	
+	// the live aggregates
+	private LivePower livePower;
+	
+	// the learned consumptions, preferred to the metered and declared ones
+	private ConsumptionEstimator consumptionEstimator;
+	
+	// the latest meter readings, preferred to the declared consumptions
+	private volatile MeterReadings meterReadings;
+	
+	// the shared pool evaluating scenarios in parallel, if any
+	private volatile Executor executor;
+	
+	// the number of threads of the pool
+	private int threads;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param livePower
+	 *            the {@link LivePower} aggregates to use as a base
+	 * @param consumptionEstimator
+	 *            the {@link ConsumptionEstimator} providing the learned
+	 *            consumption of the target states
+	 */
+	public ScenarioEngine(LivePower livePower, ConsumptionEstimator consumptionEstimator)
+	{
+		this.livePower = livePower;
+		this.consumptionEstimator = consumptionEstimator;
+		this.threads = Runtime.getRuntime().availableProcessors();
+	}
+			
+	/**
+	 * Set the shared pool evaluating large batches of scenarios in parallel
+	 * 
+	 * @param executor
+	 *            the shared {@link Executor}, null for evaluating all the
+	 *            scenarios on the calling thread
+	 */
+	public void setExecutor(Executor executor)
+	{
+		this.executor = executor;
+	}
+	
+	/**
+	 * Set the meter readings of the current consumption table
+	 * 
+	 * @param meterReadings
+	 *            the {@link MeterReadings} to resolve the metered
+	 *            consumptions
+	 */
+	public void setMeterReadings(MeterReadings meterReadings)
+	{
+		this.meterReadings = meterReadings;
+	}
+	
+	@Override
+	public ScenarioResult evaluate(Scenario scenario)
+	{
+		return this.evaluate(this.livePower.getSnapshot(), scenario);
+	}
+	
+	@Override
+	public List<ScenarioResult> evaluateAll(List<Scenario> scenarios)
+	{
+		final PowerSnapshot snapshot = this.livePower.getSnapshot();
+		List<ScenarioResult> results = new ArrayList<ScenarioResult>(scenarios.size());
+		
+		// split the scenarios in one batch per thread, if worth it
+		int batch = Math.max(ScenarioEngine.MIN_BATCH, (scenarios.size() + this.threads - 1) / this.threads);
+		if (scenarios.size() <= batch)
+		{
+			for (Scenario scenario : scenarios)
+				results.add(this.evaluate(snapshot, scenario));
+			
+			return results;
+		}
+		
+		List<Callable<List<ScenarioResult>>> tasks = new ArrayList<Callable<List<ScenarioResult>>>();
+		for (int start = 0; start < scenarios.size(); start += batch)
+		{
+			final List<Scenario> part = scenarios.subList(start, Math.min(start + batch, scenarios.size()));
+			tasks.add(new Callable<List<ScenarioResult>>() {
+				
+				@Override
+				public List<ScenarioResult> call()
+				{
+					List<ScenarioResult> partResults = new ArrayList<ScenarioResult>(part.size());
+					for (Scenario scenario : part)
+						partResults.add(ScenarioEngine.this.evaluate(snapshot, scenario));
+					
+					return partResults;
+				}
+			});
+		}
+		
+		try
+		{
+			for (List<ScenarioResult> partResults : ParallelTasks.invokeAll(this.executor, tasks))
+				results.addAll(partResults);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Scenario evaluation interrupted", e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new IllegalStateException("Scenario evaluation failed", e.getCause());
+		}
+		
+		return results;
+	}
+	
+	/**
+	 * Apply a scenario to an overlay of the given snapshot
+	 * 
+	 * @param snapshot
+	 *            the base {@link PowerSnapshot}
+	 * @param scenario
+	 *            the {@link Scenario} to apply
+	 * @return the {@link ScenarioResult}
+	 */
+	private ScenarioResult evaluate(PowerSnapshot snapshot, Scenario scenario)
+	{
+		ConsumptionTable table = snapshot.getTable();
+		MeterReadings readings = this.meterReadings;
+		if (readings != null && readings.getTable() != table)
+			readings = null;
+		
+		// the overlay: the hypothetical power of the changed devices
+		Map<Integer, Double> overlay = new HashMap<Integer, Double>();
+		double[] roomDelta = new double[table.getRoomCount()];
+		
+		// the rise of the profiled devices from their starting power to their
+		// profile peak
+		Map<Integer, Double> rises = new HashMap<Integer, Double>();
+		
+		double total = snapshot.getHouseholdPower();
+		int unknown = 0;
+		
+		for (int change = 0; change < scenario.size(); change++)
+		{
+			int device = table.getDeviceId(scenario.getDeviceURI(change));
+			int state = (device != ConsumptionTable.UNKNOWN) ? table.getStateIndex(device,
+					scenario.getStateName(change)) : ConsumptionTable.UNKNOWN;
+			if (state == ConsumptionTable.UNKNOWN)
+			{
+				unknown++;
+				continue;
+			}
+			
+			// the power in the target state: learned, metered, declared
+			LoadProfile profile = null;
+			double target = this.consumptionEstimator.getLearnedConsumption(table, device, state);
+			if (Double.isNaN(target) && readings != null)
+				target = readings.getPower(device, state);
+			if (Double.isNaN(target))
+			{
+				profile = table.getLoadProfile(device, state);
+				target = table.getConsumption(device, state, 0.0);
+			}
+			
+			// the power before the change, from the overlay or the snapshot
+			Double overlaid = overlay.put(device, target);
+			double current = (overlaid != null) ? overlaid.doubleValue() : snapshot.getDevicePower(device);
+			double delta = Double.isNaN(current) ? target : target - current;
+			
+			total += delta;
+			if (table.getRoom(device) != ConsumptionTable.UNKNOWN)
+				roomDelta[table.getRoom(device)] += delta;
+			
+			// a profile may rise above its starting power
+			if (profile != null)
+				rises.put(device, profile.getPeak() - target);
+			else
+				rises.remove(device);
+		}
+		
+		double peak = total;
+		for (Double rise : rises.values())
+			peak += rise.doubleValue();
+		
+		Map<String, Double> rooms = new HashMap<String, Double>();
+		for (int room = 0; room < roomDelta.length; room++)
+			rooms.put(table.getRoomName(room), snapshot.getRoomPower(room) + roomDelta[room]);
+		
+		return new ScenarioResult(snapshot.getHouseholdPower(), total, peak, rooms, unknown);
+	}
+}
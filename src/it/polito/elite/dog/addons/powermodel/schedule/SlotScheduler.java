@@ -0,0 +1,867 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.schedule;
+
+import it.polito.elite.dog.addons.powermodel.api.ApplianceScheduler;
+import it.polito.elite.dog.addons.powermodel.api.DeferrableJob;
+import it.polito.elite.dog.addons.powermodel.api.LoadForecast;
+import it.polito.elite.dog.addons.powermodel.api.PowerBudget;
+import it.polito.elite.dog.addons.powermodel.api.ScheduledRun;
+import it.polito.elite.dog.addons.powermodel.api.TariffCalendar;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+import it.polito.elite.dog.addons.powermodel.device.LoadProfile;
+import it.polito.elite.dog.addons.powermodel.forecast.MarkovForecaster;
+import it.polito.elite.dog.addons.powermodel.tariff.TariffSchedule;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Implementation of the {@link ApplianceScheduler} service. The next hours are
+ * split in fixed slots (96 slots of 15 minutes, by default), and the slot
+ * occupancy array is kept across plan changes: the expected background load
+ * (the forecast of the devices without jobs), plus the power of the runs
+ * already placed. It is built again only when the first slot moves, or the
+ * slots, the tariff or the consumption table change; otherwise each job
+ * added, moved, ended or cancelled only updates the slots it covers, and the
+ * background load of its device. A job is placed by scanning its feasible
+ * starts against that array and the cost of each slot, in O(slots x job
+ * slots); nothing is summed again per candidate.<br/>
+ * The solver is a greedy heuristic: jobs with the least slack are placed first,
+ * and a new job that does not fit only moves the runs competing for its
+ * window. A full re-plan adds a bounded number of improvement passes, each
+ * placing every run again at its cheapest start given all the others.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class SlotScheduler implements ApplianceScheduler
+{
+	// the default slot length, in ms
+	public static final long DEFAULT_SLOT_LENGTH = 15 * 60 * 1000L;
+	
+	// the default number of slots
+	public static final int DEFAULT_SLOT_COUNT = 96;
+	
+	// the number of improvement passes of a full re-plan
+	private static final int IMPROVEMENT_PASSES = 2;
+	
+	// the tolerance of the power cap, in W
+	private static final double CAP_TOLERANCE = 1e-6;
+	
+	// the slot length, in ms
+	private long slotLength;
+	
+	// the number of slots
+	private int slotCount;
+	
+	// the power budget giving the household power cap
+	private PowerBudget powerBudget;
+	
+	// the tariff pricing the slots
+	private TariffCalendar tariff;
+	
+	// the tariff compiled over the latest plans, and the calendar compiled
+	private TariffSchedule tariffSchedule;
+	private TariffCalendar compiledTariff;
+	
+	// the forecaster of the background load, if any
+	private MarkovForecaster forecaster;
+	
+	// the consumption table
+	private ConsumptionTable table;
+	
+	// the jobs in the plan
+	private List<Job> jobs;
+	
+	// the id of the next job
+	private long nextId;
+	
+	// the slot occupancy of the latest plan change, if any
+	private Window window;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param powerBudget
+	 *            the {@link PowerBudget} giving the household power cap
+	 * @param forecaster
+	 *            the {@link MarkovForecaster} of the background load, or null
+	 *            to plan on the runs alone
+	 */
+	public SlotScheduler(PowerBudget powerBudget, MarkovForecaster forecaster)
+	{
+		this.slotLength = SlotScheduler.DEFAULT_SLOT_LENGTH;
+		this.slotCount = SlotScheduler.DEFAULT_SLOT_COUNT;
+		this.powerBudget = powerBudget;
+		this.forecaster = forecaster;
+		this.tariff = new TariffCalendar(0.0, TimeZone.getDefault());
+		this.table = ConsumptionTable.EMPTY;
+		this.jobs = new ArrayList<Job>();
+		this.nextId = 1;
+	}
+	
+	/**
+	 * Set the slots of the plans; the runs already placed keep their starts
+	 * until the next re-plan
+	 * 
+	 * @param slotLength
+	 *            the slot length, in ms
+	 * @param slotCount
+	 *            the number of slots
+	 */
+	public synchronized void setSlots(long slotLength, int slotCount)
+	{
+		if (slotLength <= 0 || slotCount <= 0)
+			throw new IllegalArgumentException("The scheduling slots must be positive");
+		if (slotLength * slotCount > MarkovForecaster.MAX_HORIZON)
+			throw new IllegalArgumentException("The scheduling horizon must not exceed "
+					+ MarkovForecaster.MAX_HORIZON + " ms");
+		
+		this.slotLength = slotLength;
+		this.slotCount = slotCount;
+	}
+	
+	/**
+	 * Set the tariff pricing the slots
+	 * 
+	 * @param tariff
+	 *            the {@link TariffCalendar}
+	 */
+	public synchronized void setTariff(TariffCalendar tariff)
+	{
+		this.tariff = tariff;
+	}
+	
+	/**
+	 * Bind the scheduler to a new consumption table, e.g., after a model
+	 * (re)load; the power of the runs is evaluated again at the next plan
+	 * change
+	 * 
+	 * @param table
+	 *            the new {@link ConsumptionTable}
+	 */
+	public synchronized void setConsumptionTable(ConsumptionTable table)
+	{
+		this.table = table;
+	}
+	
+	@Override
+	public ScheduledRun schedule(DeferrableJob job)
+	{
+		return this.schedule(job, System.currentTimeMillis());
+	}
+	
+	/**
+	 * Add a job to the plan, at a given instant
+	 * 
+	 * @param job
+	 *            the {@link DeferrableJob} to add
+	 * @param now
+	 *            the current instant, in ms since the epoch
+	 * @return the {@link ScheduledRun} of the job, or null if it does not fit
+	 * @see ApplianceScheduler#schedule(DeferrableJob)
+	 */
+	public synchronized ScheduledRun schedule(DeferrableJob job, long now)
+	{
+		if (job.getDuration() <= 0 || job.getDeadline() - job.getEarliestStart() < job.getDuration())
+			throw new IllegalArgumentException("The job does not fit its own window: " + job);
+		
+		Job added = new Job(this.nextId, job);
+		if (!added.evaluate(this.table, this.slotLength))
+			return null;
+		
+		Window window = this.open(now);
+		this.exclude(window, job.getDeviceURI());
+		if (!this.place(window, added))
+		{
+			// move the runs competing for the same window
+			List<Job> competing = new ArrayList<Job>();
+			for (Job planned : this.jobs)
+				if (planned.start > now && planned.job.getEarliestStart() < job.getDeadline()
+						&& planned.job.getDeadline() > job.getEarliestStart())
+					competing.add(planned);
+			
+			long[] starts = new long[competing.size()];
+			for (int i = 0; i < competing.size(); i++)
+			{
+				starts[i] = competing.get(i).start;
+				this.remove(window, competing.get(i));
+			}
+			List<Job> moved = new ArrayList<Job>(competing);
+			moved.add(added);
+			Collections.sort(moved, new SlackComparator(window));
+			
+			int placed = 0;
+			while (placed < moved.size() && this.place(window, moved.get(placed)))
+				placed++;
+			
+			if (placed < moved.size())
+			{
+				// roll back the moved runs
+				for (int i = 0; i < placed; i++)
+					this.remove(window, moved.get(i));
+				for (int i = 0; i < competing.size(); i++)
+				{
+					competing.get(i).start = starts[i];
+					this.add(window, competing.get(i));
+				}
+				this.include(window, job.getDeviceURI());
+				return null;
+			}
+		}
+		
+		this.nextId++;
+		this.jobs.add(added);
+		
+		return added.toRun(window);
+	}
+	
+	@Override
+	public synchronized boolean cancel(long jobId)
+	{
+		for (Iterator<Job> iterator = this.jobs.iterator(); iterator.hasNext();)
+		{
+			Job planned = iterator.next();
+			if (planned.id == jobId)
+			{
+				iterator.remove();
+				if (this.window != null)
+				{
+					this.remove(this.window, planned);
+					this.include(this.window, planned.job.getDeviceURI());
+				}
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	@Override
+	public List<ScheduledRun> getPlan()
+	{
+		return this.getPlan(System.currentTimeMillis());
+	}
+	
+	/**
+	 * Get the plan at a given instant
+	 * 
+	 * @param now
+	 *            the current instant, in ms since the epoch
+	 * @return the {@link ScheduledRun}s of the jobs not yet ended, by start
+	 * @see ApplianceScheduler#getPlan()
+	 */
+	public synchronized List<ScheduledRun> getPlan(long now)
+	{
+		Window window = this.open(now);
+		
+		return this.toRuns(window);
+	}
+	
+	@Override
+	public List<ScheduledRun> replan()
+	{
+		return this.replan(System.currentTimeMillis());
+	}
+	
+	/**
+	 * Place again all the runs not yet started, at a given instant
+	 * 
+	 * @param now
+	 *            the current instant, in ms since the epoch
+	 * @return the {@link ScheduledRun}s of the new plan, by start
+	 * @see ApplianceScheduler#replan()
+	 */
+	public synchronized List<ScheduledRun> replan(long now)
+	{
+		Window window = this.open(now);
+		
+		// place all the movable runs from scratch, least slack first,
+		// together with the evicted ones
+		List<Job> movable = new ArrayList<Job>();
+		for (Job planned : this.jobs)
+		{
+			if (planned.start > now || planned.start == Job.NOT_PLACED)
+			{
+				this.remove(window, planned);
+				movable.add(planned);
+			}
+		}
+		Collections.sort(movable, new SlackComparator(window));
+		long[] starts = new long[movable.size()];
+		boolean placed = true;
+		for (int i = 0; i < movable.size(); i++)
+		{
+			starts[i] = movable.get(i).start;
+			placed &= this.place(window, movable.get(i));
+		}
+		
+		if (!placed)
+		{
+			// the greedy order may miss a plan that still fits: the current
+			// one, if so, is kept; otherwise the jobs left out are evicted,
+			// i.e., kept in the plan without a start
+			long[] greedy = new long[movable.size()];
+			for (int i = 0; i < movable.size(); i++)
+			{
+				greedy[i] = movable.get(i).start;
+				this.remove(window, movable.get(i));
+				movable.get(i).start = starts[i];
+				this.add(window, movable.get(i));
+			}
+			
+			boolean fits = true;
+			for (int i = 0; i < movable.size() && fits; i++)
+				fits = this.fits(window, movable.get(i));
+			
+			for (int i = movable.size() - 1; i >= 0 && !fits; i--)
+			{
+				Job planned = movable.get(i);
+				this.remove(window, planned);
+				planned.start = greedy[i];
+			}
+			if (!fits)
+				for (Job planned : movable)
+					this.add(window, planned);
+		}
+		
+		// improve: each run moves to its cheapest start given the others,
+		// which never makes the plan worse, as the current start is a
+		// candidate (an evicted job is placed if room has been made)
+		for (int pass = 0; pass < SlotScheduler.IMPROVEMENT_PASSES; pass++)
+		{
+			for (Job planned : movable)
+			{
+				long previous = planned.start;
+				this.remove(window, planned);
+				if (!this.place(window, planned))
+				{
+					planned.start = previous;
+					this.add(window, planned);
+				}
+			}
+		}
+		
+		return this.toRuns(window);
+	}
+	
+	/**
+	 * Get the slot occupancy of the plan at a given instant: the occupancy of
+	 * the latest plan change, if still valid, without the jobs ended since
+	 * then, otherwise a new one
+	 * 
+	 * @param now
+	 *            the current instant
+	 * @return the {@link Window}
+	 */
+	private Window open(long now)
+	{
+		// the slots start on a grid of the slot length
+		long origin = now - now % this.slotLength;
+		Window window = this.window;
+		if (window == null || window.origin != origin || window.slotLength != this.slotLength
+				|| window.load.length != this.slotCount || window.table != this.table || window.tariff != this.tariff)
+		{
+			window = this.build(origin, now);
+			this.window = window;
+		}
+		else
+		{
+			window.now = now;
+			for (Iterator<Job> iterator = this.jobs.iterator(); iterator.hasNext();)
+			{
+				Job planned = iterator.next();
+				if (planned.isEnded(now))
+				{
+					iterator.remove();
+					this.remove(window, planned);
+					this.include(window, planned.job.getDeviceURI());
+				}
+			}
+		}
+		
+		// the cap may change at any time
+		window.cap = this.powerBudget.getBudget();
+		
+		return window;
+	}
+	
+	/**
+	 * Build the slot occupancy of the plan from a given instant: the jobs
+	 * ended, or of devices no longer in the model, are dropped, and the
+	 * background load and the power of the runs are summed per slot
+	 * 
+	 * @param origin
+	 *            the start of the first slot
+	 * @param now
+	 *            the current instant
+	 * @return the {@link Window}
+	 */
+	private Window build(long origin, long now)
+	{
+		Window window = new Window(origin, now, this.slotLength, this.slotCount, this.table, this.tariff);
+		
+		// the cost of one W in each slot
+		if (this.compiledTariff != this.tariff || !this.tariffSchedule.covers(origin, window.getEnd()))
+		{
+			// compiled ahead, to serve the next plans too
+			this.tariffSchedule = TariffSchedule.compile(this.tariff, origin, 2 * window.getEnd() - origin);
+			this.compiledTariff = this.tariff;
+		}
+		for (int slot = 0; slot < this.slotCount; slot++)
+			window.costs[slot] = this.tariffSchedule.getCost(1.0, window.getStart(slot), window.getStart(slot + 1));
+		
+		// the background load of all the devices
+		if (this.forecaster != null)
+			this.toSlots(window, this.forecaster.forecast(origin, this.slotLength * this.slotCount), window.load);
+		
+		// the runs, in place of the background load of their devices
+		for (Iterator<Job> iterator = this.jobs.iterator(); iterator.hasNext();)
+		{
+			Job planned = iterator.next();
+			if (planned.isEnded(now) || !planned.evaluate(this.table, this.slotLength))
+				iterator.remove();
+			else
+			{
+				this.exclude(window, planned.job.getDeviceURI());
+				this.add(window, planned);
+			}
+		}
+		
+		return window;
+	}
+	
+	/**
+	 * Remove the background load of a device from the slot occupancy, if not
+	 * yet done, as its runs are planned
+	 */
+	private void exclude(Window window, String deviceURI)
+	{
+		if (this.forecaster == null || window.excluded.containsKey(deviceURI))
+			return;
+		
+		double[] load = new double[window.load.length];
+		LoadForecast forecast = this.forecaster.forecast(deviceURI, window.origin, this.slotLength * this.slotCount);
+		if (forecast != null)
+			this.toSlots(window, forecast, load);
+		for (int slot = 0; slot < load.length; slot++)
+			window.load[slot] -= load[slot];
+		window.excluded.put(deviceURI, load);
+	}
+	
+	/**
+	 * Add back the background load of a device to the slot occupancy, once
+	 * none of its jobs is left in the plan
+	 */
+	private void include(Window window, String deviceURI)
+	{
+		for (Job planned : this.jobs)
+			if (planned.job.getDeviceURI().equals(deviceURI))
+				return;
+		
+		double[] load = window.excluded.remove(deviceURI);
+		if (load != null)
+			for (int slot = 0; slot < load.length; slot++)
+				window.load[slot] += load[slot];
+	}
+	
+	/**
+	 * Add the mean load of a forecast at the end of each slot to the given
+	 * slot loads
+	 */
+	private void toSlots(Window window, LoadForecast forecast, double[] load)
+	{
+		for (int slot = 0; slot < load.length; slot++)
+		{
+			long time = window.getStart(slot + 1);
+			int step = (int) ((time - forecast.getStart()) / forecast.getStep()) - 1;
+			load[slot] += forecast.getMean(Math.max(0, Math.min(step, forecast.size() - 1)));
+		}
+	}
+	
+	/**
+	 * Place a job at its cheapest feasible start, if any, and add its power
+	 * to the slot occupancy
+	 * 
+	 * @return false if the job does not fit, leaving it unplaced
+	 */
+	private boolean place(Window window, Job job)
+	{
+		job.start = Job.NOT_PLACED;
+		
+		// the feasible starts: from the earliest start and now, as long as
+		// the run ends by its deadline and within the window
+		int slots = job.peaks.length;
+		int first = window.getSlotAfter(Math.max(job.job.getEarliestStart(), window.now));
+		long latestStart = job.job.getDeadline() - job.job.getDuration();
+		int last = Math.min(this.slotCount - slots, window.getSlotBefore(latestStart));
+		
+		int best = -1;
+		double bestCost = Double.POSITIVE_INFINITY;
+		for (int start = first; start <= last; start++)
+		{
+			double cost = 0.0;
+			int slot = 0;
+			while (slot < slots && window.load[start + slot] + job.peaks[slot] <= window.cap
+					+ SlotScheduler.CAP_TOLERANCE)
+			{
+				cost += job.powers[slot] * window.costs[start + slot];
+				slot++;
+			}
+			
+			if (slot < slots)
+			{
+				// the slot over the cap rules out all the starts covering it
+				start += slot;
+				continue;
+			}
+			if (cost < bestCost)
+			{
+				best = start;
+				bestCost = cost;
+			}
+		}
+		
+		if (best < 0)
+			return false;
+		
+		job.start = window.getStart(best);
+		this.add(window, job);
+		
+		return true;
+	}
+	
+	/**
+	 * Check that the slots of a placed run are within the cap
+	 */
+	private boolean fits(Window window, Job job)
+	{
+		if (job.start == Job.NOT_PLACED)
+			return true;
+		
+		int start = window.getSlot(job.start);
+		for (int slot = Math.max(0, -start); slot < job.peaks.length && start + slot < this.slotCount; slot++)
+			if (window.load[start + slot] > window.cap + SlotScheduler.CAP_TOLERANCE)
+				return false;
+		
+		return true;
+	}
+	
+	/**
+	 * Add the power of a run to the slot occupancy
+	 */
+	private void add(Window window, Job job)
+	{
+		this.occupy(window, job, 1.0);
+	}
+	
+	/**
+	 * Remove the power of a run from the slot occupancy
+	 */
+	private void remove(Window window, Job job)
+	{
+		this.occupy(window, job, -1.0);
+	}
+	
+	/**
+	 * Add or remove the power of a run in the slots it covers
+	 */
+	private void occupy(Window window, Job job, double sign)
+	{
+		if (job.start == Job.NOT_PLACED)
+			return;
+		
+		int start = window.getSlot(job.start);
+		for (int slot = Math.max(0, -start); slot < job.peaks.length && start + slot < this.slotCount; slot++)
+			window.load[start + slot] += sign * job.peaks[slot];
+	}
+	
+	/**
+	 * @return the {@link ScheduledRun}s of the plan, by start
+	 */
+	private List<ScheduledRun> toRuns(Window window)
+	{
+		List<Job> sorted = new ArrayList<Job>(this.jobs);
+		Collections.sort(sorted, new Comparator<Job>() {
+			
+			@Override
+			public int compare(Job first, Job second)
+			{
+				if (first.start != second.start)
+					return (first.start < second.start) ? -1 : 1;
+				return (first.id < second.id) ? -1 : ((first.id == second.id) ? 0 : 1);
+			}
+		});
+		
+		List<ScheduledRun> runs = new ArrayList<ScheduledRun>(sorted.size());
+		for (Job planned : sorted)
+			runs.add(planned.toRun(window));
+		
+		return runs;
+	}
+	
+	/**
+	 * The slots of a plan, with their occupancy and cost
+	 */
+	private static class Window
+	{
+		// the start of the first slot, in ms since the epoch
+		private final long origin;
+		
+		// the instant the plan is made at, in ms since the epoch
+		private long now;
+		
+		// the slot length, in ms
+		private final long slotLength;
+		
+		// the load of each slot, in W
+		private final double[] load;
+		
+		// the cost of one W during each slot
+		private final double[] costs;
+		
+		// the household power cap, in W
+		private double cap;
+		
+		// the table and the tariff the occupancy was built on
+		private final ConsumptionTable table;
+		private final TariffCalendar tariff;
+		
+		// the background load of the devices with a job, removed from the
+		// load of each slot, indexed by device URI
+		private final Map<String, double[]> excluded;
+		
+		Window(long origin, long now, long slotLength, int slotCount, ConsumptionTable table, TariffCalendar tariff)
+		{
+			this.origin = origin;
+			this.now = now;
+			this.slotLength = slotLength;
+			this.load = new double[slotCount];
+			this.costs = new double[slotCount];
+			this.table = table;
+			this.tariff = tariff;
+			this.excluded = new HashMap<String, double[]>();
+		}
+		
+		/**
+		 * @return the start of a slot, in ms since the epoch
+		 */
+		long getStart(int slot)
+		{
+			return this.origin + slot * this.slotLength;
+		}
+		
+		/**
+		 * @return the end of the last slot, in ms since the epoch
+		 */
+		long getEnd()
+		{
+			return this.getStart(this.load.length);
+		}
+		
+		/**
+		 * @return the slot of a run start, possibly before the first one
+		 */
+		int getSlot(long start)
+		{
+			long offset = start - this.origin;
+			
+			return (int) ((offset >= 0) ? offset / this.slotLength : -((-offset + this.slotLength - 1) / this
+					.slotLength));
+		}
+		
+		/**
+		 * @return the first slot starting at or after an instant
+		 */
+		int getSlotAfter(long timestamp)
+		{
+			if (timestamp <= this.origin)
+				return 0;
+			
+			return (int) Math.min(this.load.length, (timestamp - this.origin + this.slotLength - 1)
+					/ this.slotLength);
+		}
+		
+		/**
+		 * @return the last slot starting at or before an instant, or -1
+		 */
+		int getSlotBefore(long timestamp)
+		{
+			if (timestamp < this.origin)
+				return -1;
+			
+			return (int) Math.min(this.load.length, (timestamp - this.origin) / this.slotLength);
+		}
+	}
+	
+	/**
+	 * A job of the plan, with the power of its run in each slot
+	 */
+	private static class Job
+	{
+		// the start of a job not placed
+		static final long NOT_PLACED = ScheduledRun.NOT_PLACED;
+		
+		// the id of the job
+		private final long id;
+		
+		// the job
+		private final DeferrableJob job;
+		
+		// the planned start, in ms since the epoch, or NOT_PLACED
+		private long start;
+		
+		// the table the powers were evaluated on
+		private ConsumptionTable table;
+		
+		// the peak power of the run in each of its slots, in W
+		private double[] peaks;
+		
+		// the mean power of the run over each of its slots, in W
+		private double[] powers;
+		
+		// the energy of the run, in Wh
+		private double energy;
+		
+		Job(long id, DeferrableJob job)
+		{
+			this.id = id;
+			this.job = job;
+			this.start = Job.NOT_PLACED;
+		}
+		
+		/**
+		 * Evaluate the power of the run in each slot, if not yet done on the
+		 * given table
+		 * 
+		 * @return false if the device or the state are unknown
+		 */
+		boolean evaluate(ConsumptionTable table, long slotLength)
+		{
+			if (this.table == table && this.peaks != null && this.peaks.length > 0
+					&& this.peaks.length == (int) ((this.job.getDuration() + slotLength - 1) / slotLength))
+				return true;
+			
+			int device = table.getDeviceId(this.job.getDeviceURI());
+			int state = (device != ConsumptionTable.UNKNOWN) ? table.getStateIndex(device, this.job.getStateName())
+					: ConsumptionTable.UNKNOWN;
+			if (state == ConsumptionTable.UNKNOWN)
+				return false;
+			
+			long duration = this.job.getDuration();
+			int slots = (int) ((duration + slotLength - 1) / slotLength);
+			this.peaks = new double[slots];
+			this.powers = new double[slots];
+			this.energy = 0.0;
+			
+			LoadProfile profile = table.getLoadProfile(device, state);
+			double power = table.getBestConsumption(device, state);
+			for (int slot = 0; slot < slots; slot++)
+			{
+				double from = slot * (double) slotLength / 1000.0;
+				double to = Math.min(duration, (slot + 1) * slotLength) / 1000.0;
+				double joules = (profile != null) ? profile.getEnergy(from, to) : power * (to - from);
+				this.peaks[slot] = (profile != null) ? profile.getPeak(from, to) : power;
+				this.powers[slot] = joules * 1000.0 / slotLength;
+				this.energy += joules / 3600.0;
+			}
+			this.table = table;
+			
+			return true;
+		}
+		
+		/**
+		 * @return true if the run has ended, or if the job has been evicted
+		 *         and its deadline has passed
+		 */
+		boolean isEnded(long now)
+		{
+			if (this.start == Job.NOT_PLACED)
+				return this.job.getDeadline() <= now;
+			
+			return this.start + this.job.getDuration() <= now;
+		}
+		
+		/**
+		 * @return the {@link ScheduledRun} of the job
+		 */
+		ScheduledRun toRun(Window window)
+		{
+			double peak = 0.0;
+			for (int slot = 0; slot < this.peaks.length; slot++)
+				peak = Math.max(peak, this.peaks[slot]);
+			if (this.start == Job.NOT_PLACED)
+				return new ScheduledRun(this.id, this.job, ScheduledRun.NOT_PLACED, this.energy, peak, Double.NaN);
+			
+			double cost = 0.0;
+			int start = window.getSlot(this.start);
+			for (int slot = 0; slot < this.peaks.length; slot++)
+				if (start + slot >= 0 && start + slot < window.costs.length)
+					cost += this.powers[slot] * window.costs[start + slot];
+			
+			return new ScheduledRun(this.id, this.job, this.start, this.energy, peak, cost);
+		}
+	}
+	
+	/**
+	 * Orders the jobs by increasing slack, i.e., number of feasible starts,
+	 * then by decreasing energy
+	 */
+	private static class SlackComparator implements Comparator<Job>
+	{
+		// the window of the plan
+		private final Window window;
+		
+		SlackComparator(Window window)
+		{
+			this.window = window;
+		}
+		
+		@Override
+		public int compare(Job first, Job second)
+		{
+			int firstSlack = this.getSlack(first);
+			int secondSlack = this.getSlack(second);
+			if (firstSlack != secondSlack)
+				return (firstSlack < secondSlack) ? -1 : 1;
+			if (first.energy != second.energy)
+				return (first.energy > second.energy) ? -1 : 1;
+			
+			return (first.id < second.id) ? -1 : ((first.id == second.id) ? 0 : 1);
+		}
+		
+		/**
+		 * @return the number of feasible starts of a job, ignoring the cap
+		 */
+		private int getSlack(Job job)
+		{
+			int first = this.window.getSlotAfter(Math.max(job.job.getEarliestStart(), this.window.now));
+			int last = Math.min(this.window.load.length - job.peaks.length, this.window.getSlotBefore(job.job
+					.getDeadline() - job.job.getDuration()));
+			
+			return last - first;
+		}
+	}
+}
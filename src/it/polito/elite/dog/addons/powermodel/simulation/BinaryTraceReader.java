@@ -0,0 +1,191 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.simulation;
+
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * A {@link TraceReader} for the binary traces written by the
+ * {@link BinaryTraceWriter}. Device and state definitions are resolved against
+ * the {@link ConsumptionTable} once, when they are read, so that each event
+ * only costs three primitive reads and two array lookups.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class BinaryTraceReader implements TraceReader
+{
+	// the trace
+	private DataInputStream in;
+	
+	// the consumption table to resolve devices and states
+	private ConsumptionTable table;
+	
+	// the device id of each device defined in the trace
+	private int[] devices;
+	
+	// the name of each state defined in the trace
+	private String[] stateNames;
+	
+	// the state index of each (trace device, trace state) pair, resolved on
+	// first use; rows are allocated lazily
+	private int[][] states;
+	
+	// the current event
+	private long timestamp;
+	private int device;
+	private int state;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param in
+	 *            the trace
+	 * @param table
+	 *            the {@link ConsumptionTable} to resolve devices and states
+	 *            against
+	 * @throws IOException
+	 *             if the stream does not hold a binary trace
+	 */
+	public BinaryTraceReader(InputStream in, ConsumptionTable table) throws IOException
+	{
+		this.in = new DataInputStream(new BufferedInputStream(in, 65536));
+		this.table = table;
+		this.devices = new int[0];
+		this.stateNames = new String[0];
+		this.states = new int[0][];
+		
+		if (this.in.readInt() != BinaryTraceWriter.MAGIC)
+			throw new IOException("Not a binary trace");
+		int version = this.in.readInt();
+		if (version != BinaryTraceWriter.VERSION)
+			throw new IOException("Unsupported binary trace version: " + version);
+	}
+	
+	@Override
+	public boolean next() throws IOException
+	{
+		int type;
+		while ((type = this.in.read()) >= 0)
+		{
+			if (type == BinaryTraceWriter.EVENT)
+			{
+				this.timestamp = this.in.readLong();
+				int traceDevice = this.in.readInt();
+				int traceState = this.in.readInt();
+				
+				this.device = (traceDevice >= 0 && traceDevice < this.devices.length) ? this.devices[traceDevice]
+						: ConsumptionTable.UNKNOWN;
+				this.state = (this.device != ConsumptionTable.UNKNOWN) ? this.resolveState(traceDevice, traceState)
+						: ConsumptionTable.UNKNOWN;
+				
+				return true;
+			}
+			else if (type == BinaryTraceWriter.DEVICE)
+			{
+				int id = this.in.readInt();
+				String uri = this.in.readUTF();
+				if (id < 0)
+					throw new IOException("Invalid device id: " + id);
+				
+				if (id >= this.devices.length)
+				{
+					int previous = this.devices.length;
+					this.devices = Arrays.copyOf(this.devices, Math.max(id + 1, 2 * previous));
+					Arrays.fill(this.devices, previous, this.devices.length, ConsumptionTable.UNKNOWN);
+					this.states = Arrays.copyOf(this.states, this.devices.length);
+				}
+				this.devices[id] = this.table.getDeviceId(uri);
+				this.states[id] = null;
+			}
+			else if (type == BinaryTraceWriter.STATE)
+			{
+				int id = this.in.readInt();
+				String name = this.in.readUTF();
+				if (id < 0)
+					throw new IOException("Invalid state id: " + id);
+				
+				if (id >= this.stateNames.length)
+					this.stateNames = Arrays.copyOf(this.stateNames, Math.max(id + 1, 2 * this.stateNames.length));
+				this.stateNames[id] = name;
+				
+				// a redefinition invalidates the states resolved so far
+				for (int i = 0; i < this.states.length; i++)
+					if (this.states[i] != null && id < this.states[i].length)
+						this.states[i][id] = ConsumptionTable.UNKNOWN - 1;
+			}
+			else
+				throw new IOException("Unknown record type: " + type);
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Get the state index of a state of a device, as defined in the trace
+	 */
+	private int resolveState(int traceDevice, int traceState)
+	{
+		if (traceState < 0 || traceState >= this.stateNames.length || this.stateNames[traceState] == null)
+			return ConsumptionTable.UNKNOWN;
+		
+		// not yet resolved states are marked with UNKNOWN - 1
+		int[] row = this.states[traceDevice];
+		if (row == null || traceState >= row.length)
+		{
+			int previous = (row != null) ? row.length : 0;
+			row = (row != null) ? Arrays.copyOf(row, this.stateNames.length) : new int[this.stateNames.length];
+			Arrays.fill(row, previous, row.length, ConsumptionTable.UNKNOWN - 1);
+			this.states[traceDevice] = row;
+		}
+		if (row[traceState] == ConsumptionTable.UNKNOWN - 1)
+			row[traceState] = this.table.getStateIndex(this.devices[traceDevice], this.stateNames[traceState]);
+		
+		return row[traceState];
+	}
+	
+	@Override
+	public long getTimestamp()
+	{
+		return this.timestamp;
+	}
+	
+	@Override
+	public int getDevice()
+	{
+		return this.device;
+	}
+	
+	@Override
+	public int getState()
+	{
+		return this.state;
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		this.in.close();
+	}
+}
@@ -0,0 +1,261 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.simulation;
+
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A {@link TraceReader} for CSV traces, with one
+ * "timestamp,deviceURI,stateName" line per state change. Lines are copied in a
+ * reusable buffer and parsed in place: timestamps are decoded digit by digit,
+ * device URIs (also as full IRIs or prefixed names) are looked up through a
+ * {@link KeyIndex} and state names are compared (ignoring case) with the ones
+ * of the device, so no String is created per line. Lines that do not start
+ * with a timestamp (e.g., headers or comments) are skipped.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class CsvTraceReader implements TraceReader
+{
+	// the size of the read buffer
+	private static final int BUFFER_SIZE = 65536;
+	
+	// the trace
+	private Reader reader;
+	
+	// the consumption table to resolve devices and states
+	private ConsumptionTable table;
+	
+	// the device URIs of the table
+	private KeyIndex devices;
+	
+	// the read buffer
+	private char[] buffer;
+	
+	// the position of the next char in the read buffer
+	private int position;
+	
+	// the number of valid chars in the read buffer
+	private int limit;
+	
+	// the current line
+	private char[] line;
+	
+	// the current event
+	private long timestamp;
+	private int device;
+	private int state;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param reader
+	 *            the trace
+	 * @param table
+	 *            the {@link ConsumptionTable} to resolve devices and states
+	 *            against
+	 */
+	public CsvTraceReader(Reader reader, ConsumptionTable table)
+	{
+		this.reader = reader;
+		this.table = table;
+		this.devices = new KeyIndex(table);
+		this.buffer = new char[CsvTraceReader.BUFFER_SIZE];
+		this.line = new char[256];
+	}
+	
+	@Override
+	public boolean next() throws IOException
+	{
+		int length;
+		while ((length = this.readLine()) >= 0)
+		{
+			if (this.parse(length))
+				return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Copy the next line in the line buffer, without its terminator
+	 * 
+	 * @return the length of the line, -1 if the trace is over
+	 */
+	private int readLine() throws IOException
+	{
+		int length = 0;
+		boolean empty = true;
+		while (true)
+		{
+			if (this.position == this.limit)
+			{
+				this.limit = this.reader.read(this.buffer);
+				this.position = 0;
+				if (this.limit <= 0)
+				{
+					this.limit = 0;
+					return empty ? -1 : length;
+				}
+			}
+			
+			char c = this.buffer[this.position++];
+			empty = false;
+			if (c == '\n')
+				return length;
+			if (c != '\r')
+			{
+				if (length == this.line.length)
+				{
+					char[] larger = new char[2 * length];
+					System.arraycopy(this.line, 0, larger, 0, length);
+					this.line = larger;
+				}
+				this.line[length++] = c;
+			}
+		}
+	}
+	
+	/**
+	 * Parse the current line
+	 * 
+	 * @param length
+	 *            the length of the line
+	 * @return false if the line does not hold an event
+	 */
+	private boolean parse(int length)
+	{
+		char[] chars = this.line;
+		
+		// timestamp
+		int start = this.skipSpaces(0, length);
+		long value = 0;
+		int i = start;
+		for (; i < length && chars[i] >= '0' && chars[i] <= '9'; i++)
+			value = 10 * value + (chars[i] - '0');
+		if (i == start)
+			return false;
+		i = this.skipSpaces(i, length);
+		if (i == length || chars[i] != ',')
+			return false;
+		
+		// device URI
+		int deviceStart = this.skipSpaces(i + 1, length);
+		int deviceEnd = deviceStart;
+		while (deviceEnd < length && chars[deviceEnd] != ',')
+			deviceEnd++;
+		if (deviceEnd == length)
+			return false;
+		int stateStart = this.skipSpaces(deviceEnd + 1, length);
+		deviceEnd = this.trimSpaces(deviceStart, deviceEnd);
+		
+		// state name, up to an optional further field
+		int stateEnd = stateStart;
+		while (stateEnd < length && chars[stateEnd] != ',')
+			stateEnd++;
+		stateEnd = this.trimSpaces(stateStart, stateEnd);
+		
+		this.timestamp = value;
+		this.device = this.devices.get(chars, deviceStart, deviceEnd - deviceStart);
+		this.state = (this.device != ConsumptionTable.UNKNOWN) ? this.getStateIndex(this.device, stateStart,
+				stateEnd - stateStart) : ConsumptionTable.UNKNOWN;
+		
+		return true;
+	}
+	
+	/**
+	 * Get the index of the state of a device whose name (ignoring case) is in
+	 * the given slice of the line
+	 */
+	private int getStateIndex(int device, int offset, int length)
+	{
+		for (int state = 0; state < this.table.getStateCount(device); state++)
+		{
+			String name = this.table.getStateName(device, state);
+			if (name.length() == length)
+			{
+				int i = 0;
+				while (i < length && CsvTraceReader.equalsIgnoreCase(name.charAt(i), this.line[offset + i]))
+					i++;
+				if (i == length)
+					return state;
+			}
+		}
+		
+		return ConsumptionTable.UNKNOWN;
+	}
+	
+	/**
+	 * Compare two chars ignoring case, as String#equalsIgnoreCase does
+	 */
+	private static boolean equalsIgnoreCase(char a, char b)
+	{
+		return a == b || Character.toUpperCase(a) == Character.toUpperCase(b)
+				|| Character.toLowerCase(a) == Character.toLowerCase(b);
+	}
+	
+	/**
+	 * @return the position of the first non-blank char from the given one
+	 */
+	private int skipSpaces(int from, int to)
+	{
+		while (from < to && (this.line[from] == ' ' || this.line[from] == '\t'))
+			from++;
+		
+		return from;
+	}
+	
+	/**
+	 * @return the end of the slice without its trailing blanks
+	 */
+	private int trimSpaces(int from, int to)
+	{
+		while (to > from && (this.line[to - 1] == ' ' || this.line[to - 1] == '\t'))
+			to--;
+		
+		return to;
+	}
+	
+	@Override
+	public long getTimestamp()
+	{
+		return this.timestamp;
+	}
+	
+	@Override
+	public int getDevice()
+	{
+		return this.device;
+	}
+	
+	@Override
+	public int getState()
+	{
+		return this.state;
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		this.reader.close();
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.simulation;
+
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+
+import java.util.Set;
+
+/**
+ * An open addressing index from the device keys of a {@link ConsumptionTable}
+ * (device URIs and their full IRI and prefixed name aliases, see
+ * {@link it.polito.elite.dog.addons.powermodel.device.DeviceKeyIndex}) to
+ * their device ids, probed directly with a slice of a character buffer, so
+ * that parsing a trace line does not need to create a String.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+class KeyIndex
+{
+	// the indexed keys, null for free slots
+	private final String[] keys;
+	
+	// the value of each key
+	private final int[] values;
+	
+	// the number of slots minus 1
+	private final int mask;
+	
+	/**
+	 * Build the index of the device keys of a table
+	 * 
+	 * @param table
+	 *            the {@link ConsumptionTable}
+	 */
+	KeyIndex(ConsumptionTable table)
+	{
+		Set<String> deviceKeys = table.getDeviceKeys();
+		
+		// at most half full
+		int capacity = 2;
+		while (capacity < 2 * deviceKeys.size())
+			capacity <<= 1;
+		
+		this.keys = new String[capacity];
+		this.values = new int[capacity];
+		this.mask = capacity - 1;
+		
+		for (String key : deviceKeys)
+		{
+			int slot = KeyIndex.hash(key) & this.mask;
+			while (this.keys[slot] != null)
+				slot = (slot + 1) & this.mask;
+			this.keys[slot] = key;
+			this.values[slot] = table.getDeviceId(key);
+		}
+	}
+	
+	/**
+	 * Get the value of the key held in a slice of a buffer
+	 * 
+	 * @param buffer
+	 *            the buffer
+	 * @param offset
+	 *            the start of the key
+	 * @param length
+	 *            the length of the key
+	 * @return the value, or {@link ConsumptionTable#UNKNOWN} if not indexed
+	 */
+	int get(char[] buffer, int offset, int length)
+	{
+		int hash = 0;
+		for (int i = offset; i < offset + length; i++)
+			hash = 31 * hash + buffer[i];
+		
+		int slot = KeyIndex.spread(hash) & this.mask;
+		while (this.keys[slot] != null)
+		{
+			if (KeyIndex.matches(this.keys[slot], buffer, offset, length))
+				return this.values[slot];
+			slot = (slot + 1) & this.mask;
+		}
+		
+		return ConsumptionTable.UNKNOWN;
+	}
+	
+	/**
+	 * Check if a slice of a buffer holds the given key
+	 */
+	private static boolean matches(String key, char[] buffer, int offset, int length)
+	{
+		if (key.length() != length)
+			return false;
+		
+		for (int i = 0; i < length; i++)
+			if (key.charAt(i) != buffer[offset + i])
+				return false;
+		
+		return true;
+	}
+	
+	/**
+	 * The hash of a key, consistent with the hash of a buffer slice
+	 */
+	private static int hash(String key)
+	{
+		return KeyIndex.spread(key.hashCode());
+	}
+	
+	/**
+	 * Spread the high bits of a hash over the low ones
+	 */
+	private static int spread(int hash)
+	{
+		return hash ^ (hash >>> 16);
+	}
+}
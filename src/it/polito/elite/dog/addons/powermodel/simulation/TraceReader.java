@@ -0,0 +1,70 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.simulation;
+
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+
+import java.io.IOException;
+
+/**
+ * A streaming reader of device state-change traces. Events are resolved
+ * against a {@link ConsumptionTable} while reading, and exposed one at a time
+ * through primitive getters, so that a trace is replayed without allocating
+ * any object per event.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public interface TraceReader
+{
+	/**
+	 * Move to the next event of the trace
+	 * 
+	 * @return false if the trace is over
+	 * @throws IOException
+	 *             if the trace cannot be read
+	 */
+	public boolean next() throws IOException;
+	
+	/**
+	 * @return the instant of the current event, in ms since the epoch
+	 */
+	public long getTimestamp();
+	
+	/**
+	 * @return the device id of the current event, or
+	 *         {@link ConsumptionTable#UNKNOWN} if the device is not in the
+	 *         table
+	 */
+	public int getDevice();
+	
+	/**
+	 * @return the state index of the current event, or
+	 *         {@link ConsumptionTable#UNKNOWN} if the device or the state are
+	 *         not in the table
+	 */
+	public int getState();
+	
+	/**
+	 * Release the underlying stream
+	 * 
+	 * @throws IOException
+	 *             if the stream cannot be closed
+	 */
+	public void close() throws IOException;
+}
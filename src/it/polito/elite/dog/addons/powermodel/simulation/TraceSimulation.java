@@ -0,0 +1,346 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.simulation;
+
+import it.polito.elite.dog.addons.powermodel.api.SimulationResult;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+import it.polito.elite.dog.addons.powermodel.device.LoadProfile;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The discrete-event replay of a single trace. The state, power and energy of
+ * each device are kept in primitive arrays indexed by device id, and the load
+ * curve in a primitive array grown by doubling, so the event loop does not
+ * allocate any object per event. States with a load profile follow it from
+ * the instant they are entered, both in the energy and in the load curve,
+ * while the peak is bounded by the peaks of the profiles between events. A
+ * simulation is not thread-safe, but independent simulations can run in
+ * parallel.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+class TraceSimulation
+{
+	// milliseconds in one hour, to convert W*ms in Wh
+	private static final double MS_PER_HOUR = 3600000.0;
+	
+	// the consumption table the events refer to
+	private final ConsumptionTable table;
+	
+	// the power of each state of each device, in W
+	private final double[][] statePower;
+	
+	// the load profile of each state of each device, null if flat
+	private final LoadProfile[][] profiles;
+	
+	// the duration of a slot of the load curve, in ms
+	private final long slotDuration;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param table
+	 *            the {@link ConsumptionTable} the events refer to
+	 * @param statePower
+	 *            the power of each state of each device, in W, indexed by
+	 *            device id and state index; states with a load profile follow
+	 *            the profile instead
+	 * @param slotDuration
+	 *            the duration of a slot of the load curve, in ms
+	 */
+	TraceSimulation(ConsumptionTable table, double[][] statePower, long slotDuration)
+	{
+		this.table = table;
+		this.statePower = statePower;
+		this.slotDuration = slotDuration;
+		
+		this.profiles = new LoadProfile[table.size()][];
+		for (int device = 0; device < table.size(); device++)
+		{
+			this.profiles[device] = new LoadProfile[table.getStateCount(device)];
+			for (int state = 0; state < this.profiles[device].length; state++)
+				this.profiles[device][state] = table.getLoadProfile(device, state);
+		}
+	}
+	
+	/**
+	 * @return the consumption table the events refer to
+	 */
+	ConsumptionTable getTable()
+	{
+		return this.table;
+	}
+	
+	/**
+	 * Replay a trace
+	 * 
+	 * @param name
+	 *            the name of the trace
+	 * @param reader
+	 *            the {@link TraceReader} of the trace
+	 * @return the {@link SimulationResult}
+	 * @throws IOException
+	 *             if the trace cannot be read
+	 */
+	SimulationResult run(String name, TraceReader reader) throws IOException
+	{
+		// init
+		int size = this.table.size();
+		double[] power = new double[size];
+		long[] since = new long[size];
+		double[] energy = new double[size];
+		boolean[] seen = new boolean[size];
+		
+		// the current state of each device, the instant it was entered and
+		// the devices following a load profile, with their position
+		int[] states = new int[size];
+		long[] entered = new long[size];
+		int[] active = new int[size];
+		int[] position = new int[size];
+		int activeCount = 0;
+		Arrays.fill(states, ConsumptionTable.UNKNOWN);
+		Arrays.fill(position, -1);
+		
+		// the energy of each slot, in W*ms
+		double[] curve = new double[1024];
+		long firstSlot = 0;
+		
+		// the power of the devices in a flat state, in W
+		double total = 0.0;
+		double peak = 0.0;
+		long now = 0;
+		long events = 0;
+		long skipped = 0;
+		boolean started = false;
+		
+		// event loop
+		while (reader.next())
+		{
+			int device = reader.getDevice();
+			int state = reader.getState();
+			if (state == ConsumptionTable.UNKNOWN)
+			{
+				skipped++;
+				continue;
+			}
+			
+			// late events are simultaneous to the latest one
+			long timestamp = reader.getTimestamp();
+			if (!started)
+			{
+				now = timestamp;
+				firstSlot = TraceSimulation.floorDiv(timestamp, this.slotDuration);
+				started = true;
+			}
+			else if (timestamp > now)
+			{
+				curve = this.accumulate(curve, firstSlot, total, now, timestamp);
+				double highest = total;
+				for (int i = 0; i < activeCount; i++)
+				{
+					int profiled = active[i];
+					LoadProfile profile = this.profiles[profiled][states[profiled]];
+					this.accumulate(curve, firstSlot, profile, entered[profiled], now, timestamp);
+					highest += profile.getPeak((now - entered[profiled]) / 1000.0,
+							(timestamp - entered[profiled]) / 1000.0);
+				}
+				peak = Math.max(peak, highest);
+				now = timestamp;
+			}
+			
+			// device counters
+			if (seen[device])
+				energy[device] += this.getEnergy(device, states[device], power[device], entered[device],
+						since[device], now);
+			since[device] = now;
+			seen[device] = true;
+			
+			// switch state; a profile restarts only on a state change
+			if (state != states[device])
+			{
+				entered[device] = now;
+				if (position[device] >= 0)
+				{
+					// remove the device from the profiled ones
+					int moved = active[--activeCount];
+					active[position[device]] = moved;
+					position[moved] = position[device];
+					position[device] = -1;
+				}
+				if (this.profiles[device][state] != null)
+				{
+					position[device] = activeCount;
+					active[activeCount++] = device;
+				}
+				states[device] = state;
+			}
+			double newPower = this.profiles[device][state] == null ? this.statePower[device][state] : 0.0;
+			total += newPower - power[device];
+			power[device] = newPower;
+			
+			double current = total;
+			for (int i = 0; i < activeCount; i++)
+			{
+				int profiled = active[i];
+				current += this.profiles[profiled][states[profiled]].getPower((now - entered[profiled]) / 1000.0);
+			}
+			peak = Math.max(peak, current);
+			events++;
+		}
+		
+		// close the device counters at the end of the trace
+		Map<String, Double> deviceEnergy = new HashMap<String, Double>();
+		double totalEnergy = 0.0;
+		for (int device = 0; device < size; device++)
+		{
+			if (seen[device])
+			{
+				energy[device] += this.getEnergy(device, states[device], power[device], entered[device],
+						since[device], now);
+				deviceEnergy.put(this.table.getDeviceURI(device), energy[device] / TraceSimulation.MS_PER_HOUR);
+				totalEnergy += energy[device];
+			}
+		}
+		
+		// average power of each slot
+		int slots = started ? (int) (TraceSimulation.floorDiv(now, this.slotDuration) - firstSlot + 1) : 0;
+		float[] loadCurve = new float[slots];
+		for (int slot = 0; slot < slots && slot < curve.length; slot++)
+			loadCurve[slot] = (float) (curve[slot] / this.slotDuration);
+		
+		return new SimulationResult(name, firstSlot * this.slotDuration, this.slotDuration, loadCurve, deviceEnergy,
+				totalEnergy / TraceSimulation.MS_PER_HOUR, peak, events, skipped);
+	}
+	
+	/**
+	 * Add the energy of a constant household power over an interval to the
+	 * slots it spans
+	 * 
+	 * @param curve
+	 *            the energy of each slot, in W*ms
+	 * @param firstSlot
+	 *            the absolute index of the first slot of the curve
+	 * @param power
+	 *            the household power over the interval, in W
+	 * @param from
+	 *            the start of the interval, in ms
+	 * @param to
+	 *            the end of the interval, in ms
+	 * @return the curve, grown if needed
+	 */
+	private double[] accumulate(double[] curve, long firstSlot, double power, long from, long to)
+	{
+		long slot = TraceSimulation.floorDiv(from, this.slotDuration);
+		int index = (int) (slot - firstSlot);
+		long end = (slot + 1) * this.slotDuration;
+		
+		// grow the curve up to the last slot spanned
+		int last = (int) (TraceSimulation.floorDiv(to, this.slotDuration) - firstSlot);
+		if (last >= curve.length)
+			curve = Arrays.copyOf(curve, Math.max(last + 1, 2 * curve.length));
+		
+		if (power == 0.0)
+			return curve;
+		
+		while (from < to)
+		{
+			long until = Math.min(to, end);
+			curve[index++] += power * (until - from);
+			from = until;
+			end += this.slotDuration;
+		}
+		
+		return curve;
+	}
+	
+	/**
+	 * Add the energy of a load profile over an interval to the slots it
+	 * spans; the curve must already span the interval
+	 * 
+	 * @param curve
+	 *            the energy of each slot, in W*ms
+	 * @param firstSlot
+	 *            the absolute index of the first slot of the curve
+	 * @param profile
+	 *            the {@link LoadProfile} followed over the interval
+	 * @param entered
+	 *            the instant the profile started, in ms
+	 * @param from
+	 *            the start of the interval, in ms
+	 * @param to
+	 *            the end of the interval, in ms
+	 */
+	private void accumulate(double[] curve, long firstSlot, LoadProfile profile, long entered, long from, long to)
+	{
+		long slot = TraceSimulation.floorDiv(from, this.slotDuration);
+		int index = (int) (slot - firstSlot);
+		long end = (slot + 1) * this.slotDuration;
+		
+		while (from < to)
+		{
+			long until = Math.min(to, end);
+			curve[index++] += 1000.0 * profile.getEnergy((from - entered) / 1000.0, (until - entered) / 1000.0);
+			from = until;
+			end += this.slotDuration;
+		}
+	}
+	
+	/**
+	 * Get the energy consumed by a device in its state over an interval
+	 * 
+	 * @param device
+	 *            the device id
+	 * @param state
+	 *            the state index
+	 * @param power
+	 *            the power of a flat state, in W
+	 * @param entered
+	 *            the instant the state was entered, in ms
+	 * @param from
+	 *            the start of the interval, in ms
+	 * @param to
+	 *            the end of the interval, in ms
+	 * @return the energy, in W*ms
+	 */
+	private double getEnergy(int device, int state, double power, long entered, long from, long to)
+	{
+		LoadProfile profile = this.profiles[device][state];
+		if (profile == null)
+			return power * (to - from);
+		
+		return 1000.0 * profile.getEnergy((from - entered) / 1000.0, (to - entered) / 1000.0);
+	}
+	
+	/**
+	 * The largest multiple of the divisor not greater than the dividend,
+	 * divided by the divisor
+	 */
+	private static long floorDiv(long dividend, long divisor)
+	{
+		long quotient = dividend / divisor;
+		if ((dividend % divisor != 0) && ((dividend < 0) != (divisor < 0)))
+			quotient--;
+		
+		return quotient;
+	}
+}
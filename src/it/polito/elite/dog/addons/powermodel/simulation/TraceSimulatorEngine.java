@@ -0,0 +1,209 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.simulation;
+
+import it.polito.elite.dog.addons.powermodel.api.SimulationResult;
+import it.polito.elite.dog.addons.powermodel.api.TraceSimulator;
+import it.polito.elite.dog.addons.powermodel.concurrent.ParallelTasks;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+import it.polito.elite.dog.addons.powermodel.learning.ConsumptionEstimator;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Implementation of the {@link TraceSimulator} service. The power of each
+ * device state (learned, if trusted, or declared) is frozen when a replay
+ * starts; each trace is then streamed through its own {@link TraceSimulation}
+ * and independent traces are replayed in parallel on the shared pool of the
+ * bundle.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class TraceSimulatorEngine implements TraceSimulator
+{
+	// the learned consumptions, preferred to the declared ones
+	private ConsumptionEstimator consumptionEstimator;
+	
+	// the consumption table to replay traces against
+	private volatile ConsumptionTable table;
+	
+	// the shared pool replaying traces in parallel, if any
+	private volatile Executor executor;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param consumptionEstimator
+	 *            the {@link ConsumptionEstimator} providing the learned
+	 *            consumption of the device states
+	 */
+	public TraceSimulatorEngine(ConsumptionEstimator consumptionEstimator)
+	{
+		this.consumptionEstimator = consumptionEstimator;
+		this.table = ConsumptionTable.EMPTY;
+	}
+					
+	/**
+	 * Set the shared pool replaying traces in parallel
+	 * 
+	 * @param executor
+	 *            the shared {@link Executor}, null for replaying all the
+	 *            traces on the calling thread
+	 */
+	public void setExecutor(Executor executor)
+	{
+		this.executor = executor;
+	}
+	
+	/**
+	 * Set the consumption table to replay the traces against, e.g., after a
+	 * model (re)load
+	 * 
+	 * @param table
+	 *            the new {@link ConsumptionTable}
+	 */
+	public void setConsumptionTable(ConsumptionTable table)
+	{
+		this.table = table;
+	}
+	
+	@Override
+	public SimulationResult simulate(File trace, long slotDuration) throws IOException
+	{
+		return this.simulate(this.newSimulation(slotDuration), trace);
+	}
+	
+	@Override
+	public List<SimulationResult> simulateAll(List<File> traces, long slotDuration) throws IOException
+	{
+		final TraceSimulation simulation = this.newSimulation(slotDuration);
+		List<Callable<SimulationResult>> tasks = new ArrayList<Callable<SimulationResult>>(traces.size());
+		for (final File trace : traces)
+		{
+			tasks.add(new Callable<SimulationResult>() {
+				
+				@Override
+				public SimulationResult call() throws IOException
+				{
+					return TraceSimulatorEngine.this.simulate(simulation, trace);
+				}
+			});
+		}
+		
+		try
+		{
+			return ParallelTasks.invokeAll(this.executor, tasks);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Trace simulation interrupted", e);
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IllegalStateException("Trace simulation failed", e.getCause());
+		}
+	}
+	
+	/**
+	 * Prepare a simulation over the current consumption table
+	 * 
+	 * @param slotDuration
+	 *            the duration of a slot of the load curve, in ms
+	 * @return the {@link TraceSimulation}
+	 */
+	private TraceSimulation newSimulation(long slotDuration)
+	{
+		if (slotDuration <= 0)
+			throw new IllegalArgumentException("The slot duration must be greater than 0");
+		
+		ConsumptionTable current = this.table;
+		double[][] statePower = new double[current.size()][];
+		for (int device = 0; device < current.size(); device++)
+		{
+			statePower[device] = new double[current.getStateCount(device)];
+			for (int state = 0; state < statePower[device].length; state++)
+			{
+				double learned = this.consumptionEstimator.getLearnedConsumption(current, device, state);
+				statePower[device][state] = Double.isNaN(learned) ? current.getBestConsumption(device, state)
+						: learned;
+			}
+		}
+		
+		return new TraceSimulation(current, statePower, slotDuration);
+	}
+	
+	/**
+	 * Replay a trace file, detecting its format from its header
+	 * 
+	 * @param simulation
+	 *            the {@link TraceSimulation} to run
+	 * @param trace
+	 *            the trace file
+	 * @return the {@link SimulationResult}
+	 * @throws IOException
+	 *             if the trace cannot be read
+	 */
+	private SimulationResult simulate(TraceSimulation simulation, File trace) throws IOException
+	{
+		InputStream in = new BufferedInputStream(new FileInputStream(trace), 65536);
+		TraceReader reader = null;
+		try
+		{
+			// binary traces start with a magic number
+			in.mark(4);
+			int magic = 0;
+			int read = 0;
+			int b;
+			while (read < 4 && (b = in.read()) >= 0)
+			{
+				magic = (magic << 8) | b;
+				read++;
+			}
+			in.reset();
+			
+			ConsumptionTable current = simulation.getTable();
+			if (read == 4 && magic == BinaryTraceWriter.MAGIC)
+				reader = new BinaryTraceReader(in, current);
+			else
+				reader = new CsvTraceReader(new InputStreamReader(in, "UTF-8"), current);
+			
+			return simulation.run(trace.getName(), reader);
+		}
+		finally
+		{
+			if (reader != null)
+				reader.close();
+			else
+				in.close();
+		}
+	}
+}
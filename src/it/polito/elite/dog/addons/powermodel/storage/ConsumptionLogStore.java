@@ -0,0 +1,734 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.storage;
+
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionLog;
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionLogVisitor;
+import it.polito.elite.dog.addons.powermodel.concurrent.SerialExecutor;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Implementation of the {@link ConsumptionLog} service, as a folder of
+ * memory-mapped {@link LogSegment} files and a {@link DeviceDictionary}.
+ * <br/>
+ * Raw samples are stored as 16-byte records (timestamp, device id, power as a
+ * float); when the number of raw segments exceeds a threshold, the oldest
+ * segment is compacted, in background, into 32-byte per-minute rollup records
+ * (minute start, device id, samples, min, max and mean power) and then
+ * deleted. The oldest rollup segments are deleted as well, when exceeding
+ * their own threshold, so that the disk space used by the log is bounded.
+ * <br/>
+ * Appends run concurrently: each one reserves its record in the newest raw
+ * segment and publishes it in record order, and only the appender filling a
+ * segment rolls the next one.<br/>
+ * Each minute of a device is rolled up once: a minute spanning two raw
+ * segments is merged into the rollup of the first one. Deleted segments are
+ * unmapped right away, once no scan is reading them; when the JVM does not
+ * allow it (see {@link LogSegment#unmap()}), their disk space is only freed
+ * once the garbage collector releases the mapping, and the files that
+ * cannot be deleted while mapped (e.g., on Windows) are kept until then.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class ConsumptionLogStore implements ConsumptionLog
+{
+	// segment kinds
+	public static final int RAW = 0;
+	public static final int ROLLUP = 1;
+	
+	// record sizes, in bytes
+	public static final int RAW_RECORD_SIZE = 16;
+	public static final int ROLLUP_RECORD_SIZE = 32;
+	
+	// default number of records per segment (4 MB raw segments)
+	public static final int DEFAULT_SEGMENT_RECORDS = 262144;
+	
+	// default maximum number of raw and rollup segments
+	public static final int DEFAULT_MAX_RAW_SEGMENTS = 16;
+	public static final int DEFAULT_MAX_ROLLUP_SEGMENTS = 64;
+	
+	// one minute, in ms
+	private static final long MINUTE = 60000L;
+	
+	// segment file names
+	private static final String RAW_PREFIX = "raw-";
+	private static final String ROLLUP_PREFIX = "rollup-";
+	private static final String SEGMENT_SUFFIX = ".seg";
+	private static final String DICTIONARY = "devices.dict";
+	
+	// the log folder
+	private final File folder;
+	
+	// the number of records in new segments
+	private final int segmentRecords;
+	
+	// the maximum number of raw segments kept before compaction
+	private final int maxRawSegments;
+	
+	// the maximum number of rollup segments kept
+	private final int maxRollupSegments;
+	
+	// the device ids
+	private final DeviceDictionary dictionary;
+	
+	// the raw and rollup segments, oldest first
+	private final List<LogSegment> rawSegments;
+	private final List<LogSegment> rollupSegments;
+	
+	// the sequence number of the next segment file
+	private long nextSequence;
+	
+	// serializes the appenders rolling a new raw segment
+	private final Object rollLock;
+	
+	// the executor compacting the old raw segments, one at a time, on the
+	// shared pool
+	private final ExecutorService compactor;
+	
+	// guards the segment buffers: scans read them, deletions unmap them
+	private final ReadWriteLock segmentLock;
+	
+	// true once the log has been closed
+	private volatile boolean closed;
+	
+	// the files of the deleted segments still mapped, to be deleted again
+	private final List<File> pendingDeletions;
+	
+	// the minute of the latest rollup of each device, with the segment and
+	// the offset of its record, to merge a minute spanning two raw segments;
+	// only accessed by the compactor
+	private long[] lastMinutes;
+	private LogSegment[] lastSegments;
+	private int[] lastOffsets;
+	
+	/**
+	 * Open (or create) a consumption log with default sizes
+	 * 
+	 * @param folder
+	 *            the log folder
+	 * @param executor
+	 *            the shared {@link Executor} running the compactions
+	 * @throws IOException
+	 *             if the log cannot be opened
+	 */
+	public ConsumptionLogStore(File folder, Executor executor) throws IOException
+	{
+		this(folder, executor, ConsumptionLogStore.DEFAULT_SEGMENT_RECORDS,
+				ConsumptionLogStore.DEFAULT_MAX_RAW_SEGMENTS, ConsumptionLogStore.DEFAULT_MAX_ROLLUP_SEGMENTS);
+	}
+	
+	/**
+	 * Open (or create) a consumption log
+	 * 
+	 * @param folder
+	 *            the log folder
+	 * @param executor
+	 *            the shared {@link Executor} running the compactions
+	 * @param segmentRecords
+	 *            the number of records in new segments
+	 * @param maxRawSegments
+	 *            the maximum number of raw segments kept before compaction
+	 * @param maxRollupSegments
+	 *            the maximum number of rollup segments kept
+	 * @throws IOException
+	 *             if the log cannot be opened
+	 */
+	public ConsumptionLogStore(File folder, Executor executor, int segmentRecords, int maxRawSegments,
+			int maxRollupSegments) throws IOException
+	{
+		if (!folder.isDirectory() && !folder.mkdirs())
+			throw new IOException("Unable to create the consumption log folder " + folder);
+		
+		this.folder = folder;
+		this.segmentRecords = segmentRecords;
+		this.maxRawSegments = Math.max(1, maxRawSegments);
+		this.maxRollupSegments = Math.max(1, maxRollupSegments);
+		this.dictionary = new DeviceDictionary(new File(folder, ConsumptionLogStore.DICTIONARY));
+		this.rawSegments = new CopyOnWriteArrayList<LogSegment>();
+		this.rollupSegments = new CopyOnWriteArrayList<LogSegment>();
+		this.compactor = new SerialExecutor(executor);
+		this.segmentLock = new ReentrantReadWriteLock();
+		this.rollLock = new Object();
+		this.pendingDeletions = new CopyOnWriteArrayList<File>();
+		this.lastMinutes = new long[0];
+		this.lastSegments = new LogSegment[0];
+		this.lastOffsets = new int[0];
+		
+		// open the existing segments
+		this.openSegments(ConsumptionLogStore.RAW_PREFIX, this.rawSegments);
+		this.openSegments(ConsumptionLogStore.ROLLUP_PREFIX, this.rollupSegments);
+		
+		// recover the latest rollups from the newest segment
+		if (!this.rollupSegments.isEmpty())
+		{
+			LogSegment newest = this.rollupSegments.get(this.rollupSegments.size() - 1);
+			for (int record = 0; record < newest.getCount(); record++)
+			{
+				int offset = newest.getOffset(record);
+				this.trackRollup(newest.getBuffer().getInt(offset + 8),
+						newest.getBuffer().getLong(offset) / ConsumptionLogStore.MINUTE, newest, offset);
+			}
+		}
+		
+		// compact what exceeds the threshold
+		this.scheduleCompaction();
+	}
+	
+	/**
+	 * Open all the existing segments with the given prefix, in sequence order
+	 */
+	private void openSegments(final String prefix, List<LogSegment> segments) throws IOException
+	{
+		String[] names = this.folder.list(new FilenameFilter() {
+			
+			@Override
+			public boolean accept(File dir, String name)
+			{
+				return name.startsWith(prefix) && name.endsWith(ConsumptionLogStore.SEGMENT_SUFFIX);
+			}
+		});
+		
+		// fixed-width sequence numbers: name order is sequence order
+		Arrays.sort(names);
+		for (String name : names)
+		{
+			segments.add(LogSegment.open(new File(this.folder, name)));
+			
+			long sequence = Long.parseLong(name.substring(prefix.length(),
+					name.length() - ConsumptionLogStore.SEGMENT_SUFFIX.length()));
+			this.nextSequence = Math.max(this.nextSequence, sequence + 1);
+		}
+	}
+	
+	@Override
+	public boolean append(String deviceURI, long timestamp, double power)
+	{
+		// a zero timestamp marks the end of a segment
+		if (timestamp <= 0 || this.closed)
+			return false;
+		
+		try
+		{
+			int device = this.dictionary.intern(deviceURI);
+			this.appendRaw(device, timestamp, (float) power);
+		}
+		catch (IOException e)
+		{
+			return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Append a raw sample, rolling a new segment if needed; concurrent
+	 * appends only contend on the reservation of their record
+	 */
+	private void appendRaw(int device, long timestamp, float power) throws IOException
+	{
+		boolean rolled = false;
+		
+		// segments are only unmapped under the write lock
+		this.segmentLock.readLock().lock();
+		try
+		{
+			if (this.closed)
+				throw new IOException("The consumption log is closed");
+		
+			LogSegment segment;
+			int record;
+			while (true)
+			{
+				segment = this.rawSegments.isEmpty() ? null : this.rawSegments.get(this.rawSegments.size() - 1);
+				record = (segment != null) ? segment.reserve() : -1;
+				if (record != -1)
+					break;
+				rolled |= this.rollRawSegment(segment);
+			}
+			
+			// write the timestamp last
+			MappedByteBuffer buffer = segment.getBuffer();
+			int offset = segment.getOffset(record);
+			buffer.putInt(offset + 8, device);
+			buffer.putFloat(offset + 12, power);
+			buffer.putLong(offset, timestamp);
+			segment.publish(record, timestamp);
+		}
+		finally
+		{
+			this.segmentLock.readLock().unlock();
+		}
+		
+		// a new segment has been rolled: compact the oldest ones, if needed,
+		// out of the read lock taken by the deletions
+		if (rolled && this.rawSegments.size() > this.maxRawSegments)
+			this.scheduleCompaction();
+	}
+		
+	/**
+	 * Roll a new raw segment after the given full one, unless another
+	 * appender already did it
+	 * 
+	 * @return true if a new segment has been rolled
+	 */
+	private boolean rollRawSegment(LogSegment full) throws IOException
+	{
+		synchronized (this.rollLock)
+		{
+			LogSegment last = this.rawSegments.isEmpty() ? null : this.rawSegments.get(this.rawSegments.size() - 1);
+			if (last != full)
+				return false;
+			
+			this.rawSegments.add(this.createSegment(ConsumptionLogStore.RAW, ConsumptionLogStore.RAW_RECORD_SIZE));
+			
+			return true;
+		}
+	}
+	
+	/**
+	 * Roll up a minute of a device: merge it into the latest rollup of the
+	 * device if it is the same minute, append a new rollup otherwise
+	 */
+	private void rollup(int device, long minute, float min, float max, float mean, int samples)
+			throws IOException
+	{
+		if (device < this.lastMinutes.length && this.lastMinutes[device] == minute
+				&& this.lastSegments[device] != null && !this.lastSegments[device].isUnmapped())
+		{
+			// the record is rewritten in place: keep the scans out
+			this.segmentLock.writeLock().lock();
+			try
+			{
+				MappedByteBuffer buffer = this.lastSegments[device].getBuffer();
+				int offset = this.lastOffsets[device];
+				int previousSamples = buffer.getInt(offset + 12);
+				float previousMean = buffer.getFloat(offset + 24);
+				int total = previousSamples + samples;
+				buffer.putInt(offset + 12, total);
+				buffer.putFloat(offset + 16, Math.min(buffer.getFloat(offset + 16), min));
+				buffer.putFloat(offset + 20, Math.max(buffer.getFloat(offset + 20), max));
+				buffer.putFloat(offset + 24, (float) (((double) previousMean * previousSamples + (double) mean
+						* samples) / total));
+			}
+			finally
+			{
+				this.segmentLock.writeLock().unlock();
+			}
+		}
+		else
+			this.appendRollup(device, minute * ConsumptionLogStore.MINUTE, min, max, mean, samples);
+	}
+	
+	/**
+	 * Track the latest rollup of a device
+	 */
+	private void trackRollup(int device, long minute, LogSegment segment, int offset)
+	{
+		if (device >= this.lastMinutes.length)
+		{
+			int size = Math.max(device + 1, this.lastMinutes.length * 2);
+			long[] minutes = Arrays.copyOf(this.lastMinutes, size);
+			Arrays.fill(minutes, this.lastMinutes.length, size, -1);
+			this.lastMinutes = minutes;
+			this.lastSegments = Arrays.copyOf(this.lastSegments, size);
+			this.lastOffsets = Arrays.copyOf(this.lastOffsets, size);
+		}
+		
+		this.lastMinutes[device] = minute;
+		this.lastSegments[device] = segment;
+		this.lastOffsets[device] = offset;
+	}
+	
+	/**
+	 * Append a per-minute rollup
+	 */
+	private void appendRollup(int device, long start, float min, float max, float mean, int samples)
+			throws IOException
+	{
+		LogSegment segment = this.getWritableSegment(this.rollupSegments, ConsumptionLogStore.ROLLUP,
+				ConsumptionLogStore.ROLLUP_RECORD_SIZE);
+		
+		// write the timestamp last
+		MappedByteBuffer buffer = segment.getBuffer();
+		int offset = segment.nextOffset();
+		buffer.putInt(offset + 8, device);
+		buffer.putInt(offset + 12, samples);
+		buffer.putFloat(offset + 16, min);
+		buffer.putFloat(offset + 20, max);
+		buffer.putFloat(offset + 24, mean);
+		buffer.putLong(offset, start);
+		segment.publish(start);
+		this.trackRollup(device, start / ConsumptionLogStore.MINUTE, segment, offset);
+		
+		// drop the oldest rollups
+		while (this.rollupSegments.size() > this.maxRollupSegments)
+			this.delete(this.rollupSegments.remove(0));
+	}
+	
+	/**
+	 * Get the last segment of a list, creating a new one if it is full
+	 */
+	private LogSegment getWritableSegment(List<LogSegment> segments, int kind, int recordSize) throws IOException
+	{
+		LogSegment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+		if (last == null || last.isFull())
+		{
+			last = this.createSegment(kind, recordSize);
+			segments.add(last);
+		}
+		
+		return last;
+	}
+	
+	/**
+	 * Create a new segment, with the next sequence number
+	 */
+	private LogSegment createSegment(int kind, int recordSize) throws IOException
+	{
+		String prefix = (kind == ConsumptionLogStore.RAW) ? ConsumptionLogStore.RAW_PREFIX
+				: ConsumptionLogStore.ROLLUP_PREFIX;
+		File file;
+		synchronized (this.folder)
+		{
+			file = new File(this.folder, String.format("%s%019d%s", prefix, this.nextSequence++,
+					ConsumptionLogStore.SEGMENT_SUFFIX));
+		}
+		
+		return LogSegment.create(file, kind, recordSize, this.segmentRecords);
+	}
+	
+	/**
+	 * Compact the raw segments exceeding the threshold, in background
+	 */
+	private void scheduleCompaction()
+	{
+		if (this.closed)
+			return;
+			
+		try
+		{
+			this.compactor.execute(new Runnable() {
+				
+				@Override
+				public void run()
+				{
+					ConsumptionLogStore.this.compact();
+				}
+			});
+		}
+		catch (RejectedExecutionException e)
+		{
+			// closed in the meanwhile: the segments are compacted when the
+			// log is opened again
+		}
+	}
+	
+	/**
+	 * Compact the oldest raw segments into rollups, until the threshold is
+	 * respected; only full segments are compacted
+	 */
+	private void compact()
+	{
+		while (!this.closed && this.rawSegments.size() > this.maxRawSegments && this.rawSegments.get(0).isFull())
+		{
+			LogSegment oldest = this.rawSegments.get(0);
+			try
+			{
+				this.compact(oldest);
+			}
+			catch (IOException e)
+			{
+				// rollups cannot be written: keep the raw data
+				return;
+			}
+			
+			this.rawSegments.remove(oldest);
+			this.delete(oldest);
+		}
+	}
+	
+	/**
+	 * Compact a raw segment into per-minute rollups, one per device and
+	 * minute
+	 */
+	private void compact(LogSegment segment) throws IOException
+	{
+		// per-device accumulators
+		int devices = this.dictionary.size();
+		long[] minutes = new long[devices];
+		float[] min = new float[devices];
+		float[] max = new float[devices];
+		double[] sum = new double[devices];
+		int[] count = new int[devices];
+		Arrays.fill(minutes, -1);
+		
+		MappedByteBuffer buffer = segment.getBuffer();
+		for (int record = 0; record < segment.getCount(); record++)
+		{
+			int offset = segment.getOffset(record);
+			long minute = buffer.getLong(offset) / ConsumptionLogStore.MINUTE;
+			int device = buffer.getInt(offset + 8);
+			float power = buffer.getFloat(offset + 12);
+			
+			if (minutes[device] != minute)
+			{
+				if (count[device] > 0)
+					this.rollup(device, minutes[device], min[device], max[device],
+							(float) (sum[device] / count[device]), count[device]);
+				minutes[device] = minute;
+				min[device] = power;
+				max[device] = power;
+				sum[device] = power;
+				count[device] = 1;
+			}
+			else
+			{
+				min[device] = Math.min(min[device], power);
+				max[device] = Math.max(max[device], power);
+				sum[device] += power;
+				count[device]++;
+			}
+		}
+		
+		// flush the last minute of each device
+		for (int device = 0; device < devices; device++)
+		{
+			if (count[device] > 0)
+				this.rollup(device, minutes[device], min[device], max[device], (float) (sum[device] / count[device]),
+						count[device]);
+		}
+		this.segmentLock.readLock().lock();
+		try
+		{
+			for (LogSegment rollup : this.rollupSegments)
+				rollup.force();
+		}
+		finally
+		{
+			this.segmentLock.readLock().unlock();
+		}
+	}
+	
+	@Override
+	public void scanSamples(String deviceURI, long from, long to, ConsumptionLogVisitor visitor)
+	{
+		int filter = (deviceURI != null) ? this.dictionary.lookup(deviceURI) : -1;
+		if (deviceURI != null && filter == -1)
+			return;
+		
+		this.segmentLock.readLock().lock();
+		try
+		{
+			if (!this.closed)
+				this.scanSamples(filter, from, to, visitor);
+		}
+		finally
+		{
+			this.segmentLock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Scan the raw samples of a device (or of all the devices, if -1), with
+	 * the segments locked
+	 */
+	private void scanSamples(int filter, long from, long to, ConsumptionLogVisitor visitor)
+	{
+		for (LogSegment segment : this.rawSegments)
+		{
+			if (!segment.overlaps(from, to))
+				continue;
+			
+			MappedByteBuffer buffer = segment.getBuffer();
+			int records = segment.getCount();
+			for (int record = 0; record < records; record++)
+			{
+				int offset = segment.getOffset(record);
+				long timestamp = buffer.getLong(offset);
+				int device = buffer.getInt(offset + 8);
+				if (timestamp >= from && timestamp < to && (filter == -1 || device == filter))
+				{
+					if (!visitor.visitSample(this.dictionary.getURI(device), timestamp, buffer.getFloat(offset + 12)))
+						return;
+				}
+			}
+		}
+	}
+	
+	@Override
+	public void scanRollups(String deviceURI, long from, long to, ConsumptionLogVisitor visitor)
+	{
+		int filter = (deviceURI != null) ? this.dictionary.lookup(deviceURI) : -1;
+		if (deviceURI != null && filter == -1)
+			return;
+		
+		this.segmentLock.readLock().lock();
+		try
+		{
+			if (!this.closed)
+				this.scanRollups(filter, from, to, visitor);
+		}
+		finally
+		{
+			this.segmentLock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Scan the rollups of a device (or of all the devices, if -1), with the
+	 * segments locked
+	 */
+	private void scanRollups(int filter, long from, long to, ConsumptionLogVisitor visitor)
+	{
+		for (LogSegment segment : this.rollupSegments)
+		{
+			if (!segment.overlaps(from, to))
+				continue;
+			
+			MappedByteBuffer buffer = segment.getBuffer();
+			int records = segment.getCount();
+			for (int record = 0; record < records; record++)
+			{
+				int offset = segment.getOffset(record);
+				long start = buffer.getLong(offset);
+				int device = buffer.getInt(offset + 8);
+				if (start >= from && start < to && (filter == -1 || device == filter))
+				{
+					if (!visitor.visitRollup(this.dictionary.getURI(device), start, buffer.getFloat(offset + 16),
+							buffer.getFloat(offset + 20), buffer.getFloat(offset + 24), buffer.getInt(offset + 12)))
+						return;
+				}
+			}
+		}
+	}
+	
+	@Override
+	public void flush()
+	{
+		this.segmentLock.readLock().lock();
+		try
+		{
+			if (this.closed)
+				return;
+			
+			for (LogSegment segment : this.rawSegments)
+				segment.force();
+			for (LogSegment segment : this.rollupSegments)
+				segment.force();
+		}
+		finally
+		{
+			this.segmentLock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Flush and close the log, waiting for any pending compaction; the
+	 * segments are unmapped, and the log ignores any further request
+	 */
+	public void close()
+	{
+		if (this.closed)
+			return;
+		
+		this.compactor.shutdown();
+		boolean compacted = false;
+		try
+		{
+			compacted = this.compactor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		
+		this.flush();
+		
+		// appends hold the read lock
+		this.segmentLock.writeLock().lock();
+		try
+		{
+			this.closed = true;
+			
+			// a compaction still running keeps its segments mapped
+			if (compacted)
+			{
+				for (LogSegment segment : this.rawSegments)
+					segment.unmap();
+				for (LogSegment segment : this.rollupSegments)
+					segment.unmap();
+			}
+		}
+		finally
+		{
+			this.segmentLock.writeLock().unlock();
+		}
+		
+		this.dictionary.close();
+	}
+	
+	/**
+	 * Delete a segment file, once no scan is reading it, releasing its
+	 * mapping first; files still mapped and not deletable are retried at the
+	 * next deletion, once their mapping has been garbage collected
+	 */
+	private void delete(LogSegment segment)
+	{
+		this.segmentLock.writeLock().lock();
+		try
+		{
+			segment.unmap();
+		}
+		finally
+		{
+			this.segmentLock.writeLock().unlock();
+		}
+		
+		for (File file : this.pendingDeletions)
+			if (file.delete() || !file.exists())
+				this.pendingDeletions.remove(file);
+		
+		if (!segment.getFile().delete())
+		{
+			this.pendingDeletions.add(segment.getFile());
+			segment.getFile().deleteOnExit();
+		}
+	}
+	
+	/**
+	 * @return the log folder
+	 */
+	public File getFolder()
+	{
+		return this.folder;
+	}
+}
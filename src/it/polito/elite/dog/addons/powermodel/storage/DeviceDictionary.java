@@ -0,0 +1,200 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.storage;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A persistent, append-only dictionary assigning a dense integer id to each
+ * device URI stored in the consumption log. Ids are given in order of first
+ * appearance and saved one URI per line, so that log records only need to
+ * store the 4-byte id.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class DeviceDictionary
+{
+	// the encoding of the dictionary file
+	private static final String ENCODING = "UTF-8";
+	
+	// the dictionary file
+	private final File file;
+	
+	// device URI to id
+	private final ConcurrentMap<String, Integer> ids;
+	
+	// interned device URIs, indexed by id
+	private volatile String[] uris;
+	
+	// the number of assigned ids
+	private volatile int size;
+	
+	// the dictionary file writer
+	private Writer writer;
+	
+	/**
+	 * Open (or create) a dictionary
+	 * 
+	 * @param file
+	 *            the dictionary file
+	 * @throws IOException
+	 *             if the file cannot be read or created
+	 */
+	public DeviceDictionary(File file) throws IOException
+	{
+		this.file = file;
+		this.ids = new ConcurrentHashMap<String, Integer>();
+		this.uris = new String[64];
+		
+		// load the existing entries
+		if (file.exists())
+		{
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+					DeviceDictionary.ENCODING));
+			try
+			{
+				String line;
+				while ((line = reader.readLine()) != null)
+				{
+					if (!line.isEmpty())
+						this.add(line);
+				}
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		
+		this.writer = new OutputStreamWriter(new FileOutputStream(file, true), DeviceDictionary.ENCODING);
+	}
+	
+	/**
+	 * Get the id of a device URI, assigning a new one if needed
+	 * 
+	 * @param deviceURI
+	 *            the device URI
+	 * @return the device id
+	 * @throws IOException
+	 *             if a new id cannot be saved
+	 */
+	public int intern(String deviceURI) throws IOException
+	{
+		Integer id = this.ids.get(deviceURI);
+		if (id != null)
+			return id.intValue();
+		
+		synchronized (this)
+		{
+			id = this.ids.get(deviceURI);
+			if (id != null)
+				return id.intValue();
+			
+			// save first, so that an id is never given to an unsaved URI
+			this.writer.write(deviceURI);
+			this.writer.write('\n');
+			this.writer.flush();
+			
+			return this.add(deviceURI);
+		}
+	}
+	
+	/**
+	 * Get the id of a device URI, without assigning a new one
+	 * 
+	 * @param deviceURI
+	 *            the device URI
+	 * @return the device id, or -1 if the URI is not in the dictionary
+	 */
+	public int lookup(String deviceURI)
+	{
+		Integer id = this.ids.get(deviceURI);
+		
+		return (id != null) ? id.intValue() : -1;
+	}
+	
+	/**
+	 * @return the (interned) URI of the device with the given id
+	 */
+	public String getURI(int id)
+	{
+		return this.uris[id];
+	}
+	
+	/**
+	 * @return the number of devices in the dictionary
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+	
+	/**
+	 * Close the dictionary file
+	 */
+	public synchronized void close()
+	{
+		try
+		{
+			this.writer.close();
+		}
+		catch (IOException e)
+		{
+			// nothing to do, all the entries are flushed on write
+		}
+	}
+	
+	/**
+	 * @return the dictionary file
+	 */
+	public File getFile()
+	{
+		return this.file;
+	}
+	
+	/**
+	 * Add a URI in memory
+	 */
+	private synchronized int add(String deviceURI)
+	{
+		int id = this.size;
+		if (id == this.uris.length)
+		{
+			String[] grown = new String[id * 2];
+			System.arraycopy(this.uris, 0, grown, 0, id);
+			this.uris = grown;
+		}
+		
+		String interned = deviceURI.intern();
+		this.uris[id] = interned;
+		this.ids.put(interned, id);
+		this.size = id + 1;
+		
+		return id;
+	}
+}
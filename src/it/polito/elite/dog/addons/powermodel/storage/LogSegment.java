@@ -0,0 +1,405 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed-size, memory-mapped segment file of fixed-size records. The file
+ * starts with a 16-byte header (magic number, version, record size and
+ * segment kind), followed by the records. Every record starts with an 8-byte
+ * timestamp, written last: a zero timestamp marks the end of the segment,
+ * so that a partially written record is ignored when the segment is
+ * re-opened.<br/>
+ * Records are either appended by concurrent writers, each reserving its own
+ * record and publishing it in record order, or by a single writer through
+ * {@link LogSegment#nextOffset()}; readers use absolute reads on the mapped
+ * buffer, up to the number of records published by the writers. Once
+ * unmapped, the buffer must no longer be accessed: the owner of the segment
+ * is in charge of excluding the readers.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class LogSegment
+{
+	// the segment header size, in bytes
+	public static final int HEADER_SIZE = 16;
+	
+	// the magic number identifying a segment file ("DPLG")
+	public static final int MAGIC = 0x44504C47;
+	
+	// the current version of the segment format
+	public static final int VERSION = 1;
+	
+	// the segment file
+	private final File file;
+	
+	// the segment kind (raw samples or rollups)
+	private final int kind;
+	
+	// the record size, in bytes
+	private final int recordSize;
+	
+	// the maximum number of records
+	private final int capacity;
+	
+	// the mapped segment content
+	private final MappedByteBuffer buffer;
+	
+	// the number of records published to readers
+	private volatile int count;
+	
+	// the number of records reserved by the concurrent writers
+	private final AtomicInteger reserved;
+	
+	// the lowest and highest timestamps in the segment
+	private volatile long firstTimestamp;
+	private volatile long lastTimestamp;
+	
+	// true once the buffer has been unmapped
+	private volatile boolean unmapped;
+	
+	// true if the mapping has been released by unmapping the buffer, false
+	// if it is left to the garbage collector
+	private boolean released;
+	
+	/**
+	 * Map a segment file
+	 */
+	private LogSegment(File file, int kind, int recordSize, int capacity, MappedByteBuffer buffer)
+	{
+		this.file = file;
+		this.kind = kind;
+		this.recordSize = recordSize;
+		this.capacity = capacity;
+		this.buffer = buffer;
+		this.reserved = new AtomicInteger();
+		this.firstTimestamp = Long.MAX_VALUE;
+		this.lastTimestamp = Long.MIN_VALUE;
+	}
+	
+	/**
+	 * Create a new, empty segment
+	 * 
+	 * @param file
+	 *            the segment file to create
+	 * @param kind
+	 *            the segment kind
+	 * @param recordSize
+	 *            the record size, in bytes (at least 8)
+	 * @param capacity
+	 *            the maximum number of records
+	 * @return the mapped {@link LogSegment}
+	 * @throws IOException
+	 *             if the file cannot be created or mapped
+	 */
+	public static LogSegment create(File file, int kind, int recordSize, int capacity) throws IOException
+	{
+		MappedByteBuffer buffer = LogSegment.map(file, LogSegment.HEADER_SIZE + (long) recordSize * capacity);
+		buffer.putInt(0, LogSegment.MAGIC);
+		buffer.putInt(4, LogSegment.VERSION);
+		buffer.putInt(8, recordSize);
+		buffer.putInt(12, kind);
+		
+		return new LogSegment(file, kind, recordSize, capacity, buffer);
+	}
+	
+	/**
+	 * Open an existing segment, recovering the number of valid records
+	 * 
+	 * @param file
+	 *            the segment file
+	 * @return the mapped {@link LogSegment}
+	 * @throws IOException
+	 *             if the file cannot be mapped or it is not a valid segment
+	 */
+	public static LogSegment open(File file) throws IOException
+	{
+		MappedByteBuffer buffer = LogSegment.map(file, file.length());
+		if (buffer.capacity() < LogSegment.HEADER_SIZE || buffer.getInt(0) != LogSegment.MAGIC
+				|| buffer.getInt(4) != LogSegment.VERSION)
+			throw new IOException(file.getName() + " is not a valid consumption log segment");
+		
+		int recordSize = buffer.getInt(8);
+		int kind = buffer.getInt(12);
+		int capacity = (buffer.capacity() - LogSegment.HEADER_SIZE) / recordSize;
+		LogSegment segment = new LogSegment(file, kind, recordSize, capacity, buffer);
+		
+		// find the end of the segment
+		int count = 0;
+		while (count < capacity)
+		{
+			long timestamp = buffer.getLong(segment.getOffset(count));
+			if (timestamp == 0)
+				break;
+			segment.updateBounds(timestamp);
+			count++;
+		}
+		segment.count = count;
+		segment.reserved.set(count);
+		
+		return segment;
+	}
+	
+	/**
+	 * Map a file in read/write mode with the given size
+	 */
+	private static MappedByteBuffer map(File file, long size) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try
+		{
+			if (raf.length() != size)
+				raf.setLength(size);
+			
+			// the mapping stays valid after the channel is closed
+			return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+	
+	/**
+	 * Get the offset of the record to write, if any room is left; the record
+	 * must be written (timestamp last) and then published with
+	 * {@link LogSegment#publish(long)}
+	 * 
+	 * @return the offset of the next record, or -1 if the segment is full
+	 */
+	public int nextOffset()
+	{
+		if (this.count >= this.capacity)
+			return -1;
+		
+		return this.getOffset(this.count);
+	}
+	
+	/**
+	 * Publish the record written at the offset given by
+	 * {@link LogSegment#nextOffset()}
+	 * 
+	 * @param timestamp
+	 *            the record timestamp
+	 */
+	public void publish(long timestamp)
+	{
+		this.updateBounds(timestamp);
+		this.count++;
+	}
+	
+	/**
+	 * Reserve the next record for a concurrent writer; the record must be
+	 * written (timestamp last) and then published with
+	 * {@link LogSegment#publish(int, long)}
+	 * 
+	 * @return the reserved record, or -1 if the segment is full
+	 */
+	public int reserve()
+	{
+		while (true)
+		{
+			int record = this.reserved.get();
+			if (record >= this.capacity)
+				return -1;
+			if (this.reserved.compareAndSet(record, record + 1))
+				return record;
+		}
+	}
+	
+	/**
+	 * Publish a record reserved with {@link LogSegment#reserve()}, once all
+	 * the previous records have been published
+	 * 
+	 * @param record
+	 *            the reserved record
+	 * @param timestamp
+	 *            the record timestamp
+	 */
+	public void publish(int record, long timestamp)
+	{
+		// the previous writers are only a few stores away
+		while (this.count != record)
+			Thread.yield();
+		
+		this.updateBounds(timestamp);
+		this.count = record + 1;
+	}
+	
+	/**
+	 * Update the timestamp bounds of the segment
+	 */
+	private void updateBounds(long timestamp)
+	{
+		if (timestamp < this.firstTimestamp)
+			this.firstTimestamp = timestamp;
+		if (timestamp > this.lastTimestamp)
+			this.lastTimestamp = timestamp;
+	}
+	
+	/**
+	 * @return the offset of the given record
+	 */
+	public int getOffset(int record)
+	{
+		return LogSegment.HEADER_SIZE + record * this.recordSize;
+	}
+	
+	/**
+	 * Check if the segment may contain records in the given window
+	 */
+	public boolean overlaps(long from, long to)
+	{
+		return this.count > 0 && this.firstTimestamp < to && this.lastTimestamp >= from;
+	}
+	
+	/**
+	 * Force the segment content to be written on disk
+	 */
+	public void force()
+	{
+		this.buffer.force();
+	}
+	
+	/**
+	 * Release the mapping immediately, instead of waiting for the garbage
+	 * collector, so that the file can be deleted; the buffer must not be
+	 * accessed anymore. The mapping is released by
+	 * <code>sun.misc.Unsafe.invokeCleaner</code> on Java 9 and later, or by
+	 * the buffer cleaner on earlier JVMs; both need the <code>sun.misc</code>
+	 * package to be visible to the bundle (e.g., boot delegated), otherwise
+	 * the mapping is left to the garbage collector.
+	 * 
+	 * @return true if the mapping has been released, false if it is left to
+	 *         the garbage collector
+	 */
+	public synchronized boolean unmap()
+	{
+		if (this.unmapped)
+			return this.released;
+		this.unmapped = true;
+		
+		this.released = LogSegment.clean(this.buffer);
+		
+		return this.released;
+	}
+	
+	/**
+	 * Release the mapping of a buffer, if the JVM allows it
+	 * 
+	 * @return true if the mapping has been released
+	 */
+	private static boolean clean(MappedByteBuffer buffer)
+	{
+		// Java 9 and later, where the cleaner is not accessible anymore
+		try
+		{
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), buffer);
+			
+			return true;
+		}
+		catch (NoSuchMethodException e)
+		{
+			// Java 8 and earlier: try the buffer cleaner
+		}
+		catch (Exception e)
+		{
+			return false;
+		}
+		
+		try
+		{
+			Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			Object cleaner = cleanerMethod.invoke(buffer);
+			if (cleaner == null)
+				return false;
+			cleaner.getClass().getMethod("clean").invoke(cleaner);
+			
+			return true;
+		}
+		catch (Exception e)
+		{
+			// no cleaner available: the garbage collector will release the
+			// mapping
+			return false;
+		}
+	}
+	
+	/**
+	 * @return true if the buffer has been unmapped
+	 */
+	public boolean isUnmapped()
+	{
+		return this.unmapped;
+	}
+	
+	/**
+	 * @return the mapped content, to be accessed with absolute reads only
+	 */
+	public MappedByteBuffer getBuffer()
+	{
+		return this.buffer;
+	}
+	
+	/**
+	 * @return the number of published records
+	 */
+	public int getCount()
+	{
+		return this.count;
+	}
+	
+	/**
+	 * @return true if no more records can be appended
+	 */
+	public boolean isFull()
+	{
+		return this.count >= this.capacity;
+	}
+	
+	/**
+	 * @return the segment kind
+	 */
+	public int getKind()
+	{
+		return this.kind;
+	}
+	
+	/**
+	 * @return the segment file
+	 */
+	public File getFile()
+	{
+		return this.file;
+	}
+}
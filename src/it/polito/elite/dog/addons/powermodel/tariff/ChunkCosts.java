@@ -0,0 +1,237 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.tariff;
+
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionLog;
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionLogVisitor;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The partial costs of a time chunk of the {@link ConsumptionLog}: for each
+ * device, the cost between its records in the chunk, plus its first and last
+ * records, so that the intervals across chunk borders can be priced when the
+ * chunks are merged. Chunks are independent, thus they can be computed in
+ * parallel.<br/>
+ * The rollups and the raw samples of a chunk are read separately, then merged
+ * in time order for each device: a chunk may span the latest compaction, and
+ * then the rollups of a device are not all older than its samples.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+class ChunkCosts implements ConsumptionLogVisitor
+{
+	// milliseconds in one hour, to convert W*ms in Wh
+	private static final double MS_PER_HOUR = 3600000.0;
+	
+	// the compiled tariff
+	private final TariffSchedule schedule;
+	
+	// the rollups and the samples of each device in the chunk, indexed by
+	// (interned) device URI
+	private final Map<String, Records> rollups;
+	private final Map<String, Records> samples;
+	
+	// the partial costs of each device, indexed by (interned) device URI
+	private final Map<String, DeviceCosts> devices;
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param schedule
+	 *            the {@link TariffSchedule} covering the chunk
+	 */
+	ChunkCosts(TariffSchedule schedule)
+	{
+		this.schedule = schedule;
+		this.rollups = new HashMap<String, Records>();
+		this.samples = new HashMap<String, Records>();
+		this.devices = new HashMap<String, DeviceCosts>();
+	}
+	
+	/**
+	 * Scan a chunk of the log, then price the records of each device in time
+	 * order
+	 * 
+	 * @param log
+	 *            the {@link ConsumptionLog}
+	 * @param from
+	 *            the start of the chunk (inclusive)
+	 * @param to
+	 *            the end of the chunk (exclusive)
+	 * @return the chunk itself
+	 */
+	ChunkCosts scan(ConsumptionLog log, long from, long to)
+	{
+		log.scanRollups(null, from, to, this);
+		log.scanSamples(null, from, to, this);
+		
+		for (Map.Entry<String, Records> entry : this.rollups.entrySet())
+			this.merge(entry.getKey(), entry.getValue(), this.samples.remove(entry.getKey()));
+		for (Map.Entry<String, Records> entry : this.samples.entrySet())
+			this.merge(entry.getKey(), null, entry.getValue());
+		this.rollups.clear();
+		this.samples.clear();
+		
+		return this;
+	}
+	
+	@Override
+	public boolean visitSample(String deviceURI, long timestamp, double power)
+	{
+		ChunkCosts.getRecords(this.samples, deviceURI).add(timestamp, power);
+		
+		return true;
+	}
+	
+	@Override
+	public boolean visitRollup(String deviceURI, long start, double min, double max, double mean, int samples)
+	{
+		// the mean power holds from the start of the minute
+		ChunkCosts.getRecords(this.rollups, deviceURI).add(start, mean);
+		
+		return true;
+	}
+	
+	/**
+	 * Get the records of a device, creating them if missing
+	 */
+	private static Records getRecords(Map<String, Records> records, String deviceURI)
+	{
+		Records device = records.get(deviceURI);
+		if (device == null)
+		{
+			device = new Records();
+			records.put(deviceURI, device);
+		}
+		
+		return device;
+	}
+	
+	/**
+	 * Price the rollups and the samples of a device, each in scan order,
+	 * merging them by time
+	 */
+	private void merge(String deviceURI, Records rollups, Records samples)
+	{
+		int r = 0;
+		int s = 0;
+		int rollupCount = (rollups != null) ? rollups.size : 0;
+		int sampleCount = (samples != null) ? samples.size : 0;
+		while (r < rollupCount || s < sampleCount)
+		{
+			if (s == sampleCount || (r < rollupCount && rollups.times[r] <= samples.times[s]))
+			{
+				this.price(deviceURI, rollups.times[r], rollups.powers[r]);
+				r++;
+			}
+			else
+			{
+				this.price(deviceURI, samples.times[s], samples.powers[s]);
+				s++;
+			}
+		}
+	}
+	
+	/**
+	 * Price the time spent by a device at its previous power, up to a new
+	 * record
+	 */
+	private void price(String deviceURI, long timestamp, double power)
+	{
+		DeviceCosts device = this.devices.get(deviceURI);
+		if (device == null)
+		{
+			device = new DeviceCosts(timestamp);
+			this.devices.put(deviceURI, device);
+		}
+		else if (timestamp > device.last)
+		{
+			device.cost += this.schedule.getCost(device.power, device.last, timestamp);
+			device.energy += device.power * (timestamp - device.last) / ChunkCosts.MS_PER_HOUR;
+		}
+		
+		// late records are simultaneous to the latest one
+		device.last = Math.max(device.last, timestamp);
+		device.power = power;
+	}
+	
+	/**
+	 * @return the partial costs of each device in the chunk
+	 */
+	Map<String, DeviceCosts> getDevices()
+	{
+		return this.devices;
+	}
+	
+	/**
+	 * The records of a device in a chunk, in scan order
+	 */
+	private static class Records
+	{
+		// the instants of the records
+		long[] times = new long[16];
+		
+		// the power of the records, in W
+		double[] powers = new double[16];
+		
+		// the number of records
+		int size;
+		
+		void add(long time, double power)
+		{
+			if (this.size == this.times.length)
+			{
+				this.times = Arrays.copyOf(this.times, 2 * this.size);
+				this.powers = Arrays.copyOf(this.powers, 2 * this.size);
+			}
+			this.times[this.size] = time;
+			this.powers[this.size++] = power;
+		}
+	}
+	
+	/**
+	 * The partial costs of a device in a chunk
+	 */
+	static class DeviceCosts
+	{
+		// the instant of the first record
+		final long first;
+		
+		// the instant of the last record
+		long last;
+		
+		// the power of the last record, in W
+		double power;
+		
+		// the cost between the first and the last record
+		double cost;
+		
+		// the energy between the first and the last record, in Wh
+		double energy;
+		
+		DeviceCosts(long first)
+		{
+			this.first = first;
+			this.last = first;
+		}
+	}
+}
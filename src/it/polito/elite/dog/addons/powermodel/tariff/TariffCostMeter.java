@@ -0,0 +1,482 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.tariff;
+
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionLog;
+import it.polito.elite.dog.addons.powermodel.api.CostMeter;
+import it.polito.elite.dog.addons.powermodel.api.CostReport;
+import it.polito.elite.dog.addons.powermodel.api.TariffCalendar;
+import it.polito.elite.dog.addons.powermodel.concurrent.ParallelTasks;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+import it.polito.elite.dog.addons.powermodel.energy.EnergyAccumulator;
+import it.polito.elite.dog.addons.powermodel.energy.IntervalListener;
+import it.polito.elite.dog.addons.powermodel.tariff.ChunkCosts.DeviceCosts;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Implementation of the {@link CostMeter} service. Running costs are priced
+ * on the very intervals integrated by the {@link EnergyAccumulator}, which
+ * calls the cost meter at every device state change: each interval is priced
+ * with a {@link TariffSchedule} compiled a week ahead, following the load
+ * profile of the device state, if any, and the costs are kept in primitive
+ * arrays indexed by device id. Batch costs split the requested window in time
+ * chunks, scanned in parallel on the shared pool of the bundle and then merged
+ * in time order.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class TariffCostMeter implements CostMeter, IntervalListener
+{
+	// milliseconds in one hour, to convert W*ms in Wh
+	private static final double MS_PER_HOUR = 3600000.0;
+	
+	// seconds in one hour, to convert J in Wh
+	private static final double S_PER_HOUR = 3600.0;
+	
+	// the minimum span of the compiled schedule of the running costs, in ms
+	private static final long SCHEDULE_WINDOW = 7L * 24 * 3600000;
+	
+	// the minimum span of a chunk of a batch computation, in ms
+	private static final long MIN_CHUNK = 3600000;
+	
+	// the span before a batch window searched for the power each device is
+	// drawing at its start, in ms
+	private static final long PRECEDING_WINDOW = 24L * 3600000;
+	
+	// the energy accumulator integrating the device states
+	private final EnergyAccumulator energyAccumulator;
+	
+	// the tariff
+	private TariffCalendar tariff;
+	
+	// the tariff compiled around the latest priced interval
+	private TariffSchedule schedule;
+	
+	// the consumption table
+	private ConsumptionTable table;
+	
+	// the cost of each device up to its latest update
+	private double[] cost;
+	
+	// the cost of each room, up to the latest update of its devices
+	private double[] roomCost;
+	
+	// the instant of the latest reset, in ms
+	private long start;
+	
+	// the cost and energy of the household, up to the latest updates
+	private double totalCost;
+	private double totalEnergy;
+	
+	// the persistent consumption log, if enabled
+	private volatile ConsumptionLog consumptionLog;
+	
+	// the shared pool computing batch costs in parallel, if any
+	private volatile Executor executor;
+	
+	// the number of processors sharing the chunks of a batch
+	private int threads;
+	
+	/**
+	 * Constructor, with a flat zero tariff
+	 * 
+	 * @param energyAccumulator
+	 *            the {@link EnergyAccumulator} whose intervals are priced;
+	 *            the cost meter must then be set as its interval listener
+	 */
+	public TariffCostMeter(EnergyAccumulator energyAccumulator)
+	{
+		this.energyAccumulator = energyAccumulator;
+		this.tariff = new TariffCalendar(0.0, TimeZone.getDefault());
+		this.start = System.currentTimeMillis();
+		this.setConsumptionTable(ConsumptionTable.EMPTY);
+		
+		this.threads = Runtime.getRuntime().availableProcessors();
+	}
+			
+	/**
+	 * Set the shared pool computing batch costs in parallel
+	 * 
+	 * @param executor
+	 *            the shared {@link Executor}, null for scanning all the
+	 *            chunks on the calling thread
+	 */
+	public void setExecutor(Executor executor)
+	{
+		this.executor = executor;
+	}
+	
+	/**
+	 * Set the persistent consumption log used for batch costs
+	 * 
+	 * @param consumptionLog
+	 *            the {@link ConsumptionLog}, or null if disabled
+	 */
+	public void setConsumptionLog(ConsumptionLog consumptionLog)
+	{
+		this.consumptionLog = consumptionLog;
+	}
+	
+	@Override
+	public synchronized void setConsumptionTable(ConsumptionTable table)
+	{
+		if (table == this.table)
+			return;
+		
+		int size = table.size();
+		double[] newCost = new double[size];
+		double[] newRoomCost = new double[table.getRoomCount()];
+		
+		for (int device = 0; device < size; device++)
+		{
+			// carry the previous counters, if any
+			int previous = (this.table != null) ? this.table.getDeviceId(table.getDeviceURI(device))
+					: ConsumptionTable.UNKNOWN;
+			if (previous != ConsumptionTable.UNKNOWN)
+				newCost[device] = this.cost[previous];
+			
+			if (table.getRoom(device) != ConsumptionTable.UNKNOWN)
+				newRoomCost[table.getRoom(device)] += newCost[device];
+		}
+		
+		this.table = table;
+		this.cost = newCost;
+		this.roomCost = newRoomCost;
+	}
+	
+	@Override
+	public synchronized void integrate(ConsumptionTable table, int device, int state, long entered, long from,
+			long to)
+	{
+		if (table != this.table)
+			this.setConsumptionTable(table);
+		
+		// the costs before the latest reset are not accounted
+		from = Math.max(from, this.start);
+		if (to <= from)
+			return;
+	
+		double deviceCost = this.getCost(table, device, state, entered, from, to);
+		this.cost[device] += deviceCost;
+		if (table.getRoom(device) != ConsumptionTable.UNKNOWN)
+			this.roomCost[table.getRoom(device)] += deviceCost;
+		this.totalCost += deviceCost;
+		this.totalEnergy += this.getEnergy(table, device, state, entered, from, to);
+	}
+	
+	/**
+	 * Get the cost of a device state over an interval, compiling the tariff
+	 * again if the interval is not covered by the current schedule
+	 */
+	private double getCost(ConsumptionTable table, int device, int state, long entered, long from, long to)
+	{
+		if (this.schedule == null || !this.schedule.covers(from, to))
+			this.schedule = TariffSchedule.compile(this.tariff, from, Math.max(to, from
+					+ TariffCostMeter.SCHEDULE_WINDOW));
+		
+		return this.schedule.getCost(table, device, state, entered, from, to);
+	}
+	
+	/**
+	 * Get the energy of a device state over an interval, in Wh
+	 */
+	private double getEnergy(ConsumptionTable table, int device, int state, long entered, long from, long to)
+	{
+		return table.getEnergy(device, state, (from - entered) / 1000.0, (to - entered) / 1000.0)
+				/ TariffCostMeter.S_PER_HOUR;
+	}
+	
+	@Override
+	public void setTariff(TariffCalendar tariff)
+	{
+		// price what has been consumed so far with the previous tariff; the
+		// accumulator calls the cost meter, thus it is never called holding
+		// the cost meter monitor
+		this.energyAccumulator.advance(System.currentTimeMillis());
+		
+		synchronized (this)
+		{
+			this.tariff = tariff;
+			this.schedule = null;
+		}
+	}
+	
+	@Override
+	public synchronized TariffCalendar getTariff()
+	{
+		return this.tariff;
+	}
+	
+	@Override
+	public synchronized double getRate(long timestamp)
+	{
+		if (this.schedule == null || !this.schedule.covers(timestamp, timestamp))
+			this.schedule = TariffSchedule.compile(this.tariff, timestamp, timestamp
+					+ TariffCostMeter.SCHEDULE_WINDOW);
+		
+		return this.schedule.getRate(timestamp);
+	}
+	
+	@Override
+	public double getTotalCost(long timestamp)
+	{
+		while (true)
+		{
+			DeviceStates open = this.getDeviceStates();
+			synchronized (this)
+			{
+				// retry if the table has been swapped meanwhile
+				if (open.table != this.table)
+					continue;
+		
+				double current = this.totalCost;
+				for (int device = 0; device < open.states.length; device++)
+					if (this.isOpen(open, device, timestamp))
+						current += this.getCost(open.table, device, open.states[device], open.entered[device],
+								Math.max(open.since[device], this.start), timestamp);
+				
+				return current;
+			}
+		}
+	}
+	
+	@Override
+	public CostReport getRunningCosts(long timestamp)
+	{
+		while (true)
+		{
+			DeviceStates open = this.getDeviceStates();
+			synchronized (this)
+			{
+				// retry if the table has been swapped meanwhile
+				if (open.table != this.table)
+					continue;
+		
+				Map<String, Double> deviceCosts = new HashMap<String, Double>();
+				double[] rooms = this.roomCost.clone();
+				double current = this.totalCost;
+				double currentEnergy = this.totalEnergy;
+				
+				for (int device = 0; device < open.states.length; device++)
+				{
+					double deviceCost = this.cost[device];
+					if (this.isOpen(open, device, timestamp))
+					{
+						long from = Math.max(open.since[device], this.start);
+						double openCost = this.getCost(open.table, device, open.states[device],
+								open.entered[device], from, timestamp);
+						deviceCost += openCost;
+						current += openCost;
+						currentEnergy += this.getEnergy(open.table, device, open.states[device],
+								open.entered[device], from, timestamp);
+						if (this.table.getRoom(device) != ConsumptionTable.UNKNOWN)
+							rooms[this.table.getRoom(device)] += openCost;
+					}
+					if (open.states[device] != ConsumptionTable.UNKNOWN || deviceCost > 0)
+						deviceCosts.put(this.table.getDeviceURI(device), deviceCost);
+				}
+				
+				Map<String, Double> roomCosts = new HashMap<String, Double>();
+				for (int room = 0; room < rooms.length; room++)
+					roomCosts.put(this.table.getRoomName(room), rooms[room]);
+				
+				return new CostReport(this.start, timestamp, deviceCosts, roomCosts, current, currentEnergy);
+			}
+		}
+	}
+	
+	/**
+	 * Copy the current device states from the energy accumulator, never
+	 * holding the cost meter monitor
+	 */
+	private DeviceStates getDeviceStates()
+	{
+		DeviceStates open = new DeviceStates();
+		do
+		{
+			int size = this.energyAccumulator.getConsumptionTable().size();
+			open.states = new int[size];
+			open.entered = new long[size];
+			open.since = new long[size];
+			open.table = this.energyAccumulator.getDeviceStates(open.states, open.entered, open.since);
+		} while (open.table == null);
+		
+		return open;
+	}
+		
+	/**
+	 * Check if a device has an interval not yet priced before the given
+	 * instant
+	 */
+	private boolean isOpen(DeviceStates open, int device, long timestamp)
+	{
+		return open.states[device] != ConsumptionTable.UNKNOWN
+				&& timestamp > Math.max(open.since[device], this.start);
+	}
+	
+	@Override
+	public synchronized void reset(long timestamp)
+	{
+		Arrays.fill(this.cost, 0.0);
+		Arrays.fill(this.roomCost, 0.0);
+		this.totalCost = 0.0;
+		this.totalEnergy = 0.0;
+		this.start = timestamp;
+	}
+	
+	@Override
+	public CostReport computeCosts(long from, long to)
+	{
+		final ConsumptionLog log = this.consumptionLog;
+		ConsumptionTable current;
+		TariffCalendar currentTariff;
+		synchronized (this)
+		{
+			current = this.table;
+			currentTariff = this.tariff;
+		}
+		
+		if (log == null || to <= from)
+			return new CostReport(from, to, new HashMap<String, Double>(), new HashMap<String, Double>(), 0.0, 0.0);
+		
+		// compile the tariff once for the whole window
+		final TariffSchedule window = TariffSchedule.compile(currentTariff, from, to);
+		
+		// scan the chunks in parallel, the first one being the span before
+		// the window, searched for the power drawn at its start
+		long chunk = Math.max(TariffCostMeter.MIN_CHUNK, (to - from + 4 * this.threads - 1) / (4 * this.threads));
+		List<Callable<ChunkCosts>> tasks = new ArrayList<Callable<ChunkCosts>>();
+		tasks.add(TariffCostMeter.scanTask(log, window, from - TariffCostMeter.PRECEDING_WINDOW, from));
+		for (long start = from; start < to; start += chunk)
+			tasks.add(TariffCostMeter.scanTask(log, window, start, Math.min(to, start + chunk)));
+		
+		// merge the chunks in time order, pricing the intervals across
+		// borders: each device holds its latest power until its next record
+		Map<String, DeviceCosts> merged = new HashMap<String, DeviceCosts>();
+		try
+		{
+			List<ChunkCosts> chunks = ParallelTasks.invokeAll(this.executor, tasks);
+			
+			// each device draws, from the start of the window, the power of
+			// its latest record before it
+			for (Map.Entry<String, DeviceCosts> entry : chunks.get(0).getDevices().entrySet())
+			{
+				DeviceCosts seed = new DeviceCosts(from);
+				seed.power = entry.getValue().power;
+				merged.put(entry.getKey(), seed);
+			}
+			
+			for (ChunkCosts chunkCosts : chunks.subList(1, chunks.size()))
+			{
+				for (Map.Entry<String, DeviceCosts> entry : chunkCosts.getDevices().entrySet())
+				{
+					DeviceCosts part = entry.getValue();
+					DeviceCosts total = merged.get(entry.getKey());
+					if (total == null)
+					{
+						merged.put(entry.getKey(), part);
+						continue;
+					}
+					
+					total.cost += window.getCost(total.power, total.last, part.first) + part.cost;
+					total.energy += total.power * (part.first - total.last) / TariffCostMeter.MS_PER_HOUR
+							+ part.energy;
+					total.last = part.last;
+					total.power = part.power;
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Cost computation interrupted", e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new IllegalStateException("Cost computation failed", e.getCause());
+		}
+		
+		// close each device at the end of the window and sum up
+		Map<String, Double> deviceCosts = new HashMap<String, Double>();
+		Map<String, Double> roomCosts = new HashMap<String, Double>();
+		double totalCostSum = 0.0;
+		double totalEnergySum = 0.0;
+		for (Map.Entry<String, DeviceCosts> entry : merged.entrySet())
+		{
+			DeviceCosts total = entry.getValue();
+			double deviceCost = total.cost + window.getCost(total.power, total.last, to);
+			totalEnergySum += total.energy + total.power * (to - total.last) / TariffCostMeter.MS_PER_HOUR;
+			totalCostSum += deviceCost;
+			deviceCosts.put(entry.getKey(), deviceCost);
+			
+			int device = current.getDeviceId(entry.getKey());
+			if (device != ConsumptionTable.UNKNOWN && current.getRoom(device) != ConsumptionTable.UNKNOWN)
+			{
+				String room = current.getRoomName(current.getRoom(device));
+				Double roomCost = roomCosts.get(room);
+				roomCosts.put(room, (roomCost != null) ? roomCost.doubleValue() + deviceCost : deviceCost);
+			}
+		}
+		
+		return new CostReport(from, to, deviceCosts, roomCosts, totalCostSum, totalEnergySum);
+	}
+	
+	/**
+	 * Create the task scanning a chunk of the log
+	 */
+	private static Callable<ChunkCosts> scanTask(final ConsumptionLog log, final TariffSchedule schedule,
+			final long from, final long to)
+	{
+		return new Callable<ChunkCosts>() {
+			
+			@Override
+			public ChunkCosts call()
+			{
+				return new ChunkCosts(schedule).scan(log, from, to);
+			}
+		};
+	}
+	
+	/**
+	 * A copy of the device states of the energy accumulator
+	 */
+	private static class DeviceStates
+	{
+		// the table the device ids refer to
+		ConsumptionTable table;
+		
+		// the state index of each device
+		int[] states;
+		
+		// the instant each device entered its state, in ms
+		long[] entered;
+		
+		// the instant of the latest update of each device, in ms
+		long[] since;
+	}
+}
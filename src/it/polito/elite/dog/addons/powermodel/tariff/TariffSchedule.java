@@ -0,0 +1,273 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.tariff;
+
+import it.polito.elite.dog.addons.powermodel.api.TariffCalendar;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+
+import java.util.Arrays;
+import java.util.Calendar;
+
+/**
+ * A {@link TariffCalendar} compiled over a time window: the instants at which
+ * the rate changes are precomputed (in the time zone of the calendar, thus
+ * following daylight saving changes) and stored in a sorted array, so that the
+ * rate of an instant is found by binary search and the cost of an interval
+ * only visits the boundaries it spans. Schedules are immutable.
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class TariffSchedule
+{
+	// W*ms in one kWh
+	private static final double WMS_PER_KWH = 3.6e9;
+	
+	// J in one kWh
+	private static final double J_PER_KWH = 3.6e6;
+	
+	// the start of the window, in ms since the epoch
+	private final long start;
+	
+	// the end of the window, in ms since the epoch
+	private final long end;
+	
+	// the instants at which the rate changes, the first one being the start
+	private final long[] bounds;
+	
+	// the rate from each boundary to the next one, per kWh
+	private final double[] rates;
+	
+	/**
+	 * Constructor
+	 */
+	private TariffSchedule(long start, long end, long[] bounds, double[] rates)
+	{
+		this.start = start;
+		this.end = end;
+		this.bounds = bounds;
+		this.rates = rates;
+	}
+	
+	/**
+	 * Compile a tariff calendar over a time window
+	 * 
+	 * @param tariff
+	 *            the {@link TariffCalendar}
+	 * @param from
+	 *            the start of the window, in ms since the epoch
+	 * @param to
+	 *            the end of the window, in ms since the epoch
+	 * @return the {@link TariffSchedule}, covering at least the window
+	 */
+	public static TariffSchedule compile(TariffCalendar tariff, long from, long to)
+	{
+		// the rate runs of each day of week, from minute 0
+		int[][] runStarts = new int[Calendar.SATURDAY + 1][];
+		double[][] runRates = new double[Calendar.SATURDAY + 1][];
+		for (int day = Calendar.SUNDAY; day <= Calendar.SATURDAY; day++)
+		{
+			double[] minutes = new double[TariffCalendar.MINUTES_PER_DAY];
+			Arrays.fill(minutes, tariff.getDefaultRate());
+			for (int band = 0; band < tariff.getBandCount(); band++)
+				if (tariff.getBandDay(band) == TariffCalendar.EVERY_DAY || tariff.getBandDay(band) == day)
+					Arrays.fill(minutes, tariff.getBandStart(band), tariff.getBandEnd(band), tariff.getBandRate(band));
+			
+			int runs = 1;
+			for (int minute = 1; minute < minutes.length; minute++)
+				if (minutes[minute] != minutes[minute - 1])
+					runs++;
+			runStarts[day] = new int[runs];
+			runRates[day] = new double[runs];
+			runRates[day][0] = minutes[0];
+			for (int minute = 1, run = 1; minute < minutes.length; minute++)
+			{
+				if (minutes[minute] != minutes[minute - 1])
+				{
+					runStarts[day][run] = minute;
+					runRates[day][run++] = minutes[minute];
+				}
+			}
+		}
+		
+		// the boundaries, day by day from the local midnight before the start
+		Calendar calendar = Calendar.getInstance(tariff.getTimeZone());
+		calendar.setTimeInMillis(from);
+		calendar.set(Calendar.HOUR_OF_DAY, 0);
+		calendar.set(Calendar.MINUTE, 0);
+		calendar.set(Calendar.SECOND, 0);
+		calendar.set(Calendar.MILLISECOND, 0);
+		
+		long[] bounds = new long[64];
+		double[] rates = new double[64];
+		int count = 0;
+		long day = calendar.getTimeInMillis();
+		while (day < to || count == 0)
+		{
+			int dayOfWeek = calendar.get(Calendar.DAY_OF_WEEK);
+			if (tariff.isHoliday(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1,
+					calendar.get(Calendar.DAY_OF_MONTH)))
+				dayOfWeek = Calendar.SUNDAY;
+			
+			for (int run = 0; run < runStarts[dayOfWeek].length; run++)
+			{
+				calendar.setTimeInMillis(day);
+				calendar.set(Calendar.HOUR_OF_DAY, runStarts[dayOfWeek][run] / 60);
+				calendar.set(Calendar.MINUTE, runStarts[dayOfWeek][run] % 60);
+				long bound = calendar.getTimeInMillis();
+				double rate = runRates[dayOfWeek][run];
+				
+				// merge equal rates and times skipped by daylight saving
+				if (count > 0 && (rates[count - 1] == rate || bound <= bounds[count - 1]))
+				{
+					if (bound <= bounds[count - 1])
+						rates[count - 1] = rate;
+					continue;
+				}
+				
+				// drop the boundaries before the start
+				if (count > 0 && bound <= from)
+					count = 0;
+				
+				if (count == bounds.length)
+				{
+					bounds = Arrays.copyOf(bounds, 2 * count);
+					rates = Arrays.copyOf(rates, 2 * count);
+				}
+				bounds[count] = bound;
+				rates[count++] = rate;
+			}
+			
+			// next local midnight
+			calendar.setTimeInMillis(day);
+			calendar.add(Calendar.DAY_OF_MONTH, 1);
+			day = calendar.getTimeInMillis();
+		}
+		
+		return new TariffSchedule(bounds[0], day, Arrays.copyOf(bounds, count), Arrays.copyOf(rates, count));
+	}
+	
+	/**
+	 * Check if the schedule covers a time window
+	 * 
+	 * @param from
+	 *            the start of the window, in ms since the epoch
+	 * @param to
+	 *            the end of the window, in ms since the epoch
+	 * @return true if the window is within the schedule
+	 */
+	public boolean covers(long from, long to)
+	{
+		return from >= this.start && to <= this.end;
+	}
+	
+	/**
+	 * Get the rate at a given instant; instants outside the schedule get the
+	 * rate of the nearest edge
+	 * 
+	 * @param timestamp
+	 *            the instant, in ms since the epoch
+	 * @return the rate, per kWh
+	 */
+	public double getRate(long timestamp)
+	{
+		return this.rates[this.find(timestamp)];
+	}
+	
+	/**
+	 * Get the cost of a constant power over an interval; the parts of the
+	 * interval outside the schedule get the rate of the nearest edge
+	 * 
+	 * @param power
+	 *            the power, in W
+	 * @param from
+	 *            the start of the interval, in ms since the epoch
+	 * @param to
+	 *            the end of the interval, in ms since the epoch
+	 * @return the cost
+	 */
+	public double getCost(double power, long from, long to)
+	{
+		if (to <= from || power == 0.0)
+			return 0.0;
+		
+		double rateTime = 0.0;
+		int segment = this.find(from);
+		while (from < to)
+		{
+			long next = (segment + 1 < this.bounds.length) ? this.bounds[segment + 1] : Long.MAX_VALUE;
+			long until = Math.min(to, next);
+			rateTime += this.rates[segment] * (until - from);
+			from = until;
+			segment++;
+		}
+		
+		return power * rateTime / TariffSchedule.WMS_PER_KWH;
+	}
+	
+	/**
+	 * Get the cost of a device state over an interval, following the load
+	 * profile of the state, if any; the parts of the interval outside the
+	 * schedule get the rate of the nearest edge
+	 * 
+	 * @param table
+	 *            the {@link ConsumptionTable}
+	 * @param device
+	 *            the device id
+	 * @param state
+	 *            the state index
+	 * @param entered
+	 *            the instant the state was entered, in ms since the epoch
+	 * @param from
+	 *            the start of the interval, in ms since the epoch
+	 * @param to
+	 *            the end of the interval, in ms since the epoch
+	 * @return the cost
+	 */
+	public double getCost(ConsumptionTable table, int device, int state, long entered, long from, long to)
+	{
+		if (table.getLoadProfile(device, state) == null)
+			return this.getCost(table.getBestConsumption(device, state), from, to);
+		
+		double rateEnergy = 0.0;
+		int segment = this.find(from);
+		while (from < to)
+		{
+			long next = (segment + 1 < this.bounds.length) ? this.bounds[segment + 1] : Long.MAX_VALUE;
+			long until = Math.min(to, next);
+			rateEnergy += this.rates[segment]
+					* table.getEnergy(device, state, (from - entered) / 1000.0, (until - entered) / 1000.0);
+			from = until;
+			segment++;
+		}
+		
+		return rateEnergy / TariffSchedule.J_PER_KWH;
+	}
+	
+	/**
+	 * @return the index of the segment holding the given instant
+	 */
+	private int find(long timestamp)
+	{
+		int index = Arrays.binarySearch(this.bounds, timestamp);
+		if (index < 0)
+			index = -index - 2;
+		
+		return Math.max(index, 0);
+	}
+}
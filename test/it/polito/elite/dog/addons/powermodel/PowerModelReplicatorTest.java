@@ -0,0 +1,147 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import it.polito.elite.dog.addons.powermodel.device.PowerDevice;
+import it.polito.elite.dog.addons.powermodel.device.PowerState;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the primary/standby replication of the power model, across a
+ * restart of the primary
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class PowerModelReplicatorTest
+{
+	// the standby model
+	private PowerOntModel standbyModel;
+	
+	// the replicator of the standby model
+	private PowerModelReplicator standby;
+	
+	@Before
+	public void setUp()
+	{
+		this.standbyModel = new PowerOntModel();
+		this.standby = new PowerModelReplicator(this.standbyModel);
+	}
+	
+	@Test
+	public void deltasFollowThePrimary() throws IOException
+	{
+		Map<String, PowerDevice> devices = new HashMap<String, PowerDevice>();
+		devices.put("washer", PowerModelReplicatorTest.buildDevice("washer", 2000.0));
+		PowerModelReplicator primary = new PowerModelReplicator(new PowerOntModel());
+		primary.record(devices);
+		
+		long version = this.standby.applyDelta(PowerModelReplicatorTest.export(primary, 0));
+		assertEquals(primary.getVersion(), version);
+		assertTrue(this.standbyModel.getDeviceConsumptions().containsKey("washer"));
+		
+		// an incremental delta adds a device
+		devices.put("oven", PowerModelReplicatorTest.buildDevice("oven", 2500.0));
+		primary.record(Collections.singleton("oven"), devices);
+		version = this.standby.applyDelta(PowerModelReplicatorTest.export(primary, version));
+		assertEquals(primary.getVersion(), version);
+		assertEquals(2, this.standbyModel.getDeviceConsumptions().size());
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void incrementalDeltaOnAnotherVersionIsRejected() throws IOException
+	{
+		Map<String, PowerDevice> devices = new HashMap<String, PowerDevice>();
+		devices.put("washer", PowerModelReplicatorTest.buildDevice("washer", 2000.0));
+		PowerModelReplicator primary = new PowerModelReplicator(new PowerOntModel());
+		primary.record(devices);
+		long first = primary.getVersion();
+		devices.put("oven", PowerModelReplicatorTest.buildDevice("oven", 2500.0));
+		primary.record(devices);
+		
+		// the standby never saw the first version
+		this.standby.applyDelta(PowerModelReplicatorTest.export(primary, first));
+	}
+	
+	@Test
+	public void fullSnapshotOfARestartedPrimaryAlwaysApplies() throws IOException
+	{
+		// the first primary goes through many versions
+		Map<String, PowerDevice> devices = new HashMap<String, PowerDevice>();
+		PowerModelReplicator primary = new PowerModelReplicator(new PowerOntModel());
+		for (int i = 0; i < 10; i++)
+		{
+			devices.put("lamp" + i, PowerModelReplicatorTest.buildDevice("lamp" + i, 60.0));
+			primary.record(devices);
+		}
+		long applied = this.standby.applyDelta(PowerModelReplicatorTest.export(primary, 0));
+		assertEquals(10, this.standbyModel.getDeviceConsumptions().size());
+		
+		// after a failover, the new primary starts a new log, possibly with
+		// lower versions, and holds different devices
+		Map<String, PowerDevice> restarted = new HashMap<String, PowerDevice>();
+		restarted.put("oven", PowerModelReplicatorTest.buildDevice("oven", 2500.0));
+		PowerModelReplicator newPrimary = new PowerModelReplicator(new PowerOntModel());
+		newPrimary.record(restarted);
+		
+		// the standby asks for a delta since its applied version, unknown to
+		// the new log: it gets a full snapshot, replacing all its devices
+		long version = this.standby.applyDelta(PowerModelReplicatorTest.export(newPrimary, applied));
+		assertEquals(newPrimary.getVersion(), version);
+		assertEquals(version, this.standby.getAppliedVersion());
+		assertEquals(1, this.standbyModel.getDeviceConsumptions().size());
+		assertTrue(this.standbyModel.getDeviceConsumptions().containsKey("oven"));
+		assertFalse(this.standbyModel.getDeviceConsumptions().containsKey("lamp0"));
+	}
+	
+	/**
+	 * @return the delta of a primary since a given version, as a stream
+	 */
+	private static ByteArrayInputStream export(PowerModelReplicator primary, long sinceVersion) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		primary.exportDelta(sinceVersion, out);
+		
+		return new ByteArrayInputStream(out.toByteArray());
+	}
+	
+	/**
+	 * @return a device with a single state
+	 */
+	private static PowerDevice buildDevice(String deviceURI, double power)
+	{
+		PowerDevice device = new PowerDevice(deviceURI);
+		PowerState on = new PowerState("On");
+		on.setTypicalConsumption(power, "W");
+		device.addSinglePowerState(on);
+		
+		return device;
+	}
+}
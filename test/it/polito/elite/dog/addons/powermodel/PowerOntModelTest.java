@@ -0,0 +1,106 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import it.polito.elite.dog.addons.powermodel.api.DevicePowerConsumption;
+import it.polito.elite.dog.addons.powermodel.device.PowerDevice;
+import it.polito.elite.dog.addons.powermodel.device.PowerState;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the ingestion of live meter readings by the {@link PowerOntModel}
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class PowerOntModelTest
+{
+	// the tolerance of the power comparisons, in W
+	private static final double DELTA = 1e-9;
+	
+	// the power model under test, not activated
+	private PowerOntModel model;
+	
+	@Before
+	public void setUp()
+	{
+		PowerDevice washer = new PowerDevice("washer");
+		PowerState run = new PowerState("Run");
+		run.setTypicalConsumption(2000.0, "W");
+		washer.addSinglePowerState(run);
+		
+		Map<String, PowerDevice> devices = new HashMap<String, PowerDevice>();
+		devices.put("washer", washer);
+		
+		this.model = new PowerOntModel();
+		this.model.replaceDevices(devices.keySet(), devices);
+	}
+	
+	@Test
+	public void nonFiniteReadingsAreRejected()
+	{
+		assertFalse(this.model.updateActualConsumption("washer", "Run", Double.NaN, 1000L));
+		assertFalse(this.model.updateActualConsumption("washer", "Run", Double.POSITIVE_INFINITY, 2000L));
+		assertFalse(this.model.updateActualConsumption("washer", "Run", Double.NEGATIVE_INFINITY, 3000L));
+		assertNull(this.model.getActualDeviceConsumption("washer", "Run"));
+		
+		// the declared consumption is still the best one
+		assertEquals(2000.0, PowerOntModelTest.getWatt(this.model.getBestDeviceConsumption("washer", "Run")), DELTA);
+	}
+	
+	@Test
+	public void nonFiniteReadingsKeepTheLatestReading()
+	{
+		assertTrue(this.model.updateActualConsumption("washer", "Run", 1950.0, 1000L));
+		assertFalse(this.model.updateActualConsumption("washer", "Run", Double.NaN, 2000L));
+		
+		DevicePowerConsumption actual = this.model.getActualDeviceConsumption("washer", "Run");
+		assertEquals(1950.0, PowerOntModelTest.getWatt(actual), DELTA);
+		assertEquals(1000L, actual.getLatestUpdate().getTimeInMillis());
+	}
+	
+	@Test
+	public void batchesSkipNonFiniteReadings()
+	{
+		String[] deviceURIs = { "washer", "washer", "washer" };
+		String[] stateNames = { "Run", "Run", "Run" };
+		double[] powers = { 1900.0, Double.NaN, Double.POSITIVE_INFINITY };
+		long[] timestamps = { 1000L, 2000L, 3000L };
+		
+		assertEquals(1, this.model.updateActualConsumptions(deviceURIs, stateNames, powers, timestamps, 3));
+		assertEquals(1900.0, PowerOntModelTest.getWatt(this.model.getActualDeviceConsumption("washer", "Run")),
+				DELTA);
+	}
+	
+	/**
+	 * @return the consumption, in W
+	 */
+	private static double getWatt(DevicePowerConsumption consumption)
+	{
+		return consumption.getConsumption().getValue().doubleValue();
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.anomaly;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionAnomaly;
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionAnomalyListener;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+import it.polito.elite.dog.addons.powermodel.device.PowerDevice;
+import it.polito.elite.dog.addons.powermodel.device.PowerState;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the detection and clearing of the anomalies by the
+ * {@link CusumDetector}
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class CusumDetectorTest
+{
+	// the instant of the first reading, in ms since the epoch
+	private static final long START = 1400000000000L;
+	
+	// the detector under test, with the default tolerance and threshold
+	private CusumDetector detector;
+	
+	// the detected anomalies
+	private List<ConsumptionAnomaly> detected;
+	
+	// the cleared anomalies
+	private List<ConsumptionAnomaly> cleared;
+	
+	// the instant of the next reading
+	private long timestamp;
+	
+	@Before
+	public void setUp()
+	{
+		// a 1 kW heater: 200 W of tolerated deviation
+		Map<String, PowerDevice> devices = new HashMap<String, PowerDevice>();
+		PowerDevice heater = new PowerDevice("heater");
+		heater.addSinglePowerState(CusumDetectorTest.buildState("Off", 0.0));
+		heater.addSinglePowerState(CusumDetectorTest.buildState("On", 1000.0));
+		devices.put("heater", heater);
+		
+		this.detected = new ArrayList<ConsumptionAnomaly>();
+		this.cleared = new ArrayList<ConsumptionAnomaly>();
+		this.timestamp = START;
+		this.detector = new CusumDetector();
+		this.detector.setConsumptionTable(ConsumptionTable.build(devices));
+		this.detector.addAnomalyListener(new ConsumptionAnomalyListener() {
+			
+			@Override
+			public void anomalyDetected(ConsumptionAnomaly anomaly)
+			{
+				CusumDetectorTest.this.detected.add(anomaly);
+			}
+			
+			@Override
+			public void anomalyCleared(ConsumptionAnomaly anomaly)
+			{
+				CusumDetectorTest.this.cleared.add(anomaly);
+			}
+		});
+	}
+	
+	@Test
+	public void readingsWithinTheToleranceAreNormal()
+	{
+		this.read("On", 1150.0, 100);
+		this.read("On", 850.0, 100);
+		this.read("Off", 4.0, 100);
+		
+		assertFalse(this.detector.isAnomalous("heater"));
+		assertTrue(this.detected.isEmpty());
+	}
+	
+	@Test
+	public void persistentExcessIsDetectedAtTheThreshold()
+	{
+		// 2 tolerance units per reading, 1 of them drifting the sum
+		this.read("On", 1400.0, 9);
+		assertFalse(this.detector.isAnomalous("heater"));
+		
+		this.read("On", 1400.0, 1);
+		assertTrue(this.detector.isAnomalous("heater"));
+		assertEquals(1, this.detected.size());
+		ConsumptionAnomaly anomaly = this.detected.get(0);
+		assertEquals("heater", anomaly.getDeviceURI());
+		assertEquals("On", anomaly.getStateName());
+		assertEquals(1000.0, anomaly.getExpected(), 0.0);
+		assertEquals(1400.0, anomaly.getMeasured(), 0.0);
+		
+		// notified once
+		this.read("On", 1400.0, 10);
+		assertEquals(1, this.detected.size());
+		assertTrue(this.detector.getAnomalousDevices().contains("heater"));
+	}
+	
+	@Test
+	public void persistentShortfallIsDetected()
+	{
+		// 2.5 tolerance units per reading, 1.5 of them drifting the sum
+		this.read("On", 500.0, 6);
+		assertFalse(this.detector.isAnomalous("heater"));
+		
+		this.read("On", 500.0, 1);
+		assertTrue(this.detector.isAnomalous("heater"));
+	}
+	
+	@Test
+	public void anomalyIsClearedOnceTheSumsDrain()
+	{
+		this.read("On", 1400.0, 10);
+		
+		// the sum is capped at the threshold: 10 normal readings drain it
+		this.read("On", 1000.0, 9);
+		assertTrue(this.detector.isAnomalous("heater"));
+		assertTrue(this.cleared.isEmpty());
+		
+		this.read("On", 1000.0, 1);
+		assertFalse(this.detector.isAnomalous("heater"));
+		assertEquals(1, this.cleared.size());
+		assertEquals("On", this.cleared.get(0).getStateName());
+	}
+	
+	@Test
+	public void stateChangeClearsTheAnomaly()
+	{
+		this.read("On", 1400.0, 10);
+		
+		this.read("Off", 0.0, 1);
+		assertFalse(this.detector.isAnomalous("heater"));
+		assertEquals(1, this.cleared.size());
+		assertEquals("On", this.cleared.get(0).getStateName());
+		assertEquals(1000.0, this.cleared.get(0).getExpected(), 0.0);
+	}
+	
+	/**
+	 * Feed the detector with the given number of readings, one second apart
+	 */
+	private void read(String stateName, double power, int readings)
+	{
+		for (int i = 0; i < readings; i++)
+		{
+			assertTrue(this.detector.check("heater", stateName, power, this.timestamp));
+			this.timestamp += 1000;
+		}
+	}
+	
+	/**
+	 * @return a state with the given typical consumption
+	 */
+	private static PowerState buildState(String name, double power)
+	{
+		PowerState state = new PowerState(name);
+		state.setTypicalConsumption(power, "W");
+		
+		return state;
+	}
+}
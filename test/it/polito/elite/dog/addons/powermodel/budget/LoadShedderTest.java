@@ -0,0 +1,211 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.budget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import it.polito.elite.dog.addons.powermodel.api.SheddingAction;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+import it.polito.elite.dog.addons.powermodel.device.DeviceKeyIndex;
+import it.polito.elite.dog.addons.powermodel.device.LoadProfile;
+import it.polito.elite.dog.addons.powermodel.device.PowerDevice;
+import it.polito.elite.dog.addons.powermodel.device.PowerState;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the plans selected by the {@link LoadShedder}
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class LoadShedderTest
+{
+	// the tolerance of the load comparisons, in W
+	private static final double DELTA = 1e-9;
+	
+	// the namespace of the test devices
+	private static final String NAMESPACE = "http://elite.polito.it/ontologies/home.owl#";
+	
+	// the power budget holding the device states
+	private PowerBudgetManager budget;
+	
+	// the planner under test
+	private LoadShedder shedder;
+	
+	// the devices of the test household
+	private Map<String, PowerDevice> devices;
+	
+	@Before
+	public void setUp()
+	{
+		this.devices = new HashMap<String, PowerDevice>();
+		this.devices.put("heater", LoadShedderTest.buildDevice("heater", new String[] { "Off", "Low", "High" },
+				new double[] { 0.0, 1000.0, 3000.0 }, null));
+		this.devices.put("oven", LoadShedderTest.buildDevice("oven", new String[] { "Off", "On" }, new double[] {
+				0.0, 2500.0 }, null));
+		this.devices.put("lamp", LoadShedderTest.buildDevice("lamp", new String[] { "Off", "On" }, new double[] {
+				0.0, 100.0 }, null));
+		
+		this.budget = new PowerBudgetManager();
+		this.shedder = new LoadShedder(this.budget);
+		this.bind();
+		
+		this.budget.setDeviceState("heater", "High");
+		this.budget.setDeviceState("oven", "On");
+		this.budget.setDeviceState("lamp", "On");
+	}
+	
+	@Test
+	public void noPlanUnderTheTarget()
+	{
+		assertTrue(this.shedder.planShedding(6000.0).isEmpty());
+		assertTrue(this.shedder.planShedding().isEmpty());
+	}
+	
+	@Test
+	public void lastStepIsTheSmallestCoveringTheExcess()
+	{
+		// 1.6 kW to shed: the heater goes to Low instead of Off
+		List<SheddingAction> plan = this.shedder.planShedding(4000.0);
+		assertEquals(1, plan.size());
+		LoadShedderTest.assertAction(plan.get(0), "heater", "High", "Low", 2000.0);
+	}
+	
+	@Test
+	public void largestSavingsFirst()
+	{
+		// 5.1 kW to shed: the heater, then the oven, while the lamp stays on
+		List<SheddingAction> plan = this.shedder.planShedding(500.0);
+		assertEquals(2, plan.size());
+		LoadShedderTest.assertAction(plan.get(0), "heater", "High", "Off", 3000.0);
+		LoadShedderTest.assertAction(plan.get(1), "oven", "On", "Off", 2500.0);
+	}
+	
+	@Test
+	public void prioritiesWeightTheSavings()
+	{
+		this.shedder.setPriority("heater", 10.0);
+		
+		List<SheddingAction> plan = this.shedder.planShedding(4000.0);
+		assertEquals(1, plan.size());
+		LoadShedderTest.assertAction(plan.get(0), "oven", "On", "Off", 2500.0);
+	}
+	
+	@Test
+	public void prioritiesAreKeptByCanonicalKey()
+	{
+		// set by prefixed name and read by full IRI
+		this.shedder.setPriority("home:heater", 10.0);
+		assertEquals(10.0, this.shedder.getPriority(LoadShedderTest.NAMESPACE + "heater"), DELTA);
+		assertEquals(10.0, this.shedder.getPriority("heater"), DELTA);
+		
+		this.shedder.setPriorities(Collections.singletonMap(LoadShedderTest.NAMESPACE + "oven", 5.0));
+		assertEquals(LoadShedder.DEFAULT_PRIORITY, this.shedder.getPriority("heater"), DELTA);
+		assertEquals(5.0, this.shedder.getPriority("oven"), DELTA);
+		
+		// 1.6 kW to shed: the oven scores 500 W, the heater 3 kW
+		List<SheddingAction> plan = this.shedder.planShedding(4000.0);
+		LoadShedderTest.assertAction(plan.get(0), "heater", "High", "Low", 2000.0);
+	}
+	
+	@Test
+	public void aliasedPrioritiesMoveToTheirDevice()
+	{
+		// set before the device is known
+		LoadShedder shedder = new LoadShedder(this.budget);
+		shedder.setPriority("home:heater", 10.0);
+		shedder.setDeviceKeys(DeviceKeyIndex.build(this.devices,
+				Collections.singletonMap("home", LoadShedderTest.NAMESPACE)));
+		
+		assertEquals(10.0, shedder.getPriority("heater"), DELTA);
+		List<SheddingAction> plan = shedder.planShedding(4000.0);
+		LoadShedderTest.assertAction(plan.get(0), "oven", "On", "Off", 2500.0);
+	}
+	
+	@Test
+	public void profiledStatesSaveTheirPeak()
+	{
+		this.devices.put("washer", LoadShedderTest.buildDevice("washer", new String[] { "Off", "Run" },
+				new double[] { 0.0, 2000.0 }, LoadProfile.valueOf(new double[] { 0.0, 600.0, 1200.0 },
+						new double[] { 300.0, 2200.0, 150.0 }, false, false)));
+		this.bind();
+		this.budget.setDeviceState("washer", "Run");
+		assertEquals(7800.0, this.budget.getCommittedLoad(), DELTA);
+		
+		// 2.2 kW to shed: the washer covers it at its peak
+		List<SheddingAction> plan = this.shedder.planShedding(5600.0);
+		assertEquals(1, plan.size());
+		LoadShedderTest.assertAction(plan.get(0), "heater", "High", "Off", 3000.0);
+		
+		this.shedder.setPriority("heater", 10.0);
+		this.shedder.setPriority("oven", 10.0);
+		plan = this.shedder.planShedding(5600.0);
+		assertEquals(1, plan.size());
+		LoadShedderTest.assertAction(plan.get(0), "washer", "Run", "Off", 2200.0);
+	}
+	
+	/**
+	 * Bind the budget and the planner to the current devices
+	 */
+	private void bind()
+	{
+		DeviceKeyIndex keys = DeviceKeyIndex.build(this.devices,
+				Collections.singletonMap("home", LoadShedderTest.NAMESPACE));
+		this.budget.setConsumptionTable(ConsumptionTable.build(this.devices, keys));
+		this.shedder.setDeviceKeys(keys);
+	}
+	
+	/**
+	 * Check a shedding action
+	 */
+	private static void assertAction(SheddingAction action, String deviceURI, String currentState,
+			String targetState, double saving)
+	{
+		assertEquals(deviceURI, action.getDeviceURI());
+		assertEquals(currentState, action.getCurrentState());
+		assertEquals(targetState, action.getTargetState());
+		assertEquals(saving, action.getSaving(), DELTA);
+	}
+	
+	/**
+	 * @return a device with the given states and typical consumptions, and
+	 *         the load profile of its last state, if any
+	 */
+	private static PowerDevice buildDevice(String deviceURI, String[] states, double[] powers, LoadProfile profile)
+	{
+		PowerDevice device = new PowerDevice(deviceURI);
+		device.setIRI(LoadShedderTest.NAMESPACE + deviceURI);
+		for (int i = 0; i < states.length; i++)
+		{
+			PowerState state = new PowerState(states[i]);
+			state.setTypicalConsumption(powers[i], "W");
+			if (i == states.length - 1)
+				state.setLoadProfile(profile);
+			device.addSinglePowerState(state);
+		}
+		
+		return device;
+	}
+}
@@ -0,0 +1,226 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.budget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import it.polito.elite.dog.addons.powermodel.api.PowerBudget;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+import it.polito.elite.dog.addons.powermodel.device.LoadProfile;
+import it.polito.elite.dog.addons.powermodel.device.PowerDevice;
+import it.polito.elite.dog.addons.powermodel.device.PowerState;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the reservation lifecycle of the {@link PowerBudgetManager}
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class PowerBudgetManagerTest
+{
+	// the tolerance of the load comparisons, in W
+	private static final double DELTA = 1e-9;
+	
+	// the power budget under test
+	private PowerBudgetManager budget;
+	
+	@Before
+	public void setUp()
+	{
+		this.budget = new PowerBudgetManager();
+		this.budget.setConsumptionTable(PowerBudgetManagerTest.buildTable());
+		this.budget.setBudget(4000.0);
+		this.budget.setDeviceState("washer", "Off");
+		this.budget.setDeviceState("oven", "Off");
+	}
+	
+	@Test
+	public void reservationIsAllocatedThenCommitted()
+	{
+		long reservation = this.budget.reserve("washer", "Run");
+		assertTrue(reservation != PowerBudget.NO_RESERVATION);
+		assertEquals(2000.0, this.budget.getAllocatedLoad(), DELTA);
+		assertEquals(0.0, this.budget.getCommittedLoad(), DELTA);
+		
+		assertTrue(this.budget.commit(reservation));
+		assertEquals(2000.0, this.budget.getAllocatedLoad(), DELTA);
+		assertEquals(2000.0, this.budget.getCommittedLoad(), DELTA);
+		assertEquals("Run", this.budget.getDeviceState("washer"));
+		
+		// a reservation is committed once
+		assertFalse(this.budget.commit(reservation));
+		assertFalse(this.budget.release(reservation));
+	}
+	
+	@Test
+	public void reservationOverBudgetIsRejected()
+	{
+		long washer = this.budget.reserve("washer", "Run");
+		assertTrue(washer != PowerBudget.NO_RESERVATION);
+		assertFalse(this.budget.canSwitch("oven", "On"));
+		assertEquals(PowerBudget.NO_RESERVATION, this.budget.reserve("oven", "On"));
+		assertEquals(2000.0, this.budget.getAllocatedLoad(), DELTA);
+		
+		// releasing the first reservation makes room for the second one
+		assertTrue(this.budget.release(washer));
+		assertEquals(0.0, this.budget.getAllocatedLoad(), DELTA);
+		assertTrue(this.budget.reserve("oven", "On") != PowerBudget.NO_RESERVATION);
+		assertEquals(2500.0, this.budget.getAllocatedLoad(), DELTA);
+	}
+	
+	@Test
+	public void onePendingReservationPerDevice()
+	{
+		long first = this.budget.reserve("washer", "Run");
+		assertTrue(first != PowerBudget.NO_RESERVATION);
+		assertEquals(PowerBudget.NO_RESERVATION, this.budget.reserve("washer", "Run"));
+		
+		assertTrue(this.budget.release(first));
+		assertTrue(this.budget.reserve("washer", "Run") != PowerBudget.NO_RESERVATION);
+	}
+	
+	@Test
+	public void decrementsTakeEffectWhenCommitted()
+	{
+		this.budget.setDeviceState("oven", "On");
+		assertEquals(2500.0, this.budget.getCommittedLoad(), DELTA);
+		
+		// lowering the consumption is always allowed, and allocates nothing
+		long reservation = this.budget.reserve("oven", "Off");
+		assertTrue(reservation != PowerBudget.NO_RESERVATION);
+		assertEquals(2500.0, this.budget.getAllocatedLoad(), DELTA);
+		
+		assertTrue(this.budget.commit(reservation));
+		assertEquals(0.0, this.budget.getCommittedLoad(), DELTA);
+		assertEquals(0.0, this.budget.getAllocatedLoad(), DELTA);
+	}
+	
+	@Test
+	public void tableSwapDropsPendingAllocations()
+	{
+		this.budget.setBudget(5000.0);
+		this.budget.setDeviceState("oven", "On");
+		long reservation = this.budget.reserve("washer", "Run");
+		assertTrue(reservation != PowerBudget.NO_RESERVATION);
+		
+		this.budget.setConsumptionTable(PowerBudgetManagerTest.buildTable());
+		
+		// the new generation only carries the committed states
+		assertEquals(2500.0, this.budget.getCommittedLoad(), DELTA);
+		assertEquals(2500.0, this.budget.getAllocatedLoad(), DELTA);
+		assertEquals("On", this.budget.getDeviceState("oven"));
+		assertEquals("Off", this.budget.getDeviceState("washer"));
+		
+		// releasing has nothing left to free
+		assertTrue(this.budget.release(reservation));
+		assertEquals(2500.0, this.budget.getAllocatedLoad(), DELTA);
+	}
+	
+	@Test
+	public void commitAfterTableSwapSwitchesTheDevice()
+	{
+		this.budget.setBudget(5000.0);
+		this.budget.setDeviceState("oven", "On");
+		long reservation = this.budget.reserve("washer", "Run");
+		assertTrue(reservation != PowerBudget.NO_RESERVATION);
+		
+		this.budget.setConsumptionTable(PowerBudgetManagerTest.buildTable());
+		
+		// the device has switched: the new generation accounts for it
+		assertTrue(this.budget.commit(reservation));
+		assertEquals("Run", this.budget.getDeviceState("washer"));
+		assertEquals(4500.0, this.budget.getCommittedLoad(), DELTA);
+		assertEquals(4500.0, this.budget.getAllocatedLoad(), DELTA);
+		assertFalse(this.budget.commit(reservation));
+	}
+	
+	@Test
+	public void profiledStatesAreAccountedAtTheirPeak()
+	{
+		Map<String, PowerDevice> devices = new HashMap<String, PowerDevice>();
+		devices.put("washer", PowerBudgetManagerTest.buildDevice("washer", "Off", 0.0, "Run", 2000.0, LoadProfile
+				.valueOf(new double[] { 0.0, 600.0, 1200.0 }, new double[] { 300.0, 2200.0, 150.0 }, false, false)));
+		devices.put("oven", PowerBudgetManagerTest.buildDevice("oven", "Off", 0.0, "On", 2500.0));
+		this.budget.setConsumptionTable(ConsumptionTable.build(devices));
+		
+		// 2.2 kW + 2.5 kW do not fit into 4 kW
+		assertTrue(this.budget.setDeviceState("washer", "Run"));
+		assertEquals(2200.0, this.budget.getCommittedLoad(), DELTA);
+		assertFalse(this.budget.canSwitch("oven", "On"));
+		
+		assertTrue(this.budget.setDeviceState("washer", "Off"));
+		assertEquals(0.0, this.budget.getCommittedLoad(), DELTA);
+		assertTrue(this.budget.canSwitch("oven", "On"));
+	}
+	
+	@Test
+	public void unknownDevicesAndStatesAreRejected()
+	{
+		assertEquals(PowerBudget.NO_RESERVATION, this.budget.reserve("fridge", "On"));
+		assertEquals(PowerBudget.NO_RESERVATION, this.budget.reserve("washer", "Spin"));
+		assertFalse(this.budget.setDeviceState("fridge", "On"));
+		assertFalse(this.budget.commit(42));
+	}
+	
+	/**
+	 * @return a table with a 2 kW washer and a 2.5 kW oven
+	 */
+	private static ConsumptionTable buildTable()
+	{
+		Map<String, PowerDevice> devices = new HashMap<String, PowerDevice>();
+		devices.put("washer", PowerBudgetManagerTest.buildDevice("washer", "Off", 0.0, "Run", 2000.0));
+		devices.put("oven", PowerBudgetManagerTest.buildDevice("oven", "Off", 0.0, "On", 2500.0));
+		
+		return ConsumptionTable.build(devices);
+	}
+	
+	/**
+	 * @return a device with two states and their typical consumptions
+	 */
+	private static PowerDevice buildDevice(String deviceURI, String low, double lowPower, String high,
+			double highPower)
+	{
+		return PowerBudgetManagerTest.buildDevice(deviceURI, low, lowPower, high, highPower, null);
+	}
+	
+	/**
+	 * @return a device with two states, their typical consumptions and the
+	 *         load profile of the highest one
+	 */
+	private static PowerDevice buildDevice(String deviceURI, String low, double lowPower, String high,
+			double highPower, LoadProfile highProfile)
+	{
+		PowerDevice device = new PowerDevice(deviceURI);
+		PowerState lowState = new PowerState(low);
+		lowState.setTypicalConsumption(lowPower, "W");
+		device.addSinglePowerState(lowState);
+		PowerState highState = new PowerState(high);
+		highState.setTypicalConsumption(highPower, "W");
+		highState.setLoadProfile(highProfile);
+		device.addSinglePowerState(highState);
+		
+		return device;
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.device;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests of the power, energy and peak computed by a {@link LoadProfile}
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class LoadProfileTest
+{
+	// the tolerance of the power and energy comparisons
+	private static final double DELTA = 1e-6;
+	
+	@Test
+	public void stepProfileHoldsEachPowerUntilTheNextPoint()
+	{
+		LoadProfile profile = LoadProfile.valueOf(new double[] { 0, 10, 20 }, new double[] { 100, 50, 10 }, false,
+				false);
+		
+		assertEquals(100.0, profile.getPower(0.0), DELTA);
+		assertEquals(100.0, profile.getPower(9.9), DELTA);
+		assertEquals(50.0, profile.getPower(15.0), DELTA);
+		assertEquals(10.0, profile.getPower(1000.0), DELTA);
+	}
+	
+	@Test
+	public void linearProfileInterpolatesBetweenPoints()
+	{
+		LoadProfile profile = LoadProfile.valueOf(new double[] { 0, 10 }, new double[] { 0, 100 }, true, false);
+		
+		assertEquals(50.0, profile.getPower(5.0), DELTA);
+		assertEquals(500.0, profile.getEnergy(0.0, 10.0), DELTA);
+		assertEquals(375.0, profile.getEnergy(5.0, 10.0), DELTA);
+	}
+	
+	@Test
+	public void energyIsIntegratedAcrossPointsAndAfterTheLastOne()
+	{
+		LoadProfile profile = LoadProfile.valueOf(new double[] { 0, 10, 20 }, new double[] { 100, 50, 10 }, false,
+				false);
+		
+		assertEquals(1500.0, profile.getEnergy(0.0, 20.0), DELTA);
+		assertEquals(1600.0, profile.getEnergy(0.0, 30.0), DELTA);
+		assertEquals(750.0, profile.getEnergy(5.0, 15.0), DELTA);
+		assertEquals(-750.0, profile.getEnergy(15.0, 5.0), DELTA);
+	}
+	
+	@Test
+	public void cyclicProfileRepeatsItsPeriod()
+	{
+		LoadProfile profile = LoadProfile.valueOf(new double[] { 0, 10, 20 }, new double[] { 100, 0, 100 }, false,
+				true);
+		
+		assertEquals(100.0, profile.getPower(25.0), DELTA);
+		assertEquals(0.0, profile.getPower(35.0), DELTA);
+		assertEquals(2000.0, profile.getEnergy(0.0, 40.0), DELTA);
+		assertEquals(1000.0, profile.getEnergy(20.0, 40.0), DELTA);
+	}
+	
+	@Test
+	public void peakIsBoundedByTheInterval()
+	{
+		LoadProfile profile = LoadProfile.valueOf(new double[] { 0, 10, 20 }, new double[] { 100, 0, 100 }, false,
+				true);
+		
+		assertEquals(100.0, profile.getPeak(), DELTA);
+		assertEquals(0.0, profile.getPeak(12.0, 18.0), DELTA);
+		assertEquals(100.0, profile.getPeak(12.0, 25.0), DELTA);
+		assertEquals(100.0, profile.getPeak(30.0, 60.0), DELTA);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void timesMustBeIncreasing()
+	{
+		LoadProfile.valueOf(new double[] { 0, 10, 10 }, new double[] { 1, 2, 3 }, false, false);
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.disaggregation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import it.polito.elite.dog.addons.powermodel.api.InferredTransition;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+import it.polito.elite.dog.addons.powermodel.device.PowerDevice;
+import it.polito.elite.dog.addons.powermodel.device.PowerState;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the detection and explanation of the steps of the aggregate
+ * consumption by the {@link StepDisaggregator}
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class StepDisaggregatorTest
+{
+	// the disaggregator under test
+	private StepDisaggregator disaggregator;
+	
+	// the instant of the next reading, in ms
+	private long timestamp;
+	
+	@Before
+	public void setUp()
+	{
+		Map<String, PowerDevice> devices = new HashMap<String, PowerDevice>();
+		devices.put("fridge", StepDisaggregatorTest.buildDevice("fridge", 120.0));
+		devices.put("kettle", StepDisaggregatorTest.buildDevice("kettle", 2000.0));
+		devices.put("oven", StepDisaggregatorTest.buildDevice("oven", 1500.0));
+		
+		this.disaggregator = new StepDisaggregator();
+		this.disaggregator.setConsumptionTable(ConsumptionTable.build(devices), devices);
+		this.timestamp = 1000L;
+		
+		// a steady base load opens the level
+		this.observe(50.0, 3);
+	}
+	
+	@Test
+	public void singleStepIsOneTransition()
+	{
+		List<InferredTransition> transitions = this.observe(2050.0, 2);
+		assertEquals(1, transitions.size());
+		assertEquals("kettle", transitions.get(0).getDeviceURI());
+		assertEquals("Off", transitions.get(0).getFromState());
+		assertEquals("On", transitions.get(0).getToState());
+		assertEquals("On", this.disaggregator.getEstimatedState("kettle"));
+		
+		// and back
+		transitions = this.observe(50.0, 2);
+		assertEquals(1, transitions.size());
+		assertEquals("kettle", transitions.get(0).getDeviceURI());
+		assertEquals("Off", this.disaggregator.getEstimatedState("kettle"));
+	}
+	
+	@Test
+	public void combinedStepIsSimultaneousTransitions()
+	{
+		List<InferredTransition> transitions = this.observe(3550.0, 2);
+		assertEquals(2, transitions.size());
+		
+		List<String> deviceURIs = new ArrayList<String>();
+		for (InferredTransition transition : transitions)
+			deviceURIs.add(transition.getDeviceURI());
+		Collections.sort(deviceURIs);
+		assertEquals("kettle", deviceURIs.get(0));
+		assertEquals("oven", deviceURIs.get(1));
+		assertEquals("On", this.disaggregator.getEstimatedState("kettle"));
+		assertEquals("On", this.disaggregator.getEstimatedState("oven"));
+		assertEquals("Off", this.disaggregator.getEstimatedState("fridge"));
+	}
+	
+	@Test
+	public void spikeIsIgnored()
+	{
+		assertTrue(this.observe(3000.0, 1).isEmpty());
+		assertTrue(this.observe(50.0, 3).isEmpty());
+		assertEquals("Off", this.disaggregator.getEstimatedState("kettle"));
+		assertEquals("Off", this.disaggregator.getEstimatedState("oven"));
+		
+		// the spike does not hide the next step
+		List<InferredTransition> transitions = this.observe(170.0, 2);
+		assertEquals(1, transitions.size());
+		assertEquals("fridge", transitions.get(0).getDeviceURI());
+	}
+	
+	@Test
+	public void nonFiniteReadingsAreIgnored()
+	{
+		assertTrue(this.observe(Double.NaN, 3).isEmpty());
+		assertTrue(this.observe(Double.POSITIVE_INFINITY, 3).isEmpty());
+		
+		List<InferredTransition> transitions = this.observe(2050.0, 2);
+		assertEquals(1, transitions.size());
+		assertEquals("kettle", transitions.get(0).getDeviceURI());
+	}
+	
+	/**
+	 * Observe the same reading a number of times, one second apart
+	 * 
+	 * @return the transitions inferred from all the readings
+	 */
+	private List<InferredTransition> observe(double power, int count)
+	{
+		List<InferredTransition> transitions = new ArrayList<InferredTransition>();
+		for (int i = 0; i < count; i++)
+		{
+			transitions.addAll(this.disaggregator.observe(power, this.timestamp));
+			this.timestamp += 1000L;
+		}
+		
+		return transitions;
+	}
+	
+	/**
+	 * @return a device with an "Off" state and an "On" state
+	 */
+	private static PowerDevice buildDevice(String deviceURI, double power)
+	{
+		PowerDevice device = new PowerDevice(deviceURI);
+		PowerState off = new PowerState("Off");
+		off.setTypicalConsumption(0.0, "W");
+		device.addSinglePowerState(off);
+		PowerState on = new PowerState("On");
+		on.setTypicalConsumption(power, "W");
+		device.addSinglePowerState(on);
+		
+		return device;
+	}
+}
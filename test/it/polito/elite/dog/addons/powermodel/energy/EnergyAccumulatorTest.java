@@ -0,0 +1,175 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.energy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import it.polito.elite.dog.addons.powermodel.budget.PowerBudgetManager;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+import it.polito.elite.dog.addons.powermodel.device.PowerDevice;
+import it.polito.elite.dog.addons.powermodel.device.PowerState;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the energy integrated by the {@link EnergyAccumulator}
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class EnergyAccumulatorTest
+{
+	// the tolerance of the energy comparisons, in Wh
+	private static final double DELTA = 1e-6;
+	
+	// milliseconds in one hour
+	private static final long HOUR = 3600000;
+	
+	// the start of the test, in ms since the epoch
+	private static final long START = 1400000000000L;
+	
+	// the accumulator under test
+	private EnergyAccumulator accumulator;
+	
+	@Before
+	public void setUp()
+	{
+		this.accumulator = new EnergyAccumulator();
+		this.accumulator.setConsumptionTable(EnergyAccumulatorTest.buildTable(100.0, 1000.0), START);
+	}
+	
+	@Test
+	public void energyIsIntegratedBetweenStateChanges()
+	{
+		assertTrue(this.accumulator.notifyStateChange("lamp", "On", START));
+		assertTrue(this.accumulator.notifyStateChange("heater", "On", START + HOUR / 2));
+		assertTrue(this.accumulator.notifyStateChange("lamp", "Off", START + HOUR));
+		assertFalse(this.accumulator.notifyStateChange("fridge", "On", START + HOUR));
+		
+		assertEquals(100.0, this.accumulator.getDeviceEnergy("lamp"), DELTA);
+		assertEquals(100.0, this.accumulator.getDeviceEnergy("lamp", START + 2 * HOUR), DELTA);
+		assertEquals(1500.0, this.accumulator.getDeviceEnergy("heater", START + 2 * HOUR), DELTA);
+		assertEquals(1600.0, this.accumulator.getTotalEnergy(START + 2 * HOUR), DELTA);
+		assertEquals(1000.0, this.accumulator.getTotalPower(), DELTA);
+	}
+	
+	@Test
+	public void tableSwapKeepsTheEnergyAndTheStates()
+	{
+		this.accumulator.notifyStateChange("lamp", "On", START);
+		
+		// the lamp doubles its consumption after half an hour
+		this.accumulator.setConsumptionTable(EnergyAccumulatorTest.buildTable(200.0, 1000.0), START + HOUR / 2);
+		assertEquals(200.0, this.accumulator.getTotalPower(), DELTA);
+		
+		this.accumulator.notifyStateChange("lamp", "Off", START + HOUR);
+		assertEquals(150.0, this.accumulator.getDeviceEnergy("lamp"), DELTA);
+		assertEquals(150.0, this.accumulator.getTotalEnergy(START + 2 * HOUR), DELTA);
+	}
+	
+	@Test
+	public void intervalsAreNotifiedInOrderOutsideTheMonitor()
+	{
+		final List<long[]> intervals = new ArrayList<long[]>();
+		final List<ConsumptionTable> tables = new ArrayList<ConsumptionTable>();
+		this.accumulator.setIntervalListener(new IntervalListener() {
+			
+			@Override
+			public void setConsumptionTable(ConsumptionTable table)
+			{
+				assertFalse(Thread.holdsLock(EnergyAccumulatorTest.this.accumulator));
+				tables.add(table);
+			}
+			
+			@Override
+			public void integrate(ConsumptionTable table, int device, int state, long entered, long from, long to)
+			{
+				assertFalse(Thread.holdsLock(EnergyAccumulatorTest.this.accumulator));
+				intervals.add(new long[] { from, to });
+			}
+		});
+		
+		this.accumulator.notifyStateChange("lamp", "On", START);
+		this.accumulator.advance(START + HOUR / 2);
+		this.accumulator.setConsumptionTable(EnergyAccumulatorTest.buildTable(200.0, 1000.0), START + HOUR);
+		this.accumulator.notifyStateChange("lamp", "Off", START + 2 * HOUR);
+		
+		// contiguous intervals, split by the advance and by the swap
+		long[] bounds = { START, START + HOUR / 2, START + HOUR, START + 2 * HOUR };
+		assertEquals(3, intervals.size());
+		for (int i = 0; i < intervals.size(); i++)
+		{
+			assertEquals(bounds[i], intervals.get(i)[0]);
+			assertEquals(bounds[i + 1], intervals.get(i)[1]);
+		}
+		assertEquals(2, tables.size());
+		assertTrue(tables.get(1) == this.accumulator.getConsumptionTable());
+	}
+	
+	@Test
+	public void stateChangesFeedThePowerBudget()
+	{
+		PowerBudgetManager budget = new PowerBudgetManager();
+		budget.setConsumptionTable(this.accumulator.getConsumptionTable());
+		this.accumulator.setPowerBudget(budget);
+		
+		this.accumulator.notifyStateChange("heater", "On", START);
+		assertEquals("On", budget.getDeviceState("heater"));
+		assertEquals(1000.0, budget.getCommittedLoad(), DELTA);
+		
+		this.accumulator.notifyStateChange("heater", "Off", START + HOUR);
+		assertEquals("Off", budget.getDeviceState("heater"));
+		assertEquals(0.0, budget.getCommittedLoad(), DELTA);
+	}
+	
+	/**
+	 * @return a table with a lamp and a heater, with the given consumptions
+	 *         when on
+	 */
+	private static ConsumptionTable buildTable(double lampPower, double heaterPower)
+	{
+		Map<String, PowerDevice> devices = new HashMap<String, PowerDevice>();
+		devices.put("lamp", EnergyAccumulatorTest.buildDevice("lamp", lampPower));
+		devices.put("heater", EnergyAccumulatorTest.buildDevice("heater", heaterPower));
+		
+		return ConsumptionTable.build(devices);
+	}
+	
+	/**
+	 * @return a device with an Off state and an On state
+	 */
+	private static PowerDevice buildDevice(String deviceURI, double power)
+	{
+		PowerDevice device = new PowerDevice(deviceURI);
+		PowerState off = new PowerState("Off");
+		off.setTypicalConsumption(0.0, "W");
+		device.addSinglePowerState(off);
+		PowerState on = new PowerState("On");
+		on.setTypicalConsumption(power, "W");
+		device.addSinglePowerState(on);
+		
+		return device;
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.forecast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import it.polito.elite.dog.addons.powermodel.api.LoadForecast;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+import it.polito.elite.dog.addons.powermodel.device.PowerDevice;
+import it.polito.elite.dog.addons.powermodel.device.PowerState;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the chains learned and forecast by the {@link MarkovForecaster}
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class MarkovForecasterTest
+{
+	// the tolerance of the exact power comparisons, in W
+	private static final double DELTA = 1e-9;
+	
+	// one hour, the forecasting step of the tests, in ms
+	private static final long HOUR = 3600 * 1000L;
+	
+	// one day, in ms
+	private static final long DAY = 24 * HOUR;
+	
+	// the forecaster under test
+	private MarkovForecaster forecaster;
+	
+	@Before
+	public void setUp()
+	{
+		Map<String, PowerDevice> devices = new HashMap<String, PowerDevice>();
+		devices.put("lamp", MarkovForecasterTest.buildDevice("lamp", 100.0));
+		devices.put("fridge", MarkovForecasterTest.buildDevice("fridge", 50.0));
+		
+		this.forecaster = new MarkovForecaster();
+		this.forecaster.setTimeZone(TimeZone.getTimeZone("UTC"));
+		this.forecaster.setResolution(HOUR, 24);
+		this.forecaster.setConsumptionTable(ConsumptionTable.build(devices));
+	}
+	
+	@Test
+	public void deviceNeverSeenChangingKeepsItsState()
+	{
+		this.forecaster.observe("lamp", "On", 0);
+		
+		LoadForecast forecast = this.forecaster.forecast("lamp", 0, 3 * HOUR);
+		assertEquals(3, forecast.size());
+		for (int i = 0; i < forecast.size(); i++)
+		{
+			assertEquals(100.0, forecast.getMean(i), DELTA);
+			assertEquals(0.0, forecast.getVariance(i), DELTA);
+		}
+		assertEquals(HOUR, forecast.getTime(0));
+		assertEquals(300.0, forecast.getExpectedEnergy(), DELTA);
+		
+		assertNull(this.forecaster.forecast("heater", 0, HOUR));
+	}
+	
+	@Test
+	public void alternatingDeviceIsForecastStepByStep()
+	{
+		this.forecaster.setResolution(HOUR, 1);
+		for (int hour = 0; hour <= 200; hour++)
+			this.forecaster.observe("lamp", (hour % 2 == 0) ? "On" : "Off", hour * HOUR);
+		
+		// on at the start, then off and on again
+		LoadForecast forecast = this.forecaster.forecast("lamp", 200 * HOUR, 2 * HOUR);
+		assertEquals(0.0, forecast.getMean(0), 1.0);
+		assertEquals(100.0, forecast.getMean(1), 1.0);
+		
+		assertEquals(0.5, this.forecaster.getOccupancy("lamp", "On", 0), 0.01);
+	}
+	
+	@Test
+	public void dailyHabitsAreLearnedPerTimeOfDay()
+	{
+		this.forecaster.observe("lamp", "Off", 0);
+		for (int day = 0; day < 30; day++)
+		{
+			this.forecaster.observe("lamp", "On", day * DAY + 18 * HOUR);
+			this.forecaster.observe("lamp", "Off", day * DAY + 19 * HOUR);
+		}
+		
+		assertEquals(1.0, this.forecaster.getOccupancy("lamp", "On", 30 * DAY + 18 * HOUR + HOUR / 2), DELTA);
+		assertEquals(0.0, this.forecaster.getOccupancy("lamp", "On", 30 * DAY + 3 * HOUR), DELTA);
+		
+		// from 17:00, the lamp is likely on at 18:00 and off again at 19:00
+		LoadForecast forecast = this.forecaster.forecast("lamp", 30 * DAY + 17 * HOUR, 2 * HOUR);
+		assertTrue(forecast.getMean(0) > 80.0);
+		assertTrue(forecast.getMean(1) < 20.0);
+	}
+	
+	@Test
+	public void excludedDevicesAreLeftOut()
+	{
+		this.forecaster.observe("lamp", "On", 0);
+		this.forecaster.observe("fridge", "On", 0);
+		
+		assertEquals(150.0, this.forecaster.forecast(0, HOUR).getMean(0), DELTA);
+		assertEquals(50.0, this.forecaster.forecast(0, HOUR, Collections.singleton("lamp")).getMean(0), DELTA);
+	}
+	
+	@Test
+	public void learnedChainsAreCarriedToANewTableAndForgotten()
+	{
+		this.forecaster.setResolution(HOUR, 1);
+		for (int hour = 0; hour <= 200; hour++)
+			this.forecaster.observe("lamp", (hour % 2 == 0) ? "On" : "Off", hour * HOUR);
+		
+		Map<String, PowerDevice> devices = new HashMap<String, PowerDevice>();
+		devices.put("heater", MarkovForecasterTest.buildDevice("heater", 2000.0));
+		devices.put("lamp", MarkovForecasterTest.buildDevice("lamp", 100.0));
+		this.forecaster.setConsumptionTable(ConsumptionTable.build(devices));
+		
+		assertEquals(0.5, this.forecaster.getOccupancy("lamp", "On", 0), 0.01);
+		assertEquals(0.0, this.forecaster.forecast("lamp", 200 * HOUR, HOUR).getMean(0), 1.0);
+		
+		this.forecaster.forget("lamp");
+		assertEquals(Double.NaN, this.forecaster.getOccupancy("lamp", "On", 0), 0.0);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void horizonMustBePositive()
+	{
+		this.forecaster.forecast(0, 0);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void stepMustDivideOneDay()
+	{
+		this.forecaster.setResolution(7 * 60 * 1000L, 1);
+	}
+	
+	/**
+	 * @return a device with an Off state, with no consumption, and an On state
+	 */
+	private static PowerDevice buildDevice(String deviceURI, double power)
+	{
+		PowerDevice device = new PowerDevice(deviceURI);
+		
+		PowerState off = new PowerState("Off");
+		off.setTypicalConsumption(0.0, "W");
+		device.addSinglePowerState(off);
+		
+		PowerState on = new PowerState("On");
+		on.setTypicalConsumption(power, "W");
+		device.addSinglePowerState(on);
+		
+		return device;
+	}
+}
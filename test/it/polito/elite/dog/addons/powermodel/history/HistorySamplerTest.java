@@ -0,0 +1,129 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.history;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionStatistics;
+import it.polito.elite.dog.addons.powermodel.api.HistoryResolution;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+import it.polito.elite.dog.addons.powermodel.device.PowerDevice;
+import it.polito.elite.dog.addons.powermodel.device.PowerState;
+import it.polito.elite.dog.addons.powermodel.energy.EnergyAccumulator;
+import it.polito.elite.dog.addons.powermodel.live.LivePower;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the samples recorded by the {@link HistorySampler}
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class HistorySamplerTest
+{
+	// the tolerance of the power comparisons, in W
+	private static final double DELTA = 1e-9;
+	
+	// the instant of the first sample, in ms since the epoch
+	private static final long START = 1400000000000L;
+	
+	// the consumption table of the test household
+	private ConsumptionTable table;
+	
+	// the accumulator modelling the device power
+	private EnergyAccumulator accumulator;
+	
+	// the live aggregates
+	private LivePower livePower;
+	
+	// the history fed by the sampler
+	private ConsumptionHistoryStore history;
+	
+	@Before
+	public void setUp()
+	{
+		Map<String, PowerDevice> devices = new HashMap<String, PowerDevice>();
+		devices.put("lamp", HistorySamplerTest.buildDevice("lamp", 100.0));
+		devices.put("heater", HistorySamplerTest.buildDevice("heater", 1000.0));
+		this.table = ConsumptionTable.build(devices);
+		
+		this.livePower = new LivePower();
+		this.livePower.setConsumptionTable(this.table);
+		this.accumulator = new EnergyAccumulator();
+		this.accumulator.setLivePower(this.livePower);
+		this.accumulator.setConsumptionTable(this.table, START);
+		this.history = new ConsumptionHistoryStore();
+		this.history.setConsumptionTable(this.table);
+	}
+	
+	@Test
+	public void modelledAndMeteredPowerAreSampled()
+	{
+		// the lamp is modelled, the heater is only metered
+		this.accumulator.notifyStateChange("lamp", "On", START);
+		this.livePower.setMeteredPower("heater", 750.0, START);
+		
+		HistorySampler sampler = new HistorySampler(this.accumulator, this.livePower, this.history);
+		sampler.sample(START);
+		sampler.sample(START + 1000);
+		
+		ConsumptionStatistics lamp = this.history.getDeviceSummary("lamp", HistoryResolution.SECOND, START,
+				START + 2000);
+		assertEquals(2, lamp.getSamples());
+		assertEquals(100.0, lamp.getMean(), DELTA);
+		
+		ConsumptionStatistics heater = this.history.getDeviceSummary("heater", HistoryResolution.SECOND, START,
+				START + 2000);
+		assertEquals(2, heater.getSamples());
+		assertEquals(750.0, heater.getMean(), DELTA);
+		
+		ConsumptionStatistics total = this.history.getTotalSummary(HistoryResolution.SECOND, START, START + 2000);
+		assertEquals(850.0, total.getMax(), DELTA);
+	}
+	
+	@Test
+	public void failingRunsAreSkipped()
+	{
+		// no live aggregates: every sample fails
+		HistorySampler sampler = new HistorySampler(this.accumulator, null, this.history);
+		sampler.run();
+		
+		assertNull(this.history.getTotalSummary(HistoryResolution.SECOND, 0, Long.MAX_VALUE));
+	}
+	
+	/**
+	 * @return a device with an Off state and an On state
+	 */
+	private static PowerDevice buildDevice(String deviceURI, double power)
+	{
+		PowerDevice device = new PowerDevice(deviceURI);
+		PowerState off = new PowerState("Off");
+		off.setTypicalConsumption(0.0, "W");
+		device.addSinglePowerState(off);
+		PowerState on = new PowerState("On");
+		on.setTypicalConsumption(power, "W");
+		device.addSinglePowerState(on);
+		
+		return device;
+	}
+}
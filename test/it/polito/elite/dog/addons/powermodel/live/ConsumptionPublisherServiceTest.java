@@ -0,0 +1,187 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.live;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionChange;
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionScope;
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionSubscriber;
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionSubscription;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+import it.polito.elite.dog.addons.powermodel.device.PowerDevice;
+
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the coalescing and ordering of the changes delivered by the
+ * {@link ConsumptionPublisherService}
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class ConsumptionPublisherServiceTest
+{
+	// the tolerance of the power comparisons, in W
+	private static final double DELTA = 1e-9;
+	
+	// the instant of the changes, in ms since the epoch
+	private static final long NOW = 1400000000000L;
+	
+	// the time to wait for a delivery, in ms
+	private static final long WAIT = 2000;
+	
+	// the time after which no more deliveries are expected, in ms
+	private static final long QUIET = 100;
+	
+	// the shared pool running the deliveries
+	private ScheduledThreadPoolExecutor pool;
+	
+	// the live aggregates
+	private LivePower livePower;
+	
+	// the publisher under test
+	private ConsumptionPublisherService publisher;
+	
+	// the household subscriber
+	private Recorder household;
+	
+	@Before
+	public void setUp()
+	{
+		this.livePower = new LivePower();
+		this.livePower.setConsumptionTable(ConsumptionTable.build(Collections.singletonMap("lamp", new PowerDevice(
+				"lamp"))));
+		this.pool = new ScheduledThreadPoolExecutor(2);
+		this.publisher = new ConsumptionPublisherService(this.livePower);
+		this.publisher.setExecutor(this.pool);
+		this.household = new Recorder();
+		this.publisher.subscribe(ConsumptionScope.HOUSEHOLD, null, 0, this.household);
+	}
+	
+	@After
+	public void tearDown()
+	{
+		this.publisher.close();
+		this.pool.shutdownNow();
+	}
+	
+	@Test
+	public void undeliveredChangesAreCoalesced() throws InterruptedException
+	{
+		this.publisher.householdChanged(100.0, NOW, 5);
+		this.publisher.householdChanged(200.0, NOW, 6);
+		this.publisher.householdChanged(300.0, NOW, 7);
+		
+		this.household.subscription.request(1);
+		assertEquals(300.0, this.household.next().getPower(), DELTA);
+		
+		this.household.subscription.request(1);
+		assertNull(this.household.changes.poll(QUIET, TimeUnit.MILLISECONDS));
+	}
+	
+	@Test
+	public void olderChangesAreDropped() throws InterruptedException
+	{
+		// a late notification of an older change
+		this.publisher.householdChanged(300.0, NOW, 7);
+		this.publisher.householdChanged(200.0, NOW, 6);
+		this.household.subscription.request(Long.MAX_VALUE);
+		ConsumptionChange change = this.household.next();
+		assertEquals(300.0, change.getPower(), DELTA);
+		assertEquals(7, change.getSequence());
+		
+		// also once the newer change has been delivered
+		this.publisher.householdChanged(100.0, NOW, 5);
+		assertNull(this.household.changes.poll(QUIET, TimeUnit.MILLISECONDS));
+		
+		this.publisher.householdChanged(400.0, NOW, 8);
+		assertEquals(400.0, this.household.next().getPower(), DELTA);
+	}
+	
+	@Test
+	public void liveChangesSupersedeTheCurrentValue() throws InterruptedException
+	{
+		Recorder lamp = new Recorder();
+		this.livePower.setMeteredPower("lamp", 60.0, NOW);
+		this.publisher.subscribe(ConsumptionScope.DEVICE, "lamp", 0, lamp);
+		this.livePower.setMeteredPower("lamp", 40.0, NOW + 1000);
+		
+		lamp.subscription.request(Long.MAX_VALUE);
+		assertEquals(40.0, lamp.next().getPower(), DELTA);
+		
+		this.livePower.setMeteredPower("lamp", 0.0, NOW + 2000);
+		assertEquals(0.0, lamp.next().getPower(), DELTA);
+	}
+	
+	/**
+	 * A subscriber recording the delivered changes
+	 */
+	private static class Recorder implements ConsumptionSubscriber
+	{
+		// the delivered changes
+		private final BlockingQueue<ConsumptionChange> changes = new LinkedBlockingQueue<ConsumptionChange>();
+		
+		// the subscription
+		private volatile ConsumptionSubscription subscription;
+		
+		/**
+		 * @return the next delivered change, failing if none arrives
+		 */
+		ConsumptionChange next() throws InterruptedException
+		{
+			ConsumptionChange change = this.changes.poll(WAIT, TimeUnit.MILLISECONDS);
+			if (change == null)
+				throw new AssertionError("No change delivered");
+			
+			return change;
+		}
+		
+		@Override
+		public void onSubscribe(ConsumptionSubscription subscription)
+		{
+			this.subscription = subscription;
+		}
+		
+		@Override
+		public void onNext(ConsumptionChange change)
+		{
+			this.changes.add(change);
+		}
+		
+		@Override
+		public void onError(Throwable error)
+		{
+			throw new AssertionError(error);
+		}
+		
+		@Override
+		public void onComplete()
+		{
+			// nothing to do
+		}
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.live;
+
+import static org.junit.Assert.assertEquals;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+import it.polito.elite.dog.addons.powermodel.device.PowerDevice;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the aggregates kept by {@link LivePower} under concurrent updates
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class LivePowerTest
+{
+	// the tolerance of the power comparisons, in W
+	private static final double DELTA = 1e-6;
+	
+	// the number of devices, each updated by its own thread
+	private static final int DEVICES = 4;
+	
+	// the live aggregates under test
+	private LivePower livePower;
+	
+	@Before
+	public void setUp()
+	{
+		Map<String, PowerDevice> devices = new HashMap<String, PowerDevice>();
+		for (int i = 0; i < DEVICES; i++)
+			devices.put("device" + i, new PowerDevice("device" + i));
+		
+		this.livePower = new LivePower();
+		this.livePower.setConsumptionTable(ConsumptionTable.build(devices));
+	}
+	
+	@Test
+	public void latestNotificationCarriesTheFinalTotal() throws InterruptedException
+	{
+		final Latest latest = new Latest();
+		this.livePower.addAggregateListener(latest);
+		
+		Thread[] updaters = new Thread[DEVICES];
+		for (int i = 0; i < DEVICES; i++)
+		{
+			final String deviceURI = "device" + i;
+			updaters[i] = new Thread() {
+				
+				@Override
+				public void run()
+				{
+					for (int j = 1; j <= 1000; j++)
+						LivePowerTest.this.livePower.setMeteredPower(deviceURI, j, j);
+				}
+			};
+			updaters[i].start();
+		}
+		for (Thread updater : updaters)
+			updater.join();
+		
+		assertEquals(DEVICES * 1000.0, this.livePower.getHouseholdPower(), DELTA);
+		assertEquals(DEVICES * 1000.0, this.livePower.getSnapshot().getHouseholdPower(), DELTA);
+		assertEquals(DEVICES * 1000.0, latest.power, DELTA);
+	}
+	
+	@Test
+	public void powersAreCarriedToANewTable()
+	{
+		this.livePower.setMeteredPower("device0", 100.0, 1);
+		this.livePower.setMeteredPower("device1", 50.0, 1);
+		
+		Map<String, PowerDevice> devices = new HashMap<String, PowerDevice>();
+		devices.put("device1", new PowerDevice("device1"));
+		devices.put("device9", new PowerDevice("device9"));
+		this.livePower.setConsumptionTable(ConsumptionTable.build(devices));
+		
+		assertEquals(50.0, this.livePower.getHouseholdPower(), DELTA);
+		assertEquals(50.0, this.livePower.getDevicePower("device1"), DELTA);
+		assertEquals(Double.NaN, this.livePower.getDevicePower("device9"), 0.0);
+		
+		this.livePower.setMeteredPower("device9", 10.0, 2);
+		assertEquals(60.0, this.livePower.getSnapshot().getHouseholdPower(), DELTA);
+	}
+	
+	@Test
+	public void recentReadingsWinOverTheModelledPower()
+	{
+		this.livePower.setMeteredValidity(1000);
+		this.livePower.setModelledPower("device0", 100.0, 1);
+		this.livePower.setMeteredPower("device0", 80.0, 10);
+		
+		// the reading owns the device for the validity
+		this.livePower.setModelledPower("device0", 120.0, 500);
+		assertEquals(80.0, this.livePower.getDevicePower("device0"), DELTA);
+		
+		// then the model takes the device back
+		this.livePower.setModelledPower("device0", 120.0, 1010);
+		assertEquals(120.0, this.livePower.getDevicePower("device0"), DELTA);
+		
+		// the other devices are still modelled
+		this.livePower.setModelledPower("device1", 30.0, 500);
+		assertEquals(150.0, this.livePower.getHouseholdPower(), DELTA);
+	}
+	
+	/**
+	 * A listener keeping the household power with the greatest sequence
+	 * number
+	 */
+	private static class Latest implements AggregateListener
+	{
+		// the greatest sequence number
+		private long sequence;
+		
+		// its household power, in W
+		private double power;
+		
+		@Override
+		public void deviceChanged(ConsumptionTable table, int device, double power, long timestamp, long sequence)
+		{
+			// only the household is checked
+		}
+		
+		@Override
+		public void roomChanged(ConsumptionTable table, int room, double power, long timestamp, long sequence)
+		{
+			// only the household is checked
+		}
+		
+		@Override
+		public synchronized void householdChanged(double power, long timestamp, long sequence)
+		{
+			if (sequence > this.sequence)
+			{
+				this.sequence = sequence;
+				this.power = power;
+			}
+		}
+	}
+}
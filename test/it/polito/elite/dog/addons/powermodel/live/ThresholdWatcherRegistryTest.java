@@ -0,0 +1,203 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.live;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionScope;
+import it.polito.elite.dog.addons.powermodel.api.ThresholdCondition;
+import it.polito.elite.dog.addons.powermodel.api.ThresholdEvent;
+import it.polito.elite.dog.addons.powermodel.api.ThresholdListener;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the hysteresis and debounce of the watches of the
+ * {@link ThresholdWatcherRegistry}
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class ThresholdWatcherRegistryTest
+{
+	// the instant of the first change, in ms since the epoch
+	private static final long START = 1400000000000L;
+	
+	// the time to wait for a notification, in ms
+	private static final long WAIT = 2000;
+	
+	// the time after which no more notifications are expected, in ms
+	private static final long QUIET = 100;
+	
+	// the shared pool running the timers and the notifications
+	private ScheduledThreadPoolExecutor pool;
+	
+	// the registry under test
+	private ThresholdWatcherRegistry registry;
+	
+	// the notified events, as "crossed" or "recovered" followed by the power
+	private BlockingQueue<String> events;
+	
+	// the sequence number of the next change
+	private long sequence;
+	
+	@Before
+	public void setUp()
+	{
+		this.pool = new ScheduledThreadPoolExecutor(2);
+		this.registry = new ThresholdWatcherRegistry(new LivePower());
+		this.registry.setExecutor(this.pool);
+		this.events = new LinkedBlockingQueue<String>();
+	}
+	
+	@After
+	public void tearDown()
+	{
+		this.registry.close();
+		this.pool.shutdownNow();
+	}
+	
+	@Test
+	public void releaseNeedsTheHysteresisMargin() throws InterruptedException
+	{
+		this.watch(3000.0, 200.0, 0);
+		
+		this.change(3100.0, START);
+		this.expect("crossed 3100.0");
+		
+		// back under the threshold, but within the margin
+		this.change(2900.0, START + 1000);
+		this.change(3050.0, START + 2000);
+		this.change(2801.0, START + 3000);
+		this.expectNothing();
+		
+		this.change(2800.0, START + 4000);
+		this.expect("recovered 2800.0");
+		
+		// crossing again needs the threshold, not the margin
+		this.change(3000.0, START + 5000);
+		this.expectNothing();
+		this.change(3001.0, START + 6000);
+		this.expect("crossed 3001.0");
+	}
+	
+	@Test
+	public void crossingMustHoldForTheDebounce() throws InterruptedException
+	{
+		this.watch(3000.0, 200.0, 10000);
+		
+		this.change(3100.0, START);
+		this.change(3200.0, START + 5000);
+		
+		// a dip restarts the debounce
+		this.change(2500.0, START + 6000);
+		this.change(3100.0, START + 7000);
+		this.change(3100.0, START + 16000);
+		this.expectNothing();
+		
+		this.change(3100.0, START + 17000);
+		this.expect("crossed 3100.0");
+	}
+	
+	@Test
+	public void timerCoversASteadyValue() throws InterruptedException
+	{
+		this.watch(3000.0, 200.0, 200);
+		
+		// no further change: the value holds until the timer expires
+		this.change(3100.0, System.currentTimeMillis());
+		this.expect("crossed 3100.0");
+	}
+	
+	@Test
+	public void olderValuesAreIgnored() throws InterruptedException
+	{
+		this.watch(3000.0, 200.0, 0);
+		
+		this.change(3100.0, START);
+		this.expect("crossed 3100.0");
+		
+		// a late notification of an older change
+		this.registry.householdChanged(2000.0, START, this.sequence - 1);
+		this.expectNothing();
+	}
+	
+	@Test
+	public void unwatchedThresholdsAreSilent() throws InterruptedException
+	{
+		long id = this.watch(3000.0, 200.0, 0);
+		assertTrue(this.registry.unwatch(id));
+		
+		this.change(3100.0, START);
+		this.expectNothing();
+	}
+	
+	/**
+	 * Watch the household consumption going above the given threshold
+	 */
+	private long watch(double threshold, double hysteresis, long duration)
+	{
+		return this.registry.watch(ConsumptionScope.HOUSEHOLD, null, ThresholdCondition.ABOVE, threshold,
+				hysteresis, duration, new ThresholdListener() {
+					
+					@Override
+					public void thresholdCrossed(ThresholdEvent event)
+					{
+						ThresholdWatcherRegistryTest.this.events.add("crossed " + event.getPower());
+					}
+					
+					@Override
+					public void thresholdRecovered(ThresholdEvent event)
+					{
+						ThresholdWatcherRegistryTest.this.events.add("recovered " + event.getPower());
+					}
+				});
+	}
+	
+	/**
+	 * Notify a new household consumption
+	 */
+	private void change(double power, long timestamp)
+	{
+		this.registry.householdChanged(power, timestamp, ++this.sequence);
+	}
+	
+	/**
+	 * Check the next notified event
+	 */
+	private void expect(String event) throws InterruptedException
+	{
+		assertEquals(event, this.events.poll(WAIT, TimeUnit.MILLISECONDS));
+	}
+	
+	/**
+	 * Check that no event is notified
+	 */
+	private void expectNothing() throws InterruptedException
+	{
+		assertNull(this.events.poll(QUIET, TimeUnit.MILLISECONDS));
+	}
+}
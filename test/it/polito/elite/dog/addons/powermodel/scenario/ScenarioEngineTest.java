@@ -0,0 +1,121 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.scenario;
+
+import static org.junit.Assert.assertEquals;
+import it.polito.elite.dog.addons.powermodel.api.Scenario;
+import it.polito.elite.dog.addons.powermodel.api.ScenarioResult;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+import it.polito.elite.dog.addons.powermodel.device.LoadProfile;
+import it.polito.elite.dog.addons.powermodel.device.PowerDevice;
+import it.polito.elite.dog.addons.powermodel.device.PowerState;
+import it.polito.elite.dog.addons.powermodel.learning.ConsumptionEstimator;
+import it.polito.elite.dog.addons.powermodel.live.LivePower;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the totals and peaks computed by the {@link ScenarioEngine}
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class ScenarioEngineTest
+{
+	// the tolerance of the power comparisons, in W
+	private static final double DELTA = 1e-9;
+	
+	// the engine under test, evaluating in the calling thread
+	private ScenarioEngine engine;
+	
+	@Before
+	public void setUp()
+	{
+		// a washer starting at 300 W and peaking at 2.2 kW, and a 1 kW heater
+		Map<String, PowerDevice> devices = new HashMap<String, PowerDevice>();
+		devices.put("washer", ScenarioEngineTest.buildDevice("washer", new String[] { "Off", "Run" }, new double[] {
+				0.0, 2000.0 }, LoadProfile.valueOf(new double[] { 0.0, 600.0, 1200.0 }, new double[] { 300.0,
+				2200.0, 150.0 }, false, false)));
+		devices.put("heater", ScenarioEngineTest.buildDevice("heater", new String[] { "Off", "On" }, new double[] {
+				0.0, 1000.0 }, null));
+		ConsumptionTable table = ConsumptionTable.build(devices);
+		
+		LivePower livePower = new LivePower();
+		livePower.setConsumptionTable(table);
+		livePower.setMeteredPower("washer", 0.0, 1);
+		livePower.setMeteredPower("heater", 1000.0, 1);
+		ConsumptionEstimator estimator = new ConsumptionEstimator();
+		estimator.setConsumptionTable(table);
+		this.engine = new ScenarioEngine(livePower, estimator);
+	}
+	
+	@Test
+	public void profiledDevicesStartAtTheirProfile()
+	{
+		ScenarioResult result = this.engine.evaluate(new Scenario().set("washer", "Run"));
+		assertEquals(1000.0, result.getBasePower(), DELTA);
+		assertEquals(1300.0, result.getTotalPower(), DELTA);
+		assertEquals(3200.0, result.getPeakPower(), DELTA);
+	}
+	
+	@Test
+	public void peakDoesNotDependOnTheOrderOfTheChanges()
+	{
+		ScenarioResult washerFirst = this.engine.evaluate(new Scenario().set("washer", "Run").set("heater", "Off"));
+		ScenarioResult heaterFirst = this.engine.evaluate(new Scenario().set("heater", "Off").set("washer", "Run"));
+		
+		assertEquals(300.0, washerFirst.getTotalPower(), DELTA);
+		assertEquals(2200.0, washerFirst.getPeakPower(), DELTA);
+		assertEquals(washerFirst.getPeakPower(), heaterFirst.getPeakPower(), DELTA);
+	}
+	
+	@Test
+	public void laterChangesOfADeviceWin()
+	{
+		ScenarioResult result = this.engine.evaluate(new Scenario().set("washer", "Run").set("washer", "Off"));
+		assertEquals(1000.0, result.getTotalPower(), DELTA);
+		assertEquals(1000.0, result.getPeakPower(), DELTA);
+		assertEquals(0, result.getUnknownChanges());
+		
+		result = this.engine.evaluate(new Scenario().set("dryer", "On"));
+		assertEquals(1, result.getUnknownChanges());
+	}
+	
+	/**
+	 * @return a device with the given states and typical consumptions, and
+	 *         the load profile of its last state, if any
+	 */
+	private static PowerDevice buildDevice(String deviceURI, String[] states, double[] powers, LoadProfile profile)
+	{
+		PowerDevice device = new PowerDevice(deviceURI);
+		for (int i = 0; i < states.length; i++)
+		{
+			PowerState state = new PowerState(states[i]);
+			state.setTypicalConsumption(powers[i], "W");
+			if (i == states.length - 1)
+				state.setLoadProfile(profile);
+			device.addSinglePowerState(state);
+		}
+		
+		return device;
+	}
+}
@@ -0,0 +1,176 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.schedule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import it.polito.elite.dog.addons.powermodel.api.DeferrableJob;
+import it.polito.elite.dog.addons.powermodel.api.ScheduledRun;
+import it.polito.elite.dog.addons.powermodel.api.TariffCalendar;
+import it.polito.elite.dog.addons.powermodel.budget.PowerBudgetManager;
+import it.polito.elite.dog.addons.powermodel.device.ConsumptionTable;
+import it.polito.elite.dog.addons.powermodel.device.PowerDevice;
+import it.polito.elite.dog.addons.powermodel.device.PowerState;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the placement of the runs by the {@link SlotScheduler}, against
+ * the tariff and the power cap
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class SlotSchedulerTest
+{
+	// the tolerance of the cost comparisons
+	private static final double DELTA = 1e-9;
+	
+	// one hour, the slot length of the tests, in ms
+	private static final long HOUR = 3600 * 1000L;
+	
+	// the scheduler under test, with a 4 kW cap and a cheap band from 2:00
+	// to 5:00
+	private SlotScheduler scheduler;
+	
+	@Before
+	public void setUp()
+	{
+		Map<String, PowerDevice> devices = new HashMap<String, PowerDevice>();
+		devices.put("washer", SlotSchedulerTest.buildDevice("washer", 2000.0));
+		devices.put("dryer", SlotSchedulerTest.buildDevice("dryer", 3000.0));
+		devices.put("oven", SlotSchedulerTest.buildDevice("oven", 2500.0));
+		
+		PowerBudgetManager budget = new PowerBudgetManager();
+		budget.setBudget(4000.0);
+		
+		this.scheduler = new SlotScheduler(budget, null);
+		this.scheduler.setSlots(HOUR, 24);
+		this.scheduler.setTariff(new TariffCalendar(0.30, TimeZone.getTimeZone("UTC")).setRate(
+				TariffCalendar.EVERY_DAY, 2 * 60, 5 * 60, 0.10));
+		this.scheduler.setConsumptionTable(ConsumptionTable.build(devices));
+	}
+	
+	@Test
+	public void runIsPlacedInTheCheapestSlots()
+	{
+		ScheduledRun run = this.scheduler.schedule(new DeferrableJob("washer", "Run", 0, 24 * HOUR, 2 * HOUR), 0);
+		
+		assertTrue(run.isPlaced());
+		assertEquals(2 * HOUR, run.getStart());
+		assertEquals(4000.0, run.getEnergy(), DELTA);
+		assertEquals(2000.0, run.getPeak(), DELTA);
+		assertEquals(4.0 * 0.10, run.getCost(), DELTA);
+	}
+	
+	@Test
+	public void runsDoNotOverlapBeyondTheCap()
+	{
+		this.scheduler.schedule(new DeferrableJob("washer", "Run", 0, 24 * HOUR, 2 * HOUR), 0);
+		ScheduledRun run = this.scheduler.schedule(new DeferrableJob("dryer", "Run", 0, 24 * HOUR, HOUR), 0);
+		
+		// the last cheap slot is left
+		assertEquals(4 * HOUR, run.getStart());
+	}
+	
+	@Test
+	public void tightJobMovesTheCompetingRuns()
+	{
+		this.scheduler.schedule(new DeferrableJob("washer", "Run", 0, 24 * HOUR, 2 * HOUR), 0);
+		ScheduledRun run = this.scheduler.schedule(new DeferrableJob("dryer", "Run", 2 * HOUR, 5 * HOUR,
+				3 * HOUR), 0);
+		assertEquals(2 * HOUR, run.getStart());
+		
+		// the washer has left the cheap band
+		List<ScheduledRun> plan = this.scheduler.getPlan(0);
+		assertEquals(2, plan.size());
+		assertEquals("washer", plan.get(0).getJob().getDeviceURI());
+		assertEquals(0, plan.get(0).getStart());
+		assertEquals("dryer", plan.get(1).getJob().getDeviceURI());
+	}
+	
+	@Test
+	public void jobThatDoesNotFitIsRejected()
+	{
+		this.scheduler.schedule(new DeferrableJob("dryer", "Run", 2 * HOUR, 5 * HOUR, 3 * HOUR), 0);
+		assertNull(this.scheduler.schedule(new DeferrableJob("oven", "Run", 2 * HOUR, 4 * HOUR, 2 * HOUR), 0));
+		assertNull(this.scheduler.schedule(new DeferrableJob("heater", "Run", 0, 24 * HOUR, HOUR), 0));
+		
+		// the plan is unchanged
+		List<ScheduledRun> plan = this.scheduler.getPlan(0);
+		assertEquals(1, plan.size());
+		assertEquals(2 * HOUR, plan.get(0).getStart());
+	}
+	
+	@Test
+	public void cancelledRunsMakeRoomOnReplan()
+	{
+		ScheduledRun washer = this.scheduler.schedule(new DeferrableJob("washer", "Run", 0, 24 * HOUR, 2 * HOUR),
+				0);
+		ScheduledRun oven = this.scheduler.schedule(new DeferrableJob("oven", "Run", 0, 24 * HOUR, HOUR), 0);
+		assertEquals(4 * HOUR, oven.getStart());
+		
+		assertTrue(this.scheduler.cancel(washer.getJobId()));
+		assertFalse(this.scheduler.cancel(washer.getJobId()));
+		
+		List<ScheduledRun> plan = this.scheduler.replan(0);
+		assertEquals(1, plan.size());
+		assertEquals(2 * HOUR, plan.get(0).getStart());
+	}
+	
+	@Test
+	public void endedRunsLeaveThePlan()
+	{
+		this.scheduler.schedule(new DeferrableJob("washer", "Run", 0, 24 * HOUR, 2 * HOUR), 0);
+		
+		assertEquals(1, this.scheduler.getPlan(3 * HOUR).size());
+		assertEquals(0, this.scheduler.getPlan(4 * HOUR).size());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void jobMustFitItsOwnWindow()
+	{
+		this.scheduler.schedule(new DeferrableJob("washer", "Run", 0, HOUR, 2 * HOUR), 0);
+	}
+	
+	/**
+	 * @return a device with an Off state, with no consumption, and a Run state
+	 */
+	private static PowerDevice buildDevice(String deviceURI, double power)
+	{
+		PowerDevice device = new PowerDevice(deviceURI);
+		
+		PowerState off = new PowerState("Off");
+		off.setTypicalConsumption(0.0, "W");
+		device.addSinglePowerState(off);
+		
+		PowerState run = new PowerState("Run");
+		run.setTypicalConsumption(power, "W");
+		device.addSinglePowerState(run);
+		
+		return device;
+	}
+}
@@ -0,0 +1,220 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import it.polito.elite.dog.addons.powermodel.api.ConsumptionLogVisitor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the appends, rollups and recovery of the
+ * {@link ConsumptionLogStore}
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class ConsumptionLogStoreTest
+{
+	// the tolerance of the power comparisons, in W
+	private static final double DELTA = 1e-3;
+	
+	// the start of a minute, in ms since the epoch
+	private static final long START = 1400000040000L;
+	
+	// runs the compactions in the calling thread
+	private static final Executor DIRECT = new Executor() {
+		
+		@Override
+		public void execute(Runnable task)
+		{
+			task.run();
+		}
+	};
+	
+	// the log folder
+	private File folder;
+	
+	// the log under test
+	private ConsumptionLogStore log;
+	
+	@Before
+	public void setUp() throws IOException
+	{
+		this.folder = File.createTempFile("consumption-log", "");
+		assertTrue(this.folder.delete());
+		
+		// 4 records per segment, a single raw segment kept
+		this.log = new ConsumptionLogStore(this.folder, DIRECT, 4, 1, 4);
+	}
+	
+	@After
+	public void tearDown()
+	{
+		this.log.close();
+		for (File file : this.folder.listFiles())
+			file.delete();
+		this.folder.delete();
+	}
+	
+	@Test
+	public void samplesAreScannedInAppendOrder()
+	{
+		assertTrue(this.log.append("lamp", START, 100.0));
+		assertTrue(this.log.append("heater", START + 1000, 1000.0));
+		assertTrue(this.log.append("lamp", START + 2000, 60.0));
+		assertFalse(this.log.append("lamp", 0, 60.0));
+		
+		Recorder lamp = new Recorder();
+		this.log.scanSamples("lamp", START, START + 3000, lamp);
+		assertEquals(2, lamp.samples.size());
+		assertEquals(START, lamp.samples.get(0)[0], 0.0);
+		assertEquals(60.0, lamp.samples.get(1)[1], DELTA);
+		
+		Recorder all = new Recorder();
+		this.log.scanSamples(null, START + 1000, START + 3000, all);
+		assertEquals(2, all.samples.size());
+		assertEquals(1000.0, all.samples.get(0)[1], DELTA);
+	}
+	
+	@Test
+	public void oldSegmentsAreRolledUp()
+	{
+		// 9 samples in the same minute: two full segments are compacted
+		for (int i = 0; i < 9; i++)
+			assertTrue(this.log.append("lamp", START + i * 1000, 100.0 + i * 10));
+		
+		Recorder raw = new Recorder();
+		this.log.scanSamples("lamp", 0, Long.MAX_VALUE, raw);
+		assertEquals(1, raw.samples.size());
+		assertEquals(180.0, raw.samples.get(0)[1], DELTA);
+		
+		// the minute spanning both segments is merged into a single rollup
+		Recorder rollups = new Recorder();
+		this.log.scanRollups("lamp", 0, Long.MAX_VALUE, rollups);
+		ConsumptionLogStoreTest.assertRollup(rollups, START, 100.0, 170.0, 135.0, 8);
+	}
+	
+	@Test
+	public void reopenedLogKeepsSamplesAndRollups() throws IOException
+	{
+		for (int i = 0; i < 6; i++)
+			assertTrue(this.log.append("lamp", START + i * 1000, 100.0 + i * 10));
+		this.log.close();
+		
+		this.log = new ConsumptionLogStore(this.folder, DIRECT, 4, 1, 4);
+		Recorder raw = new Recorder();
+		this.log.scanSamples("lamp", 0, Long.MAX_VALUE, raw);
+		assertEquals(2, raw.samples.size());
+		assertEquals(START + 4000, raw.samples.get(0)[0], 0.0);
+		Recorder rollups = new Recorder();
+		this.log.scanRollups("lamp", 0, Long.MAX_VALUE, rollups);
+		ConsumptionLogStoreTest.assertRollup(rollups, START, 100.0, 130.0, 115.0, 4);
+		
+		// appends go on after the recovered records, merging the minute
+		for (int i = 6; i < 9; i++)
+			assertTrue(this.log.append("lamp", START + i * 1000, 100.0 + i * 10));
+		rollups = new Recorder();
+		this.log.scanRollups("lamp", 0, Long.MAX_VALUE, rollups);
+		ConsumptionLogStoreTest.assertRollup(rollups, START, 100.0, 170.0, 135.0, 8);
+	}
+	
+	@Test
+	public void concurrentAppendsAreAllPublished() throws Exception
+	{
+		// enough raw segments for all the samples: nothing is compacted
+		this.log.close();
+		this.log = new ConsumptionLogStore(this.folder, DIRECT, 64, 64, 4);
+		
+		Thread[] appenders = new Thread[4];
+		for (int i = 0; i < appenders.length; i++)
+		{
+			final String deviceURI = "device" + i;
+			appenders[i] = new Thread() {
+				
+				@Override
+				public void run()
+				{
+					for (int j = 0; j < 500; j++)
+						ConsumptionLogStoreTest.this.log.append(deviceURI, START + j, j);
+				}
+			};
+			appenders[i].start();
+		}
+		for (Thread appender : appenders)
+			appender.join();
+		
+		Recorder all = new Recorder();
+		this.log.scanSamples(null, 0, Long.MAX_VALUE, all);
+		assertEquals(2000, all.samples.size());
+		Recorder device = new Recorder();
+		this.log.scanSamples("device2", 0, Long.MAX_VALUE, device);
+		assertEquals(500, device.samples.size());
+		assertEquals(499.0, device.samples.get(499)[1], DELTA);
+	}
+	
+	/**
+	 * Check that a single rollup has been scanned, with the given values
+	 */
+	private static void assertRollup(Recorder rollups, long start, double min, double max, double mean, int samples)
+	{
+		assertEquals(1, rollups.rollups.size());
+		double[] rollup = rollups.rollups.get(0);
+		assertEquals(start, rollup[0], 0.0);
+		assertEquals(min, rollup[1], DELTA);
+		assertEquals(max, rollup[2], DELTA);
+		assertEquals(mean, rollup[3], DELTA);
+		assertEquals(samples, rollup[4], 0.0);
+	}
+	
+	/**
+	 * A visitor recording the scanned records
+	 */
+	private static class Recorder implements ConsumptionLogVisitor
+	{
+		// the timestamp and power of each sample
+		private final List<double[]> samples = new ArrayList<double[]>();
+		
+		// the start, min, max, mean and samples of each rollup
+		private final List<double[]> rollups = new ArrayList<double[]>();
+		
+		@Override
+		public boolean visitSample(String deviceURI, long timestamp, double power)
+		{
+			this.samples.add(new double[] { timestamp, power });
+			return true;
+		}
+		
+		@Override
+		public boolean visitRollup(String deviceURI, long start, double min, double max, double mean, int samples)
+		{
+			this.rollups.add(new double[] { start, min, max, mean, samples });
+			return true;
+		}
+	}
+}
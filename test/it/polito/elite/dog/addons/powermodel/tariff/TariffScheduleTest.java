@@ -0,0 +1,109 @@
+/*
+ * Dog - Addons
+ * 
+ * Copyright (c) 2011-2014 Luigi De Russis
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package it.polito.elite.dog.addons.powermodel.tariff;
+
+import static org.junit.Assert.assertEquals;
+import it.polito.elite.dog.addons.powermodel.api.TariffCalendar;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+/**
+ * Tests of the tariff bands spanning midnight, as compiled in a
+ * {@link TariffSchedule}
+ * 
+ * @author <a href="mailto:agent@local">agent</a>
+ * 
+ */
+public class TariffScheduleTest
+{
+	// the tolerance of the rate and cost comparisons
+	private static final double DELTA = 1e-9;
+	
+	// milliseconds in one hour
+	private static final long HOUR = 3600 * 1000L;
+	
+	// the time zone of the tariffs
+	private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+	
+	@Test
+	public void overnightBandIsSplitAtMidnight()
+	{
+		TariffCalendar tariff = new TariffCalendar(0.30, UTC).setRate(TariffCalendar.EVERY_DAY, 22 * 60, 6 * 60,
+				0.10);
+		assertEquals(2, tariff.getBandCount());
+		
+		// Wednesday, January 1st 2014
+		long midnight = TariffScheduleTest.getMidnight(2014, Calendar.JANUARY, 1);
+		TariffSchedule schedule = TariffSchedule.compile(tariff, midnight, midnight + 2 * 24 * HOUR);
+		assertEquals(0.10, schedule.getRate(midnight + 3 * HOUR), DELTA);
+		assertEquals(0.30, schedule.getRate(midnight + 6 * HOUR), DELTA);
+		assertEquals(0.30, schedule.getRate(midnight + 21 * HOUR), DELTA);
+		assertEquals(0.10, schedule.getRate(midnight + 23 * HOUR), DELTA);
+		assertEquals(0.10, schedule.getRate(midnight + 29 * HOUR), DELTA);
+		
+		// 1 kW from 20:00 to 02:00: 2 h at 0.30, then 4 h at 0.10
+		assertEquals(2 * 0.30 + 4 * 0.10, schedule.getCost(1000.0, midnight + 20 * HOUR, midnight + 26 * HOUR),
+				DELTA);
+	}
+	
+	@Test
+	public void overnightBandOfSaturdayEndsOnSunday()
+	{
+		TariffCalendar tariff = new TariffCalendar(0.30, UTC).setRate(Calendar.SATURDAY, 22 * 60, 6 * 60, 0.10);
+		
+		// Saturday, January 4th 2014
+		long saturday = TariffScheduleTest.getMidnight(2014, Calendar.JANUARY, 4);
+		TariffSchedule schedule = TariffSchedule.compile(tariff, saturday - 24 * HOUR, saturday + 3 * 24 * HOUR);
+		assertEquals(0.30, schedule.getRate(saturday + 3 * HOUR), DELTA);
+		assertEquals(0.10, schedule.getRate(saturday + 23 * HOUR), DELTA);
+		assertEquals(0.10, schedule.getRate(saturday + 29 * HOUR), DELTA);
+		assertEquals(0.30, schedule.getRate(saturday + 31 * HOUR), DELTA);
+		
+		// Monday morning is not part of the band
+		assertEquals(0.30, schedule.getRate(saturday + 2 * 24 * HOUR + 3 * HOUR), DELTA);
+	}
+	
+	@Test
+	public void bandUntilMidnightIsNotSplit()
+	{
+		TariffCalendar tariff = new TariffCalendar(0.30, UTC).setRate(TariffCalendar.EVERY_DAY, 22 * 60, 0, 0.10);
+		assertEquals(1, tariff.getBandCount());
+		assertEquals(TariffCalendar.MINUTES_PER_DAY, tariff.getBandEnd(0));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void emptyBandIsRejected()
+	{
+		new TariffCalendar(0.30, UTC).setRate(TariffCalendar.EVERY_DAY, 6 * 60, 6 * 60, 0.10);
+	}
+	
+	/**
+	 * @return the midnight of a day, in UTC, in ms since the epoch
+	 */
+	private static long getMidnight(int year, int month, int day)
+	{
+		Calendar calendar = Calendar.getInstance(UTC);
+		calendar.clear();
+		calendar.set(year, month, day);
+		
+		return calendar.getTimeInMillis();
+	}
+}